@@ -14,6 +14,7 @@ import ai.masaic.openresponses.api.service.embedding.OpenAIProxyEmbeddingService
 import ai.masaic.openresponses.api.service.rerank.RerankerService
 import ai.masaic.openresponses.api.service.search.*
 import ai.masaic.openresponses.api.support.service.TelemetryService
+import ai.masaic.openresponses.api.utils.TokenCounter
 import ai.masaic.openresponses.tool.NativeToolRegistry
 import ai.masaic.openresponses.tool.PlugableToolAdapter
 import ai.masaic.openresponses.tool.ToolService
@@ -364,12 +365,18 @@ class PlatformCoreConfig {
             vectorSearchProvider: PlatformQdrantVectorSearchProvider,
             telemetryService: TelemetryService,
             hybridSearchServiceHelper: HybridSearchServiceHelper,
+            ingestionQueue: IngestionQueue,
+            vectorSearchProperties: VectorSearchConfigProperties,
+            activityTracker: VectorStoreActivityTracker,
         ) = PlatformVectorStoreService(
             vectorStoreFileManager,
             vectorStoreRepository,
             vectorSearchProvider,
             telemetryService,
             hybridSearchServiceHelper,
+            ingestionQueue,
+            vectorSearchProperties.ingestion.resumeOnStartup,
+            activityTracker,
         )
 
         @Bean
@@ -379,12 +386,18 @@ class PlatformCoreConfig {
             luceneIndexService: LuceneIndexService? = null,
             mongoTemplate: ReactiveMongoTemplate? = null,
             rerankerService: RerankerService? = null,
+            vectorSearchProperties: VectorSearchConfigProperties,
+            meterRegistry: MeterRegistry,
+            vectorStoreRepository: VectorStoreRepository? = null,
         ) = PlatformHybridSearchService(
             vectorSearchProvider,
             vectorRepositoryProperties,
             luceneIndexService,
             mongoTemplate,
             rerankerService,
+            vectorSearchProperties,
+            meterRegistry,
+            vectorStoreRepository,
         )
 
         @Bean
@@ -395,7 +408,8 @@ class PlatformCoreConfig {
             hybridSearchServiceHelper: HybridSearchServiceHelper,
             client: QdrantClient,
             proxyEmbeddingService: OpenAIProxyEmbeddingService,
-        ) = PlatformQdrantVectorSearchProvider(embeddingService, qdrantProperties, vectorSearchProperties, hybridSearchServiceHelper, client, proxyEmbeddingService)
+            chunkTokenCounter: TokenCounter,
+        ) = PlatformQdrantVectorSearchProvider(embeddingService, qdrantProperties, vectorSearchProperties, hybridSearchServiceHelper, client, proxyEmbeddingService, chunkTokenCounter)
     }
 
     @Configuration
@@ -408,12 +422,18 @@ class PlatformCoreConfig {
             vectorSearchProvider: VectorSearchProvider,
             telemetryService: TelemetryService,
             hybridSearchServiceHelper: HybridSearchServiceHelper,
+            ingestionQueue: IngestionQueue,
+            vectorSearchProperties: VectorSearchConfigProperties,
+            activityTracker: VectorStoreActivityTracker,
         ) = VectorStoreService(
             vectorStoreFileManager,
             vectorStoreRepository,
             vectorSearchProvider,
             telemetryService,
             hybridSearchServiceHelper,
+            ingestionQueue,
+            vectorSearchProperties.ingestion.resumeOnStartup,
+            activityTracker,
         )
 
         @Bean
@@ -423,12 +443,18 @@ class PlatformCoreConfig {
             luceneIndexService: LuceneIndexService? = null,
             mongoTemplate: ReactiveMongoTemplate? = null,
             rerankerService: RerankerService? = null,
+            vectorSearchProperties: VectorSearchConfigProperties,
+            meterRegistry: MeterRegistry,
+            vectorStoreRepository: VectorStoreRepository? = null,
         ) = HybridSearchService(
             vectorSearchProvider,
             vectorRepositoryProperties,
             luceneIndexService,
             mongoTemplate,
             rerankerService,
+            vectorSearchProperties,
+            meterRegistry,
+            vectorStoreRepository,
         )
     }
 }
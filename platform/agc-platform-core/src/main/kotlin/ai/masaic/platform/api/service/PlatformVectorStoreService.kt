@@ -11,6 +11,10 @@ import ai.masaic.openresponses.api.service.embedding.OpenAIProxyEmbeddingService
 import ai.masaic.openresponses.api.service.rerank.RerankerService
 import ai.masaic.openresponses.api.service.search.*
 import ai.masaic.openresponses.api.support.service.TelemetryService
+import ai.masaic.openresponses.api.utils.TokenCounter
+import ai.masaic.openresponses.api.utils.TokenCounters
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import io.qdrant.client.QdrantClient
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate
@@ -22,12 +26,18 @@ class PlatformVectorStoreService(
     private val vectorSearchProvider: PlatformQdrantVectorSearchProvider,
     private val telemetryService: TelemetryService,
     @Autowired(required = false) private val hybridSearchServiceHelper: HybridSearchServiceHelper,
+    ingestionQueue: IngestionQueue = IngestionQueue(),
+    resumeOnStartup: Boolean = true,
+    activityTracker: VectorStoreActivityTracker = VectorStoreActivityTracker(vectorStoreRepository),
 ) : VectorStoreService(
         vectorStoreFileManager,
         vectorStoreRepository,
         vectorSearchProvider,
         telemetryService,
         hybridSearchServiceHelper,
+        ingestionQueue,
+        resumeOnStartup,
+        activityTracker,
     ) {
     override suspend fun indexFile(
         fileId: String,
@@ -70,25 +80,26 @@ class PlatformQdrantVectorSearchProvider(
     hybridSearchServiceHelper: HybridSearchServiceHelper,
     client: QdrantClient,
     private val proxyEmbeddingService: OpenAIProxyEmbeddingService,
-) : QdrantVectorSearchProvider(embeddingService, qdrantProperties, vectorSearchProperties, hybridSearchServiceHelper, client) {
+    tokenCounter: TokenCounter = TokenCounters.default,
+) : QdrantVectorSearchProvider(embeddingService, qdrantProperties, vectorSearchProperties, hybridSearchServiceHelper, client, tokenCounter) {
     override fun embeddings(
         chunkTexts: List<String>,
         modelSettings: ModelSettings?,
-    ): List<List<Float>> =
+    ): List<FloatArray> =
         if (modelSettings == null) {
             super.embeddings(chunkTexts, null)
         } else {
-            proxyEmbeddingService.embedTexts(texts = chunkTexts, apiKey = modelSettings.apiKey, modelName = modelSettings.qualifiedModelName)
+            proxyEmbeddingService.embedTextsAsArrays(texts = chunkTexts, apiKey = modelSettings.apiKey, modelName = modelSettings.qualifiedModelName)
         }
 
     override fun embedding(
         query: String,
         modelSettings: ModelSettings?,
-    ): List<Float> =
+    ): FloatArray =
         if (modelSettings == null) {
             super.embedding(query, null)
         } else {
-            proxyEmbeddingService.embedText(text = query, apiKey = modelSettings.apiKey, modelName = modelSettings.qualifiedModelName)
+            proxyEmbeddingService.embedTextAsArray(text = query, apiKey = modelSettings.apiKey, modelName = modelSettings.qualifiedModelName)
         }
 }
 
@@ -101,7 +112,19 @@ class PlatformHybridSearchService(
     private val mongoTemplate: ReactiveMongoTemplate? = null,
     @Autowired(required = false)
     private val rerankerService: RerankerService? = null,
-) : HybridSearchService(vectorSearchProvider, vectorRepositoryProperties, luceneIndexService, mongoTemplate, rerankerService) {
+    vectorSearchProperties: VectorSearchConfigProperties = VectorSearchConfigProperties(),
+    meterRegistry: MeterRegistry = SimpleMeterRegistry(),
+    vectorStoreRepository: VectorStoreRepository? = null,
+) : HybridSearchService(
+        vectorSearchProvider,
+        vectorRepositoryProperties,
+        luceneIndexService,
+        mongoTemplate,
+        rerankerService,
+        vectorSearchProperties,
+        meterRegistry,
+        vectorStoreRepository,
+    ) {
     override fun searchSimilar(
         query: String,
         maxResults: Int,
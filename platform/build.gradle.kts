@@ -5,6 +5,7 @@ plugins {
     id("io.spring.dependency-management") version "1.1.7" apply false
     kotlin("plugin.serialization") version "1.9.25" apply false
     id("org.jmailen.kotlinter") version "5.0.1" apply false
+    id("me.champeau.jmh") version "0.7.2" apply false
     id("java-library")
     id("maven-publish")
 }
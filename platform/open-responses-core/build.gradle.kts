@@ -5,6 +5,7 @@ plugins {
     id("io.spring.dependency-management")
     kotlin("plugin.serialization")
     id("org.jmailen.kotlinter")
+    id("me.champeau.jmh")
 }
 
 java {
@@ -43,6 +44,7 @@ dependencies {
         exclude(group = "io.grpc", module = "grpc-netty-shaded") // -18M
         exclude(group = "org.bouncycastle") // -17M if using JVM crypto
     }
+    implementation("com.squareup.okhttp3:okhttp:4.12.0")
     implementation("dev.langchain4j:langchain4j-mcp:1.0.0-beta2")
     implementation("dev.langchain4j:langchain4j:1.0.0-beta2")
     implementation("dev.langchain4j:langchain4j-open-ai-official:1.0.0-beta2")
@@ -57,6 +59,9 @@ dependencies {
     api("io.opentelemetry.instrumentation:opentelemetry-spring-boot-starter")
     api("io.micrometer:micrometer-core")
     implementation("io.micrometer:micrometer-observation")
+    implementation("com.microsoft.onnxruntime:onnxruntime:1.20.0")
+    implementation("ai.djl.huggingface:tokenizers:0.31.1")
+    implementation("dev.langchain4j:langchain4j-embeddings-all-minilm-l6-v2:1.0.0-beta2")
     implementation("org.apache.tika:tika-core:3.1.0")
     implementation("org.apache.tika:tika-parsers-standard-package:3.2.3")
     compileOnly("org.springframework.boot:spring-boot-starter-data-mongodb-reactive")
@@ -72,6 +77,7 @@ dependencies {
     testImplementation("org.testcontainers:testcontainers:1.19.1")
     testImplementation("org.redisson:redisson-spring-boot-starter:3.40.0")
     testImplementation("org.testcontainers:junit-jupiter:1.19.1")
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
     testImplementation("org.springframework.boot:spring-boot-starter-data-mongodb-reactive")
     api("org.apache.lucene:lucene-core:9.9.0")
     api("org.apache.lucene:lucene-analysis-common:9.9.0")
@@ -84,14 +90,14 @@ dependencies {
 
 kotlin {
     compilerOptions {
-        freeCompilerArgs.addAll("-Xjsr305=strict")
+        freeCompilerArgs.addAll("-Xjsr305=strict", "-Xadd-modules=jdk.incubator.vector")
         jvmTarget = org.jetbrains.kotlin.gradle.dsl.JvmTarget.JVM_21
     }
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
-    jvmArgs("--add-opens", "java.base/java.util=ALL-UNNAMED")
+    jvmArgs("--add-opens", "java.base/java.util=ALL-UNNAMED", "--add-modules", "jdk.incubator.vector")
     testLogging {
         events("PASSED", "SKIPPED", "FAILED")
         exceptionFormat = org.gradle.api.tasks.testing.logging.TestExceptionFormat.FULL
@@ -99,6 +105,14 @@ tasks.withType<Test> {
     }
 }
 
+// Similarity kernel benchmarks: ./gradlew :open-responses-core:jmh
+jmh {
+    jvmArgs.addAll("--add-modules", "jdk.incubator.vector")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+}
+
 // Disable bootJar for library module - only the server module should create executable JARs
 tasks.getByName<org.springframework.boot.gradle.tasks.bundling.BootJar>("bootJar") {
     enabled = false
@@ -0,0 +1,47 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Throughput of the similarity kernels for common embedding sizes.
+ *
+ * `cosine` recomputes both norms like the previous scoring path did; `dot` is the
+ * pre-normalized path used by the file-based provider.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class SimilarityKernelBenchmark {
+    @Param("384", "768", "1536")
+    var dimension: Int = 0
+
+    @Param("scalar", "vector")
+    var kernelType: String = ""
+
+    private lateinit var kernel: SimilarityKernel
+    private lateinit var query: FloatArray
+    private lateinit var candidate: FloatArray
+
+    @Setup
+    fun setup() {
+        kernel = SimilarityKernels.select(kernelType)
+        val random = Random(42)
+        query = kernel.normalize(FloatArray(dimension) { random.nextFloat() * 2 - 1 })
+        candidate = kernel.normalize(FloatArray(dimension) { random.nextFloat() * 2 - 1 })
+    }
+
+    @Benchmark
+    fun dot(): Float = kernel.dot(query, candidate)
+
+    @Benchmark
+    fun cosine(): Float = kernel.cosine(query, candidate)
+}
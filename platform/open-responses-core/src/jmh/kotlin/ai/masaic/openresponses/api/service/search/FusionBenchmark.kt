@@ -0,0 +1,143 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.model.VectorStoreSearchResult
+import ai.masaic.openresponses.api.model.VectorStoreSearchResultContent
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.math.ln
+import kotlin.random.Random
+
+/**
+ * Cost of merging the hybrid search legs by chunk ID and fusing their scores.
+ *
+ * Running [main] prints nDCG@10 and recall@10 of every strategy on a fixed synthetic corpus
+ * whose vector leg scores like cosine similarity and whose text leg scores like BM25, so the
+ * two legs have the incomparable scales real hybrid searches see.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class FusionBenchmark {
+    @Param("20", "100", "500")
+    var legSize: Int = 0
+
+    @Param("linear", "rrf", "zscore")
+    var fusion: String = ""
+
+    private lateinit var vectorLeg: List<VectorStoreSearchResult>
+    private lateinit var textLeg: List<VectorStoreSearchResult>
+    private lateinit var strategy: FusionStrategy
+
+    @Setup
+    fun setup() {
+        val query = Query.random(legSize * 4, Random(42))
+        vectorLeg = query.vectorLeg(legSize)
+        textLeg = query.textLeg(legSize)
+        strategy = FusionStrategy.parse(fusion)
+    }
+
+    @Benchmark
+    fun mergeAndFuse(): List<VectorStoreSearchResult> {
+        val merge = HybridMerge.of(vectorLeg, textLeg)
+        return merge.ranked(strategy.fuse(merge, 0.5))
+    }
+
+    /**
+     * One synthetic query: graded relevance per chunk and the raw score each leg gives it.
+     */
+    private class Query(
+        val relevance: IntArray,
+        val vectorScores: DoubleArray,
+        val textScores: DoubleArray,
+    ) {
+        fun vectorLeg(size: Int) = leg(vectorScores, size)
+
+        fun textLeg(size: Int) = leg(textScores, size)
+
+        private fun leg(
+            scores: DoubleArray,
+            size: Int,
+        ): List<VectorStoreSearchResult> =
+            scores.indices
+                .filter { scores[it] > 0 }
+                .sortedByDescending { scores[it] }
+                .take(size)
+                .map { chunk ->
+                    VectorStoreSearchResult(
+                        fileId = "file-${chunk / 10}",
+                        filename = "file-${chunk / 10}.txt",
+                        score = scores[chunk],
+                        content = listOf(VectorStoreSearchResultContent("text", "chunk $chunk")),
+                        attributes = mapOf("chunk_id" to "chunk-$chunk", "chunk_index" to chunk % 10),
+                    )
+                }
+
+        companion object {
+            /**
+             * Relevance is 0 to 3. The vector leg scores every chunk in a narrow cosine band;
+             * the text leg only scores chunks sharing a query term, on an open-ended BM25 scale.
+             */
+            fun random(
+                chunks: Int,
+                random: Random,
+            ): Query {
+                val relevance = IntArray(chunks) { if (random.nextDouble() < 0.05) 1 + random.nextInt(3) else 0 }
+                val vectorScores = DoubleArray(chunks) { 0.55 + 0.08 * relevance[it] + 0.12 * random.nextDouble() }
+                val textScores =
+                    DoubleArray(chunks) {
+                        val matchesTerm = random.nextDouble() < if (relevance[it] > 0) 0.7 else 0.2
+                        if (matchesTerm) 2.0 + 3.0 * relevance[it] + 6.0 * random.nextDouble() else 0.0
+                    }
+                return Query(relevance, vectorScores, textScores)
+            }
+        }
+    }
+
+    companion object {
+        private const val CHUNKS = 2_000
+        private const val QUERIES = 200
+        private const val LEG_SIZE = 50
+        private const val K = 10
+
+        private fun chunkOf(result: VectorStoreSearchResult) = (result.attributes!!["chunk_id"] as String).removePrefix("chunk-").toInt()
+
+        private fun ndcg(
+            ranked: List<Int>,
+            relevance: IntArray,
+        ): Double {
+            fun dcg(gains: List<Int>) = gains.take(K).withIndex().sumOf { (i, gain) -> ((1 shl gain) - 1) / (ln(i + 2.0) / ln(2.0)) }
+            val ideal = dcg(relevance.sortedDescending())
+            return if (ideal == 0.0) 0.0 else dcg(ranked.map { relevance[it] }) / ideal
+        }
+
+        /**
+         * Prints nDCG@10 and recall@10 for every strategy, averaged over fixed queries.
+         */
+        @JvmStatic
+        fun main(args: Array<String>) {
+            val random = Random(42)
+            val queries = List(QUERIES) { Query.random(CHUNKS, random) }
+            println("fusion  nDCG@$K  recall@$K")
+            listOf("linear", "rrf", "zscore").forEach { spec ->
+                val strategy = FusionStrategy.parse(spec)
+                var ndcg = 0.0
+                var recall = 0.0
+                queries.forEach { query ->
+                    val merge = HybridMerge.of(query.vectorLeg(LEG_SIZE), query.textLeg(LEG_SIZE))
+                    val ranked = merge.ranked(strategy.fuse(merge, 0.5)).take(K).map(::chunkOf)
+                    val relevant = query.relevance.indices.filter { query.relevance[it] > 0 }
+                    ndcg += ndcg(ranked, query.relevance)
+                    recall += if (relevant.isEmpty()) 0.0 else ranked.count { query.relevance[it] > 0 }.toDouble() / minOf(K, relevant.size)
+                }
+                println("%-7s %.4f  %.4f".format(spec, ndcg / QUERIES, recall / QUERIES))
+            }
+        }
+    }
+}
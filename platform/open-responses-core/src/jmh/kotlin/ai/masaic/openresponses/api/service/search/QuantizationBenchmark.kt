@@ -0,0 +1,100 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Cost of scoring every vector through the quantized codes against a float scan.
+ *
+ * Running [main] prints recall@10 after full-precision re-scoring and the code
+ * bytes per vector for each mode, which JMH itself does not report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class QuantizationBenchmark {
+    @Param("384", "768", "1536")
+    var dimension: Int = 0
+
+    @Param("NONE", "INT8", "BINARY")
+    var mode: String = ""
+
+    private lateinit var vectors: List<FloatArray>
+    private var codes: QuantizedVectors? = null
+    private lateinit var query: FloatArray
+
+    @Setup
+    fun setup() {
+        vectors = randomUnitVectors(VECTORS, dimension, Random(42))
+        val quantization = QuantizationMode.from(mode)
+        codes = if (quantization == QuantizationMode.NONE) null else QuantizedVectors.of(quantization, vectors)
+        query = randomUnitVectors(1, dimension, Random(7)).single()
+    }
+
+    @Benchmark
+    fun scan(): Float {
+        var best = Float.NEGATIVE_INFINITY
+        val quantized = codes
+        for (ordinal in vectors.indices) {
+            val score = quantized?.dot(ordinal, query) ?: kernel.dot(query, vectors[ordinal])
+            if (score > best) best = score
+        }
+        return best
+    }
+
+    companion object {
+        private const val VECTORS = 10_000
+        private const val QUERIES = 50
+        private const val K = 10
+        private const val RESCORE_MULTIPLIER = 4
+
+        private val kernel = SimilarityKernels.default
+
+        private fun randomUnitVectors(
+            count: Int,
+            dimension: Int,
+            random: Random,
+        ): List<FloatArray> = List(count) { kernel.normalize(FloatArray(dimension) { (random.nextDouble() * 2 - 1).toFloat() }) }
+
+        /**
+         * Prints recall@10 with re-scoring and memory per vector for every mode and dimension.
+         */
+        @JvmStatic
+        fun main(args: Array<String>) {
+            println("dimension mode   bytes/vector recall@$K")
+            listOf(384, 768, 1536).forEach { dimension ->
+                val vectors = randomUnitVectors(VECTORS, dimension, Random(42))
+                val queries = randomUnitVectors(QUERIES, dimension, Random(7))
+                val exact = queries.map { query -> vectors.indices.sortedByDescending { kernel.dot(query, vectors[it]) }.take(K).toSet() }
+
+                QuantizationMode.entries.forEach { mode ->
+                    val codes = if (mode == QuantizationMode.NONE) null else QuantizedVectors.of(mode, vectors)
+                    val hits =
+                        queries.indices.sumOf { q ->
+                            val candidates =
+                                if (codes == null) {
+                                    vectors.indices.toList()
+                                } else {
+                                    vectors.indices.sortedByDescending { codes.dot(it, queries[q]) }.take(K * RESCORE_MULTIPLIER)
+                                }
+                            candidates
+                                .sortedByDescending { kernel.dot(queries[q], vectors[it]) }
+                                .take(K)
+                                .count { it in exact[q] }
+                        }
+                    val bytesPerVector = codes?.sizeInBytes?.div(VECTORS) ?: (dimension.toLong() * Float.SIZE_BYTES)
+                    println("%-9d %-6s %-12d %.3f".format(dimension, mode, bytesPerVector, hits.toDouble() / (QUERIES * K)))
+                }
+            }
+        }
+    }
+}
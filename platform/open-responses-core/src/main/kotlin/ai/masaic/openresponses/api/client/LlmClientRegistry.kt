@@ -0,0 +1,188 @@
+package ai.masaic.openresponses.api.client
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.Scheduler
+import com.openai.client.OpenAIClient
+import com.openai.client.OpenAIClientImpl
+import com.openai.core.ClientOptions
+import com.openai.credential.Credential
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import mu.KotlinLogging
+import okhttp3.OkHttpClient
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+private val logger = KotlinLogging.logger {}
+
+/**
+ * Shares one upstream OpenAI client per provider base URL, all running on one OkHttp dispatcher and
+ * connection pool sized by [httpSettings] rather than OkHttp's defaults of 64 concurrent calls.
+ *
+ * Each [lease] derives a lightweight client carrying the caller's credential from the shared one with
+ * [OpenAIClient.withOptions], so requests with different API keys reuse the same warm connections
+ * and TLS sessions. Derived clients must not be closed; the lease is closed instead once the request
+ * is done with it. A shared client is retired once it has not been leased for [idleTimeout], when
+ * more than [maxClients] base URLs are in use, or when the registry is closed, and is closed as soon
+ * as its last outstanding lease is, so a long agent loop never loses its client mid-request.
+ *
+ * Metrics: `llm.client.pool.hits`, `llm.client.pool.misses`, `llm.client.pool.evictions` and the
+ * `llm.client.pool.size` gauge, plus the `llm.client.pool.in_flight` and `llm.client.pool.queued`
+ * dispatcher calls and the `llm.client.pool.connections` and `llm.client.pool.idle_connections` gauges.
+ */
+class LlmClientRegistry(
+    maxClients: Long = DEFAULT_MAX_CLIENTS,
+    private val idleTimeout: Duration = DEFAULT_IDLE_TIMEOUT,
+    meterRegistry: MeterRegistry = SimpleMeterRegistry(),
+    httpSettings: UpstreamHttpSettings = UpstreamHttpSettings(),
+) : AutoCloseable {
+    private val okHttpClient: OkHttpClient = httpSettings.okHttpClient()
+
+    private val hits: Counter = meterRegistry.counter("llm.client.pool.hits")
+    private val misses: Counter = meterRegistry.counter("llm.client.pool.misses")
+    private val evictions: Counter = meterRegistry.counter("llm.client.pool.evictions")
+
+    private val clients: Cache<String, SharedClient> =
+        Caffeine
+            .newBuilder()
+            .maximumSize(maxClients)
+            .expireAfterAccess(idleTimeout)
+            .scheduler(Scheduler.systemScheduler())
+            .removalListener<String, SharedClient> { _, shared, cause ->
+                if (cause.wasEvicted()) evictions.increment()
+                shared?.retire()
+            }.build()
+
+    init {
+        Gauge.builder("llm.client.pool.size", clients) { it.estimatedSize().toDouble() }.register(meterRegistry)
+        Gauge.builder("llm.client.pool.in_flight", okHttpClient) { it.dispatcher.runningCallsCount().toDouble() }.register(meterRegistry)
+        Gauge.builder("llm.client.pool.queued", okHttpClient) { it.dispatcher.queuedCallsCount().toDouble() }.register(meterRegistry)
+        Gauge.builder("llm.client.pool.connections", okHttpClient) { it.connectionPool.connectionCount().toDouble() }.register(meterRegistry)
+        Gauge.builder("llm.client.pool.idle_connections", okHttpClient) { it.connectionPool.idleConnectionCount().toDouble() }.register(meterRegistry)
+    }
+
+    /**
+     * Leases a client for [baseUrl] that authenticates with [credential]. The shared client stays open
+     * until the lease is closed.
+     */
+    fun lease(
+        baseUrl: String,
+        credential: Credential,
+    ): Lease {
+        while (true) {
+            var created = false
+            val shared =
+                clients.get(baseUrl) {
+                    created = true
+                    SharedClient(
+                        baseUrl,
+                        OpenAIClientImpl(
+                            ClientOptions
+                                .builder()
+                                .httpClient(UpstreamHttpClient(okHttpClient, baseUrl))
+                                .credential(credential)
+                                .baseUrl(baseUrl)
+                                .build(),
+                        ),
+                    )
+                }
+            // A client retired between the lookup and the lease is skipped; the next lookup creates a new one
+            if (!shared.acquire()) continue
+            if (created) misses.increment() else hits.increment()
+            return Lease(shared.client.withOptions { it.credential(credential) }, shared)
+        }
+    }
+
+    /**
+     * Number of base URLs with a shared client.
+     */
+    fun size(): Long {
+        clients.cleanUp()
+        return clients.estimatedSize()
+    }
+
+    /**
+     * Number of upstream calls currently executing.
+     */
+    fun inFlightCalls(): Int = okHttpClient.dispatcher.runningCallsCount()
+
+    /**
+     * Number of asynchronous upstream calls waiting for a dispatcher slot.
+     */
+    fun queuedCalls(): Int = okHttpClient.dispatcher.queuedCallsCount()
+
+    /**
+     * Retires every shared client; the dispatcher and connection pool are shut down once calls in
+     * flight have finished.
+     */
+    override fun close() {
+        clients.invalidateAll()
+        clients.cleanUp()
+        okHttpClient.dispatcher.executorService.shutdown()
+        okHttpClient.connectionPool.evictAll()
+    }
+
+    /**
+     * A client derived for one request. Closing the lease, which may be done more than once, releases
+     * the shared client rather than closing [client].
+     */
+    class Lease internal constructor(
+        val client: OpenAIClient,
+        internal val shared: SharedClient,
+    ) : AutoCloseable {
+        private val released = AtomicBoolean()
+
+        override fun close() {
+            if (released.compareAndSet(false, true)) shared.release()
+        }
+    }
+
+    /**
+     * A shared client with its outstanding leases. Once retired it takes no new leases and is closed
+     * when the count reaches zero.
+     */
+    internal class SharedClient(
+        private val baseUrl: String,
+        val client: OpenAIClient,
+    ) {
+        private val leases = AtomicInteger()
+        private val closed = AtomicBoolean()
+
+        @Volatile
+        private var retired = false
+
+        fun acquire(): Boolean {
+            leases.incrementAndGet()
+            if (!retired) return true
+            release()
+            return false
+        }
+
+        fun release() {
+            if (leases.decrementAndGet() == 0 && retired) closeOnce()
+        }
+
+        fun retire() {
+            retired = true
+            if (leases.get() == 0) closeOnce()
+        }
+
+        fun isClosed(): Boolean = closed.get()
+
+        private fun closeOnce() {
+            if (closed.compareAndSet(false, true)) {
+                logger.debug { "Closing retired upstream client for $baseUrl" }
+                client.close()
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_CLIENTS = 64L
+        val DEFAULT_IDLE_TIMEOUT: Duration = Duration.ofMinutes(10)
+    }
+}
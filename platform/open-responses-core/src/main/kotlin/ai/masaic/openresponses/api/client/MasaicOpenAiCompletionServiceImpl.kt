@@ -15,6 +15,7 @@ import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.catch
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.flow.onCompletion
+import kotlinx.coroutines.future.await
 import kotlinx.coroutines.stream.consumeAsFlow
 import mu.KotlinLogging
 import org.springframework.http.codec.ServerSentEvent
@@ -41,6 +42,7 @@ class MasaicOpenAiCompletionServiceImpl(
     /**
      * Creates a new chat completion based on provided parameters.
      * Enhanced with OpenTelemetry GenAI span semantics.
+     * The model is called through the async client, so no thread is held while it generates.
      *
      * @param client OpenAI client to use for the request
      * @param params Parameters for creating the chat completion
@@ -57,7 +59,7 @@ class MasaicOpenAiCompletionServiceImpl(
 
         var initialChatCompletion =
             telemetryService.withClientSpan("chat", metadata.modelName, parentSpan) { span ->
-                var completion = telemetryService.withChatCompletionTimer(params, metadata) { client.chat().completions().create(params) }
+                var completion = telemetryService.withChatCompletionTimer(params, metadata) { client.async().chat().completions().create(params).await() }
                 telemetryService.emitModelInputEventsForOtelSpan(span, params, metadata)
 
                 // Generate ID if missing
@@ -11,6 +11,7 @@ import com.openai.models.chat.completions.*
 import com.openai.models.responses.*
 import io.opentelemetry.api.trace.Span
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.future.await
 import mu.KotlinLogging
 import org.springframework.http.codec.ServerSentEvent
 import org.springframework.stereotype.Service
@@ -40,6 +41,7 @@ class MasaicOpenAiResponseServiceImpl(
     /**
      * Creates a new completion response based on provided parameters.
      * Enhanced with OpenTelemetry GenAI span semantics.
+     * The model is called through the async client, so no thread is held while it generates.
      *
      * @param client OpenAI client to use for the request
      * @param params Parameters for creating the response
@@ -57,7 +59,7 @@ class MasaicOpenAiResponseServiceImpl(
                 logger.debug { "Creating completion with model: ${params.model()}" }
                 val completionCreateParams = parameterConverter.prepareCompletion(params)
                 telemetryService.emitModelInputEventsForOtelSpan(span, completionCreateParams, metadata)
-                var chatCompletions = telemetryService.withTimer(params, metadata) { client.chat().completions().create(completionCreateParams) }
+                var chatCompletions = telemetryService.withTimer(params, metadata) { client.async().chat().completions().create(completionCreateParams).await() }
                 if (chatCompletions._id().isMissing()) {
                     chatCompletions = chatCompletions.toBuilder().id(UUID.randomUUID().toString()).build()
                 }
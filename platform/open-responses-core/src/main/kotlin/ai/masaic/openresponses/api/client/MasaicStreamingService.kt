@@ -15,8 +15,8 @@ import com.openai.models.chat.completions.ChatCompletionCreateParams
 import com.openai.models.responses.*
 import io.opentelemetry.api.trace.Span
 import io.opentelemetry.api.trace.StatusCode
-import kotlinx.coroutines.channels.ProducerScope
 import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.channels.trySendBlocking
 import kotlinx.coroutines.flow.*
 import mu.KotlinLogging
 import org.springframework.http.codec.ServerSentEvent
@@ -36,6 +36,7 @@ class MasaicStreamingService(
     private val payloadFormatter: PayloadFormatter,
     private val objectMapper: ObjectMapper,
     private val telemetryService: TelemetryService,
+    private val streamBackpressure: StreamBackpressure = StreamBackpressure(),
 ) {
     private val logger = KotlinLogging.logger {}
 
@@ -127,6 +128,7 @@ class MasaicStreamingService(
      * Encapsulates a single iteration of streaming:
      *   - Creates the streaming call via callbackFlow
      *   - Collects all events (text/function-calls)
+     *   - Sends them through the stream's bounded buffer (see [StreamBackpressure])
      *   - Returns a result indicating whether to continue
      */
     private suspend fun FlowCollector<ServerSentEvent<String>>.executeStreamingIteration(
@@ -144,8 +146,10 @@ class MasaicStreamingService(
 
         // We'll collect SSE events from the streaming call:
         val genAiSample = telemetryService.genAiDurationSample()
+        val stream = streamBackpressure.open()
         val sseFlow =
             channelFlow {
+                val events = stream.emitter(this) { EventUtils.convertEvent(it, payloadFormatter, objectMapper) }
                 // Link the 'chat' span to any existing HTTP span from Reactor context
                 val span = telemetryService.startOtelSpan("chat", metadata.modelName, parentSpan)
                 val createParams = parameterConverter.prepareCompletion(params)
@@ -169,24 +173,20 @@ class MasaicStreamingService(
                     if (!completion._choices().isMissing()) {
                         // Fire in-progress event if we haven't:
                         if (!inProgressFired) {
-                            trySend(
-                                EventUtils.convertEvent(
-                                    ResponseStreamEvent.ofInProgress(
-                                        ResponseInProgressEvent
-                                            .builder()
-                                            .response(
-                                                ChatCompletionConverter.buildIntermediateResponse(
-                                                    params,
-                                                    ResponseStatus.IN_PROGRESS,
-                                                    responseId,
-                                                ),
-                                            ).sequenceNumber(System.nanoTime())
-                                            .build(),
-                                    ),
-                                    payloadFormatter,
-                                    objectMapper,
+                            events.emit(
+                                ResponseStreamEvent.ofInProgress(
+                                    ResponseInProgressEvent
+                                        .builder()
+                                        .response(
+                                            ChatCompletionConverter.buildIntermediateResponse(
+                                                params,
+                                                ResponseStatus.IN_PROGRESS,
+                                                responseId,
+                                            ),
+                                        ).sequenceNumber(System.nanoTime())
+                                        .build(),
                                 ),
-                            ).isSuccess
+                            )
                             inProgressFired = true
                         }
 
@@ -220,7 +220,7 @@ class MasaicStreamingService(
                             }
 
                             // Process any text so far:
-                            handleTextCompletion(textAccumulator, responseOutputItemAccumulator)
+                            events.handleTextCompletion(textAccumulator, responseOutputItemAccumulator)
 
                             // Evaluate which finish reason we have:
                             val finishReason =
@@ -244,17 +244,13 @@ class MasaicStreamingService(
                                     storeResponseWithInputItems(finalResponse, params)
 
                                     nextIteration = false
-                                    trySend(
-                                        EventUtils.convertEvent(
-                                            ResponseStreamEvent.ofCompleted(
-                                                ResponseCompletedEvent
-                                                    .builder()
-                                                    .response(finalResponse)
-                                                    .sequenceNumber(System.nanoTime())
-                                                    .build(),
-                                            ),
-                                            payloadFormatter,
-                                            objectMapper,
+                                    events.emit(
+                                        ResponseStreamEvent.ofCompleted(
+                                            ResponseCompletedEvent
+                                                .builder()
+                                                .response(finalResponse)
+                                                .sequenceNumber(System.nanoTime())
+                                                .build(),
                                         ),
                                     )
 
@@ -287,17 +283,13 @@ class MasaicStreamingService(
                                         )
                                     // Store the incomplete response in the response store
                                     storeResponseWithInputItems(finalResponse, params)
-                                    trySend(
-                                        EventUtils.convertEvent(
-                                            ResponseStreamEvent.ofIncomplete(
-                                                ResponseIncompleteEvent
-                                                    .builder()
-                                                    .response(finalResponse)
-                                                    .sequenceNumber(System.nanoTime())
-                                                    .build(),
-                                            ),
-                                            payloadFormatter,
-                                            objectMapper,
+                                    events.emit(
+                                        ResponseStreamEvent.ofIncomplete(
+                                            ResponseIncompleteEvent
+                                                .builder()
+                                                .response(finalResponse)
+                                                .sequenceNumber(System.nanoTime())
+                                                .build(),
                                         ),
                                     )
                                     onFinalResponse(finalResponse)
@@ -306,7 +298,7 @@ class MasaicStreamingService(
                             nextIteration = false
                         } else {
                             // Ongoing streaming chunks
-                            convertAndPublish(
+                            events.convertAndPublish(
                                 completion,
                                 functionCallAccumulator,
                                 textAccumulator,
@@ -326,7 +318,7 @@ class MasaicStreamingService(
                                 }
                             ) {
                                 // Process text so far, put it at the beginning
-                                handleTextCompletion(textAccumulator, responseOutputItemAccumulator, prepend = true)
+                                events.handleTextCompletion(textAccumulator, responseOutputItemAccumulator, prepend = true)
 
                                 // responseOutputItemAccumulator now contains all text and ResponseOutputItem.ofFunctionCall items
                                 // from the convertAndPublish method for this LLM response.
@@ -355,19 +347,15 @@ class MasaicStreamingService(
                                     // LLM requested tools, but none were recognized as internal/actionable by us.
                                     logger.info { "Response completed with tool requests, but no recognized internal tools to execute. ID: ${responseWithToolRequests.id()}" }
                                     nextIteration = false
-                                    trySend(
-                                        EventUtils.convertEvent(
-                                            ResponseStreamEvent.ofCompleted(
-                                                ResponseCompletedEvent
-                                                    .builder()
-                                                    .response(responseWithToolRequests) // Send the response that includes the tool requests
-                                                    .sequenceNumber(System.nanoTime())
-                                                    .build(),
-                                            ),
-                                            payloadFormatter,
-                                            objectMapper,
+                                    events.emit(
+                                        ResponseStreamEvent.ofCompleted(
+                                            ResponseCompletedEvent
+                                                .builder()
+                                                .response(responseWithToolRequests) // Send the response that includes the tool requests
+                                                .sequenceNumber(System.nanoTime())
+                                                .build(),
                                         ),
-                                    ).isSuccess // Or handle failure
+                                    )
                                     close() // Close to terminate this iteration of callbackFlow
                                 } else {
                                     // Recognized internal tools were requested, proceed to handle them.
@@ -375,7 +363,7 @@ class MasaicStreamingService(
                                         toolHandler.handleMasaicToolCall(
                                             params = params, // The original ResponseCreateParams for this iteration
                                             response = responseWithToolRequests, // The Response from LLM containing tool requests
-                                            eventEmitter = { event -> trySend(event).isSuccess },
+                                            eventEmitter = { event -> events.offer(event) },
                                             parentSpan = parentSpan,
                                             openAIClient = client,
                                         )
@@ -394,19 +382,15 @@ class MasaicStreamingService(
 
                                         storeResponseWithInputItems(finalTerminalResponse, params)
 
-                                        trySend(
-                                            EventUtils.convertEvent(
-                                                ResponseStreamEvent.ofCompleted(
-                                                    ResponseCompletedEvent
-                                                        .builder()
-                                                        .response(finalTerminalResponse)
-                                                        .sequenceNumber(System.nanoTime())
-                                                        .build(),
-                                                ),
-                                                payloadFormatter,
-                                                objectMapper,
+                                        events.emit(
+                                            ResponseStreamEvent.ofCompleted(
+                                                ResponseCompletedEvent
+                                                    .builder()
+                                                    .response(finalTerminalResponse)
+                                                    .sequenceNumber(System.nanoTime())
+                                                    .build(),
                                             ),
-                                        ).isSuccess
+                                        )
                                         nextIteration = false
                                         close()
                                     } else {
@@ -421,6 +405,7 @@ class MasaicStreamingService(
                                         // We'll do another iteration if there are tool responses to send to the LLM.
                                         // The toolResponseItems should contain the necessary data for the next call.
                                         nextIteration = true
+                                        events.flush() // Tool events held back while the buffer was full
                                         close() // Close to proceed to the next iteration of the outer loop.
                                     }
                                 }
@@ -428,9 +413,17 @@ class MasaicStreamingService(
                         }
                     }
                 }
-            }
+                events.flush()
+            }.buffer(stream.capacity)
 
-        sseFlow.collect { event -> emit(event) }
+        try {
+            sseFlow.collect { event ->
+                stream.delivered()
+                emit(event)
+            }
+        } finally {
+            stream.close()
+        }
 
         return IterationResult(
             shouldContinue = nextIteration,
@@ -457,8 +450,8 @@ class MasaicStreamingService(
                     close(error)
                 }
             }
-            // forward onNext
-            subscription.subscribe { completion -> trySend(completion).isSuccess }
+            // forward onNext; blocking the SDK's handler thread while the buffer is full holds back the upstream read
+            subscription.subscribe { completion -> trySendBlocking(completion) }
 
             subscription.onCompleteFuture().whenComplete { _, err ->
                 if (err != null) close(err) else close()
@@ -570,7 +563,7 @@ class MasaicStreamingService(
     /**
      * Processes the accumulated text, sending events and storing final text output.
      */
-    private suspend fun ProducerScope<ServerSentEvent<String>>.handleTextCompletion(
+    private suspend fun StreamEventEmitter.handleTextCompletion(
         textAccumulator: MutableMap<Long, MutableList<ResponseStreamEvent>>,
         responseOutputItemAccumulator: MutableList<ResponseOutputItem>,
         prepend: Boolean = false,
@@ -579,20 +572,16 @@ class MasaicStreamingService(
             textAccumulator.forEach { (index, events) ->
                 val content = events.joinToString("") { it.asOutputTextDelta().delta() }
 
-                trySend(
-                    EventUtils.convertEvent(
-                        ResponseStreamEvent.ofOutputTextDone(
-                            ResponseTextDoneEvent
-                                .builder()
-                                .contentIndex(index)
-                                .text(content)
-                                .outputIndex(index)
-                                .itemId(events.first().asOutputTextDelta().itemId())
-                                .sequenceNumber(System.nanoTime())
-                                .build(),
-                        ),
-                        payloadFormatter,
-                        objectMapper,
+                emit(
+                    ResponseStreamEvent.ofOutputTextDone(
+                        ResponseTextDoneEvent
+                            .builder()
+                            .contentIndex(index)
+                            .text(content)
+                            .outputIndex(index)
+                            .itemId(events.first().asOutputTextDelta().itemId())
+                            .sequenceNumber(System.nanoTime())
+                            .build(),
                     ),
                 )
             }
@@ -632,7 +621,7 @@ class MasaicStreamingService(
     /**
      * Converts incoming chunk into appropriate [ResponseStreamEvent]s and sends them.
      */
-    private suspend fun ProducerScope<ServerSentEvent<String>>.convertAndPublish(
+    private suspend fun StreamEventEmitter.convertAndPublish(
         completion: ChatCompletionChunk,
         functionCallAccumulator: MutableMap<Long, MutableList<ResponseStreamEvent>>,
         textAccumulator: MutableMap<Long, MutableList<ResponseStreamEvent>>,
@@ -670,18 +659,18 @@ class MasaicStreamingService(
                     logger.debug { "event.isOutputItemDone." }
                     // Add final item
                     responseOutputItemAccumulator.add(event.asOutputItemDone().item())
-                    trySend(EventUtils.convertEvent(event, payloadFormatter, objectMapper))
+                    emit(event)
                 }
                 else -> {
                     logger.debug { "No special handling required. Just emitting" }
-                    trySend(EventUtils.convertEvent(event, payloadFormatter, objectMapper))
+                    emit(event)
                 }
             }
             logger.debug { "=======================================\n\n" }
         }
     }
 
-    private suspend fun ProducerScope<ServerSentEvent<String>>.handleFunctionCallDelta(
+    private suspend fun StreamEventEmitter.handleFunctionCallDelta(
         event: ResponseStreamEvent,
         functionCallAccumulator: MutableMap<Long, MutableList<ResponseStreamEvent>>,
         internalToolItemIds: MutableSet<String>,
@@ -692,11 +681,11 @@ class MasaicStreamingService(
 
         // If not an internal tool, forward event
         if (!internalToolItemIds.contains(completion.id())) {
-            trySend(EventUtils.convertEvent(event, payloadFormatter, objectMapper))
+            emit(event)
         }
     }
 
-    private suspend fun ProducerScope<ServerSentEvent<String>>.handleOutputItemAdded(
+    private suspend fun StreamEventEmitter.handleOutputItemAdded(
         event: ResponseStreamEvent,
         functionNameAccumulator: MutableMap<Long, Pair<String, String>>,
         responseOutputItemAccumulator: MutableList<ResponseOutputItem>,
@@ -735,19 +724,19 @@ class MasaicStreamingService(
                 ),
             )
         }
-        trySend(EventUtils.convertEvent(event, payloadFormatter, objectMapper))
+        emit(event)
     }
 
-    private suspend fun ProducerScope<ServerSentEvent<String>>.handleOutputTextDelta(
+    private suspend fun StreamEventEmitter.handleOutputTextDelta(
         event: ResponseStreamEvent,
         textAccumulator: MutableMap<Long, MutableList<ResponseStreamEvent>>,
     ) {
         val idx = event.asOutputTextDelta().outputIndex()
         textAccumulator.getOrPut(idx) { mutableListOf() }.add(event)
-        trySend(EventUtils.convertEvent(event, payloadFormatter, objectMapper))
+        emit(event)
     }
 
-    private suspend fun ProducerScope<ServerSentEvent<String>>.handleFunctionCallDone(
+    private suspend fun StreamEventEmitter.handleFunctionCallDone(
         functionCallAccumulator: MutableMap<Long, MutableList<ResponseStreamEvent>>,
         functionNameAccumulator: MutableMap<Long, Pair<String, String>>,
         responseOutputItemAccumulator: MutableList<ResponseOutputItem>,
@@ -759,20 +748,16 @@ class MasaicStreamingService(
 
             // If not an internal tool, forward the event
             if (!internalToolItemIds.contains(completion.id())) {
-                trySend(
-                    EventUtils.convertEvent(
-                        ResponseStreamEvent.ofFunctionCallArgumentsDone(
-                            ResponseFunctionCallArgumentsDoneEvent
-                                .builder()
-                                .outputIndex(key)
-                                .arguments(content)
-                                .itemId(events.first().asFunctionCallArgumentsDelta().itemId())
-                                .putAllAdditionalProperties(events.first().asFunctionCallArgumentsDelta()._additionalProperties())
-                                .sequenceNumber(System.nanoTime())
-                                .build(),
-                        ),
-                        payloadFormatter,
-                        objectMapper,
+                emit(
+                    ResponseStreamEvent.ofFunctionCallArgumentsDone(
+                        ResponseFunctionCallArgumentsDoneEvent
+                            .builder()
+                            .outputIndex(key)
+                            .arguments(content)
+                            .itemId(events.first().asFunctionCallArgumentsDelta().itemId())
+                            .putAllAdditionalProperties(events.first().asFunctionCallArgumentsDelta()._additionalProperties())
+                            .sequenceNumber(System.nanoTime())
+                            .build(),
                     ),
                 )
             }
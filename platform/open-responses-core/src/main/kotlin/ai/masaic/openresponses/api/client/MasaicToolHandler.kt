@@ -16,10 +16,12 @@ import com.openai.models.chat.completions.ChatCompletion
 import com.openai.models.chat.completions.ChatCompletionCreateParams
 import com.openai.models.chat.completions.ChatCompletionMessage
 import com.openai.models.chat.completions.ChatCompletionMessageParam
+import com.openai.models.chat.completions.ChatCompletionMessageToolCall
 import com.openai.models.chat.completions.ChatCompletionToolMessageParam
 import com.openai.models.responses.*
 import io.opentelemetry.api.trace.Span
 import io.opentelemetry.api.trace.StatusCode
+import kotlinx.coroutines.CancellationException
 import mu.KotlinLogging
 import org.springframework.http.codec.ServerSentEvent
 import org.springframework.stereotype.Component
@@ -97,15 +99,37 @@ sealed class CompletionToolCallOutcome {
     ) : CompletionToolCallOutcome()
 }
 
+/**
+ * Output of one native tool call of a chat completion.
+ * @param terminalCompletion The completion to send the user when a terminal tool produced an image.
+ */
+private data class CompletionToolOutput(
+    val message: ChatCompletionMessageParam,
+    val terminalCompletion: ChatCompletion? = null,
+)
+
+/**
+ * Input items of one native tool call: the call and its output.
+ * @param terminalOutputItem The output to send the user when a terminal tool produced it.
+ */
+private data class ToolCallItems(
+    val items: List<ResponseInputItem>,
+    val terminalOutputItem: ResponseOutputItem? = null,
+)
+
 /**
  * Handles tool-related operations for the Masaic OpenAI API integration.
  * Encapsulates the logic for processing tool calls and tool outputs.
+ *
+ * The native tool calls of a model turn run concurrently through [ToolCallExecutor], unless the
+ * request sets `parallel_tool_calls` to false; their outputs keep the order of the calls.
  */
 @Component
 class MasaicToolHandler(
     private val toolService: ToolService,
     private val objectMapper: ObjectMapper,
     private val telemetryService: TelemetryService,
+    private val toolCallExecutor: ToolCallExecutor = ToolCallExecutor(),
 ) {
     private val logger = KotlinLogging.logger {}
 
@@ -149,164 +173,174 @@ class MasaicToolHandler(
         assistantMessage.toChatCompletionMessageParam(objectMapper).let { updatedMessages.add(it) }
 
         val toolCalls = assistantMessage.toolCalls().get()
-        var nonNativeToolsFound = false
-        var nativeToolsExecuted = 0
-
         logger.debug { "Processing ${toolCalls.size} tool calls from assistant message" }
 
-        for (toolCall in toolCalls) { // Iterate to allow early exit for Terminate
-            val function = toolCall.function()
-            val toolName = function.name()
-            val toolCallId = toolCall.id()
-
-            if (toolService.getFunctionTool(toolName, context) != null) {
-                // Native tool: Execute and add output
-                logger.info { "Executing native tool: $toolName with ID: $toolCallId" }
-
-                if (toolName == IMAGE_GENERATION_TOOL_NAME) {
-                    logger.info { "Executing terminal tool (completion context): $toolName with ID: $toolCallId" }
-                    var rawToolOutput: String? = null
-                    try {
-                        rawToolOutput =
-                            toolService.executeTool(
-                                toolName,
-                                arguments = function.arguments(),
-                                params = params, // ChatCompletionCreateParams
-                                openAIClient = openAIClient,
-                                eventEmitter = {}, // No SSE for non-streaming completion context tool call
-                                toolMetadata = mapOf("toolCallId" to toolCallId),
-                                context = context, // CompletionToolRequestContext
-                            )
-                    } catch (e: Exception) {
-                        logger.error(e) { "Error executing terminal tool $toolName for completion: ${e.message}" }
-                        rawToolOutput = "{\"error\": \"Error executing tool $toolName: ${e.message}\"}" // Encapsulate error in JSON-like string
-                    }
+        // Non-native tools are parked for the client; no message is added for them
+        val (nativeCalls, clientCalls) = toolCalls.partition { toolService.getFunctionTool(it.function().name(), context) != null }
+        clientCalls.forEach { logger.info { "Non-native tool requested: ${it.function().name()} with ID: ${it.id()}. Parking for client." } }
 
-                    var imageData: String? = null
-                    var errorMessage: String? = null
-
-                    if (rawToolOutput != null) {
-                        try {
-                            val typeRef = object : TypeReference<Map<String, Any>>() {}
-                            val outputMap = objectMapper.readValue(rawToolOutput, typeRef)
-                            imageData = outputMap["data"] as? String // Assuming data holds the base64 string or URL
-                            if (imageData == null) {
-                                errorMessage = outputMap["error"] as? String ?: "Tool $toolName executed but 'data' key is missing or not a string in output."
-                                logger.warn { errorMessage }
-                            }
-                        } catch (e: com.fasterxml.jackson.core.JsonProcessingException) {
-                            errorMessage = "Tool $toolName executed but output was not valid JSON: $rawToolOutput"
-                            logger.warn(e) { errorMessage }
-                        }
-                    } else {
-                        errorMessage = "Tool $toolName execution resulted in null output."
-                        logger.warn { errorMessage }
-                    }
+        val outputs =
+            toolCallExecutor.execute(
+                count = nativeCalls.size,
+                parallel = nativeCalls.size > 1 && params.parallelToolCalls().orElse(true),
+                onTimeout = { index -> CompletionToolOutput(toolMessage(nativeCalls[index].id(), timeoutMessage(nativeCalls[index].function().name()))) },
+            ) { index -> executeCompletionToolCall(nativeCalls[index], chatCompletion, params, openAIClient, context, parentSpan) }
+
+        // Outputs are added in call order up to a terminal tool; calls it cancelled have no output
+        for (output in outputs) {
+            output ?: continue
+            updatedMessages.add(output.message)
+            output.terminalCompletion?.let { return CompletionToolCallOutcome.Terminate(it, updatedMessages.toList()) }
+        }
+
+        // No terminal tool produced output: either all tools were native, or there were non-native tools, or a mix.
+        return CompletionToolCallOutcome.Continue(
+            updatedMessages = updatedMessages.toList(),
+            hasUnresolvedClientTools = clientCalls.isNotEmpty(),
+        )
+    }
+
+    /**
+     * Executes one native tool call of a chat completion.
+     */
+    private suspend fun executeCompletionToolCall(
+        toolCall: ChatCompletionMessageToolCall,
+        chatCompletion: ChatCompletion,
+        params: ChatCompletionCreateParams,
+        openAIClient: OpenAIClient,
+        context: CompletionToolRequestContext,
+        parentSpan: Span?,
+    ): ToolCallExecutor.Outcome<CompletionToolOutput> {
+        val function = toolCall.function()
+        val toolName = function.name()
+        val toolCallId = toolCall.id()
+        logger.info { "Executing native tool: $toolName with ID: $toolCallId" }
+
+        if (toolName != IMAGE_GENERATION_TOOL_NAME) {
+            val toolResult =
+                executeToolWithSpanForCompletion(
+                    toolName = toolName,
+                    toolDescription = toolService.getAvailableTool(toolName)?.description ?: "not_available",
+                    arguments = function.arguments(),
+                    toolId = toolCallId,
+                    toolMetadata = mapOf("toolCallId" to toolCallId),
+                    params = params,
+                    openAIClient = openAIClient,
+                    context = context,
+                    parentSpan = parentSpan,
+                )
+            logger.debug { "Added tool output message for native tool: $toolName" }
+            return ToolCallExecutor.Outcome(CompletionToolOutput(toolMessage(toolCallId, toolResult ?: "Tool execution resulted in null.")))
+        }
+
+        logger.info { "Executing terminal tool (completion context): $toolName with ID: $toolCallId" }
+        var rawToolOutput: String? = null
+        try {
+            rawToolOutput =
+                toolService.executeTool(
+                    toolName,
+                    arguments = function.arguments(),
+                    params = params, // ChatCompletionCreateParams
+                    openAIClient = openAIClient,
+                    eventEmitter = {}, // No SSE for non-streaming completion context tool call
+                    toolMetadata = mapOf("toolCallId" to toolCallId),
+                    context = context, // CompletionToolRequestContext
+                )
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            logger.error(e) { "Error executing terminal tool $toolName for completion: ${e.message}" }
+            rawToolOutput = "{\"error\": \"Error executing tool $toolName: ${e.message}\"}" // Encapsulate error in JSON-like string
+        }
+
+        var imageData: String? = null
+        var errorMessage: String? = null
+
+        if (rawToolOutput != null) {
+            try {
+                val typeRef = object : TypeReference<Map<String, Any>>() {}
+                val outputMap = objectMapper.readValue(rawToolOutput, typeRef)
+                imageData = outputMap["data"] as? String // Assuming data holds the base64 string or URL
+                if (imageData == null) {
+                    errorMessage = outputMap["error"] as? String ?: "Tool $toolName executed but 'data' key is missing or not a string in output."
+                    logger.warn { errorMessage }
+                }
+            } catch (e: com.fasterxml.jackson.core.JsonProcessingException) {
+                errorMessage = "Tool $toolName executed but output was not valid JSON: $rawToolOutput"
+                logger.warn(e) { errorMessage }
+            }
+        } else {
+            errorMessage = "Tool $toolName execution resulted in null output."
+            logger.warn { errorMessage }
+        }
 
-                    if (imageData != null) {
-                        val toolOutputMessageForStorage =
-                            ChatCompletionMessageParam.ofTool(
-                                ChatCompletionToolMessageParam
+        if (imageData == null) {
+            val finalErrorMessage = errorMessage ?: "Tool $toolName failed or returned unexpected output."
+            logger.warn { "Terminal tool $toolName did not yield valid image data. Error: $finalErrorMessage" }
+            return ToolCallExecutor.Outcome(CompletionToolOutput(toolMessage(toolCallId, finalErrorMessage)))
+        }
+
+        val toolOutputMessageForStorage =
+            ChatCompletionMessageParam.ofTool(
+                ChatCompletionToolMessageParam
+                    .builder()
+                    .toolCallId(toolCallId)
+                    .content(imageData) // Store the extracted image data
+                    .putAdditionalProperty("type", JsonValue.from("output_image"))
+                    .putAdditionalProperty("output_format", JsonValue.from("b64_json"))
+                    .build(),
+            )
+
+        val finalImageCompletionBuilder =
+            ChatCompletion
+                .builder()
+                .id(chatCompletion.id()) // Reuse original completion ID
+                .model(params.model().toString()) // Model from request
+                .created(System.currentTimeMillis() / 1000L) // Current time
+                .choices(
+                    listOf(
+                        ChatCompletion.Choice
+                            .builder()
+                            .index(0L)
+                            .message(
+                                ChatCompletionMessage
                                     .builder()
-                                    .toolCallId(toolCallId)
-                                    .content(imageData) // Store the extracted image data
+                                    .role(JsonValue.from("assistant"))
+                                    .content(imageData) // Use the extracted image data
                                     .putAdditionalProperty("type", JsonValue.from("output_image"))
                                     .putAdditionalProperty("output_format", JsonValue.from("b64_json"))
+                                    .refusal(null)
                                     .build(),
-                            )
-                        updatedMessages.add(toolOutputMessageForStorage) // For storage log
-
-                        val finalImageCompletionBuilder =
-                            ChatCompletion
-                                .builder()
-                                .id(chatCompletion.id()) // Reuse original completion ID
-                                .model(params.model().toString()) // Model from request
-                                .created(System.currentTimeMillis() / 1000L) // Current time
-                                .choices(
-                                    listOf(
-                                        ChatCompletion.Choice
-                                            .builder()
-                                            .index(0L)
-                                            .message(
-                                                ChatCompletionMessage
-                                                    .builder()
-                                                    .role(JsonValue.from("assistant"))
-                                                    .content(imageData) // Use the extracted image data
-                                                    .putAdditionalProperty("type", JsonValue.from("output_image"))
-                                                    .putAdditionalProperty("output_format", JsonValue.from("b64_json"))
-                                                    .refusal(null)
-                                                    .build(),
-                                            ).logprobs(null)
-                                            .finishReason(ChatCompletion.Choice.FinishReason.STOP)
-                                            .build(),
-                                    ),
-                                )
-
-                        if (chatCompletion.usage().isPresent) {
-                            finalImageCompletionBuilder.usage(chatCompletion.usage().get())
-                        }
-
-                        val finalImageCompletion =
-                            finalImageCompletionBuilder
-                                .build()
-
-                        return CompletionToolCallOutcome.Terminate(finalImageCompletion, updatedMessages.toList())
-                    } else {
-                        val finalErrorMessage = errorMessage ?: "Tool $toolName failed or returned unexpected output."
-                        logger.warn { "Terminal tool $toolName did not yield valid image data. Error: $finalErrorMessage" }
-                        val errorToolOutputMessage =
-                            ChatCompletionMessageParam.ofTool(
-                                ChatCompletionToolMessageParam
-                                    .builder()
-                                    .toolCallId(toolCallId)
-                                    .content(finalErrorMessage)
-                                    .build(),
-                            )
-                        updatedMessages.add(errorToolOutputMessage)
-                        nativeToolsExecuted++ // Count as executed, albeit with an error output
-                    }
-                } else {
-                    // Regular native tool
-                    val toolResult =
-                        executeToolWithSpanForCompletion(
-                            toolName = toolName,
-                            toolDescription = toolService.getAvailableTool(toolName)?.description ?: "not_available",
-                            arguments = function.arguments(),
-                            toolId = toolCallId,
-                            toolMetadata = mapOf("toolCallId" to toolCallId),
-                            params = params,
-                            openAIClient = openAIClient,
-                            context = context,
-                            parentSpan = parentSpan,
-                        )
+                            ).logprobs(null)
+                            .finishReason(ChatCompletion.Choice.FinishReason.STOP)
+                            .build(),
+                    ),
+                )
 
-                    val toolOutputMessage =
-                        ChatCompletionMessageParam.ofTool(
-                            ChatCompletionToolMessageParam
-                                .builder()
-                                .toolCallId(toolCallId)
-                                .content(toolResult ?: "Tool execution resulted in null.")
-                                .build(),
-                        )
-                    updatedMessages.add(toolOutputMessage)
-                    nativeToolsExecuted++
-                    logger.debug { "Added tool output message for native tool: $toolName" }
-                }
-            } else {
-                // Non-native tool: Log, set flag, DO NOT add a message for LLM (it's for client)
-                logger.info { "Non-native tool requested: $toolName with ID: $toolCallId. Parking for client." }
-                nonNativeToolsFound = true
-            }
+        if (chatCompletion.usage().isPresent) {
+            finalImageCompletionBuilder.usage(chatCompletion.usage().get())
         }
 
-        // If loop completes without Terminate, it means either all tools were native (and not image_generation that succeeded),
-        // or there were non-native tools, or a mix.
-        return CompletionToolCallOutcome.Continue(
-            updatedMessages = updatedMessages.toList(),
-            hasUnresolvedClientTools = nonNativeToolsFound,
+        return ToolCallExecutor.Outcome(
+            CompletionToolOutput(toolOutputMessageForStorage, finalImageCompletionBuilder.build()),
+            terminal = true,
         )
     }
 
+    private fun toolMessage(
+        toolCallId: String,
+        content: String,
+    ): ChatCompletionMessageParam =
+        ChatCompletionMessageParam.ofTool(
+            ChatCompletionToolMessageParam
+                .builder()
+                .toolCallId(toolCallId)
+                .content(content)
+                .build(),
+        )
+
+    private fun timeoutMessage(toolName: String) = "Tool $toolName did not finish within ${toolCallExecutor.toolTimeout.seconds} seconds."
+
     private suspend fun executeToolWithSpanForCompletion(
         toolName: String,
         toolDescription: String,
@@ -406,197 +440,53 @@ class MasaicToolHandler(
             }
 
         // Process tool calls from the ChatCompletion
-        chatCompletion.choices().forEach { chatChoice ->
-            if (ChatCompletion.Choice.FinishReason.TOOL_CALLS == chatChoice.finishReason()) {
-                val message = chatChoice.message()
-                val toolCalls = message.toolCalls().get()
-                logger.debug { "Processing ${toolCalls.size} tool calls" }
-
-                for (tool in toolCalls) { // Changed from forEach to allow early exit for Terminate
-                    val function = tool.function()
-                    if (toolService.getFunctionTool(function.name(), context) != null) {
-                        logger.info { "Executing tool: ${function.name()} with ID: ${tool.id()}" }
-
-                        if (function.name() == IMAGE_GENERATION_TOOL_NAME) {
-                            logger.info { "Executing terminal tool: ${function.name()} with ID: ${tool.id()}" }
-
-                            var toolOutputString: Map<String, String>? = null
-                            // Simplified execution for clarity; actual execution uses `toolService.executeTool`
-                            try {
-                                toolOutputString =
-                                    objectMapper.readValue(
-                                        toolService.executeTool(
-                                            function.name(),
-                                            function.arguments(),
-                                            params,
-                                            openAIClient,
-                                            {},
-                                            mapOf("toolId" to tool.id()),
-                                            context,
-                                        ),
-                                        object : TypeReference<Map<String, String>>() {},
-                                    )
-                            } catch (e: Exception) {
-                                logger.error(e) { "Error executing terminal tool ${function.name()}: ${e.message}" }
-                                toolOutputString = mapOf("error" to "Error executing terminal tool: ${e.message}")
-                            }
-
-                            if (toolOutputString != null && toolOutputString.isNotEmpty() && toolOutputString["data"]?.isNotBlank() == true) {
-                                // Add the function call to response items
-                                val functionCallInputItem =
-                                    ResponseInputItem.ofFunctionCall(
-                                        ResponseFunctionToolCall
-                                            .builder()
-                                            .callId(tool.id())
-                                            .id(tool.id())
-                                            .name(function.name())
-                                            .arguments(function.arguments())
-                                            .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                            .build(),
-                                    )
-                                responseInputItems.add(functionCallInputItem)
-                                val functionCallOutputItem =
-                                    ResponseInputItem.ofFunctionCallOutput(
-                                        ResponseInputItem.FunctionCallOutput
-                                            .builder()
-                                            .callId(tool.id())
-                                            .id(tool.id())
-                                            .output(toolOutputString["data"].toString())
-                                            .build(),
-                                    )
-                                responseInputItems.add(functionCallOutputItem)
+        val toolCalls =
+            chatCompletion
+                .choices()
+                .filter { ChatCompletion.Choice.FinishReason.TOOL_CALLS == it.finishReason() }
+                .flatMap { it.message().toolCalls().get() }
+        logger.debug { "Processing ${toolCalls.size} tool calls" }
 
-                                val imageResponseOutputItem =
-                                    ResponseOutputItem.ofImageGenerationCall(
-                                        ResponseOutputItem.ImageGenerationCall
-                                            .builder()
-                                            .id(tool.id())
-                                            .status(ResponseOutputItem.ImageGenerationCall.Status.COMPLETED)
-                                            .result(toolOutputString["data"].toString())
-                                            .type(JsonValue.from("image_generation_call"))
-                                            .build(),
-                                    )
-
-                                val directResponse =
-                                    ChatCompletionConverter.buildFinalResponse(
-                                        params,
-                                        ResponseStatus.COMPLETED,
-                                        chatCompletion.id(),
-                                        listOf(imageResponseOutputItem),
-                                    )
-
-                                return MasaicToolCallResult.Terminate(responseInputItems.toList() + parked, directResponse)
-                            } else {
-                                logger.warn { "Terminal tool ${function.name()} returned null output. Proceeding as regular tool call." }
-                                // Add the function call to response items
-                                val functionCallInputItem =
-                                    ResponseInputItem.ofFunctionCall(
-                                        ResponseFunctionToolCall
-                                            .builder()
-                                            .callId(tool.id())
-                                            .id(tool.id())
-                                            .name(function.name())
-                                            .arguments(function.arguments())
-                                            .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                            .build(),
-                                    )
-                                responseInputItems.add(functionCallInputItem)
-                                // Add null output so it's not lost
-                                responseInputItems.add(
-                                    ResponseInputItem.ofFunctionCallOutput(
-                                        ResponseInputItem.FunctionCallOutput
-                                            .builder()
-                                            .callId(tool.id())
-                                            .id(tool.id())
-                                            .output("Tool ${function.name()} returned null output.")
-                                            .build(),
-                                    ),
-                                )
-                            }
-                        } else {
-                            // Regular native tool execution
-                            executeToolWithSpan(
-                                function.name(),
-                                toolService.getAvailableTool(function.name())?.description ?: "not_available",
-                                function.arguments(),
-                                tool.id(),
-                                mapOf("toolId" to tool.id()),
-                                params,
-                                openAIClient,
-                                {}, // No event emitter for non-streaming context here
-                                context,
-                                parentSpan,
-                            ) { toolResult ->
-                                val regularToolResult: String? = toolResult
-
-                                if (regularToolResult != null) {
-                                    // Add the function call to response items
-                                    val functionCallInputItem =
-                                        ResponseInputItem.ofFunctionCall(
-                                            ResponseFunctionToolCall
-                                                .builder()
-                                                .callId(tool.id())
-                                                .id(tool.id())
-                                                .name(function.name())
-                                                .arguments(function.arguments())
-                                                .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                                .build(),
-                                        )
-                                    responseInputItems.add(functionCallInputItem)
-                                    logger.debug { "Tool execution successful for ${function.name()}" }
-                                    responseInputItems.add(
-                                        ResponseInputItem.ofFunctionCallOutput(
-                                            ResponseInputItem.FunctionCallOutput
-                                                .builder()
-                                                .callId(tool.id())
-                                                .id(tool.id())
-                                                .output(regularToolResult)
-                                                .build(),
-                                        ),
-                                    )
-                                } else {
-                                    // Add the function call to response items
-                                    val functionCallInputItem =
-                                        ResponseInputItem.ofFunctionCall(
-                                            ResponseFunctionToolCall
-                                                .builder()
-                                                .callId(tool.id())
-                                                .id(tool.id())
-                                                .name(function.name())
-                                                .arguments(function.arguments())
-                                                .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                                .build(),
-                                        )
-                                    responseInputItems.add(functionCallInputItem)
-                                    logger.warn { "Tool execution returned null for ${function.name()}" }
-                                    responseInputItems.add( // Add an item indicating null output
-                                        ResponseInputItem.ofFunctionCallOutput(
-                                            ResponseInputItem.FunctionCallOutput
-                                                .builder()
-                                                .callId(tool.id())
-                                                .id(tool.id())
-                                                .output("Tool ${function.name()} returned null output.")
-                                                .build(),
-                                        ),
-                                    )
-                                }
-                            } // End of simulated direct call block
-                        }
-                    } else {
-                        logger.info { "Unsupported tool requested: ${function.name()}, parking for client handling" }
-                        parked.add(
-                            ResponseInputItem.ofFunctionCall(
-                                ResponseFunctionToolCall
-                                    .builder()
-                                    .callId(tool.id())
-                                    .id(tool.id())
-                                    .name(function.name())
-                                    .arguments(function.arguments())
-                                    .build(),
-                            ),
-                        )
-                    }
-                }
+        val (nativeCalls, clientCalls) = toolCalls.partition { toolService.getFunctionTool(it.function().name(), context) != null }
+        clientCalls.forEach { tool ->
+            val function = tool.function()
+            logger.info { "Unsupported tool requested: ${function.name()}, parking for client handling" }
+            parked.add(
+                ResponseInputItem.ofFunctionCall(
+                    ResponseFunctionToolCall
+                        .builder()
+                        .callId(tool.id())
+                        .id(tool.id())
+                        .name(function.name())
+                        .arguments(function.arguments())
+                        .build(),
+                ),
+            )
+        }
+
+        val outputs =
+            toolCallExecutor.execute(
+                count = nativeCalls.size,
+                parallel = nativeCalls.size > 1 && params.parallelToolCalls().orElse(true),
+                onTimeout = { index ->
+                    val tool = nativeCalls[index]
+                    ToolCallItems(callItems(tool.id(), tool.id(), tool.function(), timeoutMessage(tool.function().name())))
+                },
+            ) { index -> executeResponseToolCall(nativeCalls[index], params, openAIClient, context, parentSpan) }
+
+        // Items are added in call order up to a terminal tool; calls it cancelled have no output
+        for (output in outputs) {
+            output ?: continue
+            responseInputItems.addAll(output.items)
+            output.terminalOutputItem?.let { imageResponseOutputItem ->
+                val directResponse =
+                    ChatCompletionConverter.buildFinalResponse(
+                        params,
+                        ResponseStatus.COMPLETED,
+                        chatCompletion.id(),
+                        listOf(imageResponseOutputItem),
+                    )
+                return MasaicToolCallResult.Terminate(responseInputItems.toList() + parked, directResponse)
             }
         }
 
@@ -605,6 +495,122 @@ class MasaicToolHandler(
         return MasaicToolCallResult.Continue(responseInputItems.toList())
     }
 
+    /**
+     * Executes one native tool call of a chat completion made for a Responses request.
+     */
+    private suspend fun executeResponseToolCall(
+        tool: ChatCompletionMessageToolCall,
+        params: ResponseCreateParams,
+        openAIClient: OpenAIClient,
+        context: ToolRequestContext,
+        parentSpan: Span?,
+    ): ToolCallExecutor.Outcome<ToolCallItems> {
+        val function = tool.function()
+        logger.info { "Executing tool: ${function.name()} with ID: ${tool.id()}" }
+
+        if (function.name() == IMAGE_GENERATION_TOOL_NAME) {
+            logger.info { "Executing terminal tool: ${function.name()} with ID: ${tool.id()}" }
+
+            var toolOutputString: Map<String, String>? = null
+            try {
+                toolOutputString =
+                    objectMapper.readValue(
+                        toolService.executeTool(
+                            function.name(),
+                            function.arguments(),
+                            params,
+                            openAIClient,
+                            {},
+                            mapOf("toolId" to tool.id()),
+                            context,
+                        ),
+                        object : TypeReference<Map<String, String>>() {},
+                    )
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                logger.error(e) { "Error executing terminal tool ${function.name()}: ${e.message}" }
+                toolOutputString = mapOf("error" to "Error executing terminal tool: ${e.message}")
+            }
+
+            if (toolOutputString != null && toolOutputString.isNotEmpty() && toolOutputString["data"]?.isNotBlank() == true) {
+                val imageResponseOutputItem =
+                    ResponseOutputItem.ofImageGenerationCall(
+                        ResponseOutputItem.ImageGenerationCall
+                            .builder()
+                            .id(tool.id())
+                            .status(ResponseOutputItem.ImageGenerationCall.Status.COMPLETED)
+                            .result(toolOutputString["data"].toString())
+                            .type(JsonValue.from("image_generation_call"))
+                            .build(),
+                    )
+                return ToolCallExecutor.Outcome(
+                    ToolCallItems(callItems(tool.id(), tool.id(), function, toolOutputString["data"].toString()), imageResponseOutputItem),
+                    terminal = true,
+                )
+            }
+            logger.warn { "Terminal tool ${function.name()} returned null output. Proceeding as regular tool call." }
+            // Add null output so it's not lost
+            return ToolCallExecutor.Outcome(ToolCallItems(callItems(tool.id(), tool.id(), function, "Tool ${function.name()} returned null output.")))
+        }
+
+        // Regular native tool execution
+        var items: List<ResponseInputItem> = emptyList()
+        executeToolWithSpan(
+            function.name(),
+            toolService.getAvailableTool(function.name())?.description ?: "not_available",
+            function.arguments(),
+            tool.id(),
+            mapOf("toolId" to tool.id()),
+            params,
+            openAIClient,
+            {}, // No event emitter for non-streaming context here
+            context,
+            parentSpan,
+        ) { toolResult ->
+            items =
+                if (toolResult != null) {
+                    logger.debug { "Tool execution successful for ${function.name()}" }
+                    callItems(tool.id(), tool.id(), function, toolResult)
+                } else {
+                    logger.warn { "Tool execution returned null for ${function.name()}" }
+                    // Add an item indicating null output
+                    callItems(tool.id(), tool.id(), function, "Tool ${function.name()} returned null output.")
+                }
+        }
+        return ToolCallExecutor.Outcome(ToolCallItems(items))
+    }
+
+    /**
+     * The function call of a chat completion tool call and its output, as input items.
+     */
+    private fun callItems(
+        callId: String,
+        id: String,
+        function: ChatCompletionMessageToolCall.Function,
+        output: String,
+    ): List<ResponseInputItem> =
+        listOf(
+            ResponseInputItem.ofFunctionCall(
+                ResponseFunctionToolCall
+                    .builder()
+                    .callId(callId)
+                    .id(id)
+                    .name(function.name())
+                    .arguments(function.arguments())
+                    .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
+                    .build(),
+            ),
+            ResponseInputItem.ofFunctionCallOutput(
+                ResponseInputItem.FunctionCallOutput
+                    .builder()
+                    .callId(callId)
+                    .id(id)
+                    .output(output)
+                    .build(),
+            ),
+        )
+
     private suspend fun executeToolWithSpan(
         toolName: String,
         toolDescription: String,
@@ -695,302 +701,406 @@ class MasaicToolHandler(
         val functionCalls = response.output().filter { it.isFunctionCall() }
         logger.debug { "Processing ${functionCalls.size} function calls" }
 
-        for (indexedToolCall in functionCalls.withIndex()) { // Changed to for loop to allow break
-
-            val index = indexedToolCall.index
-            val tool = indexedToolCall.value
+        val (nativeCalls, clientCalls) =
+            functionCalls.withIndex().partition { toolService.getFunctionTool(it.value.asFunctionCall().name(), context) != null }
+        clientCalls.forEach { (_, tool) ->
             val function = tool.asFunctionCall()
+            logger.info { "Unsupported tool requested: ${function.name()}, parking for client handling" }
+            parked.add(
+                ResponseInputItem.ofFunctionCall(
+                    ResponseFunctionToolCall
+                        .builder()
+                        .callId(function.callId())
+                        .id(function.id().toString())
+                        .name(function.name())
+                        .arguments(function.arguments())
+                        .build(),
+                ),
+            )
+        }
 
-            if (toolService.getFunctionTool(function.name(), context) != null) {
-                logger.info { "Executing tool: ${function.name()} with ID: ${function.id()}" }
-                val toolMeta = toolService.getAvailableTool(function.name())
-                val funNameForEventPrefix = function.name().lowercase().replace("^\\W".toRegex(), "_")
-                val emitToolEvents = toolMeta?.eventMeta?.emitProgressEvents ?: true
-                val eventPrefix =
-                    if (toolMeta?.eventMeta != null) {
-                        "response.${toolMeta.eventMeta.infix}.$funNameForEventPrefix"
-                    } else if (toolMeta?.protocol == ToolProtocol.MCP) {
-                        "response.mcp_call.$funNameForEventPrefix"
-                    } else if (toolMeta?.protocol == ToolProtocol.PY_CODE) {
-                        "response.agc.$funNameForEventPrefix"
-                    } else {
-                        "response.$funNameForEventPrefix"
-                    }
+        val outputs =
+            toolCallExecutor.execute(
+                count = nativeCalls.size,
+                parallel = nativeCalls.size > 1 && params.parallelToolCalls().orElse(true),
+                onTimeout = { call -> streamingToolTimeout(nativeCalls[call].index, nativeCalls[call].value.asFunctionCall(), eventEmitter) },
+                onCancelled = { call -> streamingToolCancelled(nativeCalls[call].index, nativeCalls[call].value.asFunctionCall(), eventEmitter) },
+            ) { call ->
+                val (index, tool) = nativeCalls[call]
+                executeStreamingToolCall(index, tool.asFunctionCall(), params, eventEmitter, openAIClient, context, parentSpan)
+            }
 
-                if (emitToolEvents) {
-                    eventEmitter.invoke(
-                        ServerSentEvent
-                            .builder<String>()
-                            .event("$eventPrefix.in_progress")
-                            .data(
-                                " " + objectMapper.writeValueAsString(InProgressEventData(itemId = function.id().getOrNull() ?: function.callId(), outputIndex = index.toString(), type = "$eventPrefix.in_progress", toolArgs = function.arguments())),
-                            ).build(),
-                    )
-                }
+        // Items are added in call order up to a terminal tool; calls it cancelled have no output
+        for (output in outputs) {
+            output ?: continue
+            responseInputItems.addAll(output.items)
+            if (output.terminalOutputItem != null) {
+                shouldTerminate = true
+                terminalOutputItem = output.terminalOutputItem
+                break
+            }
+        }
 
-                if (toolMeta?.protocol != ToolProtocol.PY_CODE && emitToolEvents) {
-                    eventEmitter.invoke(
-                        ServerSentEvent
-                            .builder<String>()
-                            .event("$eventPrefix.executing")
-                            .data(
-                                " " + objectMapper.writeValueAsString(ExecutingEventData(itemId = function.id().getOrNull() ?: function.callId(), outputIndex = index.toString(), type = "$eventPrefix.executing")),
-                            ).build(),
-                    )
-                }
+        logger.debug { "Adding ${parked.size} parked items to response" }
+        responseInputItems.addAll(parked)
+        return MasaicToolCallStreamingResult(responseInputItems.toList(), shouldTerminate, terminalOutputItem)
+    }
 
-                if (function.name() == IMAGE_GENERATION_TOOL_NAME) {
-                    eventEmitter.invoke(
-                        ServerSentEvent
-                            .builder<String>()
-                            .event("$eventPrefix.generating")
-                            .data(
-                                " " +
-                                    objectMapper.writeValueAsString(
-                                        mapOf<String, String>(
-                                            "item_id" to (function.id().getOrNull() ?: function.callId()),
-                                            "output_index" to index.toString(),
-                                            "type" to "$eventPrefix.generating",
-                                        ),
-                                    ),
-                            ).build(),
-                    )
+    /**
+     * Executes one native function call of a streamed response, emitting its progress events.
+     */
+    private suspend fun executeStreamingToolCall(
+        index: Int,
+        function: ResponseFunctionToolCall,
+        params: ResponseCreateParams,
+        eventEmitter: ((ServerSentEvent<String>) -> Unit),
+        openAIClient: OpenAIClient,
+        context: ToolRequestContext,
+        parentSpan: Span?,
+    ): ToolCallExecutor.Outcome<ToolCallItems> {
+        val items = mutableListOf<ResponseInputItem>()
+        logger.info { "Executing tool: ${function.name()} with ID: ${function.id()}" }
+        val toolMeta = toolService.getAvailableTool(function.name())
+        val emitToolEvents = toolMeta?.eventMeta?.emitProgressEvents ?: true
+        val eventPrefix = toolEventPrefix(function.name(), toolMeta)
 
-                    logger.info { "Executing terminal tool (streaming): ${function.name()} with ID: ${function.id()}" }
-                    var imageToolOutputString: Map<String, String>? = null
-                    executeToolWithSpan(
-                        function.name(),
-                        toolMeta?.description ?: "not_available",
-                        function.arguments(),
-                        function.id().toString(),
-                        mapOf("toolId" to function.id(), "eventIndex" to index),
-                        params,
-                        openAIClient,
-                        eventEmitter, // Pass through the eventEmitter
-                        context,
-                        parentSpan,
-                    ) { toolResult ->
-                        // This is the callback
-                        val typeReference = object : TypeReference<Map<String, String>>() {}
-                        @Suppress("UNCHECKED_CAST")
-                        imageToolOutputString =
-                            objectMapper.readValue(toolResult, typeReference) // Capture the result
-                    }
+        if (emitToolEvents) {
+            eventEmitter.invoke(
+                ServerSentEvent
+                    .builder<String>()
+                    .event("$eventPrefix.in_progress")
+                    .data(
+                        " " + objectMapper.writeValueAsString(InProgressEventData(itemId = function.id().getOrNull() ?: function.callId(), outputIndex = index.toString(), type = "$eventPrefix.in_progress", toolArgs = function.arguments())),
+                    ).build(),
+            )
+        }
 
-                    if (imageToolOutputString != null &&
-                        (imageToolOutputString as Map<out String?, String?>).contains("data") &&
-                        (imageToolOutputString as Map<out String?, String?>)["data"]?.isNotBlank() == true
-                    ) {
-                        // Add the function call to response items
-                        responseInputItems.add(
-                            ResponseInputItem.ofFunctionCall(
-                                ResponseFunctionToolCall
-                                    .builder()
-                                    .callId(function.callId())
-                                    .id(function.id().toString())
-                                    .name(function.name())
-                                    .arguments(function.arguments())
-                                    .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                    .build(),
-                            ),
-                        )
-                        // Add the function call output to responseInputItems for storage/logging
-                        responseInputItems.add(
-                            ResponseInputItem.ofFunctionCallOutput(
-                                ResponseInputItem.FunctionCallOutput
-                                    .builder()
-                                    .callId(function.callId())
-                                    .id(function.id())
-                                    .output((imageToolOutputString as Map<out String?, String?>)["data"].toString())
-                                    .build(),
+        if (toolMeta?.protocol != ToolProtocol.PY_CODE && emitToolEvents) {
+            eventEmitter.invoke(
+                ServerSentEvent
+                    .builder<String>()
+                    .event("$eventPrefix.executing")
+                    .data(
+                        " " + objectMapper.writeValueAsString(ExecutingEventData(itemId = function.id().getOrNull() ?: function.callId(), outputIndex = index.toString(), type = "$eventPrefix.executing")),
+                    ).build(),
+            )
+        }
+
+        if (function.name() == IMAGE_GENERATION_TOOL_NAME) {
+            eventEmitter.invoke(
+                ServerSentEvent
+                    .builder<String>()
+                    .event("$eventPrefix.generating")
+                    .data(
+                        " " +
+                            objectMapper.writeValueAsString(
+                                mapOf<String, String>(
+                                    "item_id" to (function.id().getOrNull() ?: function.callId()),
+                                    "output_index" to index.toString(),
+                                    "type" to "$eventPrefix.generating",
+                                ),
                             ),
-                        )
-                        // Create the ResponseOutputItem for the image tool (this will be the final message)
+                    ).build(),
+            )
 
-                        terminalOutputItem =
-                            ResponseOutputItem.ofImageGenerationCall(
-                                ResponseOutputItem.ImageGenerationCall
-                                    .builder()
-                                    .id(function.id().get())
-                                    .status(ResponseOutputItem.ImageGenerationCall.Status.COMPLETED)
-                                    .result(imageToolOutputString!!["data"].toString())
-                                    .type(JsonValue.from("image_generation_call"))
-                                    .build(),
-                            )
+            logger.info { "Executing terminal tool (streaming): ${function.name()} with ID: ${function.id()}" }
+            var imageToolOutputString: Map<String, String>? = null
+            executeToolWithSpan(
+                function.name(),
+                toolMeta?.description ?: "not_available",
+                function.arguments(),
+                function.id().toString(),
+                mapOf("toolId" to function.id(), "eventIndex" to index),
+                params,
+                openAIClient,
+                eventEmitter, // Pass through the eventEmitter
+                context,
+                parentSpan,
+            ) { toolResult ->
+                // This is the callback
+                val typeReference = object : TypeReference<Map<String, String>>() {}
+                @Suppress("UNCHECKED_CAST")
+                imageToolOutputString =
+                    objectMapper.readValue(toolResult, typeReference) // Capture the result
+            }
+
+            if (imageToolOutputString != null &&
+                (imageToolOutputString as Map<out String?, String?>).contains("data") &&
+                (imageToolOutputString as Map<out String?, String?>)["data"]?.isNotBlank() == true
+            ) {
+                // Add the function call to response items
+                items.add(
+                    ResponseInputItem.ofFunctionCall(
+                        ResponseFunctionToolCall
+                            .builder()
+                            .callId(function.callId())
+                            .id(function.id().toString())
+                            .name(function.name())
+                            .arguments(function.arguments())
+                            .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
+                            .build(),
+                    ),
+                )
+                // Add the function call output to the items for storage/logging
+                items.add(
+                    ResponseInputItem.ofFunctionCallOutput(
+                        ResponseInputItem.FunctionCallOutput
+                            .builder()
+                            .callId(function.callId())
+                            .id(function.id())
+                            .output((imageToolOutputString as Map<out String?, String?>)["data"].toString())
+                            .build(),
+                    ),
+                )
+                // Create the ResponseOutputItem for the image tool (this will be the final message)
+
+                val terminalOutputItem =
+                    ResponseOutputItem.ofImageGenerationCall(
+                        ResponseOutputItem.ImageGenerationCall
+                            .builder()
+                            .id(function.id().get())
+                            .status(ResponseOutputItem.ImageGenerationCall.Status.COMPLETED)
+                            .result(imageToolOutputString!!["data"].toString())
+                            .type(JsonValue.from("image_generation_call"))
+                            .build(),
+                    )
+
+                // Emit completed event for image_generation tool itself (optional, depends on desired events)
+                eventEmitter.invoke(
+                    ServerSentEvent
+                        .builder<String>()
+                        .event("$eventPrefix.completed") // This was for the generic tool
+                        .data(
+                            " " +
+                                objectMapper.writeValueAsString(
+                                    mapOf(
+                                        "item_id" to function.id(),
+                                        "output_index" to index.toString(),
+                                        "type" to "$eventPrefix.completed",
+                                        "final_output_generated" to "true",
+                                    ),
+                                ),
+                        ).build(),
+                )
+                // image_generation is terminal for this batch of tools
+                return ToolCallExecutor.Outcome(ToolCallItems(items, terminalOutputItem), terminal = true)
+            } else {
+                logger.warn { "Terminal tool ${function.name()} returned null output in streaming. Adding error/null output." }
+                // Add the function call to response items
+                items.add(
+                    ResponseInputItem.ofFunctionCall(
+                        ResponseFunctionToolCall
+                            .builder()
+                            .callId(function.callId())
+                            .id(function.id().toString())
+                            .name(function.name())
+                            .arguments(function.arguments())
+                            .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
+                            .build(),
+                    ),
+                )
+                items.add(
+                    ResponseInputItem.ofFunctionCallOutput(
+                        ResponseInputItem.FunctionCallOutput
+                            .builder()
+                            .callId(function.callId())
+                            .id(function.id())
+                            .output("Tool ${function.name()} returned null or failed.")
+                            .build(),
+                    ),
+                )
+                // Emit completed event for image_generation tool, but indicating failure/null
+                eventEmitter.invoke(
+                    ServerSentEvent
+                        .builder<String>()
+                        .event("$eventPrefix.completed")
+                        .data(
+                            " " +
+                                objectMapper.writeValueAsString(
+                                    mapOf(
+                                        "item_id" to function.id(),
+                                        "output_index" to index.toString(),
+                                        "type" to "$eventPrefix.completed",
+                                        "error" to "Tool returned null",
+                                    ),
+                                ),
+                        ).build(),
+                )
+            }
+        } else { // Regular native tool
+            executeToolWithSpan(
+                function.name(),
+                toolMeta?.description ?: "not_available",
+                function.arguments(),
+                function.id().toString(),
+                mapOf("toolId" to function.id(), "eventIndex" to index),
+                params,
+                openAIClient,
+                eventEmitter,
+                context,
+                parentSpan,
+            ) { toolResult ->
+                if (toolResult != null) {
+                    logger.debug { "Tool execution successful for ${function.name()}" }
+                    // Add the function call to response items
+                    items.add(
+                        ResponseInputItem.ofFunctionCall(
+                            ResponseFunctionToolCall
+                                .builder()
+                                .callId(function.callId())
+                                .id(function.id().toString())
+                                .name(function.name())
+                                .arguments(function.arguments())
+                                .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
+                                .build(),
+                        ),
+                    )
+                    items.add(
+                        ResponseInputItem.ofFunctionCallOutput(
+                            ResponseInputItem.FunctionCallOutput
+                                .builder()
+                                .callId(function.callId())
+                                .id(function.id())
+                                .output(toolResult)
+                                .build(),
+                        ),
+                    )
 
-                        shouldTerminate = true // Signal to terminate streaming after this tool
-                        // Emit completed event for image_generation tool itself (optional, depends on desired events)
+                    if (emitToolEvents) {
                         eventEmitter.invoke(
                             ServerSentEvent
                                 .builder<String>()
-                                .event("$eventPrefix.completed") // This was for the generic tool
+                                .event("$eventPrefix.completed")
                                 .data(
                                     " " +
                                         objectMapper.writeValueAsString(
-                                            mapOf(
-                                                "item_id" to function.id(),
-                                                "output_index" to index.toString(),
-                                                "type" to "$eventPrefix.completed",
-                                                "final_output_generated" to "true",
-                                            ),
+                                            CompletedEventData(itemId = function.id().toString(), outputIndex = index.toString(), type = "$eventPrefix.completed", toolResult = toolResult),
                                         ),
                                 ).build(),
                         )
-                        break // Exit loop, image_generation is terminal for this batch of tools
-                    } else {
-                        logger.warn { "Terminal tool ${function.name()} returned null output in streaming. Adding error/null output." }
-                        // Add the function call to response items
-                        responseInputItems.add(
-                            ResponseInputItem.ofFunctionCall(
-                                ResponseFunctionToolCall
-                                    .builder()
-                                    .callId(function.callId())
-                                    .id(function.id().toString())
-                                    .name(function.name())
-                                    .arguments(function.arguments())
-                                    .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                    .build(),
-                            ),
-                        )
-                        responseInputItems.add(
-                            ResponseInputItem.ofFunctionCallOutput(
-                                ResponseInputItem.FunctionCallOutput
-                                    .builder()
-                                    .callId(function.callId())
-                                    .id(function.id())
-                                    .output("Tool ${function.name()} returned null or failed.")
-                                    .build(),
-                            ),
-                        )
-                        // Emit completed event for image_generation tool, but indicating failure/null
+                    }
+                } else {
+                    logger.warn { "Tool execution returned null for ${function.name()}" }
+                    // Add the function call to response items
+                    items.add(
+                        ResponseInputItem.ofFunctionCall(
+                            ResponseFunctionToolCall
+                                .builder()
+                                .callId(function.callId())
+                                .id(function.id().toString())
+                                .name(function.name())
+                                .arguments(function.arguments())
+                                .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
+                                .build(),
+                        ),
+                    )
+                    items.add(
+                        ResponseInputItem.ofFunctionCallOutput(
+                            ResponseInputItem.FunctionCallOutput
+                                .builder()
+                                .callId(function.callId())
+                                .id(function.id())
+                                .output("Tool ${function.name()} returned null output.")
+                                .build(),
+                        ),
+                    )
+
+                    if (emitToolEvents) {
                         eventEmitter.invoke(
                             ServerSentEvent
                                 .builder<String>()
-                                .event("$eventPrefix.completed")
+                                .event("$eventPrefix.error")
                                 .data(
-                                    " " +
-                                        objectMapper.writeValueAsString(
-                                            mapOf(
-                                                "item_id" to function.id(),
-                                                "output_index" to index.toString(),
-                                                "type" to "$eventPrefix.completed",
-                                                "error" to "Tool returned null",
-                                            ),
-                                        ),
+                                    objectMapper.writeValueAsString(
+                                        " " + ErrorEventData(itemId = function.id().toString(), outputIndex = index.toString(), type = "$eventPrefix.error", error = "Tool returned error or null"),
+                                    ),
                                 ).build(),
                         )
                     }
-                } else { // Regular native tool
-                    executeToolWithSpan(
-                        function.name(),
-                        toolMeta?.description ?: "not_available",
-                        function.arguments(),
-                        function.id().toString(),
-                        mapOf("toolId" to function.id(), "eventIndex" to index),
-                        params,
-                        openAIClient,
-                        eventEmitter,
-                        context,
-                        parentSpan,
-                    ) { toolResult ->
-                        if (toolResult != null) {
-                            logger.debug { "Tool execution successful for ${function.name()}" }
-                            // Add the function call to response items
-                            responseInputItems.add(
-                                ResponseInputItem.ofFunctionCall(
-                                    ResponseFunctionToolCall
-                                        .builder()
-                                        .callId(function.callId())
-                                        .id(function.id().toString())
-                                        .name(function.name())
-                                        .arguments(function.arguments())
-                                        .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                        .build(),
-                                ),
-                            )
-                            responseInputItems.add(
-                                ResponseInputItem.ofFunctionCallOutput(
-                                    ResponseInputItem.FunctionCallOutput
-                                        .builder()
-                                        .callId(function.callId())
-                                        .id(function.id())
-                                        .output(toolResult)
-                                        .build(),
-                                ),
-                            )
-
-                            if (emitToolEvents) {
-                                eventEmitter.invoke(
-                                    ServerSentEvent
-                                        .builder<String>()
-                                        .event("$eventPrefix.completed")
-                                        .data(
-                                            " " +
-                                                objectMapper.writeValueAsString(
-                                                    CompletedEventData(itemId = function.id().toString(), outputIndex = index.toString(), type = "$eventPrefix.completed", toolResult = toolResult),
-                                                ),
-                                        ).build(),
-                                )
-                            }
-                        } else {
-                            logger.warn { "Tool execution returned null for ${function.name()}" }
-                            // Add the function call to response items
-                            responseInputItems.add(
-                                ResponseInputItem.ofFunctionCall(
-                                    ResponseFunctionToolCall
-                                        .builder()
-                                        .callId(function.callId())
-                                        .id(function.id().toString())
-                                        .name(function.name())
-                                        .arguments(function.arguments())
-                                        .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
-                                        .build(),
-                                ),
-                            )
-                            responseInputItems.add(
-                                ResponseInputItem.ofFunctionCallOutput(
-                                    ResponseInputItem.FunctionCallOutput
-                                        .builder()
-                                        .callId(function.callId())
-                                        .id(function.id())
-                                        .output("Tool ${function.name()} returned null output.")
-                                        .build(),
-                                ),
-                            )
-
-                            if (emitToolEvents) {
-                                eventEmitter.invoke(
-                                    ServerSentEvent
-                                        .builder<String>()
-                                        .event("$eventPrefix.error")
-                                        .data(
-                                            objectMapper.writeValueAsString(
-                                                " " + ErrorEventData(itemId = function.id().toString(), outputIndex = index.toString(), type = "$eventPrefix.error", error = "Tool returned error or null"),
-                                            ),
-                                        ).build(),
-                                )
-                            }
-                        }
-                    }
                 }
-            } else {
-                logger.info { "Unsupported tool requested: ${function.name()}, parking for client handling" }
-                parked.add(
-                    ResponseInputItem.ofFunctionCall(
-                        ResponseFunctionToolCall
-                            .builder()
-                            .callId(function.callId())
-                            .id(function.id().toString())
-                            .name(function.name())
-                            .arguments(function.arguments())
-                            .build(),
-                    ),
-                )
             }
         }
+        return ToolCallExecutor.Outcome(ToolCallItems(items))
+    }
 
-        logger.debug { "Adding ${parked.size} parked items to response" }
-        responseInputItems.addAll(parked)
-        return MasaicToolCallStreamingResult(responseInputItems.toList(), shouldTerminate, terminalOutputItem)
+    /**
+     * Ends a streamed function call that did not finish in time with an error output and event.
+     */
+    private suspend fun streamingToolTimeout(
+        index: Int,
+        function: ResponseFunctionToolCall,
+        eventEmitter: ((ServerSentEvent<String>) -> Unit),
+    ): ToolCallItems {
+        val message = timeoutMessage(function.name())
+        emitStreamingToolError(index, function, message, eventEmitter)
+        return ToolCallItems(
+            listOf(
+                ResponseInputItem.ofFunctionCall(
+                    ResponseFunctionToolCall
+                        .builder()
+                        .callId(function.callId())
+                        .id(function.id().toString())
+                        .name(function.name())
+                        .arguments(function.arguments())
+                        .status(ResponseFunctionToolCall.Status.IN_PROGRESS)
+                        .build(),
+                ),
+                ResponseInputItem.ofFunctionCallOutput(
+                    ResponseInputItem.FunctionCallOutput
+                        .builder()
+                        .callId(function.callId())
+                        .id(function.id())
+                        .output(message)
+                        .build(),
+                ),
+            ),
+        )
+    }
+
+    /**
+     * Ends a streamed function call cancelled by a terminal tool with an error event; it has no output.
+     */
+    private suspend fun streamingToolCancelled(
+        index: Int,
+        function: ResponseFunctionToolCall,
+        eventEmitter: ((ServerSentEvent<String>) -> Unit),
+    ) {
+        emitStreamingToolError(index, function, "Tool ${function.name()} was cancelled because another tool call ended the turn.", eventEmitter)
+    }
+
+    private suspend fun emitStreamingToolError(
+        index: Int,
+        function: ResponseFunctionToolCall,
+        message: String,
+        eventEmitter: ((ServerSentEvent<String>) -> Unit),
+    ) {
+        val toolMeta = toolService.getAvailableTool(function.name())
+        if (toolMeta?.eventMeta?.emitProgressEvents ?: true) {
+            val eventPrefix = toolEventPrefix(function.name(), toolMeta)
+            eventEmitter.invoke(
+                ServerSentEvent
+                    .builder<String>()
+                    .event("$eventPrefix.error")
+                    .data(
+                        " " + objectMapper.writeValueAsString(ErrorEventData(itemId = function.id().toString(), outputIndex = index.toString(), type = "$eventPrefix.error", error = message)),
+                    ).build(),
+            )
+        }
+    }
+
+    private fun toolEventPrefix(
+        functionName: String,
+        toolMeta: ToolMetadata?,
+    ): String {
+        val funNameForEventPrefix = functionName.lowercase().replace("^\\W".toRegex(), "_")
+        return if (toolMeta?.eventMeta != null) {
+            "response.${toolMeta.eventMeta.infix}.$funNameForEventPrefix"
+        } else if (toolMeta?.protocol == ToolProtocol.MCP) {
+            "response.mcp_call.$funNameForEventPrefix"
+        } else if (toolMeta?.protocol == ToolProtocol.PY_CODE) {
+            "response.agc.$funNameForEventPrefix"
+        } else {
+            "response.$funNameForEventPrefix"
+        }
     }
 }
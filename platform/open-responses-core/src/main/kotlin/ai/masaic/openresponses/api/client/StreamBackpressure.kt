@@ -0,0 +1,384 @@
+package ai.masaic.openresponses.api.client
+
+import com.openai.models.responses.ResponseStreamEvent
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.DelicateCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.ProducerScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import mu.KotlinLogging
+import org.springframework.http.codec.ServerSentEvent
+import java.time.Duration
+import java.util.concurrent.ConcurrentLinkedDeque
+import java.util.concurrent.atomic.AtomicInteger
+
+private val logger = KotlinLogging.logger {}
+
+/**
+ * What a stream does when its buffer of unsent events is full.
+ */
+enum class StreamOverflowPolicy(
+    val value: String,
+) {
+    /**
+     * Suspends the producer, and so the upstream model stream, until the client catches up. Events
+     * offered from callbacks that cannot suspend are held up to the capacity, beyond which the oldest
+     * held event is dropped and counted.
+     */
+    SUSPEND("suspend"),
+
+    /**
+     * Merges consecutive text and function-argument deltas of the same item while the buffer is full;
+     * other events are handled as with [SUSPEND].
+     */
+    COALESCE("coalesce"),
+
+    /** Fails the stream, which then ends with an error event. */
+    FAIL("fail"),
+    ;
+
+    companion object {
+        fun from(value: String): StreamOverflowPolicy =
+            entries.find { it.value.equals(value, ignoreCase = true) }
+                ?: throw IllegalArgumentException("Unknown stream overflow policy: $value. Expected suspend, coalesce or fail")
+    }
+}
+
+/**
+ * Thrown when a stream with the [StreamOverflowPolicy.FAIL] policy outgrows its buffer.
+ */
+class StreamOverflowException(
+    message: String,
+) : RuntimeException(message)
+
+/**
+ * Bounded buffering of the server-sent events of response streams.
+ *
+ * Each stream gets a buffer of [capacity] events between the producer, which turns model chunks
+ * into events, and the client. When the client reads slower than the model writes, the buffer
+ * fills and [policy] decides what happens; no event is dropped silently. A positive
+ * [coalesceWindow] merges consecutive deltas of the same item into one event per window or per
+ * [coalesceMaxChars] characters, whichever comes first.
+ *
+ * Metrics: the `sse.stream.buffer.high_water` summary of the largest number of events buffered
+ * per stream, and the `sse.stream.events.coalesced`, `sse.stream.events.dropped` and
+ * `sse.stream.overflows` counters.
+ */
+class StreamBackpressure(
+    val capacity: Int = DEFAULT_CAPACITY,
+    val policy: StreamOverflowPolicy = StreamOverflowPolicy.SUSPEND,
+    meterRegistry: MeterRegistry = SimpleMeterRegistry(),
+    val coalesceWindow: Duration = Duration.ZERO,
+    val coalesceMaxChars: Int = DEFAULT_COALESCE_MAX_CHARS,
+) {
+    private val highWater: DistributionSummary =
+        DistributionSummary
+            .builder("sse.stream.buffer.high_water")
+            .description("Largest number of events buffered for a stream")
+            .register(meterRegistry)
+    internal val coalesced: Counter = meterRegistry.counter("sse.stream.events.coalesced")
+    internal val dropped: Counter = meterRegistry.counter("sse.stream.events.dropped")
+    internal val overflows: Counter = meterRegistry.counter("sse.stream.overflows", "policy", policy.value)
+
+    init {
+        require(capacity > 0) { "Stream buffer capacity must be positive" }
+    }
+
+    /**
+     * Opens the buffer accounting of one stream. The stream's channel must have [capacity].
+     */
+    fun open(): StreamBuffer = StreamBuffer(this)
+
+    internal fun record(buffer: StreamBuffer) {
+        highWater.record(buffer.highWaterMark.toDouble())
+        logger.debug { "Stream closed with buffer high water mark ${buffer.highWaterMark} and ${buffer.coalescedEvents} coalesced events" }
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 256
+        const val DEFAULT_COALESCE_MAX_CHARS = 256
+    }
+}
+
+/**
+ * Per-stream buffer accounting: the producer side counts events in with a [StreamEventEmitter],
+ * the consumer counts them out with [delivered].
+ */
+class StreamBuffer internal constructor(
+    private val backpressure: StreamBackpressure,
+) {
+    private val queued = AtomicInteger()
+    private val highWater = AtomicInteger()
+    private val coalesced = AtomicInteger()
+
+    val capacity: Int
+        get() = backpressure.capacity
+
+    val policy: StreamOverflowPolicy
+        get() = backpressure.policy
+
+    val coalesceWindow: Duration
+        get() = backpressure.coalesceWindow
+
+    val coalesceMaxChars: Int
+        get() = backpressure.coalesceMaxChars
+
+    /** The largest number of events buffered at once so far. */
+    val highWaterMark: Int
+        get() = highWater.get()
+
+    /** The number of deltas merged into an earlier one so far. */
+    val coalescedEvents: Int
+        get() = coalesced.get()
+
+    /**
+     * Creates the emitter that writes this stream's events to the channel of [producer].
+     */
+    fun emitter(
+        producer: ProducerScope<ServerSentEvent<String>>,
+        convert: suspend (ResponseStreamEvent) -> ServerSentEvent<String>,
+    ) = StreamEventEmitter(this, producer, convert)
+
+    /**
+     * Records that the client has taken an event off the buffer.
+     */
+    fun delivered() {
+        queued.decrementAndGet()
+    }
+
+    /**
+     * Records the stream's metrics.
+     */
+    fun close() {
+        backpressure.record(this)
+    }
+
+    internal fun enqueued() {
+        val size = queued.incrementAndGet()
+        highWater.accumulateAndGet(size) { old, new -> maxOf(old, new) }
+    }
+
+    internal fun coalesced() {
+        coalesced.incrementAndGet()
+        backpressure.coalesced.increment()
+    }
+
+    /**
+     * Records an overflow of a stream with the [StreamOverflowPolicy.FAIL] policy and returns the error to end it with.
+     */
+    internal fun overflow(): StreamOverflowException {
+        backpressure.overflows.increment()
+        backpressure.dropped.increment()
+        return StreamOverflowException("Client is reading the stream too slowly; more than $capacity events are waiting to be sent")
+    }
+
+    /**
+     * Records a held back event dropped because the stream held [capacity] of them already.
+     */
+    internal fun dropped() {
+        backpressure.overflows.increment()
+        backpressure.dropped.increment()
+        logger.warn { "Client is reading the stream too slowly; dropped the oldest of $capacity held back events" }
+    }
+}
+
+/**
+ * Writes the events of one stream to its channel according to the buffer's [StreamOverflowPolicy].
+ *
+ * Events are sent in order. Events offered from non-suspending callbacks, such as tool progress
+ * events, are held back while the buffer is full, at most [StreamBuffer.capacity] of them, and sent
+ * ahead of the next event as soon as there is room. Once the stream has been closed on purpose, for
+ * example after its final event, later events are ignored. [offer] may be called from other
+ * threads, such as by tools running concurrently.
+ *
+ * With a coalescing window, consecutive deltas of the same item are merged into one event that is
+ * sent once the window has passed or it has reached the maximum length, so fast models do not
+ * produce one event per token.
+ */
+@OptIn(DelicateCoroutinesApi::class)
+class StreamEventEmitter internal constructor(
+    private val buffer: StreamBuffer,
+    private val producer: ProducerScope<ServerSentEvent<String>>,
+    private val convert: suspend (ResponseStreamEvent) -> ServerSentEvent<String>,
+) {
+    private val lock = Mutex()
+    private val backlog = ConcurrentLinkedDeque<ServerSentEvent<String>>()
+    private val windowMillis = buffer.coalesceWindow.toMillis()
+
+    @Volatile
+    private var pendingDelta: ResponseStreamEvent? = null
+    private var pendingChars = 0
+    private var pendingSince = 0L
+    private var windowTimer: Job? = null
+
+    /**
+     * Sends an event, suspending or coalescing while the buffer is full.
+     */
+    suspend fun emit(event: ResponseStreamEvent) =
+        lock.withLock {
+            if (producer.isClosedForSend) return@withLock
+            if ((windowMillis > 0 || buffer.policy == StreamOverflowPolicy.COALESCE) && isDelta(event)) {
+                coalesce(event)
+            } else {
+                flushHeld()
+                send(convert(event))
+            }
+        }
+
+    /**
+     * Sends an already converted event without suspending; it is held back while the buffer is full.
+     *
+     * When the held back events reach the buffer's capacity, the [StreamOverflowPolicy.FAIL] policy
+     * closes the stream with a [StreamOverflowException]; the other policies drop the oldest held event.
+     * The caller's thread never sees the overflow.
+     */
+    @Synchronized
+    fun offer(event: ServerSentEvent<String>) {
+        if (producer.isClosedForSend) return
+        // Held back events only go out here while no emit is sending, so they cannot overtake it
+        if (lock.tryLock()) {
+            try {
+                if (pendingDelta == null) {
+                    while (true) {
+                        val next = backlog.peekFirst() ?: break
+                        if (!trySend(next)) break
+                        backlog.pollFirst()
+                    }
+                    if (backlog.isEmpty() && trySend(event)) return
+                }
+            } finally {
+                lock.unlock()
+            }
+        }
+        if (backlog.size >= buffer.capacity) {
+            if (buffer.policy == StreamOverflowPolicy.FAIL) {
+                backlog.clear()
+                producer.close(buffer.overflow())
+                return
+            }
+            backlog.pollFirst()
+            buffer.dropped()
+        }
+        backlog.addLast(event)
+    }
+
+    /**
+     * Sends every held back event.
+     */
+    suspend fun flush() = lock.withLock { flushHeld() }
+
+    private suspend fun flushHeld() {
+        pendingDelta?.let {
+            release()
+            send(convert(it))
+        }
+        while (true) {
+            send(backlog.pollFirst() ?: break)
+        }
+    }
+
+    private suspend fun coalesce(event: ResponseStreamEvent) {
+        val held = pendingDelta
+        if (held != null && backlog.isEmpty() && sameTarget(held, event)) {
+            pendingDelta = merge(held, event)
+            pendingChars += deltaLength(event)
+            buffer.coalesced()
+        } else {
+            flushHeld()
+            hold(event)
+        }
+
+        val due = windowMillis <= 0 || pendingChars >= buffer.coalesceMaxChars || System.currentTimeMillis() - pendingSince >= windowMillis
+        if (!due) return
+        val pending = pendingDelta ?: return
+        if (buffer.policy == StreamOverflowPolicy.COALESCE) {
+            // The held delta goes out as soon as there is room; until then later deltas merge into it
+            if (trySend(convert(pending))) release()
+        } else {
+            release()
+            send(convert(pending))
+        }
+    }
+
+    private fun hold(event: ResponseStreamEvent) {
+        pendingDelta = event
+        pendingChars = deltaLength(event)
+        pendingSince = System.currentTimeMillis()
+        if (windowMillis <= 0) return
+        // Sends the delta when the window closes even if the model pauses and nothing else arrives
+        windowTimer =
+            producer.launch {
+                delay(windowMillis)
+                lock.withLock {
+                    windowTimer = null
+                    flushHeld()
+                }
+            }
+    }
+
+    private fun release() {
+        pendingDelta = null
+        windowTimer?.cancel()
+        windowTimer = null
+    }
+
+    private suspend fun send(event: ServerSentEvent<String>) {
+        if (producer.isClosedForSend) return
+        if (buffer.policy == StreamOverflowPolicy.FAIL) {
+            if (!trySend(event)) throw buffer.overflow()
+            return
+        }
+        producer.send(event)
+        buffer.enqueued()
+    }
+
+    private fun trySend(event: ServerSentEvent<String>): Boolean =
+        producer.trySend(event).isSuccess.also { sent ->
+            if (sent) buffer.enqueued()
+        }
+
+    private fun isDelta(event: ResponseStreamEvent) = event.isOutputTextDelta() || event.isFunctionCallArgumentsDelta()
+
+    private fun deltaLength(event: ResponseStreamEvent) =
+        if (event.isOutputTextDelta()) event.asOutputTextDelta().delta().length else event.asFunctionCallArgumentsDelta().delta().length
+
+    private fun sameTarget(
+        first: ResponseStreamEvent,
+        second: ResponseStreamEvent,
+    ): Boolean =
+        when {
+            first.isOutputTextDelta() && second.isOutputTextDelta() -> {
+                val a = first.asOutputTextDelta()
+                val b = second.asOutputTextDelta()
+                a.itemId() == b.itemId() && a.outputIndex() == b.outputIndex() && a.contentIndex() == b.contentIndex()
+            }
+            first.isFunctionCallArgumentsDelta() && second.isFunctionCallArgumentsDelta() -> {
+                val a = first.asFunctionCallArgumentsDelta()
+                val b = second.asFunctionCallArgumentsDelta()
+                a.itemId() == b.itemId() && a.outputIndex() == b.outputIndex()
+            }
+            else -> false
+        }
+
+    private fun merge(
+        first: ResponseStreamEvent,
+        second: ResponseStreamEvent,
+    ): ResponseStreamEvent =
+        if (first.isOutputTextDelta()) {
+            val a = first.asOutputTextDelta()
+            val b = second.asOutputTextDelta()
+            ResponseStreamEvent.ofOutputTextDelta(a.toBuilder().delta(a.delta() + b.delta()).sequenceNumber(b.sequenceNumber()).build())
+        } else {
+            val a = first.asFunctionCallArgumentsDelta()
+            val b = second.asFunctionCallArgumentsDelta()
+            ResponseStreamEvent.ofFunctionCallArgumentsDelta(
+                a.toBuilder().delta(a.delta() + b.delta()).sequenceNumber(b.sequenceNumber()).build(),
+            )
+        }
+}
@@ -0,0 +1,119 @@
+package ai.masaic.openresponses.api.client
+
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withTimeout
+import mu.KotlinLogging
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+private val logger = KotlinLogging.logger {}
+
+/**
+ * Runs the tool calls of one model turn, concurrently unless the request turned parallel tool
+ * calls off.
+ *
+ * At most [maxConcurrency] calls of a turn run at once and each is given [toolTimeout]. Results
+ * are returned by call index, whatever order the calls finish in. A call that ends the turn, such
+ * as image generation, cancels the calls still running and their results are dropped; in sequential
+ * mode the calls after it are not started.
+ */
+class ToolCallExecutor(
+    private val maxConcurrency: Int = DEFAULT_MAX_CONCURRENCY,
+    val toolTimeout: Duration = DEFAULT_TOOL_TIMEOUT,
+) {
+    init {
+        require(maxConcurrency > 0) { "Tool call concurrency must be positive" }
+    }
+
+    /**
+     * The result of one tool call and whether it ends the turn.
+     */
+    data class Outcome<T>(
+        val value: T,
+        val terminal: Boolean = false,
+    )
+
+    /**
+     * Runs calls `0 until count`.
+     *
+     * @param parallel Whether the calls may run concurrently
+     * @param onTimeout The result of a call that did not finish within [toolTimeout]
+     * @param onCancelled Told of each call that had started when another call ended the turn, so it
+     *   can be reported as ended
+     * @return The result of each call by index, or null for a call cancelled or skipped because
+     *   another call ended the turn
+     */
+    suspend fun <T> execute(
+        count: Int,
+        parallel: Boolean,
+        onTimeout: suspend (index: Int) -> T,
+        onCancelled: suspend (index: Int) -> Unit = {},
+        call: suspend (index: Int) -> Outcome<T>,
+    ): List<T?> {
+        val results = AtomicReferenceArray<T>(count)
+
+        if (!parallel || maxConcurrency == 1 || count <= 1) {
+            for (index in 0 until count) {
+                val outcome = timed(index, onTimeout, call)
+                results.set(index, outcome.value)
+                if (outcome.terminal) break
+            }
+        } else {
+            val permits = Semaphore(maxConcurrency)
+            val states = AtomicIntegerArray(count)
+            coroutineScope {
+                // Started once all are created, so a terminal call can cancel any sibling
+                val jobs = ArrayList<Job>(count)
+                for (index in 0 until count) {
+                    jobs +=
+                        launch(start = CoroutineStart.LAZY) {
+                            permits.withPermit {
+                                states.set(index, RUNNING)
+                                val outcome = timed(index, onTimeout, call)
+                                results.set(index, outcome.value)
+                                states.set(index, DONE)
+                                // Cancelled while the permit is held, so no waiting call starts in between
+                                if (outcome.terminal) {
+                                    logger.debug { "Tool call $index ended the turn, cancelling the calls still running" }
+                                    jobs.forEachIndexed { sibling, job -> if (sibling != index) job.cancel() }
+                                }
+                            }
+                        }
+                }
+                jobs.forEach { it.start() }
+            }
+            // Only a terminal call leaves calls running once every job has ended
+            for (index in 0 until count) {
+                if (states.get(index) == RUNNING) onCancelled(index)
+            }
+        }
+
+        return List(count) { results.get(it) }
+    }
+
+    private suspend fun <T> timed(
+        index: Int,
+        onTimeout: suspend (index: Int) -> T,
+        call: suspend (index: Int) -> Outcome<T>,
+    ): Outcome<T> =
+        try {
+            withTimeout(toolTimeout.toMillis()) { call(index) }
+        } catch (e: TimeoutCancellationException) {
+            logger.warn { "Tool call $index did not finish within ${toolTimeout.seconds}s" }
+            Outcome(onTimeout(index))
+        }
+
+    companion object {
+        const val DEFAULT_MAX_CONCURRENCY = 8
+        private const val RUNNING = 1
+        private const val DONE = 2
+        val DEFAULT_TOOL_TIMEOUT: Duration = Duration.ofMinutes(3)
+    }
+}
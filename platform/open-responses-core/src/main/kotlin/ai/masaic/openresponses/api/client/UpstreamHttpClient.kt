@@ -0,0 +1,188 @@
+package ai.masaic.openresponses.api.client
+
+import com.openai.core.RequestOptions
+import com.openai.core.Timeout
+import com.openai.core.http.Headers
+import com.openai.core.http.HttpClient
+import com.openai.core.http.HttpMethod
+import com.openai.core.http.HttpRequest
+import com.openai.core.http.HttpRequestBody
+import com.openai.core.http.HttpResponse
+import com.openai.errors.OpenAIIoException
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.HttpUrl
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.MediaType
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.RequestBody
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.Response
+import okio.BufferedSink
+import java.io.IOException
+import java.io.InputStream
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Limits of the OkHttp dispatcher and connection pool shared by every upstream LLM client.
+ */
+data class UpstreamHttpSettings(
+    // Concurrent asynchronous calls across all providers; more are queued by the dispatcher
+    val maxRequests: Int = 256,
+    // Concurrent asynchronous calls to one provider host
+    val maxRequestsPerHost: Int = 256,
+    val maxIdleConnections: Int = 32,
+    val keepAlive: Duration = Duration.ofMinutes(5),
+    val http2Enabled: Boolean = true,
+) {
+    /**
+     * Builds the OkHttp client owning the dispatcher and connection pool.
+     */
+    fun okHttpClient(): OkHttpClient {
+        val timeout = Timeout.default()
+        return OkHttpClient
+            .Builder()
+            .dispatcher(
+                Dispatcher().apply {
+                    maxRequests = this@UpstreamHttpSettings.maxRequests
+                    maxRequestsPerHost = this@UpstreamHttpSettings.maxRequestsPerHost
+                },
+            ).connectionPool(ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+            .protocols(if (http2Enabled) listOf(Protocol.HTTP_2, Protocol.HTTP_1_1) else listOf(Protocol.HTTP_1_1))
+            .connectTimeout(timeout.connect())
+            .readTimeout(timeout.read())
+            .writeTimeout(timeout.write())
+            .callTimeout(timeout.request())
+            .build()
+    }
+}
+
+/**
+ * [HttpClient] for one provider base URL on top of a shared [OkHttpClient].
+ *
+ * Unlike the SDK's own client, the dispatcher and connection pool are not owned by this client but by
+ * the [LlmClientRegistry], so closing it leaves them to the other providers.
+ */
+class UpstreamHttpClient(
+    private val okHttpClient: OkHttpClient,
+    baseUrl: String,
+) : HttpClient {
+    private val baseUrl: HttpUrl = baseUrl.toHttpUrl()
+
+    override fun execute(
+        request: HttpRequest,
+        requestOptions: RequestOptions,
+    ): HttpResponse =
+        try {
+            newCall(request, requestOptions).execute().toResponse()
+        } catch (e: IOException) {
+            throw OpenAIIoException("Request failed", e)
+        } finally {
+            request.body?.close()
+        }
+
+    override fun executeAsync(
+        request: HttpRequest,
+        requestOptions: RequestOptions,
+    ): CompletableFuture<HttpResponse> {
+        val future = CompletableFuture<HttpResponse>()
+        request.body?.let { body -> future.whenComplete { _, _ -> body.close() } }
+        newCall(request, requestOptions).enqueue(
+            object : Callback {
+                override fun onResponse(
+                    call: Call,
+                    response: Response,
+                ) {
+                    future.complete(response.toResponse())
+                }
+
+                override fun onFailure(
+                    call: Call,
+                    e: IOException,
+                ) {
+                    future.completeExceptionally(OpenAIIoException("Request failed", e))
+                }
+            },
+        )
+        return future
+    }
+
+    override fun close() {
+        // The shared dispatcher and connection pool are closed with the registry
+    }
+
+    private fun newCall(
+        request: HttpRequest,
+        requestOptions: RequestOptions,
+    ): Call {
+        // A derived client shares the dispatcher and connection pool
+        val client =
+            requestOptions.timeout?.let { timeout ->
+                okHttpClient
+                    .newBuilder()
+                    .connectTimeout(timeout.connect())
+                    .readTimeout(timeout.read())
+                    .writeTimeout(timeout.write())
+                    .callTimeout(timeout.request())
+                    .build()
+            } ?: okHttpClient
+        return client.newCall(request.toRequest())
+    }
+
+    private fun HttpRequest.toRequest(): Request {
+        val body = body?.toRequestBody() ?: if (method.requiresBody()) "".toRequestBody() else null
+        val builder = Request.Builder().url(toUrl()).method(method.name, body)
+        headers.names().forEach { name -> headers.values(name).forEach { builder.addHeader(name, it) } }
+        return builder.build()
+    }
+
+    private fun HttpMethod.requiresBody(): Boolean = this == HttpMethod.POST || this == HttpMethod.PUT || this == HttpMethod.PATCH
+
+    private fun HttpRequest.toUrl(): String {
+        url?.let { return it }
+        val builder = baseUrl.newBuilder()
+        pathSegments.forEach(builder::addPathSegment)
+        queryParams.keys().forEach { key -> queryParams.values(key).forEach { builder.addQueryParameter(key, it) } }
+        return builder.toString()
+    }
+
+    private fun HttpRequestBody.toRequestBody(): RequestBody {
+        val mediaType = contentType()?.toMediaType()
+        val length = contentLength()
+        val repeatable = repeatable()
+        return object : RequestBody() {
+            override fun contentType(): MediaType? = mediaType
+
+            override fun contentLength(): Long = length
+
+            override fun isOneShot(): Boolean = !repeatable
+
+            override fun writeTo(sink: BufferedSink) = this@toRequestBody.writeTo(sink.outputStream())
+        }
+    }
+
+    private fun Response.toResponse(): HttpResponse {
+        val responseHeaders =
+            Headers
+                .builder()
+                .apply { headers.forEach { (name, value) -> put(name, value) } }
+                .build()
+        val responseBody = body!!
+        return object : HttpResponse {
+            override fun statusCode(): Int = code
+
+            override fun headers(): Headers = responseHeaders
+
+            override fun body(): InputStream = responseBody.byteStream()
+
+            override fun close() = responseBody.close()
+        }
+    }
+}
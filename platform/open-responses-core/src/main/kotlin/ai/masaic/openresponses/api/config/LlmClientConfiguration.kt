@@ -0,0 +1,52 @@
+package ai.masaic.openresponses.api.config
+
+import ai.masaic.openresponses.api.client.LlmClientRegistry
+import ai.masaic.openresponses.api.client.UpstreamHttpSettings
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.boot.context.properties.EnableConfigurationProperties
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+/**
+ * Configuration properties for the shared upstream LLM clients.
+ */
+@ConfigurationProperties(prefix = "open-responses.llm.client")
+data class LlmClientProperties(
+    // Maximum number of provider base URLs with a shared client
+    val maxClients: Long = LlmClientRegistry.DEFAULT_MAX_CLIENTS,
+    // Seconds a shared client may go unused before it and its connections are closed
+    val idleTimeoutSeconds: Long = LlmClientRegistry.DEFAULT_IDLE_TIMEOUT.seconds,
+    // Concurrent asynchronous upstream calls across all providers, and to one provider host
+    val maxRequests: Int = 256,
+    val maxRequestsPerHost: Int = 256,
+    // Idle connections kept open across all providers, and for how long
+    val maxIdleConnections: Int = 32,
+    val keepAliveSeconds: Long = 300,
+    // Negotiate HTTP/2 with providers that support it
+    val http2Enabled: Boolean = true,
+)
+
+@Configuration
+@EnableConfigurationProperties(LlmClientProperties::class)
+class LlmClientConfiguration {
+    @Bean
+    @ConditionalOnMissingBean
+    fun llmClientRegistry(
+        properties: LlmClientProperties,
+        meterRegistry: MeterRegistry,
+    ) = LlmClientRegistry(
+        properties.maxClients,
+        Duration.ofSeconds(properties.idleTimeoutSeconds),
+        meterRegistry,
+        UpstreamHttpSettings(
+            maxRequests = properties.maxRequests,
+            maxRequestsPerHost = properties.maxRequestsPerHost,
+            maxIdleConnections = properties.maxIdleConnections,
+            keepAlive = Duration.ofSeconds(properties.keepAliveSeconds),
+            http2Enabled = properties.http2Enabled,
+        ),
+    )
+}
@@ -94,13 +94,31 @@ data class VectorSearchConfigProperties(
      */
     val collectionName: String = "open-responses",
     /**
-     * Default chunk size for text chunking.
+     * Default chunk size for text chunking, in characters. Used when no chunking strategy is given.
      */
     val chunkSize: Int = 1000,
     /**
-     * Default chunk overlap for text chunking.
+     * Default chunk overlap for text chunking, in characters. Used when no chunking strategy is given.
      */
     val chunkOverlap: Int = 200,
+    /**
+     * Chunk size in tokens of the token-aware chunking strategies that set no `static` sizes.
+     * About [chunkSize] characters, and within the 256-token input of the local embedding model.
+     */
+    val chunkMaxTokens: Int = 250,
+    /**
+     * Chunk overlap in tokens of the token-aware chunking strategies that set no `static` sizes.
+     */
+    val chunkOverlapTokens: Int = 50,
+    /**
+     * Tokenizer that measures the token-aware chunking strategies: `bundled` (the local embedding
+     * model's tokenizer), `estimate` (four characters per token), or the path of a `tokenizer.json`.
+     */
+    val chunkTokenizer: String = "bundled",
+    /**
+     * How often the last active time of searched or read vector stores is written.
+     */
+    val activityFlushIntervalMillis: Long = 10_000,
     /**
      * Default vector dimension for embeddings.
      */
@@ -109,7 +127,186 @@ data class VectorSearchConfigProperties(
      * Path for file-based vector store.
      */
     val filePath: String = "data/vectors",
-)
+    /**
+     * HNSW index settings for the file-based vector search provider.
+     */
+    val hnsw: HnswConfig = HnswConfig(),
+    /**
+     * Quantization settings for the file-based vector search provider.
+     */
+    val quantization: QuantizationConfig = QuantizationConfig(),
+    /**
+     * Lucene full-text index settings used by hybrid search with the file repository.
+     */
+    val lucene: LuceneConfig = LuceneConfig(),
+    /**
+     * Fan-out settings for hybrid search.
+     */
+    val hybrid: HybridConfig = HybridConfig(),
+    /**
+     * Embedding batch settings used while indexing files.
+     */
+    val indexing: IndexingConfig = IndexingConfig(),
+    /**
+     * Queue settings for the background indexing of vector store files.
+     */
+    val ingestion: IngestionConfig = IngestionConfig(),
+) {
+    /**
+     * Configuration for the in-memory HNSW index.
+     */
+    data class HnswConfig(
+        /**
+         * Maximum neighbours per node on upper layers; layer 0 keeps twice as many.
+         */
+        val m: Int = 16,
+        /**
+         * Candidate list size while inserting. Higher values build a better graph more slowly.
+         */
+        val efConstruction: Int = 200,
+        /**
+         * Candidate list size while searching. This is the recall/latency knob.
+         */
+        val efSearch: Int = 64,
+        /**
+         * Fraction of deleted nodes at which the graph is rebuilt from the live chunks.
+         */
+        val rebuildDeletedRatio: Double = 0.3,
+    )
+
+    /**
+     * Configuration for quantized first-pass scoring.
+     */
+    data class QuantizationConfig(
+        /**
+         * Default mode for vector stores without a `quantization` metadata entry: none, int8 or binary.
+         */
+        val mode: String = "none",
+        /**
+         * Number of quantized candidates re-scored in full precision, as a multiple of the requested results.
+         */
+        val rescoreMultiplier: Int = 4,
+    )
+
+    /**
+     * Configuration for the long-lived Lucene writer and its near-real-time searchers.
+     */
+    data class LuceneConfig(
+        /**
+         * Seconds between background commits of pending changes to disk.
+         */
+        val commitIntervalSeconds: Long = 30,
+        /**
+         * Upper bound in milliseconds on how stale a searcher may get while nobody waits for a write.
+         */
+        val maxStaleMillis: Long = 1000,
+        /**
+         * Delay in milliseconds before reopening when a write is waiting to become visible.
+         */
+        val minStaleMillis: Long = 25,
+        /**
+         * Size of the writer's in-memory buffer before it flushes a segment.
+         */
+        val ramBufferSizeMb: Double = 64.0,
+        /**
+         * Percentage of deleted documents the merge policy tolerates before it prefers merging away deletes.
+         */
+        val deletesPctAllowed: Double = 10.0,
+        /**
+         * Deleted-document ratio at which the periodic commit also starts a background merge of deletes.
+         */
+        val expungeDeletesRatio: Double = 0.25,
+    )
+
+    /**
+     * Configuration for the concurrent retrieval legs of hybrid search.
+     * A leg that misses its timeout is dropped and the search continues with the others.
+     */
+    data class HybridConfig(
+        /**
+         * Maximum number of legs running at once across all hybrid searches.
+         */
+        val parallelism: Int = 16,
+        /**
+         * Timeout in milliseconds for the vector similarity leg.
+         */
+        val vectorTimeoutMillis: Long = 5000,
+        /**
+         * Timeout in milliseconds for the Lucene full-text leg.
+         */
+        val luceneTimeoutMillis: Long = 2000,
+        /**
+         * Timeout in milliseconds for the MongoDB full-text leg.
+         */
+        val mongoTimeoutMillis: Long = 2000,
+        /**
+         * Default fusion of the vector and text legs: linear, rrf, rrf:<k> or zscore.
+         * Overridden per vector store by a `fusion` metadata entry and per request.
+         */
+        val fusion: String = "linear",
+        /**
+         * Seconds a vector store's `fusion` metadata is cached before it is read again.
+         */
+        val fusionCacheSeconds: Long = 60,
+    )
+
+    /**
+     * Configuration for the embedding batches sent while a file is indexed.
+     * Batches are sized by estimated tokens, sent concurrently and written as each completes.
+     */
+    data class IndexingConfig(
+        /**
+         * Estimated token budget of one embedding request, at about four characters per token.
+         */
+        val maxBatchTokens: Int = 100_000,
+        /**
+         * Maximum number of chunks in one embedding request.
+         */
+        val maxBatchSize: Int = 256,
+        /**
+         * Number of embedding requests in flight at once for a single file.
+         */
+        val concurrency: Int = 4,
+        /**
+         * Retries of a rate-limited (HTTP 429) embedding request before the file fails.
+         */
+        val maxRetries: Int = 5,
+        /**
+         * Backoff in milliseconds before the first retry, doubled on each further retry.
+         */
+        val initialBackoffMillis: Long = 500,
+        /**
+         * Upper bound in milliseconds on the backoff between retries.
+         */
+        val maxBackoffMillis: Long = 30_000,
+    )
+
+    /**
+     * Configuration for the queue that feeds vector store files to the indexing workers.
+     */
+    data class IngestionConfig(
+        /**
+         * Number of files indexed at once.
+         */
+        val workers: Int = 4,
+        /**
+         * Maximum number of files waiting for a worker.
+         */
+        val capacity: Int = 1000,
+        /**
+         * How long in milliseconds adding a file waits for room in a full queue before it is rejected.
+         */
+        val enqueueTimeoutMillis: Long = 5000,
+        /**
+         * Files up to this many bytes are indexed before larger files of the same tenant.
+         */
+        val smallFileBytes: Long = 1_048_576,
+        /**
+         * Whether files left in_progress by a previous run are queued again on startup.
+         */
+        val resumeOnStartup: Boolean = true,
+    )
+}
 
 /**
  * Properties for Qdrant vector database configuration.
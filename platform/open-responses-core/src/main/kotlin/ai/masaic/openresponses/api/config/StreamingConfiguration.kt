@@ -0,0 +1,43 @@
+package ai.masaic.openresponses.api.config
+
+import ai.masaic.openresponses.api.client.StreamBackpressure
+import ai.masaic.openresponses.api.client.StreamOverflowPolicy
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.boot.context.properties.EnableConfigurationProperties
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+/**
+ * Configuration properties for buffering the server-sent events of response streams.
+ */
+@ConfigurationProperties(prefix = "open-responses.streaming")
+data class StreamingProperties(
+    // Events buffered per stream for a client that reads slower than the model writes
+    val bufferCapacity: Int = StreamBackpressure.DEFAULT_CAPACITY,
+    // What a full buffer does: suspend the model stream, coalesce text and argument deltas, or fail the stream
+    val overflowPolicy: String = StreamOverflowPolicy.SUSPEND.value,
+    // Milliseconds over which consecutive deltas of an item are merged into one event; 0 sends every delta
+    val coalesceWindowMillis: Long = 0,
+    // Characters at which merged deltas are sent before the window closes
+    val coalesceMaxChars: Int = StreamBackpressure.DEFAULT_COALESCE_MAX_CHARS,
+)
+
+@Configuration
+@EnableConfigurationProperties(StreamingProperties::class)
+class StreamingConfiguration {
+    @Bean
+    @ConditionalOnMissingBean
+    fun streamBackpressure(
+        properties: StreamingProperties,
+        meterRegistry: MeterRegistry,
+    ) = StreamBackpressure(
+        properties.bufferCapacity,
+        StreamOverflowPolicy.from(properties.overflowPolicy),
+        meterRegistry,
+        Duration.ofMillis(properties.coalesceWindowMillis),
+        properties.coalesceMaxChars,
+    )
+}
@@ -0,0 +1,28 @@
+package ai.masaic.openresponses.api.config
+
+import ai.masaic.openresponses.api.client.ToolCallExecutor
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.boot.context.properties.EnableConfigurationProperties
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+/**
+ * Configuration properties for executing the tool calls of a model turn.
+ */
+@ConfigurationProperties(prefix = "open-responses.tool.execution")
+data class ToolExecutionProperties(
+    // Tool calls of one model turn that may run at once; 1 runs them one after another
+    val maxConcurrentCalls: Int = ToolCallExecutor.DEFAULT_MAX_CONCURRENCY,
+    // Seconds a tool call may take before it is given up with an error output
+    val timeoutSeconds: Long = ToolCallExecutor.DEFAULT_TOOL_TIMEOUT.seconds,
+)
+
+@Configuration
+@EnableConfigurationProperties(ToolExecutionProperties::class)
+class ToolExecutionConfiguration {
+    @Bean
+    @ConditionalOnMissingBean
+    fun toolCallExecutor(properties: ToolExecutionProperties) = ToolCallExecutor(properties.maxConcurrentCalls, Duration.ofSeconds(properties.timeoutSeconds))
+}
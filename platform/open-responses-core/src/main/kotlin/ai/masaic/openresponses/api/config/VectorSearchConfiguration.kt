@@ -6,6 +6,9 @@ import ai.masaic.openresponses.api.service.embedding.EmbeddingService
 import ai.masaic.openresponses.api.service.rerank.RerankerService
 import ai.masaic.openresponses.api.service.search.*
 import ai.masaic.openresponses.api.support.service.TelemetryService
+import ai.masaic.openresponses.api.utils.TokenCounter
+import ai.masaic.openresponses.api.utils.TokenCounters
+import io.micrometer.core.instrument.MeterRegistry
 import io.qdrant.client.QdrantClient
 import io.qdrant.client.QdrantGrpcClient
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
@@ -40,7 +43,10 @@ class VectorSearchConfiguration {
         luceneIndexService: LuceneIndexService? = null,
         mongoTemplate: ReactiveMongoTemplate? = null,
         rerankerService: RerankerService? = null,
-    ) = HybridSearchService(vectorSearchProvider, vectorRepositoryProperties, luceneIndexService, mongoTemplate, rerankerService)
+        vectorSearchProperties: VectorSearchConfigProperties,
+        meterRegistry: MeterRegistry,
+        vectorStoreRepository: VectorStoreRepository? = null,
+    ) = HybridSearchService(vectorSearchProvider, vectorRepositoryProperties, luceneIndexService, mongoTemplate, rerankerService, vectorSearchProperties, meterRegistry, vectorStoreRepository)
 
     @Bean
     @ConditionalOnProperty(name = ["open-responses.store.vector.search.provider"], havingValue = "qdrant")
@@ -51,7 +57,27 @@ class VectorSearchConfiguration {
         vectorSearchProperties: VectorSearchConfigProperties,
         hybridSearchServiceHelper: HybridSearchServiceHelper,
         client: QdrantClient,
-    ) = QdrantVectorSearchProvider(embeddingService, qdrantProperties, vectorSearchProperties, hybridSearchServiceHelper, client)
+        chunkTokenCounter: TokenCounter,
+    ) = QdrantVectorSearchProvider(embeddingService, qdrantProperties, vectorSearchProperties, hybridSearchServiceHelper, client, chunkTokenCounter)
+
+    // The bundled counter is shared with every chunker, so it is not closed with the context
+    @Bean(destroyMethod = "")
+    @ConditionalOnMissingBean
+    fun chunkTokenCounter(vectorSearchProperties: VectorSearchConfigProperties): TokenCounter = TokenCounters.from(vectorSearchProperties.chunkTokenizer)
+
+    @Bean
+    @ConditionalOnMissingBean
+    fun ingestionQueue(
+        vectorSearchProperties: VectorSearchConfigProperties,
+        meterRegistry: MeterRegistry,
+    ) = IngestionQueue(vectorSearchProperties.ingestion, meterRegistry)
+
+    @Bean
+    @ConditionalOnMissingBean
+    fun vectorStoreActivityTracker(
+        vectorStoreRepository: VectorStoreRepository,
+        vectorSearchProperties: VectorSearchConfigProperties,
+    ) = VectorStoreActivityTracker(vectorStoreRepository, vectorSearchProperties.activityFlushIntervalMillis)
 
     @Bean
     @ConditionalOnMissingBean
@@ -61,5 +87,17 @@ class VectorSearchConfiguration {
         vectorSearchProvider: VectorSearchProvider,
         telemetryService: TelemetryService,
         hybridSearchServiceHelper: HybridSearchServiceHelper,
-    ) = VectorStoreService(vectorStoreFileManager, vectorStoreRepository, vectorSearchProvider, telemetryService, hybridSearchServiceHelper)
+        ingestionQueue: IngestionQueue,
+        vectorSearchProperties: VectorSearchConfigProperties,
+        activityTracker: VectorStoreActivityTracker,
+    ) = VectorStoreService(
+        vectorStoreFileManager,
+        vectorStoreRepository,
+        vectorSearchProvider,
+        telemetryService,
+        hybridSearchServiceHelper,
+        ingestionQueue,
+        vectorSearchProperties.ingestion.resumeOnStartup,
+        activityTracker,
+    )
 }
@@ -96,6 +96,14 @@ class VectorIndexingException(
     cause: Throwable? = null,
 ) : VectorStoreException(message, cause)
 
+/**
+ * Exception thrown when the indexing queue has no room for another file.
+ */
+class IngestionQueueFullException(
+    message: String,
+    cause: Throwable? = null,
+) : OpenResponsesException(message, cause)
+
 abstract class HttpStatusCodeException(
     val httpStatusCode: String,
     message: String,
@@ -58,6 +58,7 @@ data class FileSearchTool(
  * @property enableFrequencyPenaltyTuning Optional flag to enable tuning
  * @property enableTemperatureTuning Optional flag to enable tuning
  * @property enableTopPTuning Optional flag to enable tuning
+ * @property fusion Optional hybrid search fusion: linear, rrf, rrf:<k> or zscore
  */
 data class AgenticSeachTool(
     override val type: String,
@@ -78,6 +79,7 @@ data class AgenticSeachTool(
     @JsonProperty("enable_top_p_tuning")
     val enableTopPTuning: Boolean? = null,
     val modelInfo: ModelInfo? = null,
+    val fusion: String? = null,
 ) : Tool
 
 data class PyFunTool(
@@ -167,6 +167,28 @@ data class VectorStoreFile(
      * Attributes for the file.
      */
     val attributes: Map<String, Any>? = null,
+    /**
+     * How far indexing of the file has got; live while in_progress, final once completed.
+     */
+    @JsonProperty("indexing_progress")
+    val indexingProgress: IndexingProgress? = null,
+)
+
+/**
+ * Indexing progress of a vector store file.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+data class IndexingProgress(
+    /**
+     * The number of chunks embedded and written to the vector store so far.
+     */
+    @JsonProperty("embedded_chunks")
+    val embeddedChunks: Int = 0,
+    /**
+     * The total number of chunks in the file, or null while the file is still being parsed.
+     */
+    @JsonProperty("total_chunks")
+    val totalChunks: Int? = null,
 )
 
 /**
@@ -1,7 +1,10 @@
 package ai.masaic.openresponses.api.repository
 
+import ai.masaic.openresponses.api.model.FileCounts
 import ai.masaic.openresponses.api.model.VectorStore
 import ai.masaic.openresponses.api.model.VectorStoreFile
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -12,6 +15,9 @@ import org.slf4j.LoggerFactory
 abstract class AbstractVectorStoreRepository : VectorStoreRepository {
     protected open val log: Logger = LoggerFactory.getLogger(this::class.java)
 
+    // Serializes the read-modify-write updates of the default implementations
+    private val updateLock = Mutex()
+
     /**
      * Template method for listing vector stores with common validation and filtering logic.
      */
@@ -62,6 +68,89 @@ abstract class AbstractVectorStoreRepository : VectorStoreRepository {
         return applyPaginationAndOrder(filteredFiles, validatedLimit, validatedOrder, after, before)
     }
 
+    /**
+     * Scans the files of every vector store for the given status.
+     */
+    override suspend fun findVectorStoreFilesByStatus(status: String): List<VectorStoreFile> =
+        fetchAllVectorStores().flatMap { vectorStore ->
+            fetchAllVectorStoreFiles(vectorStore.id).filter { it.status == status }
+        }
+
+    /**
+     * Reads, adjusts and saves the vector store; concurrent increments of this repository are serialized.
+     */
+    override suspend fun incrementFileCounts(
+        vectorStoreId: String,
+        delta: FileCounts,
+        bytes: Long,
+    ): VectorStore? =
+        updateLock.withLock {
+            val vectorStore = findVectorStoreById(vectorStoreId) ?: return@withLock null
+            val counts = vectorStore.fileCounts
+            saveVectorStore(
+                vectorStore.copy(
+                    bytes = vectorStore.bytes + bytes,
+                    fileCounts =
+                        FileCounts(
+                            inProgress = counts.inProgress + delta.inProgress,
+                            completed = counts.completed + delta.completed,
+                            failed = counts.failed + delta.failed,
+                            cancelled = counts.cancelled + delta.cancelled,
+                            total = counts.total + delta.total,
+                        ),
+                ),
+            )
+        }
+
+    /**
+     * Reads and saves the vector store if the time moves forward.
+     */
+    override suspend fun updateLastActiveAt(
+        vectorStoreId: String,
+        lastActiveAt: Long,
+    ) {
+        updateLock.withLock {
+            val vectorStore = findVectorStoreById(vectorStoreId) ?: return@withLock
+            if ((vectorStore.lastActiveAt ?: 0L) < lastActiveAt) {
+                saveVectorStore(vectorStore.copy(lastActiveAt = lastActiveAt))
+            }
+        }
+    }
+
+    /**
+     * Reads the vector store and saves it with the new status.
+     */
+    override suspend fun updateVectorStoreStatus(
+        vectorStoreId: String,
+        status: String,
+    ): VectorStore? =
+        updateLock.withLock {
+            val vectorStore = findVectorStoreById(vectorStoreId) ?: return@withLock null
+            saveVectorStore(vectorStore.copy(status = status))
+        }
+
+    /**
+     * Reads the vector store and saves it with the new details.
+     */
+    override suspend fun updateVectorStoreDetails(
+        vectorStoreId: String,
+        name: String?,
+        metadata: Map<String, String>?,
+        expiresAt: Long?,
+        lastActiveAt: Long,
+    ): VectorStore? =
+        updateLock.withLock {
+            val vectorStore = findVectorStoreById(vectorStoreId) ?: return@withLock null
+            saveVectorStore(
+                vectorStore.copy(
+                    name = name,
+                    metadata = metadata,
+                    expiresAt = expiresAt,
+                    lastActiveAt = maxOf(vectorStore.lastActiveAt ?: 0L, lastActiveAt),
+                ),
+            )
+        }
+
     /**
      * Fetch all vector stores from the storage.
      * Implemented by concrete subclasses.
@@ -77,7 +166,7 @@ abstract class AbstractVectorStoreRepository : VectorStoreRepository {
     /**
      * Validates the limit parameter.
      */
-    private fun validateLimit(limit: Int): Int =
+    protected fun validateLimit(limit: Int): Int =
         when {
             limit <= 0 -> 20 // Default
             limit > 100 -> 100 // Max
@@ -87,7 +176,7 @@ abstract class AbstractVectorStoreRepository : VectorStoreRepository {
     /**
      * Validates the order parameter.
      */
-    private fun validateOrder(order: String): String =
+    protected fun validateOrder(order: String): String =
         if (order.equals("asc", ignoreCase = true) || order.equals("desc", ignoreCase = true)) {
             order.lowercase()
         } else {
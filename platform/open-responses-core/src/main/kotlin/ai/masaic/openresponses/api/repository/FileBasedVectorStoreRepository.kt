@@ -3,6 +3,7 @@ package ai.masaic.openresponses.api.repository
 import ai.masaic.openresponses.api.config.FileStorageProperties
 import ai.masaic.openresponses.api.model.VectorStore
 import ai.masaic.openresponses.api.model.VectorStoreFile
+import ai.masaic.openresponses.api.utils.SortedManifest
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.module.kotlin.readValue
 import kotlinx.coroutines.Dispatchers
@@ -15,6 +16,7 @@ import org.springframework.stereotype.Repository
 import java.io.File
 import java.nio.file.Files
 import java.nio.file.Paths
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * File-based implementation of VectorStoreRepository.
@@ -22,6 +24,9 @@ import java.nio.file.Paths
  * This implementation stores vector store metadata and vector store file metadata as JSON files on the filesystem.
  * It does not handle the actual file content, which is managed by FileStorageService.
  * 
+ * Listing pages through [SortedManifest]s of the vector stores and of the files of each vector
+ * store, so a page only reads the records it returns.
+ *
  * This is the default implementation when MongoDB is not explicitly enabled.
  */
 @Repository
@@ -39,12 +44,59 @@ class FileBasedVectorStoreRepository(
     private val vectorStoreFilesDir: String
         get() = "${fileStorageProperties.getRootDirectory()}/vector_store_files"
 
+    private val manifestsDir: String
+        get() = "${fileStorageProperties.getRootDirectory()}/vector_store_manifests"
+
     init {
         // Ensure the directories exist
         Files.createDirectories(Paths.get(vectorStoresDir))
         Files.createDirectories(Paths.get(vectorStoreFilesDir))
+        Files.createDirectories(Paths.get(manifestsDir))
+    }
+
+    private val vectorStoreManifest by lazy {
+        SortedManifest(Paths.get(manifestsDir, "vector_stores.jsonl"), objectMapper) {
+            readAll(vectorStoresDir, { it.extension == "json" }) { objectMapper.readValue<VectorStore>(it) }
+                .map { SortedManifest.Entry(it.id, it.createdAt) }
+        }
     }
 
+    private val fileManifests = ConcurrentHashMap<String, SortedManifest>()
+
+    /**
+     * The manifest of the files of a vector store, tagged with their status.
+     */
+    private fun fileManifest(vectorStoreId: String): SortedManifest =
+        fileManifests.computeIfAbsent(vectorStoreId) {
+            SortedManifest(Paths.get(manifestsDir, "files-$vectorStoreId.jsonl"), objectMapper) {
+                readAll(vectorStoreFilesDir, { it.extension == "json" && it.nameWithoutExtension.startsWith("$vectorStoreId-") }) {
+                    objectMapper.readValue<VectorStoreFile>(it)
+                }.map { fileEntry(it) }
+            }
+        }
+
+    private fun fileEntry(vectorStoreFile: VectorStoreFile) =
+        SortedManifest.Entry(vectorStoreFile.id, vectorStoreFile.createdAt, vectorStoreFile.status)
+
+    /**
+     * Reads every record in a directory, skipping unreadable ones.
+     */
+    private fun <T> readAll(
+        dir: String,
+        accept: (File) -> Boolean,
+        read: (ByteArray) -> T,
+    ): List<T> =
+        File(dir)
+            .listFiles { file -> file.isFile && accept(file) }
+            ?.mapNotNull { file ->
+                try {
+                    read(Files.readAllBytes(file.toPath()))
+                } catch (e: Exception) {
+                    log.error("Error reading record from file ${file.name}", e)
+                    null
+                }
+            } ?: emptyList()
+
     override suspend fun saveVectorStore(vectorStore: VectorStore): VectorStore =
         withContext(Dispatchers.IO) {
             val filePath = Paths.get(vectorStoresDir, "${vectorStore.id}.json")
@@ -59,6 +111,7 @@ class FileBasedVectorStoreRepository(
                 
                 val json = objectMapper.writeValueAsString(vectorStore)
                 Files.write(filePath, json.toByteArray())
+                vectorStoreManifest.put(SortedManifest.Entry(vectorStore.id, vectorStore.createdAt))
                 log.debug("Saved vector store metadata ${vectorStore.id} with status ${vectorStore.status}")
                 vectorStore
             } catch (e: Exception) {
@@ -95,6 +148,7 @@ class FileBasedVectorStoreRepository(
             try {
                 // Delete the vector store metadata file
                 Files.delete(filePath)
+                vectorStoreManifest.remove(vectorStoreId)
             
                 // Delete all associated vector store file metadata
                 val storeFilesDir = File(vectorStoreFilesDir)
@@ -106,6 +160,8 @@ class FileBasedVectorStoreRepository(
                             file.delete()
                         }
                 }
+                fileManifest(vectorStoreId).delete()
+                fileManifests.remove(vectorStoreId)
             
                 log.info("Deleted vector store metadata $vectorStoreId")
                 true
@@ -129,6 +185,7 @@ class FileBasedVectorStoreRepository(
                 
                 val json = objectMapper.writeValueAsString(vectorStoreFile)
                 Files.write(filePath, json.toByteArray())
+                fileManifest(vectorStoreFile.vectorStoreId).put(fileEntry(vectorStoreFile))
                 log.info("Saved vector store file metadata ${vectorStoreFile.id} for vector store ${vectorStoreFile.vectorStoreId}")
                 vectorStoreFile
             } catch (e: Exception) {
@@ -170,6 +227,7 @@ class FileBasedVectorStoreRepository(
         
             try {
                 Files.delete(filePath)
+                fileManifest(vectorStoreId).remove(fileId)
                 log.info("Deleted vector store file metadata $fileId from vector store $vectorStoreId")
                 true
             } catch (e: Exception) {
@@ -178,6 +236,56 @@ class FileBasedVectorStoreRepository(
             }
         }
 
+    /**
+     * Reads only the vector stores of the requested page, found through the manifest.
+     */
+    override suspend fun listVectorStores(
+        limit: Int,
+        order: String,
+        after: String?,
+        before: String?,
+    ): List<VectorStore> =
+        withContext(Dispatchers.IO) {
+            readPage(vectorStoreManifest, { vectorStoreManifest.page(validateLimit(limit), validateOrder(order), after, before) }) {
+                findVectorStoreById(it)
+            }
+        }
+
+    /**
+     * Reads only the files of the requested page, found and filtered by status through the manifest.
+     */
+    override suspend fun listVectorStoreFiles(
+        vectorStoreId: String,
+        limit: Int,
+        order: String,
+        after: String?,
+        before: String?,
+        filter: String?,
+    ): List<VectorStoreFile> =
+        withContext(Dispatchers.IO) {
+            val manifest = fileManifest(vectorStoreId)
+            readPage(manifest, {
+                manifest.page(validateLimit(limit), validateOrder(order), after, before) { filter == null || it.tag == filter }
+            }) { findVectorStoreFileById(vectorStoreId, it) }
+        }
+
+    /**
+     * Reads the records of a manifest page. Entries whose record has gone, such as one deleted
+     * outside this repository, are dropped from the manifest and the page is read again.
+     */
+    private suspend fun <T> readPage(
+        manifest: SortedManifest,
+        page: () -> List<SortedManifest.Entry>,
+        find: suspend (String) -> T?,
+    ): List<T> {
+        while (true) {
+            val entries = page()
+            val records = entries.map { find(it.id) }
+            if (records.all { it != null }) return records.filterNotNull()
+            entries.zip(records).filter { it.second == null }.forEach { manifest.remove(it.first.id) }
+        }
+    }
+
     /**
      * Fetch all vector stores from the file system.
      */
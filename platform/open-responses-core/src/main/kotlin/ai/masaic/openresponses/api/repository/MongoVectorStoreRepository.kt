@@ -1,17 +1,22 @@
 package ai.masaic.openresponses.api.repository
 
+import ai.masaic.openresponses.api.model.FileCounts
 import ai.masaic.openresponses.api.model.VectorStore
 import ai.masaic.openresponses.api.model.VectorStoreFile
 import kotlinx.coroutines.reactive.awaitFirst
 import kotlinx.coroutines.reactive.awaitFirstOrNull
 import kotlinx.coroutines.reactive.awaitSingle
+import org.bson.Document
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.data.domain.Sort
+import org.springframework.data.mongodb.core.FindAndModifyOptions
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate
 import org.springframework.data.mongodb.core.find
 import org.springframework.data.mongodb.core.findById
+import org.springframework.data.mongodb.core.index.Index
 import org.springframework.data.mongodb.core.query.Criteria
 import org.springframework.data.mongodb.core.query.Query
+import org.springframework.data.mongodb.core.query.Update
 import org.springframework.data.mongodb.core.remove
 import org.springframework.stereotype.Repository
 
@@ -20,6 +25,9 @@ import org.springframework.stereotype.Repository
  *
  * This implementation stores vector store metadata and vector store file metadata in MongoDB.
  * It does not handle the actual file content, which is managed by FileStorageService.
+ *
+ * Lists are paged in the database with cursor queries on (createdAt, _id), backed by compound indexes
+ * ensured at startup.
  * 
  * It is only enabled when open-responses.store.vector.repository.type=mongodb
  */
@@ -33,6 +41,30 @@ class MongoVectorStoreRepository(
         const val VECTOR_STORE_FILE_COLLECTION = "vector_store_files"
     }
 
+    init {
+        reactiveMongoTemplate
+            .indexOps(VECTOR_STORE_COLLECTION)
+            .ensureIndex(Index().on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC))
+            .subscribe()
+        reactiveMongoTemplate
+            .indexOps(VECTOR_STORE_FILE_COLLECTION)
+            .ensureIndex(
+                Index()
+                    .on("vectorStoreId", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC),
+            ).subscribe()
+        reactiveMongoTemplate
+            .indexOps(VECTOR_STORE_FILE_COLLECTION)
+            .ensureIndex(
+                Index()
+                    .on("vectorStoreId", Sort.Direction.ASC)
+                    .on("status", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC),
+            ).subscribe()
+    }
+
     override suspend fun saveVectorStore(vectorStore: VectorStore): VectorStore =
         try {
             reactiveMongoTemplate.save(vectorStore, VECTOR_STORE_COLLECTION).awaitFirst().also {
@@ -127,6 +159,195 @@ class MongoVectorStoreRepository(
             false
         }
 
+    /**
+     * Finds files by status with a query on the indexed status field.
+     */
+    override suspend fun findVectorStoreFilesByStatus(status: String): List<VectorStoreFile> =
+        try {
+            val query =
+                Query
+                    .query(Criteria.where("status").`is`(status))
+                    .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+            reactiveMongoTemplate.find<VectorStoreFile>(query, VECTOR_STORE_FILE_COLLECTION).collectList().awaitSingle()
+        } catch (e: Exception) {
+            log.error("Error fetching vector store files with status $status", e)
+            emptyList()
+        }
+
+    /**
+     * Applies the deltas with a single atomic `$inc`, so concurrent indexing workers never lose an update.
+     */
+    override suspend fun incrementFileCounts(
+        vectorStoreId: String,
+        delta: FileCounts,
+        bytes: Long,
+    ): VectorStore? =
+        try {
+            val update =
+                Update()
+                    .inc("bytes", bytes)
+                    .inc("fileCounts.inProgress", delta.inProgress)
+                    .inc("fileCounts.completed", delta.completed)
+                    .inc("fileCounts.failed", delta.failed)
+                    .inc("fileCounts.cancelled", delta.cancelled)
+                    .inc("fileCounts.total", delta.total)
+            modifyVectorStore(vectorStoreId, update)
+        } catch (e: Exception) {
+            log.error("Error updating file counts of vector store $vectorStoreId", e)
+            null
+        }
+
+    /**
+     * Moves lastActiveAt forward with `$max`, without rewriting the document.
+     */
+    override suspend fun updateLastActiveAt(
+        vectorStoreId: String,
+        lastActiveAt: Long,
+    ) {
+        try {
+            reactiveMongoTemplate
+                .updateFirst(
+                    Query.query(Criteria.where("_id").`is`(vectorStoreId)),
+                    Update().max("lastActiveAt", lastActiveAt),
+                    VECTOR_STORE_COLLECTION,
+                ).awaitFirst()
+        } catch (e: Exception) {
+            log.error("Error updating last active time of vector store $vectorStoreId", e)
+        }
+    }
+
+    /**
+     * Sets the status with `$set`, without rewriting the document.
+     */
+    override suspend fun updateVectorStoreStatus(
+        vectorStoreId: String,
+        status: String,
+    ): VectorStore? =
+        try {
+            modifyVectorStore(vectorStoreId, Update().set("status", status))
+        } catch (e: Exception) {
+            log.error("Error updating status of vector store $vectorStoreId", e)
+            null
+        }
+
+    /**
+     * Sets the details with `$set`, or `$unset` when absent, so concurrent file count increments are kept.
+     */
+    override suspend fun updateVectorStoreDetails(
+        vectorStoreId: String,
+        name: String?,
+        metadata: Map<String, String>?,
+        expiresAt: Long?,
+        lastActiveAt: Long,
+    ): VectorStore? =
+        try {
+            val update = Update().max("lastActiveAt", lastActiveAt)
+            mapOf("name" to name, "metadata" to metadata, "expiresAt" to expiresAt).forEach { (field, value) ->
+                if (value == null) update.unset(field) else update.set(field, value)
+            }
+            modifyVectorStore(vectorStoreId, update)
+        } catch (e: Exception) {
+            log.error("Error updating vector store $vectorStoreId", e)
+            null
+        }
+
+    private suspend fun modifyVectorStore(
+        vectorStoreId: String,
+        update: Update,
+    ): VectorStore? =
+        reactiveMongoTemplate
+            .findAndModify(
+                Query.query(Criteria.where("_id").`is`(vectorStoreId)),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                VectorStore::class.java,
+                VECTOR_STORE_COLLECTION,
+            ).awaitFirstOrNull()
+
+    /**
+     * Reads one page of vector stores with an indexed cursor query.
+     */
+    override suspend fun listVectorStores(
+        limit: Int,
+        order: String,
+        after: String?,
+        before: String?,
+    ): List<VectorStore> =
+        try {
+            page(VectorStore::class.java, VECTOR_STORE_COLLECTION, null, validateLimit(limit), validateOrder(order), after, before)
+        } catch (e: Exception) {
+            log.error("Error listing vector stores", e)
+            emptyList()
+        }
+
+    /**
+     * Reads one page of the files of a vector store with an indexed cursor query.
+     */
+    override suspend fun listVectorStoreFiles(
+        vectorStoreId: String,
+        limit: Int,
+        order: String,
+        after: String?,
+        before: String?,
+        filter: String?,
+    ): List<VectorStoreFile> =
+        try {
+            val scope = Criteria.where("vectorStoreId").`is`(vectorStoreId)
+            filter?.let { scope.and("status").`is`(it) }
+            page(VectorStoreFile::class.java, VECTOR_STORE_FILE_COLLECTION, scope, validateLimit(limit), validateOrder(order), after, before)
+        } catch (e: Exception) {
+            log.error("Error listing vector store files for $vectorStoreId", e)
+            emptyList()
+        }
+
+    /**
+     * Reads up to [limit] documents matching [scope] in (createdAt, _id) order after or before a cursor.
+     *
+     * A before page is read walking away from the cursor and reversed, so it is the page adjacent to
+     * the cursor. An unknown cursor returns nothing.
+     */
+    private suspend fun <T : Any> page(
+        type: Class<T>,
+        collection: String,
+        scope: Criteria?,
+        limit: Int,
+        order: String,
+        after: String?,
+        before: String?,
+    ): List<T> {
+        val ascending = order == "asc"
+        val cursorId = after ?: before
+        val backwards = after == null && before != null
+        // Forward through ascending order, or backwards through descending order, reads newer documents
+        val newer = ascending != backwards
+        val query = Query()
+        scope?.let { query.addCriteria(it) }
+        if (cursorId != null) {
+            val cursorQuery = Query.query(Criteria.where("_id").`is`(cursorId))
+            scope?.let { cursorQuery.addCriteria(it) }
+            cursorQuery.fields().include("createdAt")
+            val cursor =
+                reactiveMongoTemplate.findOne(cursorQuery, Document::class.java, collection).awaitFirstOrNull()
+                    ?: return emptyList()
+            val createdAt = (cursor["createdAt"] as Number).toLong()
+            query.addCriteria(
+                Criteria().orOperator(
+                    if (newer) Criteria.where("createdAt").gt(createdAt) else Criteria.where("createdAt").lt(createdAt),
+                    Criteria
+                        .where("createdAt")
+                        .`is`(createdAt)
+                        .and("_id")
+                        .let { if (newer) it.gt(cursorId) else it.lt(cursorId) },
+                ),
+            )
+        }
+        query
+            .with(Sort.by(if (newer) Sort.Direction.ASC else Sort.Direction.DESC, "createdAt", "_id"))
+            .limit(limit)
+        val page = reactiveMongoTemplate.find(query, type, collection).collectList().awaitSingle()
+        return if (backwards) page.asReversed() else page
+    }
+
     /**
      * Fetch all vector stores from MongoDB.
      */
@@ -1,5 +1,6 @@
 package ai.masaic.openresponses.api.repository
 
+import ai.masaic.openresponses.api.model.FileCounts
 import ai.masaic.openresponses.api.model.VectorStore
 import ai.masaic.openresponses.api.model.VectorStoreFile
 
@@ -89,6 +90,14 @@ interface VectorStoreRepository {
         filter: String? = null,
     ): List<VectorStoreFile>
 
+    /**
+     * Finds the files with a given status across all vector stores.
+     *
+     * @param status The file status, such as in_progress
+     * @return The matching vector store files
+     */
+    suspend fun findVectorStoreFilesByStatus(status: String): List<VectorStoreFile>
+
     /**
      * Deletes a vector store file.
      *
@@ -100,4 +109,60 @@ interface VectorStoreRepository {
         vectorStoreId: String,
         fileId: String,
     ): Boolean
-} 
+
+    /**
+     * Adds to the file counts and bytes of a vector store in a single update.
+     *
+     * @param vectorStoreId The ID of the vector store
+     * @param delta The change of each count, which may be negative
+     * @param bytes The change of the bytes used by the files
+     * @return The updated vector store, or null if the vector store doesn't exist
+     */
+    suspend fun incrementFileCounts(
+        vectorStoreId: String,
+        delta: FileCounts,
+        bytes: Long,
+    ): VectorStore?
+
+    /**
+     * Moves the last active time of a vector store forward; an earlier time is ignored.
+     *
+     * @param vectorStoreId The ID of the vector store
+     * @param lastActiveAt The Unix timestamp (in seconds) of the latest activity
+     */
+    suspend fun updateLastActiveAt(
+        vectorStoreId: String,
+        lastActiveAt: Long,
+    )
+
+    /**
+     * Sets the status of a vector store, leaving its other fields as stored.
+     *
+     * @param vectorStoreId The ID of the vector store
+     * @param status The new status
+     * @return The updated vector store, or null if the vector store doesn't exist
+     */
+    suspend fun updateVectorStoreStatus(
+        vectorStoreId: String,
+        status: String,
+    ): VectorStore?
+
+    /**
+     * Sets the name, metadata and expiry of a vector store and moves its last active time forward,
+     * leaving its file counts and bytes as stored.
+     *
+     * @param vectorStoreId The ID of the vector store
+     * @param name The new name
+     * @param metadata The new metadata
+     * @param expiresAt The new expiry, or null for none
+     * @param lastActiveAt The Unix timestamp (in seconds) of the update
+     * @return The updated vector store, or null if the vector store doesn't exist
+     */
+    suspend fun updateVectorStoreDetails(
+        vectorStoreId: String,
+        name: String?,
+        metadata: Map<String, String>?,
+        expiresAt: Long?,
+        lastActiveAt: Long,
+    ): VectorStore?
+}
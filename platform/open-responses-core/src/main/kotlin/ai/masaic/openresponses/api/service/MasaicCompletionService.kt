@@ -1,6 +1,7 @@
 package ai.masaic.openresponses.api.service
 
 import ai.masaic.openresponses.api.client.CompletionStore
+import ai.masaic.openresponses.api.client.LlmClientRegistry
 import ai.masaic.openresponses.api.client.MasaicOpenAiCompletionServiceImpl
 import ai.masaic.openresponses.api.extensions.isImageContent
 import ai.masaic.openresponses.api.model.CreateCompletionRequest
@@ -8,8 +9,6 @@ import ai.masaic.openresponses.api.model.InstrumentationMetadataInput
 import ai.masaic.openresponses.api.support.service.GenAIObsAttributes
 import ai.masaic.openresponses.api.support.service.TelemetryService
 import com.fasterxml.jackson.databind.ObjectMapper
-import com.openai.client.OpenAIClient
-import com.openai.client.okhttp.OpenAIOkHttpClient
 import com.openai.core.JsonValue
 import com.openai.core.http.Headers
 import com.openai.core.http.QueryParams
@@ -53,6 +52,7 @@ class MasaicCompletionService(
     private val completionStore: CompletionStore,
     private val objectMapper: ObjectMapper,
     private val telemetryService: TelemetryService,
+    private val clientRegistry: LlmClientRegistry = LlmClientRegistry(),
 ) {
     companion object {
         const val OPENAI_BASE_URL = "OPENAI_BASE_URL"
@@ -157,8 +157,8 @@ class MasaicCompletionService(
         val parentSpan = telemetryService.startOtelSpan("AgC chat completions loop", "", Span.current())
         val headerBuilder = createHeadersBuilder(headers)
         val queryBuilder = createQueryParamsBuilder(queryParams)
-        val client = createClient(headers, request.model)
         val messages = request.parseMessages(objectMapper)
+        val lease = leaseClient(headers, request.model)
         var response: ChatCompletion? = null
         var exception: Exception? = null
         val metadata = instrumentationMetadataInput(headers, request)
@@ -168,7 +168,7 @@ class MasaicCompletionService(
                 withTimeout(timeoutMillis) {
                     val params = createChatCompletionParams(request, messages, headerBuilder, queryBuilder)
                     telemetryService.emitModelInputEventsForOtelSpan(parentSpan, params, metadata)
-                    val completion = openAICompletionService.create(client, params, metadata, parentSpan)
+                    val completion = openAICompletionService.create(lease.client, params, metadata, parentSpan)
                     completion
                 }
             return response
@@ -185,6 +185,7 @@ class MasaicCompletionService(
             logger.warn { "Request was cancelled" }
             throw e // Let cancellation exceptions propagate
         } finally {
+            lease.close()
             exception?.let {
                 parentSpan.recordException(exception)
                 parentSpan.setStatus(StatusCode.ERROR)
@@ -219,19 +220,20 @@ class MasaicCompletionService(
             logger.info { "Creating streaming completion with, model: ${request.model}" }
             val headerBuilder = createHeadersBuilder(headers)
             val queryBuilder = createQueryParamsBuilder(queryParams)
-            val client = createClient(headers, request.model)
-            val messages = request.parseMessages(objectMapper)
-
-            val params = createChatCompletionParams(request, messages, headerBuilder, queryBuilder)
-            telemetryService.emitModelInputEventsForOtelSpan(parentSpan, params, metadata)
-            emitAll(
-                openAICompletionService.createCompletionStream(
-                    client,
-                    params,
-                    metadata,
-                    parentSpan,
-                ) { finalRes -> finalResponse = finalRes },
-            )
+            leaseClient(headers, request.model).use { lease ->
+                val messages = request.parseMessages(objectMapper)
+
+                val params = createChatCompletionParams(request, messages, headerBuilder, queryBuilder)
+                telemetryService.emitModelInputEventsForOtelSpan(parentSpan, params, metadata)
+                emitAll(
+                    openAICompletionService.createCompletionStream(
+                        lease.client,
+                        params,
+                        metadata,
+                        parentSpan,
+                    ) { finalRes -> finalResponse = finalRes },
+                )
+            }
         }.onCompletion { error ->
             error?.let {
                 parentSpan.recordException(it)
@@ -301,17 +303,19 @@ class MasaicCompletionService(
     }
 
     /**
-     * Creates an OpenAI client with the appropriate credentials and base URL.
+     * Leases an OpenAI client with the appropriate credentials and base URL, sharing the
+     * connections of other requests to the same base URL. The lease must be closed once the
+     * request is done with the client.
      *
      * @param headers The HTTP headers containing authorization information
      * @param modelName The model name for base URL determination
-     * @return An OpenAI client
+     * @return A lease on an OpenAI client
      * @throws IllegalArgumentException If the API key is missing
      */
-    private fun createClient(
+    private fun leaseClient(
         headers: MultiValueMap<String, String>,
         modelName: String,
-    ): OpenAIClient {
+    ): LlmClientRegistry.Lease {
         val authHeader =
             headers.getFirst("Authorization") ?: headers.getFirst("authorization")
                 ?: throw IllegalArgumentException("api-key is missing.")
@@ -321,11 +325,7 @@ class MasaicCompletionService(
                 authHeader.split(" ").getOrNull(1) ?: throw IllegalArgumentException("api-key is missing.")
             }
 
-        return OpenAIOkHttpClient
-            .builder()
-            .credential(credential)
-            .baseUrl(getApiBaseUri(headers, modelName).toURL().toString())
-            .build()
+        return clientRegistry.lease(getApiBaseUri(headers, modelName).toURL().toString(), credential)
     }
 
     /**
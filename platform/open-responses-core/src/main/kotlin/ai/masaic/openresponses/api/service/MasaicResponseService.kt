@@ -1,8 +1,10 @@
 package ai.masaic.openresponses.api.service
 
+import ai.masaic.openresponses.api.client.LlmClientRegistry
 import ai.masaic.openresponses.api.client.MasaicOpenAiResponseServiceImpl
 import ai.masaic.openresponses.api.client.MasaicParameterConverter
 import ai.masaic.openresponses.api.client.ResponseStore
+import ai.masaic.openresponses.api.client.StreamOverflowException
 import ai.masaic.openresponses.api.extensions.fromBody
 import ai.masaic.openresponses.api.model.InstrumentationMetadataInput
 import ai.masaic.openresponses.api.support.service.GenAIObsAttributes
@@ -10,8 +12,6 @@ import ai.masaic.openresponses.api.support.service.TelemetryService
 import ai.masaic.openresponses.api.utils.EventUtils
 import ai.masaic.openresponses.api.utils.PayloadFormatter
 import com.fasterxml.jackson.databind.ObjectMapper
-import com.openai.client.OpenAIClient
-import com.openai.client.okhttp.OpenAIOkHttpClient
 import com.openai.core.http.Headers
 import com.openai.core.http.QueryParams
 import com.openai.credential.BearerTokenCredential
@@ -50,6 +50,7 @@ class MasaicResponseService(
     private val objectMapper: ObjectMapper,
     private val telemetryService: TelemetryService,
     private val parameterConverter: MasaicParameterConverter,
+    private val clientRegistry: LlmClientRegistry = LlmClientRegistry(),
 ) {
     companion object {
         const val OPENAI_BASE_URL = "OPENAI_BASE_URL"
@@ -180,7 +181,7 @@ class MasaicResponseService(
 
         val headerBuilder = createHeadersBuilder(headers)
         val queryBuilder = createQueryParamsBuilder(queryParams)
-        val client = createClient(headers, request)
+        val lease = leaseClient(headers, request)
         val parentSpan = telemetryService.startOtelSpan("AgC responses loop", "", Span.current())
         var response: Response? = null
         val metadata = instrumentationMetadataInput(headers, request)
@@ -192,7 +193,7 @@ class MasaicResponseService(
             response =
                 withTimeout(timeoutMillis) {
                     openAIResponseService.create(
-                        client,
+                        lease.client,
                         parentCreateParams,
                         metadata,
                         parentSpan,
@@ -221,6 +222,7 @@ class MasaicResponseService(
             logger.error { "Error creating response" }
             throw ResponseProcessingException("Error processing response: ${e.message}")
         } finally {
+            lease.close()
             exception?.let {
                 parentSpan.recordException(exception)
                 parentSpan.setStatus(StatusCode.ERROR)
@@ -252,12 +254,12 @@ class MasaicResponseService(
 
         val headerBuilder = createHeadersBuilder(headers)
         val queryBuilder = createQueryParamsBuilder(queryParams)
-        val client = createClient(headers, request)
+        val lease = leaseClient(headers, request)
 
         return try {
             openAIResponseService
                 .createCompletionStream(
-                    client,
+                    lease.client,
                     createRequestParams(
                         request,
                         headerBuilder,
@@ -276,7 +278,7 @@ class MasaicResponseService(
                                     .builder()
                                     .message("Error in streaming response: ${error.message}")
                                     .code(
-                                        "stream_error",
+                                        if (error is StreamOverflowException) "stream_buffer_overflow" else "stream_error",
                                     ).param("")
                                     .sequenceNumber(System.nanoTime())
                                     .build(),
@@ -287,6 +289,7 @@ class MasaicResponseService(
                     emit(errorEvent) // Emit error event to the client
                     throw ResponseStreamingException("Error in streaming response: ${error.message}", error)
                 }.onCompletion { error ->
+                    lease.close()
                     if (error != null) {
                         logger.error(error) { "Stream completed with error, ${error.message}" }
                     } else {
@@ -294,6 +297,7 @@ class MasaicResponseService(
                     }
                 }
         } catch (e: Exception) {
+            lease.close()
             logger.error { "Failed to create streaming response" }
             throw ResponseStreamingException("Failed to create streaming response: ${e.message}", e)
         }
@@ -346,16 +350,18 @@ class MasaicResponseService(
             .build()
 
     /**
-     * Creates an OpenAI client with the appropriate credentials and base URL.
+     * Leases an OpenAI client with the appropriate credentials and base URL, sharing the
+     * connections of other requests to the same base URL. The lease must be closed once the
+     * request is done with the client.
      *
      * @param headers The HTTP headers containing authorization information
-     * @return An OpenAI client
+     * @return A lease on an OpenAI client
      * @throws IllegalArgumentException If the API key is missing
      */
-    private fun createClient(
+    private fun leaseClient(
         headers: MultiValueMap<String, String>,
         request: ResponseCreateParams.Body,
-    ): OpenAIClient {
+    ): LlmClientRegistry.Lease {
         val authHeader =
             headers.getFirst("Authorization") ?: headers.getFirst("authorization")
                 ?: throw IllegalArgumentException("api-key is missing.")
@@ -376,12 +382,7 @@ class MasaicResponseService(
                 request.model().string().get()
             }
 
-        // Extract model name for base URL determination
-        return OpenAIOkHttpClient
-            .builder()
-            .credential(credential)
-            .baseUrl(getApiBaseUri(headers, model).toURL().toString())
-            .build()
+        return clientRegistry.lease(getApiBaseUri(headers, model).toURL().toString(), credential)
     }
 
     private fun instrumentationMetadataInput(
@@ -0,0 +1,104 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import jakarta.annotation.PreDestroy
+import java.security.MessageDigest
+import java.util.HexFormat
+
+/**
+ * [EmbeddingService] decorator that embeds each distinct text once per model.
+ *
+ * Vectors are keyed by the model name and the SHA-256 of the text, so the same chunk uploaded
+ * to several vector stores and a query repeated across turns share one embedding. Lookups go
+ * to a Caffeine L1 bounded to [maxBytes] of vector data, then the optional persistent [l2]; only
+ * texts missing from both, deduplicated within the call, reach the delegate.
+ *
+ * Returned vectors are shared between callers and must not be modified.
+ *
+ * Metrics: `embedding.cache.hits` tagged `level` (l1 or l2) and `embedding.cache.misses`.
+ */
+class CachingEmbeddingService(
+    private val delegate: EmbeddingService,
+    private val modelName: String,
+    maxBytes: Long,
+    meterRegistry: MeterRegistry,
+    private val l2: EmbeddingCacheStore? = null,
+) : EmbeddingService,
+    AutoCloseable {
+    private val l1: Cache<String, FloatArray> =
+        Caffeine
+            .newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher<String, FloatArray> { _, vector -> vector.size * Float.SIZE_BYTES }
+            .build()
+
+    private val l1Hits: Counter = meterRegistry.counter("embedding.cache.hits", "level", "l1")
+    private val l2Hits: Counter = meterRegistry.counter("embedding.cache.hits", "level", "l2")
+    private val misses: Counter = meterRegistry.counter("embedding.cache.misses")
+
+    override val similarityKernel: SimilarityKernel
+        get() = delegate.similarityKernel
+
+    override fun embedTextAsArray(text: String): FloatArray {
+        val key = key(text)
+        cached(key)?.let { return it }
+        misses.increment()
+        return delegate.embedTextAsArray(text).also { store(key, it) }
+    }
+
+    override fun embedTextsAsArrays(texts: List<String>): List<FloatArray> {
+        val keys = texts.map { key(it) }
+        val vectors = arrayOfNulls<FloatArray>(texts.size)
+        // Texts still to embed, keyed by cache key so duplicates within the batch embed once
+        val missing = LinkedHashMap<String, String>()
+        keys.forEachIndexed { i, key ->
+            vectors[i] = cached(key)
+            if (vectors[i] == null) missing.putIfAbsent(key, texts[i])
+        }
+
+        if (missing.isNotEmpty()) {
+            misses.increment(missing.size.toDouble())
+            val embedded = delegate.embedTextsAsArrays(missing.values.toList())
+            val byKey = HashMap<String, FloatArray>(missing.size * 2)
+            missing.keys.forEachIndexed { i, key ->
+                byKey[key] = embedded[i]
+                store(key, embedded[i])
+            }
+            keys.forEachIndexed { i, key -> if (vectors[i] == null) vectors[i] = byKey.getValue(key) }
+        }
+        return vectors.map { it!! }
+    }
+
+    private fun cached(key: String): FloatArray? {
+        l1.getIfPresent(key)?.let {
+            l1Hits.increment()
+            return it
+        }
+        return l2?.get(key)?.also {
+            l2Hits.increment()
+            l1.put(key, it)
+        }
+    }
+
+    private fun store(
+        key: String,
+        vector: FloatArray,
+    ) {
+        l1.put(key, vector)
+        l2?.put(key, vector)
+    }
+
+    private fun key(text: String): String {
+        val digest = MessageDigest.getInstance("SHA-256").digest(text.toByteArray(Charsets.UTF_8))
+        return modelName + ":" + HexFormat.of().formatHex(digest)
+    }
+
+    @PreDestroy
+    override fun close() {
+        (delegate as? AutoCloseable)?.close()
+        l2?.close()
+    }
+}
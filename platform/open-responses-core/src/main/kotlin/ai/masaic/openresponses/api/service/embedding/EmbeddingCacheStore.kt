@@ -0,0 +1,139 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import mu.KotlinLogging
+import java.io.EOFException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Persistent second-level store for [CachingEmbeddingService], keyed by model and text hash.
+ */
+interface EmbeddingCacheStore : AutoCloseable {
+    fun get(key: String): FloatArray?
+
+    fun put(
+        key: String,
+        vector: FloatArray,
+    )
+
+    override fun close() {}
+}
+
+/**
+ * [EmbeddingCacheStore] backed by one append-only segment file.
+ *
+ * Each record is `[key length][key bytes][dimension][floats]`, little-endian. The key → offset
+ * index is rebuilt by scanning the segment on open; a truncated tail left by a crash is cut off.
+ * Entries are never rewritten, so the file grows with the number of distinct texts embedded.
+ */
+class FileEmbeddingCacheStore(
+    path: Path,
+) : EmbeddingCacheStore {
+    private val logger = KotlinLogging.logger {}
+    private val channel: FileChannel
+    private val offsets = HashMap<String, Long>()
+
+    init {
+        path.parent?.let { Files.createDirectories(it) }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        val end = scan()
+        if (end < channel.size()) {
+            logger.warn { "Truncating ${channel.size() - end} bytes of incomplete embedding cache records in $path" }
+            channel.truncate(end)
+        }
+        logger.info { "Opened embedding cache segment $path with ${offsets.size} entries" }
+    }
+
+    /**
+     * Indexes every complete record and returns the offset just past the last one.
+     */
+    private fun scan(): Long {
+        var position = 0L
+        val header = buffer(Int.SIZE_BYTES)
+        while (true) {
+            try {
+                val keyLength = readInt(header, position)
+                val key = String(read(position + Int.SIZE_BYTES, keyLength).array(), Charsets.UTF_8)
+                val dimensionAt = position + Int.SIZE_BYTES + keyLength
+                val dimension = readInt(header, dimensionAt)
+                val end = dimensionAt + Int.SIZE_BYTES + dimension.toLong() * Float.SIZE_BYTES
+                if (keyLength < 0 || dimension < 0 || end > channel.size()) return position
+                offsets[key] = position
+                position = end
+            } catch (e: EOFException) {
+                return position
+            }
+        }
+    }
+
+    @Synchronized
+    override fun get(key: String): FloatArray? {
+        val position = offsets[key] ?: return null
+        val dimensionAt = position + Int.SIZE_BYTES + key.toByteArray(Charsets.UTF_8).size
+        val dimension = readInt(buffer(Int.SIZE_BYTES), dimensionAt)
+        val floats = read(dimensionAt + Int.SIZE_BYTES, dimension * Float.SIZE_BYTES).asFloatBuffer()
+        return FloatArray(dimension).also { floats.get(it) }
+    }
+
+    @Synchronized
+    override fun put(
+        key: String,
+        vector: FloatArray,
+    ) {
+        if (offsets.containsKey(key)) return
+        val keyBytes = key.toByteArray(Charsets.UTF_8)
+        val record = buffer(Int.SIZE_BYTES * 2 + keyBytes.size + vector.size * Float.SIZE_BYTES)
+        record.putInt(keyBytes.size).put(keyBytes).putInt(vector.size)
+        vector.forEach { record.putFloat(it) }
+        record.flip()
+
+        val position = channel.size()
+        var written = position
+        while (record.hasRemaining()) written += channel.write(record, written)
+        offsets[key] = position
+    }
+
+    private fun buffer(size: Int): ByteBuffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+
+    private fun readInt(
+        header: ByteBuffer,
+        position: Long,
+    ): Int {
+        header.clear()
+        readFully(header, position)
+        return header.getInt(0)
+    }
+
+    private fun read(
+        position: Long,
+        size: Int,
+    ): ByteBuffer {
+        if (size < 0 || position + size > channel.size()) throw EOFException()
+        return buffer(size).also {
+            readFully(it, position)
+            it.flip()
+        }
+    }
+
+    private fun readFully(
+        target: ByteBuffer,
+        position: Long,
+    ) {
+        var offset = position
+        while (target.hasRemaining()) {
+            val read = channel.read(target, offset)
+            if (read < 0) throw EOFException()
+            offset += read
+        }
+    }
+
+    @Synchronized
+    override fun close() {
+        channel.force(false)
+        channel.close()
+    }
+}
@@ -5,15 +5,84 @@ package ai.masaic.openresponses.api.service.embedding
  *
  * This interface defines methods for converting text into vector embeddings
  * that can be stored and searched in vector databases.
+ *
+ * Implementations provide the primitive [FloatArray] methods; the [List]-based
+ * methods are adapters kept for callers that have not moved off boxed floats.
  */
 interface EmbeddingService {
+    /**
+     * Embeds a single text string into a vector representation.
+     *
+     * @param text The text to embed
+     * @return The embedding vector
+     */
+    fun embedTextAsArray(text: String): FloatArray
+
+    /**
+     * Embeds multiple text strings in a batch operation.
+     *
+     * @param texts The list of texts to embed
+     * @return A list of embedding vectors, one for each input text
+     */
+    fun embedTextsAsArrays(texts: List<String>): List<FloatArray>
+
+    /**
+     * Kernel used for similarity scoring, selected by `open-responses.embeddings.similarity-kernel`.
+     */
+    val similarityKernel: SimilarityKernel
+        get() = SimilarityKernels.default
+
+    /**
+     * Calculates the cosine similarity between two embedding vectors.
+     *
+     * @param embedding1 The first embedding vector
+     * @param embedding2 The second embedding vector
+     * @return The cosine similarity score (between -1 and 1)
+     */
+    fun calculateSimilarity(
+        embedding1: FloatArray,
+        embedding2: FloatArray,
+    ): Float = similarityKernel.cosine(embedding1, embedding2)
+
+    /**
+     * Scores a query against every row of a matrix in one call.
+     *
+     * @param query The query vector
+     * @param matrix Candidate vectors, one per row
+     * @return The cosine similarity of the query to each row, in row order
+     */
+    fun scoreAll(
+        query: FloatArray,
+        matrix: Array<FloatArray>,
+    ): FloatArray {
+        val kernel = similarityKernel
+        return FloatArray(matrix.size) { kernel.cosine(query, matrix[it]) }
+    }
+
+    /**
+     * Scores a query against every row of a matrix in one call, as a plain dot product.
+     * The query and all rows must already be L2-normalized with [similarityKernel], in which case
+     * each score is the cosine similarity at the cost of a single pass.
+     *
+     * @param query The normalized query vector
+     * @param matrix Normalized candidate vectors, one per row
+     * @return The dot product of the query with each row, in row order
+     */
+    fun dotAll(
+        query: FloatArray,
+        matrix: Array<FloatArray>,
+    ): FloatArray {
+        val kernel = similarityKernel
+        return FloatArray(matrix.size) { kernel.dot(query, matrix[it]) }
+    }
+
     /**
      * Embeds a single text string into a vector representation.
      *
      * @param text The text to embed
      * @return A list of floats representing the embedding vector
      */
-    fun embedText(text: String): List<Float>
+    fun embedText(text: String): List<Float> = embedTextAsArray(text).asList()
 
     /**
      * Embeds multiple text strings in a batch operation.
@@ -21,7 +90,7 @@ interface EmbeddingService {
      * @param texts The list of texts to embed
      * @return A list of embedding vectors, one for each input text
      */
-    fun embedTexts(texts: List<String>): List<List<Float>>
+    fun embedTexts(texts: List<String>): List<List<Float>> = embedTextsAsArrays(texts).map { it.asList() }
 
     /**
      * Calculates the cosine similarity between two embedding vectors.
@@ -33,5 +102,5 @@ interface EmbeddingService {
     fun calculateSimilarity(
         embedding1: List<Float>,
         embedding2: List<Float>,
-    ): Float
+    ): Float = calculateSimilarity(embedding1.toFloatArray(), embedding2.toFloatArray())
 }
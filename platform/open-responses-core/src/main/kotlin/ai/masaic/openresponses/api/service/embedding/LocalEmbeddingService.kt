@@ -0,0 +1,203 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import jakarta.annotation.PreDestroy
+import mu.KotlinLogging
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * [EmbeddingService] running an embedding model in-process.
+ *
+ * Calls from any number of threads are queued and coalesced into micro-batches: a batch
+ * closes when it reaches [maxBatchSize] texts or [batchWaitMillis] after its first text,
+ * and one batch runs per inference thread. While every thread is busy the queue keeps
+ * filling, so batches grow with load instead of piling up. A caller waits at most
+ * [timeoutMillis] for its vector, and texts still pending when the service closes fail.
+ *
+ * Metrics: `embedding.local.chunks` counts embedded texts, `embedding.local.throughput`
+ * reports chunks per second over the last window of at least a second, and
+ * `embedding.local.batch` / `embedding.local.batch.size` time and size each inference run.
+ */
+class LocalEmbeddingService(
+    private val model: BatchEmbeddingModel,
+    meterRegistry: MeterRegistry,
+    private val threads: Int = physicalCores(),
+    private val maxBatchSize: Int = 32,
+    private val batchWaitMillis: Long = 5,
+    private val timeoutMillis: Long = 60_000,
+    override val similarityKernel: SimilarityKernel = SimilarityKernels.default,
+) : EmbeddingService,
+    AutoCloseable {
+    private val logger = KotlinLogging.logger {}
+
+    private class Request(
+        val text: String,
+        val result: CompletableFuture<FloatArray> = CompletableFuture(),
+    )
+
+    private val queue = LinkedBlockingQueue<Request>()
+
+    // Every submitted text until its vector is completed, so close() can fail the ones left
+    private val pending: MutableSet<Request> = ConcurrentHashMap.newKeySet()
+    private val permits = Semaphore(threads)
+    private val pool =
+        Executors.newFixedThreadPool(threads) { runnable ->
+            Thread(runnable, "local-embedding-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+        }
+
+    @Volatile
+    private var running = true
+    private val batcher = Thread(::formBatches, "local-embedding-batcher").apply { isDaemon = true }
+
+    private val chunks: Counter = meterRegistry.counter("embedding.local.chunks")
+    private val batchTimer: Timer = meterRegistry.timer("embedding.local.batch")
+    private val batchSizes: DistributionSummary = meterRegistry.summary("embedding.local.batch.size")
+    private val throughput = ThroughputWindow()
+
+    init {
+        require(threads > 0) { "threads must be positive: $threads" }
+        require(maxBatchSize > 0) { "maxBatchSize must be positive: $maxBatchSize" }
+        require(timeoutMillis > 0) { "timeoutMillis must be positive: $timeoutMillis" }
+        meterRegistry.gauge("embedding.local.throughput", throughput) { it.chunksPerSecond() }
+        batcher.start()
+        logger.info { "LocalEmbeddingService enabled with $threads inference threads, max batch $maxBatchSize, wait ${batchWaitMillis}ms" }
+    }
+
+    override fun embedTextAsArray(text: String): FloatArray = await(submit(text))
+
+    override fun embedTextsAsArrays(texts: List<String>): List<FloatArray> = texts.map { submit(it) }.map { await(it) }
+
+    private fun submit(text: String): CompletableFuture<FloatArray> {
+        check(running) { "LocalEmbeddingService is closed" }
+        val request = Request(text)
+        pending.add(request)
+        request.result.whenComplete { _, _ -> pending.remove(request) }
+        // close() may have swept the pending texts before this one was added
+        if (!running) request.result.completeExceptionally(closed())
+        queue.put(request)
+        return request.result
+    }
+
+    private fun await(result: CompletableFuture<FloatArray>): FloatArray =
+        try {
+            result.get(timeoutMillis, TimeUnit.MILLISECONDS)
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        } catch (e: TimeoutException) {
+            result.cancel(false)
+            throw IllegalStateException("Local embedding did not complete within ${timeoutMillis}ms", e)
+        }
+
+    /**
+     * Takes the first waiting text, waits for a free inference thread, then tops the batch
+     * up with whatever arrived meanwhile, waiting at most [batchWaitMillis] for more.
+     */
+    private fun formBatches() {
+        while (running) {
+            try {
+                val first = queue.poll(100, TimeUnit.MILLISECONDS) ?: continue
+                permits.acquire()
+                val batch = ArrayList<Request>(maxBatchSize)
+                batch.add(first)
+                var dispatched = false
+                try {
+                    val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitMillis)
+                    while (batch.size < maxBatchSize) {
+                        queue.drainTo(batch, maxBatchSize - batch.size)
+                        val remaining = deadline - System.nanoTime()
+                        if (batch.size >= maxBatchSize || remaining <= 0) break
+                        batch.add(queue.poll(remaining, TimeUnit.NANOSECONDS) ?: break)
+                    }
+                    pool.execute { runBatch(batch) }
+                    dispatched = true
+                } finally {
+                    // runBatch releases the permit of a dispatched batch
+                    if (!dispatched) {
+                        permits.release()
+                        batch.forEach { it.result.completeExceptionally(closed()) }
+                    }
+                }
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                break
+            } catch (e: RejectedExecutionException) {
+                // The pool only rejects batches once it is shut down
+                break
+            }
+        }
+    }
+
+    private fun runBatch(batch: List<Request>) {
+        try {
+            val vectors = batchTimer.recordCallable { model.embed(batch.map { it.text }) }!!
+            check(vectors.size == batch.size) { "Model returned ${vectors.size} vectors for ${batch.size} texts" }
+            batch.forEachIndexed { i, request -> request.result.complete(vectors[i]) }
+            chunks.increment(batch.size.toDouble())
+            batchSizes.record(batch.size.toDouble())
+            throughput.record(batch.size)
+        } catch (e: Exception) {
+            logger.error(e) { "Local embedding of a batch of ${batch.size} texts failed" }
+            batch.forEach { it.result.completeExceptionally(e) }
+        } finally {
+            permits.release()
+        }
+    }
+
+    @PreDestroy
+    override fun close() {
+        if (!running) return
+        running = false
+        batcher.interrupt()
+        pool.shutdown()
+        if (!pool.awaitTermination(10, TimeUnit.SECONDS)) pool.shutdownNow()
+        queue.clear()
+        pending.toList().forEach { it.result.completeExceptionally(closed()) }
+        model.close()
+    }
+
+    private fun closed() = IllegalStateException("LocalEmbeddingService is closed")
+
+    /**
+     * Chunks per second over the last completed window of at least one second.
+     */
+    private class ThroughputWindow {
+        private val windowStart = AtomicLong(System.nanoTime())
+        private val windowChunks = AtomicLong()
+        private val lastRate = AtomicReference(0.0)
+
+        fun record(count: Int) {
+            windowChunks.addAndGet(count.toLong())
+            val start = windowStart.get()
+            val elapsed = System.nanoTime() - start
+            if (elapsed >= WINDOW_NANOS && windowStart.compareAndSet(start, System.nanoTime())) {
+                lastRate.set(windowChunks.getAndSet(0) * 1e9 / elapsed)
+            }
+        }
+
+        fun chunksPerSecond(): Double = lastRate.get()
+    }
+
+    companion object {
+        private val WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1)
+        private val threadCount = AtomicLong()
+
+        /**
+         * Physical cores, assuming two hardware threads per core; inference gains little from
+         * hyper-threads and the request threads need some CPU too.
+         */
+        fun physicalCores(): Int = maxOf(1, Runtime.getRuntime().availableProcessors() / 2)
+    }
+}
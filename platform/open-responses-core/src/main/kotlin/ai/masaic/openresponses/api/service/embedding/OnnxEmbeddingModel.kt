@@ -0,0 +1,173 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer
+import ai.onnxruntime.OnnxTensor
+import ai.onnxruntime.OrtEnvironment
+import ai.onnxruntime.OrtSession
+import java.io.InputStream
+import java.nio.file.Paths
+import kotlin.math.sqrt
+
+/**
+ * Embeds a batch of texts in one inference call. Implementations must allow concurrent calls.
+ */
+fun interface BatchEmbeddingModel : AutoCloseable {
+    /**
+     * @return One L2-normalized vector per text, in input order
+     */
+    fun embed(texts: List<String>): List<FloatArray>
+
+    override fun close() {}
+}
+
+/**
+ * [BatchEmbeddingModel] running a sentence-transformers model exported to ONNX.
+ *
+ * A batch is tokenized together and padded to its longest text, run through the session as
+ * one tensor, pooled over the attention mask and normalized. Models that already output a
+ * pooled `[batch, dim]` tensor are only normalized.
+ */
+class OnnxEmbeddingModel(
+    modelBytes: ByteArray,
+    tokenizerStream: InputStream,
+    private val poolingMode: String,
+    maxLength: Int,
+    intraOpThreads: Int,
+) : BatchEmbeddingModel {
+    private val environment = OrtEnvironment.getEnvironment()
+    private val session: OrtSession =
+        OrtSession.SessionOptions().use { options ->
+            options.setIntraOpNumThreads(intraOpThreads)
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT)
+            environment.createSession(modelBytes, options)
+        }
+    private val tokenizer =
+        tokenizerStream.use {
+            HuggingFaceTokenizer.newInstance(
+                it,
+                mapOf(
+                    "maxLength" to maxLength.toString(),
+                    "truncation" to "true",
+                    "padding" to "true",
+                ),
+            )
+        }
+    private val usesTokenTypes = "token_type_ids" in session.inputNames
+
+    init {
+        require(poolingMode in POOLING_MODES) { "Unsupported pooling mode: $poolingMode. Expected one of $POOLING_MODES" }
+    }
+
+    override fun embed(texts: List<String>): List<FloatArray> {
+        if (texts.isEmpty()) return emptyList()
+
+        val encodings = tokenizer.batchEncode(texts)
+        val masks = Array(encodings.size) { encodings[it].attentionMask }
+        val tensors = LinkedHashMap<String, OnnxTensor>()
+        try {
+            tensors["input_ids"] = OnnxTensor.createTensor(environment, Array(encodings.size) { encodings[it].ids })
+            tensors["attention_mask"] = OnnxTensor.createTensor(environment, masks)
+            if (usesTokenTypes) {
+                tensors["token_type_ids"] = OnnxTensor.createTensor(environment, Array(encodings.size) { encodings[it].typeIds })
+            }
+            session.run(tensors).use { result ->
+                return when (val output = result[0].value) {
+                    is Array<*> ->
+                        when (output.firstOrNull()) {
+                            is FloatArray -> output.map { normalize((it as FloatArray).copyOf()) }
+                            else -> {
+                                @Suppress("UNCHECKED_CAST")
+                                val hidden = output as Array<Array<FloatArray>>
+                                hidden.indices.map { normalize(pool(hidden[it], masks[it])) }
+                            }
+                        }
+                    else -> throw IllegalStateException("Unexpected ONNX embedding output: ${output?.javaClass}")
+                }
+            }
+        } finally {
+            tensors.values.forEach { it.close() }
+        }
+    }
+
+    private fun pool(
+        tokens: Array<FloatArray>,
+        mask: LongArray,
+    ): FloatArray {
+        val dimension = tokens[0].size
+        val pooled = FloatArray(dimension)
+        when (poolingMode) {
+            "cls" -> tokens[0].copyInto(pooled)
+            "max" -> {
+                pooled.fill(Float.NEGATIVE_INFINITY)
+                for (t in tokens.indices) {
+                    if (mask[t] == 0L) continue
+                    for (d in 0 until dimension) if (tokens[t][d] > pooled[d]) pooled[d] = tokens[t][d]
+                }
+            }
+            else -> {
+                var count = 0
+                for (t in tokens.indices) {
+                    if (mask[t] == 0L) continue
+                    count++
+                    for (d in 0 until dimension) pooled[d] += tokens[t][d]
+                }
+                if (count > 0) for (d in 0 until dimension) pooled[d] /= count
+            }
+        }
+        return pooled
+    }
+
+    private fun normalize(vector: FloatArray): FloatArray {
+        var norm = 0.0
+        for (value in vector) norm += value * value
+        if (norm > 0) {
+            val scale = (1.0 / sqrt(norm)).toFloat()
+            for (i in vector.indices) vector[i] *= scale
+        }
+        return vector
+    }
+
+    override fun close() {
+        session.close()
+        tokenizer.close()
+    }
+
+    companion object {
+        const val ALL_MINILM_L6_V2 = "all-minilm-l6-v2"
+        private val POOLING_MODES = setOf("mean", "cls", "max")
+
+        /** Resources shipped by the langchain4j-embeddings-all-minilm-l6-v2 jar. */
+        private const val BUNDLED_MODEL = "all-minilm-l6-v2.onnx"
+        private const val BUNDLED_TOKENIZER = "all-minilm-l6-v2-tokenizer.json"
+
+        /**
+         * Loads the model named by the embedding properties: the custom model and tokenizer
+         * files when configured, otherwise the bundled all-MiniLM-L6-v2.
+         */
+        fun load(
+            properties: EmbeddingProperties,
+            intraOpThreads: Int,
+        ): OnnxEmbeddingModel {
+            val modelPath = properties.onnxModelPath
+            if (modelPath != null) {
+                val tokenizerPath =
+                    requireNotNull(properties.tokenizerPath) { "open-responses.embeddings.tokenizer-path is required with onnx-model-path" }
+                return OnnxEmbeddingModel(
+                    Paths.get(modelPath).toFile().readBytes(),
+                    Paths.get(tokenizerPath).toFile().inputStream(),
+                    properties.poolingMode,
+                    properties.maxLength,
+                    intraOpThreads,
+                )
+            }
+
+            require(properties.modelType == ALL_MINILM_L6_V2) {
+                "Model type ${properties.modelType} needs open-responses.embeddings.onnx-model-path and tokenizer-path"
+            }
+            val loader = OnnxEmbeddingModel::class.java.classLoader
+            val model = loader.getResourceAsStream(BUNDLED_MODEL) ?: throw IllegalStateException("Bundled model $BUNDLED_MODEL not found on the classpath")
+            val tokenizer = loader.getResourceAsStream(BUNDLED_TOKENIZER) ?: throw IllegalStateException("Bundled tokenizer $BUNDLED_TOKENIZER not found on the classpath")
+            return OnnxEmbeddingModel(model.use { it.readBytes() }, tokenizer, "mean", properties.maxLength, intraOpThreads)
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package ai.masaic.openresponses.api.service.embedding
 
-import dev.langchain4j.data.embedding.Embedding
 import dev.langchain4j.data.segment.TextSegment
 import dev.langchain4j.model.openaiofficial.OpenAiOfficialEmbeddingModel
-import dev.langchain4j.store.embedding.CosineSimilarity
 
 /**
  * Implementation of EmbeddingService using OpenAI's embedding API.
@@ -14,6 +12,7 @@ class OpenAIEmbeddingService(
     private val baseUrl: String,
     private val apiKey: String,
     private val modelName: String,
+    override val similarityKernel: SimilarityKernel = SimilarityKernels.default,
 ) : EmbeddingService {
     private val embeddingModel =
         lazy {
@@ -29,12 +28,9 @@ class OpenAIEmbeddingService(
      * Embeds a single text string into a vector representation using OpenAI.
      *
      * @param text The text to embed
-     * @return A list of floats representing the embedding vector
+     * @return The embedding vector
      */
-    override fun embedText(text: String): List<Float> {
-        val embedding = embeddingModel.value.embed(text).content()
-        return embedding.vectorAsList()
-    }
+    override fun embedTextAsArray(text: String): FloatArray = embeddingModel.value.embed(text).content().vector()
 
     /**
      * Embeds multiple text strings in a batch operation using OpenAI.
@@ -42,7 +38,7 @@ class OpenAIEmbeddingService(
      * @param texts The list of texts to embed
      * @return A list of embedding vectors, one for each input text
      */
-    override fun embedTexts(texts: List<String>): List<List<Float>> {
+    override fun embedTextsAsArrays(texts: List<String>): List<FloatArray> {
         val embeddings =
             embeddingModel.value
                 .embedAll(
@@ -51,26 +47,7 @@ class OpenAIEmbeddingService(
                     },
                 ).content()
         return embeddings.map {
-            it.vectorAsList()
+            it.vector()
         }
     }
-
-    /**
-     * Calculates the cosine similarity between two embedding vectors.
-     *
-     * @param embedding1 The first embedding vector
-     * @param embedding2 The second embedding vector
-     * @return The cosine similarity score (between -1 and 1)
-     */
-    override fun calculateSimilarity(
-        embedding1: List<Float>,
-        embedding2: List<Float>,
-    ): Float {
-        val e1 = Embedding.from(embedding1)
-        val e2 = Embedding.from(embedding2)
-
-        return CosineSimilarity
-            .between(e1, e2)
-            .toFloat()
-    }
 }
@@ -28,17 +28,7 @@ class OpenAIProxyEmbeddingService(
         text: String,
         apiKey: String,
         modelName: String,
-    ): List<Float> =
-        if (modelName == "default") {
-            embeddingService.embedText(text)
-        } else {
-            val (model, baseUrl) = modelAndProviderUrl(modelName)
-            OpenAIEmbeddingService(
-                baseUrl,
-                apiKey,
-                model,
-            ).embedText(text)
-        }
+    ): List<Float> = serviceFor(apiKey, modelName).embedText(text)
 
     /**
      * Embeds multiple text strings in a batch operation using OpenAI.
@@ -50,16 +40,44 @@ class OpenAIProxyEmbeddingService(
         texts: List<String>,
         apiKey: String,
         modelName: String,
-    ): List<List<Float>> =
+    ): List<List<Float>> = serviceFor(apiKey, modelName).embedTexts(texts)
+
+    /**
+     * Embeds a single text string into a primitive vector using the selected provider.
+     *
+     * @param text The text to embed
+     * @return The embedding vector
+     */
+    fun embedTextAsArray(
+        text: String,
+        apiKey: String,
+        modelName: String,
+    ): FloatArray = serviceFor(apiKey, modelName).embedTextAsArray(text)
+
+    /**
+     * Embeds multiple text strings into primitive vectors using the selected provider.
+     *
+     * @param texts The list of texts to embed
+     * @return A list of embedding vectors, one for each input text
+     */
+    fun embedTextsAsArrays(
+        texts: List<String>,
+        apiKey: String,
+        modelName: String,
+    ): List<FloatArray> = serviceFor(apiKey, modelName).embedTextsAsArrays(texts)
+
+    /**
+     * The shared embedding service for the `default` model, or a client for the `provider@model` given.
+     */
+    private fun serviceFor(
+        apiKey: String,
+        modelName: String,
+    ): EmbeddingService =
         if (modelName == "default") {
-            embeddingService.embedTexts(texts)
+            embeddingService
         } else {
             val (model, baseUrl) = modelAndProviderUrl(modelName)
-            OpenAIEmbeddingService(
-                baseUrl,
-                apiKey,
-                model,
-            ).embedTexts(texts)
+            OpenAIEmbeddingService(baseUrl, apiKey, model)
         }
 
     private fun modelAndProviderUrl(modelName: String): Pair<String, String> {
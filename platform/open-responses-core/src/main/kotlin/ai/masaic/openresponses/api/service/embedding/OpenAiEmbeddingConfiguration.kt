@@ -1,11 +1,14 @@
 package ai.masaic.openresponses.api.service.embedding
 
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.ObjectProvider
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.boot.context.properties.ConfigurationProperties
 import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.context.annotation.Primary
+import java.nio.file.Paths
 
 /**
  * Configuration properties for embedding models.
@@ -28,6 +31,29 @@ data class EmbeddingProperties(
     val model: String = "text-embedding-3-small",
     // The OpenAI API base URL (if using OpenAI embeddings)
     val url: String = "https://api.openai.com/v1",
+    // Similarity kernel: "auto" (SIMD when jdk.incubator.vector is enabled), "vector" or "scalar"
+    val similarityKernel: String = "auto",
+    // Maximum tokens per text for the local ONNX model; longer texts are truncated
+    val maxLength: Int = 256,
+    // Maximum texts per local inference call
+    val maxBatchSize: Int = 32,
+    // How long a local batch waits for more texts after its first one, in milliseconds
+    val batchWaitMillis: Long = 5,
+    // Local inference threads; 0 uses the number of physical cores
+    val inferenceThreads: Int = 0,
+    // How long a caller waits for a local embedding, in milliseconds
+    val inferenceTimeoutMillis: Long = 60_000,
+    // Cache embeddings by model and text hash so repeated chunks and queries are embedded once
+    val cacheEnabled: Boolean = true,
+    // Byte budget of the vectors held by the in-memory embedding cache
+    val cacheMaxBytes: Long = 64L * 1024 * 1024,
+    // Persistent second-level embedding cache: "none", "file" or "redis" (requires Redisson on the classpath)
+    val cacheStore: String = "none",
+    // Segment file of the "file" embedding cache store
+    val cachePath: String? = null,
+    // Key prefix and expiry of the vectors in the "redis" embedding cache store
+    val cacheRedisKeyPrefix: String = "open-responses:embedding",
+    val cacheRedisTtlHours: Long = 24 * 30,
 )
 
 /**
@@ -42,10 +68,81 @@ class OpenAiEmbeddingConfiguration {
     @Bean
     @Primary
     @ConditionalOnProperty(name = ["open-responses.embeddings.http-enabled"], havingValue = "true", matchIfMissing = true)
-    fun openAIEmbeddingService(properties: EmbeddingProperties): EmbeddingService =
-        OpenAIEmbeddingService(
-            apiKey = properties.apiKey,
-            modelName = properties.model,
-            baseUrl = properties.url,
+    fun openAIEmbeddingService(
+        properties: EmbeddingProperties,
+        meterRegistry: MeterRegistry,
+        cacheStores: ObjectProvider<EmbeddingCacheStore>? = null,
+    ): EmbeddingService =
+        cached(
+            OpenAIEmbeddingService(
+                apiKey = properties.apiKey,
+                modelName = properties.model,
+                baseUrl = properties.url,
+                similarityKernel = SimilarityKernels.select(properties.similarityKernel),
+            ),
+            modelName = "${properties.url}#${properties.model}",
+            properties = properties,
+            meterRegistry = meterRegistry,
+            cacheStores = cacheStores,
         )
+
+    /**
+     * Creates an in-process ONNX embedding service when open-responses.embeddings.http-enabled is false.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = ["open-responses.embeddings.http-enabled"], havingValue = "false")
+    fun localEmbeddingService(
+        properties: EmbeddingProperties,
+        meterRegistry: MeterRegistry,
+        cacheStores: ObjectProvider<EmbeddingCacheStore>? = null,
+    ): EmbeddingService {
+        val threads = properties.inferenceThreads.takeIf { it > 0 } ?: LocalEmbeddingService.physicalCores()
+        return cached(
+            LocalEmbeddingService(
+                model = OnnxEmbeddingModel.load(properties, intraOpThreads = 1),
+                meterRegistry = meterRegistry,
+                threads = threads,
+                maxBatchSize = properties.maxBatchSize,
+                batchWaitMillis = properties.batchWaitMillis,
+                timeoutMillis = properties.inferenceTimeoutMillis,
+                similarityKernel = SimilarityKernels.select(properties.similarityKernel),
+            ),
+            modelName = "local#${properties.onnxModelPath ?: properties.modelType}",
+            properties = properties,
+            meterRegistry = meterRegistry,
+            cacheStores = cacheStores,
+        )
+    }
+
+    /**
+     * Wraps a service in the embedding cache unless open-responses.embeddings.cache-enabled is false.
+     *
+     * @param modelName Identifies the model in cache keys, so vectors of different models never mix
+     * @param cacheStores Provides the "redis" store, which only exists when Redisson is on the classpath
+     */
+    private fun cached(
+        service: EmbeddingService,
+        modelName: String,
+        properties: EmbeddingProperties,
+        meterRegistry: MeterRegistry,
+        cacheStores: ObjectProvider<EmbeddingCacheStore>?,
+    ): EmbeddingService {
+        if (!properties.cacheEnabled) return service
+
+        val l2 =
+            when (properties.cacheStore.lowercase()) {
+                "none" -> null
+                "file" -> {
+                    val path = requireNotNull(properties.cachePath) { "open-responses.embeddings.cache-path is required for the file cache store" }
+                    FileEmbeddingCacheStore(Paths.get(path))
+                }
+                "redis" ->
+                    checkNotNull(cacheStores?.ifAvailable) {
+                        "The redis embedding cache store requires org.redisson:redisson-spring-boot-starter on the classpath"
+                    }
+                else -> throw IllegalArgumentException("Unknown embedding cache store: ${properties.cacheStore}. Expected none, file or redis")
+            }
+        return CachingEmbeddingService(service, modelName, properties.cacheMaxBytes, meterRegistry, l2)
+    }
 }
@@ -0,0 +1,76 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import mu.KotlinLogging
+import org.redisson.api.RedissonClient
+import org.redisson.client.codec.ByteArrayCodec
+import org.redisson.spring.starter.RedissonAutoConfigurationV2
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Import
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.time.Duration
+
+/**
+ * [EmbeddingCacheStore] shared by every instance through Redis.
+ *
+ * Each vector is one bucket of little-endian floats under `<keyPrefix>:<key>` that expires
+ * [ttl] after it was written. Redis errors are logged and treated as misses, so an
+ * unavailable Redis only costs embedding calls.
+ */
+class RedisEmbeddingCacheStore(
+    private val redissonClient: RedissonClient,
+    private val keyPrefix: String,
+    private val ttl: Duration,
+) : EmbeddingCacheStore {
+    private val logger = KotlinLogging.logger {}
+
+    override fun get(key: String): FloatArray? =
+        try {
+            redissonClient.getBucket<ByteArray>(redisKey(key), ByteArrayCodec.INSTANCE).get()?.let { decode(it) }
+        } catch (e: Exception) {
+            logger.warn(e) { "Failed to read embedding $key from Redis" }
+            null
+        }
+
+    override fun put(
+        key: String,
+        vector: FloatArray,
+    ) {
+        try {
+            redissonClient.getBucket<ByteArray>(redisKey(key), ByteArrayCodec.INSTANCE).set(encode(vector), ttl)
+        } catch (e: Exception) {
+            logger.warn(e) { "Failed to write embedding $key to Redis" }
+        }
+    }
+
+    private fun redisKey(key: String) = "$keyPrefix:$key"
+
+    private fun encode(vector: FloatArray): ByteArray {
+        val buffer = ByteBuffer.allocate(vector.size * Float.SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+        vector.forEach { buffer.putFloat(it) }
+        return buffer.array()
+    }
+
+    private fun decode(bytes: ByteArray): FloatArray {
+        val floats = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+        return FloatArray(floats.remaining()).also { floats.get(it) }
+    }
+}
+
+/**
+ * Provides the "redis" embedding cache store when Redisson is on the classpath.
+ */
+@Configuration
+@ConditionalOnClass(name = ["org.redisson.api.RedissonClient"])
+@ConditionalOnProperty(name = ["open-responses.embeddings.cache-store"], havingValue = "redis")
+@Import(RedissonAutoConfigurationV2::class)
+class RedisEmbeddingCacheConfiguration {
+    @Bean
+    fun redisEmbeddingCacheStore(
+        redissonClient: RedissonClient,
+        properties: EmbeddingProperties,
+    ): EmbeddingCacheStore = RedisEmbeddingCacheStore(redissonClient, properties.cacheRedisKeyPrefix, Duration.ofHours(properties.cacheRedisTtlHours))
+}
@@ -0,0 +1,128 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import org.slf4j.LoggerFactory
+import kotlin.math.sqrt
+
+/**
+ * Dot-product kernel used for similarity scoring.
+ *
+ * Vectors are expected to be L2-normalized up front (see [normalize]), so the dot product
+ * is the cosine similarity and scoring needs a single pass over both arrays.
+ */
+interface SimilarityKernel {
+    /**
+     * Name of the kernel as used in `open-responses.embeddings.similarity-kernel`.
+     */
+    val name: String
+
+    /**
+     * Dot product over the common prefix of both vectors.
+     */
+    fun dot(
+        a: FloatArray,
+        b: FloatArray,
+    ): Float
+
+    /**
+     * Cosine similarity of two vectors that are not known to be normalized.
+     *
+     * @return The similarity, or 0 if either vector has zero norm
+     */
+    fun cosine(
+        a: FloatArray,
+        b: FloatArray,
+    ): Float {
+        val norms = dot(a, a) * dot(b, b)
+        return if (norms == 0f) 0f else dot(a, b) / sqrt(norms)
+    }
+
+    /**
+     * Returns a unit-length copy of the vector, or a plain copy if its norm is zero.
+     */
+    fun normalize(vector: FloatArray): FloatArray {
+        val norm = sqrt(dot(vector, vector))
+        return if (norm == 0f) vector.copyOf() else FloatArray(vector.size) { vector[it] / norm }
+    }
+}
+
+/**
+ * Portable kernel, unrolled by four so the JIT can keep independent accumulators in registers.
+ */
+object ScalarSimilarityKernel : SimilarityKernel {
+    override val name = "scalar"
+
+    override fun dot(
+        a: FloatArray,
+        b: FloatArray,
+    ): Float {
+        val length = minOf(a.size, b.size)
+        val upper = length and 3.inv()
+        var s0 = 0f
+        var s1 = 0f
+        var s2 = 0f
+        var s3 = 0f
+        var i = 0
+        while (i < upper) {
+            s0 += a[i] * b[i]
+            s1 += a[i + 1] * b[i + 1]
+            s2 += a[i + 2] * b[i + 2]
+            s3 += a[i + 3] * b[i + 3]
+            i += 4
+        }
+        var sum = s0 + s1 + s2 + s3
+        while (i < length) {
+            sum += a[i] * b[i]
+            i++
+        }
+        return sum
+    }
+}
+
+/**
+ * Resolves [SimilarityKernel]s by name.
+ *
+ * The SIMD kernel needs the `jdk.incubator.vector` module, which is only present when the JVM
+ * is started with `--add-modules jdk.incubator.vector`; without it the scalar kernel is used.
+ */
+object SimilarityKernels {
+    private val log = LoggerFactory.getLogger(SimilarityKernels::class.java)
+
+    /**
+     * Whether the JDK Vector API module is available in this JVM.
+     */
+    val vectorApiAvailable: Boolean by lazy {
+        ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent
+    }
+
+    /**
+     * The kernel selected by `auto`.
+     */
+    val default: SimilarityKernel by lazy { select("auto") }
+
+    /**
+     * Selects a kernel.
+     *
+     * @param type `auto` (SIMD when available), `vector` (SIMD, falling back with a warning) or `scalar`
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    fun select(type: String): SimilarityKernel =
+        when (type.lowercase()) {
+            "scalar" -> ScalarSimilarityKernel
+            "auto" -> vectorKernelOrNull() ?: ScalarSimilarityKernel
+            "vector" ->
+                vectorKernelOrNull() ?: ScalarSimilarityKernel.also {
+                    log.warn("Vector similarity kernel requested but jdk.incubator.vector is not enabled, using scalar kernel")
+                }
+            else -> throw IllegalArgumentException("Unknown similarity kernel: $type")
+        }
+
+    private fun vectorKernelOrNull(): SimilarityKernel? {
+        if (!vectorApiAvailable) return null
+        return try {
+            VectorApiSimilarityKernel
+        } catch (e: LinkageError) {
+            log.warn("Failed to initialize vector similarity kernel, using scalar kernel", e)
+            null
+        }
+    }
+}
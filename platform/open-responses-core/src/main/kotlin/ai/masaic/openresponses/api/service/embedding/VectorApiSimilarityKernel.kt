@@ -0,0 +1,39 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import jdk.incubator.vector.FloatVector
+import jdk.incubator.vector.VectorOperators
+import jdk.incubator.vector.VectorSpecies
+
+/**
+ * SIMD kernel built on the JDK Vector API.
+ *
+ * Only referenced through [SimilarityKernels] after checking that `jdk.incubator.vector`
+ * is present, as loading this class fails otherwise.
+ */
+internal object VectorApiSimilarityKernel : SimilarityKernel {
+    private val species: VectorSpecies<Float> = FloatVector.SPECIES_PREFERRED
+
+    override val name = "vector"
+
+    override fun dot(
+        a: FloatArray,
+        b: FloatArray,
+    ): Float {
+        val length = minOf(a.size, b.size)
+        val upper = species.loopBound(length)
+        var acc = FloatVector.zero(species)
+        var i = 0
+        while (i < upper) {
+            val va = FloatVector.fromArray(species, a, i)
+            val vb = FloatVector.fromArray(species, b, i)
+            acc = va.fma(vb, acc)
+            i += species.length()
+        }
+        var sum = acc.reduceLanes(VectorOperators.ADD)
+        while (i < length) {
+            sum += a[i] * b[i]
+            i++
+        }
+        return sum
+    }
+}
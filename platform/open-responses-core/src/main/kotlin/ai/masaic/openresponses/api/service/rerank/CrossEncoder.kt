@@ -0,0 +1,101 @@
+package ai.masaic.openresponses.api.service.rerank
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer
+import ai.djl.util.PairList
+import ai.onnxruntime.OnnxTensor
+import ai.onnxruntime.OrtEnvironment
+import ai.onnxruntime.OrtSession
+import java.nio.file.Paths
+import kotlin.math.exp
+
+/**
+ * Scores how relevant each passage is to a query, looking at both texts together.
+ */
+interface CrossEncoder : AutoCloseable {
+    /**
+     * Scores a batch of passages against one query in a single inference call.
+     *
+     * @return Relevance of every passage in (0, 1), in the order of [passages]
+     */
+    fun score(
+        query: String,
+        passages: List<String>,
+    ): FloatArray
+
+    override fun close() {}
+}
+
+/**
+ * [CrossEncoder] running a Hugging Face sequence-classification model exported to ONNX,
+ * such as `cross-encoder/ms-marco-MiniLM-L-6-v2`.
+ *
+ * The query/passage pairs of a batch are tokenized together, padded to the longest pair and
+ * truncated on the passage side, then run through the session as one tensor. Models with a
+ * single logit are squashed with a sigmoid; models with two take the positive class.
+ */
+class OnnxCrossEncoder(
+    modelPath: String,
+    tokenizerPath: String,
+    maxLength: Int,
+    intraOpThreads: Int,
+) : CrossEncoder {
+    private val environment = OrtEnvironment.getEnvironment()
+    private val session: OrtSession =
+        OrtSession.SessionOptions().use { options ->
+            options.setIntraOpNumThreads(intraOpThreads)
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT)
+            environment.createSession(modelPath, options)
+        }
+    private val tokenizer =
+        HuggingFaceTokenizer.newInstance(
+            Paths.get(tokenizerPath),
+            mapOf(
+                "maxLength" to maxLength.toString(),
+                "truncation" to "only_second",
+                "padding" to "true",
+            ),
+        )
+    private val usesTokenTypes = "token_type_ids" in session.inputNames
+
+    override fun score(
+        query: String,
+        passages: List<String>,
+    ): FloatArray {
+        if (passages.isEmpty()) return FloatArray(0)
+
+        val pairs = PairList<String, String>(passages.size)
+        passages.forEach { pairs.add(query, it) }
+        val encodings = tokenizer.batchEncode(pairs)
+
+        val tensors = LinkedHashMap<String, OnnxTensor>()
+        try {
+            tensors["input_ids"] = OnnxTensor.createTensor(environment, Array(encodings.size) { encodings[it].ids })
+            tensors["attention_mask"] = OnnxTensor.createTensor(environment, Array(encodings.size) { encodings[it].attentionMask })
+            if (usesTokenTypes) {
+                tensors["token_type_ids"] = OnnxTensor.createTensor(environment, Array(encodings.size) { encodings[it].typeIds })
+            }
+            session.run(tensors).use { result ->
+                @Suppress("UNCHECKED_CAST")
+                val logits = result[0].value as Array<FloatArray>
+                return FloatArray(logits.size) { row -> relevance(logits[row]) }
+            }
+        } finally {
+            tensors.values.forEach { it.close() }
+        }
+    }
+
+    private fun relevance(logits: FloatArray): Float =
+        if (logits.size == 1) {
+            sigmoid(logits[0])
+        } else {
+            // Softmax probability of the last (relevant) class
+            sigmoid(logits[logits.size - 1] - logits[logits.size - 2])
+        }
+
+    private fun sigmoid(x: Float): Float = (1.0 / (1.0 + exp(-x.toDouble()))).toFloat()
+
+    override fun close() {
+        session.close()
+        tokenizer.close()
+    }
+}
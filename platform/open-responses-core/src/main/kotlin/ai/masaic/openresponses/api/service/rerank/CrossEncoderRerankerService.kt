@@ -0,0 +1,74 @@
+package ai.masaic.openresponses.api.service.rerank
+
+import ai.masaic.openresponses.api.model.VectorStoreSearchResult
+import jakarta.annotation.PreDestroy
+import kotlinx.coroutines.ExecutorCoroutineDispatcher
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.withContext
+import mu.KotlinLogging
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * [RerankerService] scoring candidates with an in-process [CrossEncoder].
+ *
+ * Only the first `min(k, maxCandidates)` candidates are re-scored; they are scored in batches
+ * of [RerankerProperties.batchSize] pairs per inference call and moved ahead of the rest,
+ * which keep their order and scores. Inference runs on a dedicated pool of
+ * [RerankerProperties.threads] daemon threads, so concurrent searches queue for the CPU
+ * instead of taking over the IO dispatcher.
+ */
+class CrossEncoderRerankerService(
+    private val crossEncoder: CrossEncoder,
+    private val properties: RerankerProperties,
+) : RerankerService {
+    private val logger = KotlinLogging.logger {}
+
+    private val dispatcher: ExecutorCoroutineDispatcher =
+        Executors
+            .newFixedThreadPool(properties.threads) { runnable ->
+                Thread(runnable, "reranker-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+            }.asCoroutineDispatcher()
+
+    override val maxCandidates: Int
+        get() = properties.maxCandidates
+
+    init {
+        logger.info { "CrossEncoderRerankerService enabled with ${properties.threads} threads, batch size ${properties.batchSize}" }
+    }
+
+    override suspend fun rerank(
+        query: String,
+        docs: List<VectorStoreSearchResult>,
+        k: Int,
+    ): List<VectorStoreSearchResult> {
+        val limit = minOf(k, properties.maxCandidates, docs.size)
+        if (limit <= 0 || query.isBlank()) return docs.toList()
+
+        val head = docs.subList(0, limit)
+        val scores =
+            withContext(dispatcher) {
+                val scores = FloatArray(limit)
+                head.chunked(properties.batchSize).forEachIndexed { batch, candidates ->
+                    val batchScores = crossEncoder.score(query, candidates.map { passage(it) })
+                    batchScores.copyInto(scores, batch * properties.batchSize)
+                }
+                scores
+            }
+
+        val reranked = head.indices.sortedByDescending { scores[it] }.map { head[it].copy(score = scores[it].toDouble()) }
+        return reranked + docs.subList(limit, docs.size)
+    }
+
+    private fun passage(doc: VectorStoreSearchResult): String = doc.content.joinToString("\n") { it.text }
+
+    @PreDestroy
+    fun close() {
+        dispatcher.close()
+        crossEncoder.close()
+    }
+
+    companion object {
+        private val threadCount = AtomicInteger()
+    }
+}
@@ -0,0 +1,53 @@
+package ai.masaic.openresponses.api.service.rerank
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.boot.context.properties.EnableConfigurationProperties
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Primary
+
+/**
+ * Configuration properties for the reranker applied to hybrid search results.
+ */
+@ConfigurationProperties(prefix = "open-responses.reranker")
+data class RerankerProperties(
+    // Reranker to use: "none" or "cross-encoder"
+    val type: String = "none",
+    // Path to the cross-encoder ONNX model file
+    val onnxModelPath: String? = null,
+    // Path to the cross-encoder tokenizer JSON file
+    val tokenizerPath: String? = null,
+    // Maximum tokens per query/passage pair; longer passages are truncated
+    val maxLength: Int = 512,
+    // Maximum number of top candidates re-scored per search
+    val maxCandidates: Int = 50,
+    // Query/passage pairs per inference call
+    val batchSize: Int = 32,
+    // Size of the dedicated inference thread pool
+    val threads: Int = maxOf(1, Runtime.getRuntime().availableProcessors() / 2),
+    // ONNX Runtime intra-op threads per inference call
+    val intraOpThreads: Int = 1,
+)
+
+/**
+ * Configuration for the reranker.
+ */
+@Configuration
+@EnableConfigurationProperties(RerankerProperties::class)
+class RerankerConfiguration {
+    /**
+     * Creates the local cross-encoder reranker when open-responses.reranker.type is cross-encoder.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = ["open-responses.reranker.type"], havingValue = "cross-encoder")
+    fun crossEncoderRerankerService(properties: RerankerProperties): RerankerService {
+        val modelPath = requireNotNull(properties.onnxModelPath) { "open-responses.reranker.onnx-model-path is required for the cross-encoder reranker" }
+        val tokenizerPath = requireNotNull(properties.tokenizerPath) { "open-responses.reranker.tokenizer-path is required for the cross-encoder reranker" }
+        return CrossEncoderRerankerService(
+            OnnxCrossEncoder(modelPath, tokenizerPath, properties.maxLength, properties.intraOpThreads),
+            properties,
+        )
+    }
+}
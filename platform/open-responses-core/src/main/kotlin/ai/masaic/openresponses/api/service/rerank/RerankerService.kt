@@ -10,6 +10,13 @@ import org.springframework.stereotype.Component
  * Implementations **must** preserve the list size and return a new list.
  */
 interface RerankerService {
+    /**
+     * How many fused candidates a search should hand to [rerank]; a search never passes
+     * fewer than the results it returns. Defaults to 0, i.e. only the returned results.
+     */
+    val maxCandidates: Int
+        get() = 0
+
     suspend fun rerank(
         query: String,
         docs: List<VectorStoreSearchResult>,
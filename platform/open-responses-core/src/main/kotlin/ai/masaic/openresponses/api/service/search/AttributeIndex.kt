@@ -0,0 +1,161 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.utils.CompiledFilter
+import ai.masaic.openresponses.api.utils.CompiledFilter.Operator
+import java.util.BitSet
+import java.util.TreeMap
+
+/**
+ * Inverted index from chunk attributes to the slots of the chunks carrying them.
+ *
+ * Every chunk of a [VectorStorePartition] has a dense slot number. For each attribute key the
+ * index keeps a bitmap per distinct value, a bitmap of the chunks that have the key at all and,
+ * for keys whose values are all numbers, a sorted map from value to bitmap. A [CompiledFilter]
+ * is turned into a [Plan] by intersecting and uniting those bitmaps, so a filtered search only
+ * has to look at the chunks in the plan.
+ *
+ * This class is not thread-safe; the provider guards all partitions with one lock.
+ */
+internal class AttributeIndex {
+    /**
+     * The chunks a filter may match. If [exact] is false, the slots are a superset and every
+     * chunk still has to be checked with [CompiledFilter.matches].
+     */
+    data class Plan(
+        val slots: BitSet,
+        val exact: Boolean,
+    )
+
+    private val live = BitSet()
+    private val postings = HashMap<String, HashMap<Any, BitSet>>()
+    private val present = HashMap<String, BitSet>()
+    private val numeric = HashMap<String, TreeMap<Double, BitSet>>()
+
+    /** Keys with at least one non-numeric value; range filters on them are not answered from the index. */
+    private val unordered = HashSet<String>()
+
+    val size: Int
+        get() = live.cardinality()
+
+    fun add(
+        slot: Int,
+        attributes: Map<String, Any?>,
+    ) {
+        live.set(slot)
+        attributes.forEach { (key, value) ->
+            // A null attribute never matches, as in FilterUtils.matchesFilter
+            if (value == null) return@forEach
+            present.getOrPut(key) { BitSet() }.set(slot)
+            postings.getOrPut(key) { HashMap() }.getOrPut(value) { BitSet() }.set(slot)
+            if (value is Number) {
+                numeric.getOrPut(key) { TreeMap() }.getOrPut(value.toDouble()) { BitSet() }.set(slot)
+            } else {
+                unordered.add(key)
+            }
+        }
+    }
+
+    /**
+     * Removes a chunk. The attributes must be the ones it was added with.
+     */
+    fun remove(
+        slot: Int,
+        attributes: Map<String, Any?>,
+    ) {
+        live.clear(slot)
+        attributes.forEach { (key, value) ->
+            if (value == null) return@forEach
+            clear(present, key, slot)
+            postings[key]?.let { clear(it, value, slot) }
+            if (value is Number) numeric[key]?.let { clear(it, value.toDouble(), slot) }
+        }
+    }
+
+    private fun <K> clear(
+        bitmaps: MutableMap<K, BitSet>,
+        key: K,
+        slot: Int,
+    ) {
+        val bitmap = bitmaps[key] ?: return
+        bitmap.clear(slot)
+        if (bitmap.isEmpty) bitmaps.remove(key)
+    }
+
+    /**
+     * Resolves a filter to the chunks it may match.
+     */
+    fun plan(filter: CompiledFilter): Plan {
+        val plan = planNode(filter)
+        plan.slots.and(live)
+        return plan
+    }
+
+    private fun planNode(filter: CompiledFilter): Plan =
+        when (filter) {
+            is CompiledFilter.Comparison -> planComparison(filter)
+            is CompiledFilter.And -> {
+                val slots = live.clone() as BitSet
+                var exact = true
+                filter.filters.forEach {
+                    val child = planNode(it)
+                    slots.and(child.slots)
+                    exact = exact && child.exact
+                }
+                Plan(slots, exact)
+            }
+            is CompiledFilter.Or -> {
+                val slots = BitSet()
+                var exact = true
+                filter.filters.forEach {
+                    val child = planNode(it)
+                    slots.or(child.slots)
+                    exact = exact && child.exact
+                }
+                Plan(slots, exact)
+            }
+            CompiledFilter.Never -> Plan(BitSet(), true)
+        }
+
+    private fun planComparison(filter: CompiledFilter.Comparison): Plan {
+        val key = filter.key
+        return when (filter.operator) {
+            Operator.EQ -> Plan(union(key, listOf(filter.value)), true)
+            Operator.IN -> Plan(union(key, filter.value as Set<*>), true)
+            Operator.NE -> Plan(present(key).apply { andNot(union(key, listOf(filter.value))) }, true)
+            Operator.NIN -> Plan(present(key).apply { andNot(union(key, filter.value as Set<*>)) }, true)
+            Operator.GT, Operator.GTE, Operator.LT, Operator.LTE -> {
+                val bound = filter.value
+                val values = numeric[key]
+                when {
+                    key !in present -> Plan(BitSet(), true)
+                    bound !is Number || key in unordered || values == null -> Plan(present(key), false)
+                    else -> {
+                        val limit = bound.toDouble()
+                        val range =
+                            when (filter.operator) {
+                                Operator.GT -> values.tailMap(limit, false)
+                                Operator.GTE -> values.tailMap(limit, true)
+                                Operator.LT -> values.headMap(limit, false)
+                                else -> values.headMap(limit, true)
+                            }
+                        val slots = BitSet()
+                        range.values.forEach { slots.or(it) }
+                        Plan(slots, true)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun present(key: String): BitSet = present[key]?.clone() as BitSet? ?: BitSet()
+
+    private fun union(
+        key: String,
+        values: Collection<*>,
+    ): BitSet {
+        val slots = BitSet()
+        val byValue = postings[key] ?: return slots
+        values.forEach { value -> byValue[value]?.let { slots.or(it) } }
+        return slots
+    }
+}
@@ -0,0 +1,142 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
+import ai.masaic.openresponses.api.model.IndexingProgress
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import org.slf4j.LoggerFactory
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.random.Random
+
+/**
+ * Embeds the chunks of a file in provider-sized batches while the file is still being parsed.
+ *
+ * Chunks are grouped until the next one would exceed [VectorSearchConfigProperties.IndexingConfig.maxBatchTokens]
+ * (estimated at four characters per token) or [VectorSearchConfigProperties.IndexingConfig.maxBatchSize].
+ * Up to [VectorSearchConfigProperties.IndexingConfig.concurrency] batches are embedded at once, rate-limited
+ * requests are retried with exponential backoff and jitter, and each finished batch is handed to the caller
+ * for writing straight away. Progress goes to the [IndexingProgressListener] in the coroutine context, if any.
+ */
+class EmbeddingBatchPipeline(
+    private val config: VectorSearchConfigProperties.IndexingConfig,
+) {
+    private val log = LoggerFactory.getLogger(EmbeddingBatchPipeline::class.java)
+
+    /**
+     * Embeds every item of [items].
+     *
+     * @param items The items to embed, typically streamed from the parser
+     * @param text The text of an item
+     * @param embed Embeds a batch of texts; blocking calls are fine, it runs on the IO dispatcher
+     * @param onBatch Receives the offset of a batch's first item, its items and their vectors; calls are serialized
+     * @return The number of items embedded
+     */
+    suspend fun <T> run(
+        items: Flow<T>,
+        text: (T) -> String,
+        embed: (List<String>) -> List<FloatArray>,
+        onBatch: suspend (offset: Int, batch: List<T>, vectors: List<FloatArray>) -> Unit,
+    ): Int {
+        val listener = currentCoroutineContext()[IndexingProgressListener]
+        val permits = Semaphore(config.concurrency.coerceAtLeast(1))
+        val writeLock = Mutex()
+        val embedded = AtomicInteger()
+
+        var total: Int? = null
+        var count = 0
+
+        coroutineScope {
+            var batch = ArrayList<T>()
+            var batchTokens = 0
+
+            suspend fun dispatch() {
+                val offset = count - batch.size
+                val pending = batch
+                batch = ArrayList()
+                batchTokens = 0
+
+                // Bounds the batches in flight, which also stops parsing from running far ahead
+                permits.acquire()
+                launch {
+                    try {
+                        val vectors = embedWithRetry(pending.map(text), embed)
+                        check(vectors.size == pending.size) { "Expected ${pending.size} embeddings but got ${vectors.size}" }
+                        writeLock.withLock {
+                            onBatch(offset, pending, vectors)
+                            listener?.report(IndexingProgress(embedded.addAndGet(pending.size), total))
+                        }
+                    } finally {
+                        permits.release()
+                    }
+                }
+            }
+
+            items.collect { item ->
+                val tokens = estimateTokens(text(item))
+                if (batch.isNotEmpty() && (batchTokens + tokens > config.maxBatchTokens || batch.size >= config.maxBatchSize)) {
+                    dispatch()
+                }
+                batch.add(item)
+                batchTokens += tokens
+                count++
+            }
+            if (batch.isNotEmpty()) dispatch()
+            total = count
+        }
+
+        listener?.report(IndexingProgress(embedded.get(), count))
+        return count
+    }
+
+    private suspend fun embedWithRetry(
+        texts: List<String>,
+        embed: (List<String>) -> List<FloatArray>,
+    ): List<FloatArray> {
+        var attempt = 0
+        while (true) {
+            try {
+                return runInterruptible(Dispatchers.IO) { embed(texts) }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                if (attempt >= config.maxRetries || !isRateLimited(e)) throw e
+                val backoff = backoffMillis(attempt++)
+                log.warn("Embedding batch of {} chunks was rate limited, retry {} of {} in {} ms", texts.size, attempt, config.maxRetries, backoff)
+                delay(backoff)
+            }
+        }
+    }
+
+    // Full backoff doubles per attempt up to the cap; half of it is jittered so concurrent batches spread out
+    internal fun backoffMillis(attempt: Int): Long {
+        val backoff = (config.initialBackoffMillis shl attempt.coerceAtMost(30)).coerceIn(1, config.maxBackoffMillis.coerceAtLeast(1))
+        return backoff / 2 + Random.nextLong(backoff / 2 + 1)
+    }
+
+    companion object {
+        /**
+         * Rough token count of a text, at four characters per token.
+         */
+        fun estimateTokens(text: String): Int = (text.length + 3) / 4
+
+        /**
+         * Whether an error, or any of its causes, is a rate limit (HTTP 429) response.
+         * Matched by name so it covers both the OpenAI and LangChain4j client exceptions.
+         */
+        fun isRateLimited(error: Throwable): Boolean =
+            generateSequence(error) { it.cause }.take(10).any {
+                it.javaClass.simpleName.contains("RateLimit") ||
+                    it.message?.contains("429") == true ||
+                    it.message?.contains("rate limit", ignoreCase = true) == true
+            }
+    }
+}
@@ -0,0 +1,308 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernel
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+/**
+ * Read-only view of the embeddings of a single file, backed by a memory-mapped segment.
+ *
+ * A segment is stored as two files in the embeddings directory:
+ * - `embeddings-<fileId>.vec`: little-endian binary with a 16-byte header
+ *   (magic, version, dimension, count), an offsets table of `count` longs giving the
+ *   absolute byte offset of each chunk vector, and the contiguous float32 vector block.
+ * - `embeddings-<fileId>.json`: the [SegmentSidecar] with file metadata and chunk text/metadata.
+ *
+ * Vectors are read straight from the mapped buffers, so scoring needs no deserialization
+ * and the data is shared with the OS page cache rather than copied onto the heap. A single
+ * mapping cannot exceed 2 GB, so the vector block is mapped in windows that each hold a whole
+ * number of vectors.
+ */
+class EmbeddingSegment private constructor(
+    val fileId: String,
+    val metadata: Map<String, Any>,
+    val chunks: List<SegmentChunk>,
+    val quantization: QuantizationMode,
+    val dimension: Int,
+    private val vectorsPerWindow: Int,
+    private val windows: Array<FloatBuffer>,
+) {
+    /**
+     * Number of chunk vectors in the segment.
+     */
+    val count: Int
+        get() = chunks.size
+
+    private fun window(ordinal: Int): FloatBuffer = windows[ordinal / vectorsPerWindow]
+
+    private fun base(ordinal: Int): Int = (ordinal % vectorsPerWindow) * dimension
+
+    /**
+     * Copies the vector of a chunk onto the heap.
+     */
+    fun vector(ordinal: Int): FloatArray {
+        val vector = FloatArray(dimension)
+        read(ordinal, vector)
+        return vector
+    }
+
+    /**
+     * Bulk-copies the vector of a chunk into [into], which must hold at least [dimension] floats.
+     */
+    fun read(
+        ordinal: Int,
+        into: FloatArray,
+    ) {
+        window(ordinal).get(base(ordinal), into, 0, dimension)
+    }
+
+    /**
+     * Dot product between a chunk vector and the query. The vector is bulk-copied into [scratch],
+     * sized [dimension], so the product runs on the [kernel] rather than element by element off the mapping.
+     */
+    fun dot(
+        ordinal: Int,
+        query: FloatArray,
+        kernel: SimilarityKernel,
+        scratch: FloatArray = FloatArray(dimension),
+    ): Float {
+        read(ordinal, scratch)
+        return kernel.dot(scratch, query)
+    }
+
+    /**
+     * Dot product between a chunk vector and a chunk vector of another (or the same) segment,
+     * both bulk-copied into scratch arrays sized to their segment's [dimension].
+     */
+    fun dot(
+        ordinal: Int,
+        other: EmbeddingSegment,
+        otherOrdinal: Int,
+        kernel: SimilarityKernel,
+        scratch: FloatArray = FloatArray(dimension),
+        otherScratch: FloatArray = FloatArray(other.dimension),
+    ): Float {
+        read(ordinal, scratch)
+        other.read(otherOrdinal, otherScratch)
+        return kernel.dot(scratch, otherScratch)
+    }
+
+    companion object {
+        private const val MAGIC = 0x41474356 // "AGCV"
+        private const val VERSION = 1
+        private const val HEADER_BYTES = 16
+
+        // Largest region a single MappedByteBuffer can cover
+        internal const val MAX_WINDOW_BYTES = Int.MAX_VALUE.toLong()
+
+        private const val WRITE_BUFFER_BYTES = 1 shl 20
+
+        fun vectorPath(
+            dir: Path,
+            fileId: String,
+        ): Path = dir.resolve("embeddings-$fileId.vec")
+
+        fun sidecarPath(
+            dir: Path,
+            fileId: String,
+        ): Path = dir.resolve("embeddings-$fileId.json")
+
+        /**
+         * Whether a complete segment exists for the file.
+         */
+        fun exists(
+            dir: Path,
+            fileId: String,
+        ): Boolean = Files.exists(vectorPath(dir, fileId)) && Files.exists(sidecarPath(dir, fileId))
+
+        /**
+         * Writes a segment atomically, replacing any existing one for the file, and opens it.
+         *
+         * @param vectors One vector per chunk, all of the same dimension
+         * @param quantization How the provider should hold the vectors resident; recorded in the sidecar
+         * @throws IllegalArgumentException if the header and offsets table, or a single vector, would not fit in one mapping
+         */
+        fun write(
+            dir: Path,
+            fileId: String,
+            metadata: Map<String, Any>,
+            chunks: List<SegmentChunk>,
+            vectors: List<FloatArray>,
+            objectMapper: ObjectMapper,
+            quantization: QuantizationMode = QuantizationMode.NONE,
+        ): EmbeddingSegment {
+            require(chunks.size == vectors.size) { "Expected ${chunks.size} vectors but got ${vectors.size}" }
+            val dimension = vectors.firstOrNull()?.size ?: 0
+            require(vectors.all { it.size == dimension }) { "All vectors in a segment must have dimension $dimension" }
+
+            val vectorsStart = vectorsStart(vectors.size)
+            val vectorBytes = dimension.toLong() * Float.SIZE_BYTES
+            require(vectorsStart <= MAX_WINDOW_BYTES && vectorBytes <= MAX_WINDOW_BYTES) {
+                "Segment for file $fileId is too large: ${vectors.size} vectors of dimension $dimension"
+            }
+
+            val vectorTmp = dir.resolve("embeddings-$fileId.vec.tmp")
+            FileChannel
+                .open(vectorTmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                .use { channel ->
+                    val header = ByteBuffer.allocate(vectorsStart.toInt()).order(ByteOrder.LITTLE_ENDIAN)
+                    header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(vectors.size)
+                    vectors.indices.forEach { header.putLong(vectorsStart + it * vectorBytes) }
+                    writeFully(channel, header.flip())
+
+                    // Vectors are streamed through a bounded buffer, so the segment is never built in memory
+                    val buffer = ByteBuffer.allocate(maxOf(WRITE_BUFFER_BYTES.toLong(), vectorBytes).toInt()).order(ByteOrder.LITTLE_ENDIAN)
+                    vectors.forEach { vector ->
+                        if (buffer.remaining() < vectorBytes) {
+                            writeFully(channel, buffer.flip())
+                            buffer.clear()
+                        }
+                        vector.forEach { buffer.putFloat(it) }
+                    }
+                    writeFully(channel, buffer.flip())
+                    channel.force(true)
+                }
+
+            val sidecarTmp = dir.resolve("embeddings-$fileId.json.tmp")
+            objectMapper.writeValue(sidecarTmp.toFile(), SegmentSidecar(fileId, metadata, chunks, quantization))
+
+            // Vectors first: a sidecar without its .vec is treated as a legacy file and re-migrated
+            Files.move(vectorTmp, vectorPath(dir, fileId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            Files.move(sidecarTmp, sidecarPath(dir, fileId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+
+            return open(dir, fileId, objectMapper)
+                ?: throw IllegalStateException("Segment for file $fileId could not be reopened after writing")
+        }
+
+        /**
+         * Opens and memory-maps the segment for a file.
+         *
+         * @return The segment, or null if it does not exist
+         * @throws IllegalStateException if the vector file is corrupt, too large to map or does not match its sidecar
+         */
+        fun open(
+            dir: Path,
+            fileId: String,
+            objectMapper: ObjectMapper,
+        ): EmbeddingSegment? = open(dir, fileId, objectMapper, MAX_WINDOW_BYTES)
+
+        /**
+         * Opens a segment, mapping its vectors in windows of at most [windowBytes].
+         */
+        internal fun open(
+            dir: Path,
+            fileId: String,
+            objectMapper: ObjectMapper,
+            windowBytes: Long,
+        ): EmbeddingSegment? {
+            if (!exists(dir, fileId)) return null
+
+            val sidecar = objectMapper.readValue<SegmentSidecar>(sidecarPath(dir, fileId).toFile())
+            val path = vectorPath(dir, fileId)
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                val size = channel.size()
+                check(size >= HEADER_BYTES) { "Not an embeddings segment: $path" }
+                val header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES.toLong()).order(ByteOrder.LITTLE_ENDIAN)
+                check(header.getInt(0) == MAGIC) { "Not an embeddings segment: $path" }
+                check(header.getInt(4) == VERSION) { "Unsupported segment version ${header.getInt(4)} for file $fileId" }
+                val dimension = header.getInt(8)
+                val count = header.getInt(12)
+                check(count == sidecar.chunks.size) { "Segment for file $fileId has $count vectors but ${sidecar.chunks.size} chunks" }
+
+                val vectorsStart = vectorsStart(count)
+                val vectorBytes = dimension.toLong() * Float.SIZE_BYTES
+                check(vectorsStart <= MAX_WINDOW_BYTES && vectorBytes <= windowBytes) {
+                    "Segment for file $fileId is too large to map: $count vectors of dimension $dimension"
+                }
+                check(size == vectorsStart + count * vectorBytes) { "Segment for file $fileId is $size bytes, expected ${vectorsStart + count * vectorBytes}" }
+
+                // Vectors are located by window, so the offsets table must describe the contiguous layout
+                val offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES.toLong(), vectorsStart - HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                for (ordinal in 0 until count) {
+                    check(offsets.getLong(ordinal * Long.SIZE_BYTES) == vectorsStart + ordinal * vectorBytes) {
+                        "Segment for file $fileId has a non-contiguous vector block"
+                    }
+                }
+
+                val vectorsPerWindow = if (vectorBytes == 0L) Int.MAX_VALUE else (windowBytes / vectorBytes).coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+                val windowCount = if (count == 0) 0 else (count - 1) / vectorsPerWindow + 1
+                val windows =
+                    Array(windowCount) { window ->
+                        val first = window.toLong() * vectorsPerWindow
+                        val vectorsInWindow = minOf(vectorsPerWindow.toLong(), count - first)
+                        channel
+                            .map(FileChannel.MapMode.READ_ONLY, vectorsStart + first * vectorBytes, vectorsInWindow * vectorBytes)
+                            .order(ByteOrder.LITTLE_ENDIAN)
+                            .asFloatBuffer()
+                    }
+                return EmbeddingSegment(fileId, sidecar.metadata, sidecar.chunks, sidecar.quantization, dimension, vectorsPerWindow, windows)
+            }
+        }
+
+        private fun vectorsStart(count: Int): Long = HEADER_BYTES + Long.SIZE_BYTES.toLong() * count
+
+        private fun writeFully(
+            channel: FileChannel,
+            buffer: ByteBuffer,
+        ) {
+            while (buffer.hasRemaining()) channel.write(buffer)
+        }
+
+        /**
+         * Reads only the sidecar, without mapping the vectors.
+         */
+        fun readSidecar(
+            dir: Path,
+            fileId: String,
+            objectMapper: ObjectMapper,
+        ): SegmentSidecar? {
+            val path = sidecarPath(dir, fileId)
+            return if (Files.exists(path)) objectMapper.readValue<SegmentSidecar>(path.toFile()) else null
+        }
+
+        /**
+         * Deletes both files of a segment.
+         *
+         * @return True if anything was deleted
+         */
+        fun delete(
+            dir: Path,
+            fileId: String,
+        ): Boolean {
+            val vectorsDeleted = Files.deleteIfExists(vectorPath(dir, fileId))
+            val sidecarDeleted = Files.deleteIfExists(sidecarPath(dir, fileId))
+            return vectorsDeleted || sidecarDeleted
+        }
+    }
+}
+
+/**
+ * Text and metadata of a chunk stored in a segment sidecar.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+data class SegmentChunk(
+    val chunkId: String,
+    val content: String,
+    val chunkMetadata: Map<String, Any> = emptyMap(),
+)
+
+/**
+ * JSON sidecar of a segment. Unknown properties are ignored so that legacy
+ * embeddings files, which share the same file name, can still be read as sidecars.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+data class SegmentSidecar(
+    val fileId: String,
+    val metadata: Map<String, Any>,
+    val chunks: List<SegmentChunk>,
+    val quantization: QuantizationMode = QuantizationMode.NONE,
+)
@@ -0,0 +1,102 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import org.slf4j.LoggerFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import kotlin.system.exitProcess
+
+/**
+ * One-shot migration of legacy `embeddings-<fileId>.json` files, which embed every vector
+ * as a JSON number array, into the binary [EmbeddingSegment] format.
+ *
+ * Vectors are L2-normalized on the way, matching what the provider writes for new files.
+ * The migration is idempotent: files that already have a `.vec` segment are skipped.
+ * It runs automatically when the file-based provider starts and can also be run offline:
+ *
+ * ```
+ * java -cp <classpath> ai.masaic.openresponses.api.service.search.EmbeddingSegmentMigrator <embeddings-dir>
+ * ```
+ */
+object EmbeddingSegmentMigrator {
+    private val log = LoggerFactory.getLogger(EmbeddingSegmentMigrator::class.java)
+
+    /**
+     * Legacy chunk layout. Vectors are read straight into a primitive array.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private data class LegacyChunk(
+        val chunkId: String,
+        val content: String,
+        val embedding: FloatArray,
+        val chunkMetadata: Map<String, Any> = emptyMap(),
+    )
+
+    private data class LegacyFileEmbeddings(
+        val fileId: String,
+        val metadata: Map<String, Any>,
+        val chunks: List<LegacyChunk>,
+    )
+
+    /**
+     * Converts every legacy embeddings file in the directory.
+     *
+     * @param embeddingsDir The embeddings directory of the file-based provider
+     * @param objectMapper Mapper used for both the legacy files and the new sidecars
+     * @return The number of files migrated
+     */
+    fun migrate(
+        embeddingsDir: Path,
+        objectMapper: ObjectMapper,
+    ): Int {
+        if (!Files.isDirectory(embeddingsDir)) return 0
+
+        val legacyFileIds =
+            Files.list(embeddingsDir).use { paths ->
+                paths
+                    .map { it.fileName.toString() }
+                    .filter { it.startsWith("embeddings-") && it.endsWith(".json") }
+                    .map { it.removePrefix("embeddings-").removeSuffix(".json") }
+                    .filter { !Files.exists(EmbeddingSegment.vectorPath(embeddingsDir, it)) }
+                    .toList()
+            }
+
+        var migrated = 0
+        legacyFileIds.forEach { fileId ->
+            try {
+                val legacy = objectMapper.readValue<LegacyFileEmbeddings>(EmbeddingSegment.sidecarPath(embeddingsDir, fileId).toFile())
+                EmbeddingSegment.write(
+                    dir = embeddingsDir,
+                    fileId = legacy.fileId,
+                    metadata = legacy.metadata,
+                    chunks = legacy.chunks.map { SegmentChunk(it.chunkId, it.content, it.chunkMetadata) },
+                    vectors = legacy.chunks.map { SimilarityKernels.default.normalize(it.embedding) },
+                    objectMapper = objectMapper,
+                )
+                migrated++
+            } catch (e: Exception) {
+                log.error("Failed to migrate embeddings for file {}", fileId, e)
+            }
+        }
+
+        if (migrated > 0) {
+            log.info("Migrated {} legacy embeddings files in {} to binary segments", migrated, embeddingsDir)
+        }
+        return migrated
+    }
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        if (args.size != 1) {
+            System.err.println("Usage: EmbeddingSegmentMigrator <embeddings-dir>")
+            exitProcess(1)
+        }
+        val migrated = migrate(Paths.get(args[0]), jacksonObjectMapper())
+        println("Migrated $migrated embeddings files")
+    }
+}
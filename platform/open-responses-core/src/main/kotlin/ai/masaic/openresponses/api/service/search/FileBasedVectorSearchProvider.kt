@@ -1,34 +1,44 @@
 package ai.masaic.openresponses.api.service.search
 
 import ai.masaic.openresponses.api.config.FileStorageProperties
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
 import ai.masaic.openresponses.api.model.ChunkingStrategy
 import ai.masaic.openresponses.api.model.Filter
 import ai.masaic.openresponses.api.model.RankingOptions
 import ai.masaic.openresponses.api.service.embedding.EmbeddingService
+import ai.masaic.openresponses.api.utils.ChunkingDefaults
 import ai.masaic.openresponses.api.utils.DocumentTextExtractor
-import ai.masaic.openresponses.api.utils.FilterUtils
 import ai.masaic.openresponses.api.utils.IdGenerator
-import ai.masaic.openresponses.api.utils.TextChunkingUtil
+import ai.masaic.openresponses.api.utils.TokenCounter
+import ai.masaic.openresponses.api.utils.TokenCounters
 import com.fasterxml.jackson.databind.ObjectMapper
-import com.fasterxml.jackson.module.kotlin.readValue
-import kotlinx.coroutines.DelicateCoroutinesApi
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.launch
+import kotlinx.coroutines.flow.map
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.stereotype.Service
 import java.io.InputStream
 import java.nio.file.Files
+import java.nio.file.Path
 import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 
 /**
  * File-based implementation of VectorSearchProvider.
  *
  * This class provides a vector search implementation that persists embeddings to disk.
- * It uses the EmbeddingService to generate vector embeddings and stores them in JSON files.
- * This ensures persistence across application restarts.
+ * It uses the EmbeddingService to generate vector embeddings and stores them in memory-mapped
+ * [EmbeddingSegment]s. This ensures persistence across application restarts.
+ *
+ * Storage is partitioned by vector store: each store's segments live in
+ * `embeddings/<vector_store_id>/` and are served from that store's own [VectorStorePartition]
+ * (resident [HnswIndex]es over the mapped vectors and over any quantized codes, and an [AttributeIndex] over chunk attributes),
+ * built at startup and kept up to date by [indexFile] and [deleteFile]. A search only touches the
+ * partitions of the stores it targets, and its filter is resolved to bitmaps before scoring.
  */
 @Service
 @ConditionalOnProperty(name = ["open-responses.store.vector.search.provider"], havingValue = "file", matchIfMissing = true)
@@ -37,86 +47,197 @@ class FileBasedVectorSearchProvider(
     private val objectMapper: ObjectMapper,
     fileStorageProperties: FileStorageProperties,
     @Autowired private val hybridSearchServiceHelper: HybridSearchServiceHelper,
+    vectorSearchProperties: VectorSearchConfigProperties = VectorSearchConfigProperties(),
+    tokenCounter: TokenCounter = TokenCounters.default,
 ) : VectorSearchProvider {
     private val log = LoggerFactory.getLogger(FileBasedVectorSearchProvider::class.java)
 
-    // Directory for storing embeddings
-    private val embeddingsDir = "${fileStorageProperties.getRootDirectory()}/embeddings"
+    // Root directory for storing embeddings, with one subdirectory per vector store
+    private val embeddingsRoot = Paths.get("${fileStorageProperties.getRootDirectory()}/embeddings")
+
+    private val hnswConfig = vectorSearchProperties.hnsw
+
+    // Sizes of chunking strategies that set none, and the tokenizer of the token-aware ones
+    private val chunkingDefaults =
+        ChunkingDefaults(
+            chunkSize = vectorSearchProperties.chunkSize,
+            chunkOverlap = vectorSearchProperties.chunkOverlap,
+            maxTokens = vectorSearchProperties.chunkMaxTokens,
+            overlapTokens = vectorSearchProperties.chunkOverlapTokens,
+            tokenCounter = tokenCounter,
+        )
+
+    // Sizes, parallelizes and retries the embedding requests made while indexing a file
+    private val embeddingPipeline = EmbeddingBatchPipeline(vectorSearchProperties.indexing)
+
+    // Vectors are normalized once at index time, so graph traversal and rescoring are plain dot products;
+    // the embedding service's kernel is used for both so the two agree
+    private val similarityKernel = embeddingService.similarityKernel
+
+    // Quantization mode per vector store, falling back to the server default
+    private val defaultQuantization = QuantizationMode.from(vectorSearchProperties.quantization.mode)
+    private val rescoreMultiplier = vectorSearchProperties.quantization.rescoreMultiplier.coerceAtLeast(1)
+    private val storeQuantization = ConcurrentHashMap<String, QuantizationMode>()
+
+    // Resident partitions by vector store ID, all guarded by indexLock
+    private val indexLock = ReentrantReadWriteLock()
+    private val partitions = HashMap<String, VectorStorePartition>()
 
     init {
         try {
             // Create embeddings directory if it doesn't exist
-            val embeddingsDirPath = Paths.get(embeddingsDir)
-            if (!Files.exists(embeddingsDirPath)) {
-                Files.createDirectories(embeddingsDirPath)
-                log.info("Created embeddings directory at {}", embeddingsDirPath.toAbsolutePath())
+            if (!Files.exists(embeddingsRoot)) {
+                Files.createDirectories(embeddingsRoot)
+                log.info("Created embeddings directory at {}", embeddingsRoot.toAbsolutePath())
             }
         } catch (e: Exception) {
             log.error("Error initializing FileBasedVectorSearchProvider", e)
         }
+        loadPartitions()
     }
 
     /**
-     * Data class representing a chunk of text with its vector embedding.
+     * Directory of a vector store's partition. Store IDs become path segments, so they are validated.
      */
-    private data class ChunkWithEmbedding(
-        val fileId: String,
-        val chunkId: String,
-        val content: String,
-        val embedding: List<Float>,
-        val chunkMetadata: Map<String, Any> = emptyMap(),
-    )
+    private fun partitionDir(vectorStoreId: String): Path {
+        require(VALID_PARTITION_NAME.matches(vectorStoreId)) { "Invalid vector store ID: $vectorStoreId" }
+        return embeddingsRoot.resolve(vectorStoreId)
+    }
 
     /**
-     * Data class for storing file chunks and metadata in JSON.
+     * Returns the partition of a vector store, creating it if needed. Must be called while holding the write lock.
      */
-    private data class FileEmbeddings(
-        val fileId: String,
-        val metadata: Map<String, Any>,
-        val chunks: List<ChunkWithEmbedding>,
-    )
+    private fun partition(vectorStoreId: String): VectorStorePartition =
+        partitions.getOrPut(vectorStoreId) {
+            VectorStorePartition(vectorStoreId, partitionDir(vectorStoreId), hnswConfig, similarityKernel)
+        }
 
     /**
-     * Load embeddings for a file directly from disk.
-     * Returns null if the file doesn't exist or can't be read.
+     * Migrates legacy and unpartitioned embeddings, then builds every partition from the segments on disk.
+     */
+    private fun loadPartitions() {
+        if (!Files.exists(embeddingsRoot)) return
+
+        EmbeddingSegmentMigrator.migrate(embeddingsRoot, objectMapper)
+        relocateUnpartitionedSegments()
+
+        val started = System.currentTimeMillis()
+        Files.list(embeddingsRoot).use { dirs ->
+            dirs.filter { Files.isDirectory(it) && VALID_PARTITION_NAME.matches(it.fileName.toString()) }.forEach { dir ->
+                segmentFileIds(dir).forEach { fileId ->
+                    loadSegment(dir, fileId)?.let { addToPartition(dir.fileName.toString(), it) }
+                }
+            }
+        }
+        indexLock.read {
+            log.info(
+                "Built {} vector store partitions with {} chunks from {} files in {} ms",
+                partitions.size,
+                partitions.values.sumOf { it.chunkCount },
+                partitions.values.sumOf { it.fileCount },
+                System.currentTimeMillis() - started,
+            )
+        }
+    }
+
+    /**
+     * Moves segments written before storage was partitioned into the directory of their vector store.
+     */
+    private fun relocateUnpartitionedSegments() {
+        var relocated = 0
+        segmentFileIds(embeddingsRoot).forEach { fileId ->
+            try {
+                val vectorStoreId =
+                    EmbeddingSegment
+                        .readSidecar(embeddingsRoot, fileId, objectMapper)
+                        ?.chunks
+                        ?.firstOrNull()
+                        ?.chunkMetadata
+                        ?.get("vector_store_id") as? String
+                val target =
+                    partitionDir(vectorStoreId?.takeIf { VALID_PARTITION_NAME.matches(it) } ?: UNASSIGNED_PARTITION)
+                Files.createDirectories(target)
+                // Vectors first, matching the order in which segments are written
+                Files.move(
+                    EmbeddingSegment.vectorPath(embeddingsRoot, fileId),
+                    EmbeddingSegment.vectorPath(target, fileId),
+                    StandardCopyOption.REPLACE_EXISTING,
+                )
+                Files.move(
+                    EmbeddingSegment.sidecarPath(embeddingsRoot, fileId),
+                    EmbeddingSegment.sidecarPath(target, fileId),
+                    StandardCopyOption.REPLACE_EXISTING,
+                )
+                relocated++
+            } catch (e: Exception) {
+                log.error("Failed to move embeddings for file {} into its vector store partition", fileId, e)
+            }
+        }
+        if (relocated > 0) {
+            log.info("Moved {} embeddings files into vector store partitions", relocated)
+        }
+    }
+
+    /**
+     * IDs of the files with a binary segment in a directory.
      */
-    private fun loadEmbeddingsForFile(fileId: String): FileEmbeddings? {
-        val path = Paths.get(embeddingsDir, "embeddings-$fileId.json")
-        return try {
-            if (!Files.exists(path)) {
+    private fun segmentFileIds(dir: Path): List<String> =
+        Files.list(dir).use { paths ->
+            paths
+                .map { it.fileName.toString() }
+                .filter { it.startsWith("embeddings-") && it.endsWith(".vec") }
+                .map { it.removePrefix("embeddings-").removeSuffix(".vec") }
+                .toList()
+        }
+
+    /**
+     * Adds a file's chunks to its partition, replacing any previous version of the file there.
+     * Quantized files are added to the partition's graph over codes, computed here outside the lock.
+     */
+    private fun addToPartition(
+        vectorStoreId: String,
+        segment: EmbeddingSegment,
+    ) {
+        val codes =
+            if (segment.quantization == QuantizationMode.NONE) {
                 null
             } else {
-                val json = Files.readAllBytes(path)
-                objectMapper.readValue<FileEmbeddings>(json)
+                QuantizedVectors.of(segment.quantization, List(segment.count) { segment.vector(it) })
             }
+        indexLock.write { partition(vectorStoreId).add(segment, codes) }
+    }
+
+    /**
+     * Opens the segment for a file directly from disk.
+     * Returns null if the file doesn't exist or can't be read.
+     */
+    private fun loadSegment(
+        dir: Path,
+        fileId: String,
+    ): EmbeddingSegment? =
+        try {
+            EmbeddingSegment.open(dir, fileId, objectMapper)
         } catch (e: Exception) {
             log.error("Error loading embeddings for file {}", fileId, e)
             null
         }
-    }
 
     /**
-     * Saves embeddings for a file to disk.
+     * Saves embeddings for a file to its vector store's partition as a binary segment.
      */
     private fun saveEmbeddings(
+        vectorStoreId: String,
         fileId: String,
-        chunks: List<ChunkWithEmbedding>,
+        chunks: List<SegmentChunk>,
+        vectors: List<FloatArray>,
         metadata: Map<String, Any>,
-    ) {
-        try {
-            val fileEmbeddings =
-                FileEmbeddings(
-                    fileId = fileId,
-                    metadata = metadata,
-                    chunks = chunks,
-                )
-
-            val json = objectMapper.writeValueAsString(fileEmbeddings)
-            Files.write(Paths.get(embeddingsDir, "embeddings-$fileId.json"), json.toByteArray())
-            log.info("Saved embeddings for file: $fileId")
-        } catch (e: Exception) {
-            log.error("Error saving embeddings for file: $fileId", e)
-        }
+        quantization: QuantizationMode,
+    ): EmbeddingSegment {
+        val dir = partitionDir(vectorStoreId)
+        Files.createDirectories(dir)
+        val segment = EmbeddingSegment.write(dir, fileId, metadata, chunks, vectors, objectMapper, quantization)
+        log.info("Saved embeddings for file: $fileId")
+        return segment
     }
 
     /**
@@ -130,7 +251,6 @@ class FileBasedVectorSearchProvider(
      * @param attributes Additional metadata attributes to include with each vector
      * @return True if indexing was successful, false otherwise
      */
-    @OptIn(DelicateCoroutinesApi::class, DelicateCoroutinesApi::class)
     override suspend fun indexFile(
         fileId: String,
         inputStream: InputStream,
@@ -141,70 +261,66 @@ class FileBasedVectorSearchProvider(
         vectorStoreId: String,
     ): Boolean {
         try {
-            if (preDeleteIfExists && Files.exists(Paths.get(embeddingsDir, "embeddings-$fileId.json"))) {
-                // Delete existing embeddings for this file
-                deleteFile(fileId)
+            if (preDeleteIfExists && EmbeddingSegment.exists(partitionDir(vectorStoreId), fileId)) {
+                // Delete existing embeddings for this file in this vector store
+                deleteFromPartition(vectorStoreId, fileId)
             }
 
-            // Extract text content from the file
-            val text = DocumentTextExtractor.extractAndCleanText(inputStream, filename)
-
-            if (text.isBlank()) {
-                log.warn("Extracted text is empty for file: $filename")
-                return false
-            }
+            // Stream chunks out of the parser and embed them in concurrent batches while parsing continues
+            val chunkTexts = mutableListOf<String>()
+            val chunkMetadataList = mutableListOf<MutableMap<String, Any>>()
+            val embeddings = HashMap<Int, FloatArray>()
+
+            val chunks =
+                DocumentTextExtractor.extractChunks(inputStream, filename, chunkingStrategy, chunkingDefaults).map { chunk ->
+                    // Generate a short unique ID for each chunk
+                    val chunkId = IdGenerator.generateChunkId()
+
+                    // Create base metadata
+                    val chunkMetadata =
+                        mutableMapOf<String, Any>(
+                            "file_id" to fileId,
+                            "filename" to filename,
+                            "chunk_id" to chunkId,
+                            "chunk_index" to chunk.index,
+                            "vector_store_id" to vectorStoreId,
+                        )
+                    // Add what the chunker knows about the chunk, such as its Markdown heading
+                    chunkMetadata.putAll(chunk.metadata)
+
+                    // Add any additional attributes
+                    if (attributes != null) {
+                        chunkMetadata.putAll(attributes)
+                    }
 
-            // Use the TextChunkingUtil to chunk the text
-            log.debug("Chunking text for file: $filename")
-            val textChunks = TextChunkingUtil.chunkText(text, chunkingStrategy)
+                    chunkTexts.add(chunk.text)
+                    chunkMetadataList.add(chunkMetadata)
+                    chunk.text
+                }
 
-            if (textChunks.isEmpty()) {
-                log.warn("No chunks created for file: $filename")
-                return false
+            // The segment needs every vector, so finished batches are kept by position until parsing is done
+            embeddingPipeline.run(
+                items = chunks,
+                text = { it },
+                embed = { embeddingService.embedTextsAsArrays(it) },
+            ) { offset, _, vectors ->
+                vectors.forEachIndexed { i, vector -> embeddings[offset + i] = similarityKernel.normalize(vector) }
             }
 
-            log.info("Created ${textChunks.size} chunks for file: $filename")
-
-            // Prepare for batch embedding
-            val chunkTexts = textChunks.map { it.text }
-            val chunkMetadataList = mutableListOf<Map<String, Any>>()
-
-            // Prepare metadata for each chunk
-            textChunks.forEachIndexed { index, chunk ->
-                // Generate a short unique ID for each chunk
-                val chunkId = IdGenerator.generateChunkId()
-
-                // Create base metadata
-                val chunkMetadata =
-                    mutableMapOf<String, Any>(
-                        "file_id" to fileId,
-                        "filename" to filename,
-                        "chunk_id" to chunkId,
-                        "chunk_index" to index,
-                        "vector_store_id" to vectorStoreId,
-                        "total_chunks" to textChunks.size,
-                    )
-
-                // Add any additional attributes
-                if (attributes != null) {
-                    chunkMetadata.putAll(attributes)
-                }
-
-                chunkMetadataList.add(chunkMetadata)
+            if (chunkTexts.isEmpty()) {
+                log.warn("Extracted text is empty for file: $filename")
+                return false
             }
 
-            // Generate embeddings for all chunks in batch
-            log.debug("Generating batch embeddings for {} chunks", chunkTexts.size)
-            val embeddings = embeddingService.embedTexts(chunkTexts)
+            log.info("Created ${chunkTexts.size} chunks for file: $filename")
 
-            // Create chunks with embeddings
-            val chunksWithEmbeddings =
-                textChunks.mapIndexed { index, chunk ->
-                    ChunkWithEmbedding(
-                        fileId = fileId,
+            // Create chunk records for the segment sidecar; the total is only known once parsing is done
+            val segmentChunks =
+                chunkTexts.mapIndexed { index, text ->
+                    chunkMetadataList[index]["total_chunks"] = chunkTexts.size
+                    SegmentChunk(
                         chunkId = chunkMetadataList[index]["chunk_id"] as String,
-                        content = chunk.text,
-                        embedding = embeddings[index],
+                        content = text,
                         chunkMetadata = chunkMetadataList[index],
                     )
                 }
@@ -217,30 +333,37 @@ class FileBasedVectorSearchProvider(
                 initialMetadata.putAll(attributes)
             }
 
-            // Persist to disk
-            saveEmbeddings(fileId, chunksWithEmbeddings, initialMetadata)
+            // Persist normalized vectors to disk and make the chunks searchable
+            val segment =
+                saveEmbeddings(
+                    vectorStoreId = vectorStoreId,
+                    fileId = fileId,
+                    chunks = segmentChunks,
+                    vectors = List(chunkTexts.size) { embeddings.getValue(it) },
+                    metadata = initialMetadata,
+                    quantization = storeQuantization[vectorStoreId] ?: defaultQuantization,
+                )
+            addToPartition(vectorStoreId, segment)
 
-            // Asynchronously index chunks for text search via hybrid service
+            // Index chunks for text search via hybrid service; this already runs on an ingestion worker
             val chunksForIndexing =
-                chunksWithEmbeddings.map { cw ->
+                segmentChunks.map { chunk ->
                     HybridSearchService.ChunkForIndexing(
-                        chunkId = cw.chunkId,
+                        chunkId = chunk.chunkId,
                         vectorStoreId = vectorStoreId,
-                        fileId = cw.fileId,
-                        filename = cw.chunkMetadata["filename"] as String,
-                        chunkIndex = cw.chunkMetadata["chunk_index"] as Int,
-                        content = cw.content,
+                        fileId = fileId,
+                        filename = chunk.chunkMetadata["filename"] as String,
+                        chunkIndex = chunk.chunkMetadata["chunk_index"] as Int,
+                        content = chunk.content,
                     )
                 }
-            GlobalScope.launch(Dispatchers.IO) {
-                try {
-                    hybridSearchServiceHelper.indexChunks(chunksForIndexing)
-                    log.info("Indexed ${chunksForIndexing.size} chunks for hybrid search")
-                } catch (e: Exception) {
-                    log.error("Error indexing chunks for hybrid search: ${e.message}", e)
-                    deleteFile(fileId) // Rollback if indexing fails
-                    throw e
-                }
+            try {
+                hybridSearchServiceHelper.indexChunks(chunksForIndexing)
+                log.info("Indexed ${chunksForIndexing.size} chunks for hybrid search")
+            } catch (e: Exception) {
+                log.error("Error indexing chunks for hybrid search: ${e.message}", e)
+                deleteFromPartition(vectorStoreId, fileId) // Rollback if indexing fails
+                return false
             }
 
             return true
@@ -294,93 +417,68 @@ class FileBasedVectorSearchProvider(
         }
 
         // Generate embedding for the query
-        val queryEmbedding = embeddingService.embedText(query)
-
-        // Collect all chunks from disk
-        val embeddingsPath = Paths.get(embeddingsDir)
-        val allChunks = mutableListOf<ChunkWithEmbedding>()
-
-        if (Files.exists(embeddingsPath)) {
-            Files.list(embeddingsPath).use { paths ->
-                paths
-                    .filter { Files.isRegularFile(it) && it.fileName.toString().startsWith("embeddings-") }
-                    .forEach { path ->
-                        val id =
-                            path.fileName
-                                .toString()
-                                .removePrefix("embeddings-")
-                                .removeSuffix(".json")
-
-                        val fileEmbeddings = loadEmbeddingsForFile(id)
-                        fileEmbeddings?.let { allChunks.addAll(it.chunks) }
-                    }
-            }
-        }
+        val queryEmbedding = similarityKernel.normalize(embeddingService.embedTextAsArray(query))
 
-        // Apply filters to chunks
-        val filteredChunks = applyFilters(allChunks, filter)
-
-        // Calculate similarity scores
-        val scoredChunks =
-            filteredChunks.map { chunk ->
-                val score = embeddingService.calculateSimilarity(queryEmbedding, chunk.embedding)
-                chunk to score
+        // Only the partitions of the targeted stores are searched; the rest of the filter is compiled once
+        // and resolved against each partition's attribute index
+        val scope = SearchScope.of(filter)
+        val candidates =
+            indexLock.read {
+                try {
+                    val compiled = scope.filter
+                    targetPartitions(scope).flatMap { it.candidates(queryEmbedding, maxResults, maxResults * rescoreMultiplier, compiled) }
+                } catch (e: Exception) {
+                    // Re-throw with more context about security implications
+                    throw IllegalArgumentException("Failed to apply filter: $filter. This may impact security filters.", e)
+                }
             }
 
-        // Sort by score (descending) and take top results
-        return scoredChunks
+        // Re-score every candidate against the full-precision mapped vectors in one call and apply the threshold
+        val candidateVectors = Array(candidates.size) { candidates[it].segment.vector(candidates[it].ordinal) }
+        val scores = embeddingService.dotAll(queryEmbedding, candidateVectors)
+        return candidates
+            .mapIndexed { i, ref -> ref to scores[i] }
             .filter { it.second > (rankingOptions?.scoreThreshold ?: 0.07) }
-            .sortedByDescending { (_, score) -> score }
+            .sortedByDescending { it.second }
+            // A file attached to several stores has a copy in each partition
+            .distinctBy { (ref, _) -> ref.segment.fileId to ref.ordinal }
             .take(maxResults)
-            .map { (chunk, score) ->
-                // Get file metadata for each result
-                val fileEmbeddings = loadEmbeddingsForFile(chunk.fileId)
-                val fileMetadata = fileEmbeddings?.metadata ?: emptyMap()
-
+            .map { (ref, score) ->
                 VectorSearchProvider.SearchResult(
-                    fileId = chunk.fileId,
+                    fileId = ref.segment.fileId,
                     score = score.toDouble(),
-                    content = chunk.content,
-                    metadata = chunk.chunkMetadata + fileMetadata,
+                    content = ref.chunk.content,
+                    metadata = ref.chunk.chunkMetadata + ref.segment.metadata,
                 )
             }
     }
 
     /**
-     * Apply filters to chunks.
-     * @throws IllegalArgumentException if the filter cannot be properly applied
+     * Partitions a search has to visit. Must be called while holding the read lock.
      */
-    private fun applyFilters(
-        chunks: List<ChunkWithEmbedding>,
-        filter: Filter?,
-    ): List<ChunkWithEmbedding> {
-        // If no filter, return all chunks
-        if (filter == null) {
-            return chunks
+    private fun targetPartitions(scope: SearchScope): Collection<VectorStorePartition> {
+        val storeIds = scope.vectorStoreIds
+        val fileIds = scope.fileIds
+        return when {
+            storeIds != null -> storeIds.mapNotNull { partitions[it] }
+            fileIds != null -> partitions.values.filter { partition -> fileIds.any { partition.contains(it) } }
+            else -> partitions.values
         }
+    }
 
-        log.debug("Applying filter: {} to {} chunks", filter, chunks.size)
-
-        try {
-            // Apply the filter to each chunk
-            val filteredChunks =
-                chunks.filter { chunk ->
-                    // Load file metadata for each chunk being filtered
-                    val fileEmbeddings = loadEmbeddingsForFile(chunk.fileId)
-                    val fileMetadata = fileEmbeddings?.metadata ?: emptyMap()
-
-                    // Combine chunk metadata with file metadata
-                    val combinedMetadata = chunk.chunkMetadata + fileMetadata
-                    val matches = FilterUtils.matchesFilter(filter, combinedMetadata, chunk.fileId)
-                    matches
-                }
-
-            log.debug("After filtering: ${filteredChunks.size} chunks remain")
-
-            return filteredChunks
-        } catch (e: Exception) {
-            // Re-throw with more context about security implications
-            throw IllegalArgumentException("Failed to apply filter: $filter. This may impact security filters.", e)
+    /**
+     * Records the quantization mode of a vector store from its `quantization` metadata entry.
+     * Files indexed afterwards use that mode; files already indexed keep theirs until re-indexed.
+     */
+    override fun configureVectorStore(
+        vectorStoreId: String,
+        metadata: Map<String, String>?,
+    ) {
+        val mode = metadata?.get(QuantizationMode.METADATA_KEY)
+        if (mode == null) {
+            storeQuantization.remove(vectorStoreId)
+        } else {
+            storeQuantization[vectorStoreId] = QuantizationMode.from(mode)
         }
     }
 
@@ -395,40 +493,15 @@ class FileBasedVectorSearchProvider(
 
     /**
      * Deletes a file from the vector store.
+     * A file attached to several vector stores is removed from every partition.
      *
      * @param fileId The ID of the file to delete
      * @return True if deletion was successful, false otherwise
      */
     override suspend fun deleteFile(fileId: String): Boolean {
         try {
-            // Get vector store ID from file before deleting
-            val fileEmbeddings = loadEmbeddingsForFile(fileId)
-            val vectorStoreId =
-                fileEmbeddings
-                    ?.chunks
-                    ?.firstOrNull()
-                    ?.chunkMetadata
-                    ?.get("vector_store_id") as? String
-
-            // Delete the file from disk
-            val embeddingsFile = Paths.get(embeddingsDir, "embeddings-$fileId.json")
-            if (Files.exists(embeddingsFile)) {
-                Files.delete(embeddingsFile)
-                log.info("Deleted embeddings for file: $fileId")
-            }
-
-            // Delete from text search indexes via hybrid service
-            if (vectorStoreId != null) {
-                hybridSearchServiceHelper.let {
-                    try {
-                        it.deleteFileChunks(fileId, vectorStoreId)
-                        log.info("Deleted chunks for file $fileId from hybrid search indexes")
-                    } catch (e: Exception) {
-                        log.error("Error deleting file $fileId chunks from hybrid search indexes: ${e.message}", e)
-                    }
-                }
-            }
-
+            val vectorStoreIds = indexLock.read { partitions.values.filter { it.contains(fileId) }.map { it.vectorStoreId } }
+            vectorStoreIds.forEach { deleteFromPartition(it, fileId) }
             return true
         } catch (e: Exception) {
             log.error("Error deleting file embeddings: $fileId", e)
@@ -436,11 +509,52 @@ class FileBasedVectorSearchProvider(
         }
     }
 
+    /**
+     * Removes a file from one vector store's partition, its segment on disk and the text search indexes.
+     */
+    private fun deleteFromPartition(
+        vectorStoreId: String,
+        fileId: String,
+    ) {
+        indexLock.write { partitions[vectorStoreId]?.remove(fileId) }
+        if (EmbeddingSegment.delete(partitionDir(vectorStoreId), fileId)) {
+            log.info("Deleted embeddings for file: $fileId")
+        }
+
+        // Delete from text search indexes via hybrid service
+        try {
+            hybridSearchServiceHelper.deleteFileChunks(fileId, vectorStoreId)
+            log.info("Deleted chunks for file $fileId from hybrid search indexes")
+        } catch (e: Exception) {
+            log.error("Error deleting file $fileId chunks from hybrid search indexes: ${e.message}", e)
+        }
+    }
+
     /**
      * Gets metadata for a file from the vector store.
      *
      * @param fileId The ID of the file
      * @return Map of metadata, or null if the file doesn't exist
      */
-    override fun getFileMetadata(fileId: String): Map<String, Any>? = loadEmbeddingsForFile(fileId)?.metadata
+    override fun getFileMetadata(fileId: String): Map<String, Any>? =
+        indexLock.read { partitions.values.firstNotNullOfOrNull { it.segment(fileId)?.metadata } }
+            ?: try {
+                Files.list(embeddingsRoot).use { dirs ->
+                    dirs
+                        .filter { Files.isDirectory(it) }
+                        .toList()
+                        .firstNotNullOfOrNull { EmbeddingSegment.readSidecar(it, fileId, objectMapper)?.metadata }
+                }
+            } catch (e: Exception) {
+                log.error("Error loading embeddings metadata for file {}", fileId, e)
+                null
+            }
+
+    companion object {
+        // Vector store IDs are used as directory names
+        private val VALID_PARTITION_NAME = Regex("[A-Za-z0-9_-]+")
+
+        // Partition for pre-partitioning segments that carry no vector store ID
+        private const val UNASSIGNED_PARTITION = "unassigned"
+    }
 }
@@ -0,0 +1,144 @@
+package ai.masaic.openresponses.api.service.search
+
+import kotlin.math.sqrt
+
+/**
+ * Combines the vector and text leg scores of a [HybridMerge] into one score per chunk.
+ *
+ * Strategies are selected per request, per vector store through the `fusion` metadata entry,
+ * or globally through `open-responses.store.vector.search.hybrid.fusion`, using the specs
+ * `linear`, `rrf`, `rrf:<k>` and `zscore`.
+ */
+sealed interface FusionStrategy {
+    /**
+     * Fuses the legs of a merge.
+     *
+     * @param merge The merged legs
+     * @param alpha Weight of the vector leg in [0, 1]; the text leg gets `1 - alpha`
+     * @return The fused score of every chunk, indexed like the merge
+     */
+    fun fuse(
+        merge: HybridMerge,
+        alpha: Double,
+    ): DoubleArray
+
+    /**
+     * Scales each leg by its maximum score and blends the two with [alpha].
+     */
+    data object Linear : FusionStrategy {
+        override fun fuse(
+            merge: HybridMerge,
+            alpha: Double,
+        ): DoubleArray {
+            val maxVector = max(merge.vectorScores)
+            val maxText = max(merge.textScores)
+            return DoubleArray(merge.size) { i ->
+                val v = if (maxVector > 0) orZero(merge.vectorScores[i]) / maxVector else 0.0
+                val t = if (maxText > 0) orZero(merge.textScores[i]) / maxText else 0.0
+                alpha * v + (1 - alpha) * t
+            }
+        }
+
+        private fun max(scores: DoubleArray): Double {
+            var max = 0.0
+            for (score in scores) if (score > max) max = score
+            return max
+        }
+
+        private fun orZero(score: Double) = if (score.isNaN()) 0.0 else score
+    }
+
+    /**
+     * Reciprocal rank fusion: each leg contributes `1 / (k + rank)`, weighted by [alpha].
+     * Only ranks matter, so legs with incomparable score scales fuse without calibration.
+     */
+    data class ReciprocalRank(
+        val k: Int = DEFAULT_RRF_K,
+    ) : FusionStrategy {
+        init {
+            require(k > 0) { "RRF k must be positive: $k" }
+        }
+
+        override fun fuse(
+            merge: HybridMerge,
+            alpha: Double,
+        ): DoubleArray =
+            DoubleArray(merge.size) { i ->
+                val vectorRank = merge.vectorRanks[i]
+                val textRank = merge.textRanks[i]
+                (if (vectorRank >= 0) alpha / (k + vectorRank + 1) else 0.0) +
+                    (if (textRank >= 0) (1 - alpha) / (k + textRank + 1) else 0.0)
+            }
+    }
+
+    /**
+     * Standardizes each leg to zero mean and unit variance before blending with [alpha].
+     * A chunk missing from a leg gets that leg's lowest standardized score.
+     */
+    data object ZScore : FusionStrategy {
+        override fun fuse(
+            merge: HybridMerge,
+            alpha: Double,
+        ): DoubleArray {
+            val vector = standardize(merge.vectorScores)
+            val text = standardize(merge.textScores)
+            return DoubleArray(merge.size) { alpha * vector[it] + (1 - alpha) * text[it] }
+        }
+
+        private fun standardize(scores: DoubleArray): DoubleArray {
+            var count = 0
+            var sum = 0.0
+            for (score in scores) {
+                if (!score.isNaN()) {
+                    count++
+                    sum += score
+                }
+            }
+            if (count == 0) return DoubleArray(scores.size)
+
+            val mean = sum / count
+            var squares = 0.0
+            for (score in scores) if (!score.isNaN()) squares += (score - mean) * (score - mean)
+            val std = sqrt(squares / count)
+
+            val standardized =
+                DoubleArray(scores.size) {
+                    when {
+                        scores[it].isNaN() -> Double.NaN
+                        std == 0.0 -> 0.0
+                        else -> (scores[it] - mean) / std
+                    }
+                }
+            var floor = 0.0
+            for (z in standardized) if (z < floor) floor = z
+            for (i in standardized.indices) if (standardized[i].isNaN()) standardized[i] = floor
+            return standardized
+        }
+    }
+
+    companion object {
+        /** Vector store metadata key selecting the fusion strategy for that store. */
+        const val METADATA_KEY = "fusion"
+        const val DEFAULT_RRF_K = 60
+
+        /**
+         * Parses a fusion spec.
+         *
+         * @throws IllegalArgumentException if the spec is unknown
+         */
+        fun parse(spec: String): FusionStrategy {
+            val normalized = spec.trim().lowercase()
+            return when {
+                normalized == "linear" -> Linear
+                normalized == "zscore" || normalized == "z-score" -> ZScore
+                normalized == "rrf" -> ReciprocalRank()
+                normalized.startsWith("rrf:") ->
+                    ReciprocalRank(
+                        normalized.removePrefix("rrf:").toIntOrNull()
+                            ?: throw IllegalArgumentException("Invalid RRF k in fusion spec: $spec"),
+                    )
+                else -> throw IllegalArgumentException("Unknown fusion strategy: $spec. Expected linear, rrf, rrf:<k> or zscore")
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernel
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
+import java.util.BitSet
+import java.util.PriorityQueue
+import kotlin.math.floor
+import kotlin.math.ln
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.random.Random
+
+/**
+ * In-memory Hierarchical Navigable Small World (HNSW) graph for approximate
+ * nearest-neighbour search over cosine similarity.
+ *
+ * Vectors are L2-normalized, so similarity is a plain dot product. The graph holds only its
+ * links: vectors are read through [NodeVectors], which by default keeps normalized heap copies
+ * but can instead read them from wherever the caller already stores them, such as a mapped
+ * [EmbeddingSegment]. Nodes are identified by the dense ordinal returned from [add]. Removal only
+ * tombstones a node: it stays navigable but is never returned from [search].
+ * Callers should rebuild the graph once [deletedCount] grows large.
+ *
+ * This class is not thread-safe; callers must guard [add] and [markDeleted]
+ * against concurrent searches.
+ *
+ * @param m Maximum number of neighbours per node on upper layers (layer 0 keeps twice as many)
+ * @param efConstruction Size of the dynamic candidate list used while inserting
+ * @param seed Seed for the level generator, fixed so that rebuilds are reproducible
+ * @param kernel Kernel used to normalize queries and to score heap copies
+ * @param nodeVectors Where node vectors are read from; null to keep normalized heap copies
+ */
+class HnswIndex(
+    private val m: Int = 16,
+    private val efConstruction: Int = 200,
+    seed: Long = 42,
+    private val kernel: SimilarityKernel = SimilarityKernels.default,
+    nodeVectors: NodeVectors? = null,
+) {
+    private val maxM0 = m * 2
+    private val levelMultiplier = 1.0 / ln(max(m, 2).toDouble())
+    private val random = Random(seed)
+
+    private val heapVectors = if (nodeVectors == null) HeapVectors(kernel) else null
+    private val vectors: NodeVectors = nodeVectors ?: heapVectors!!
+    private val links = ArrayList<Array<NeighbourList>>()
+    private val deleted = BitSet()
+
+    private var entryPoint = -1
+    private var topLevel = -1
+
+    /**
+     * Number of tombstoned nodes still held by the graph.
+     */
+    var deletedCount: Int = 0
+        private set
+
+    /**
+     * Total number of nodes in the graph, including tombstoned ones.
+     */
+    val size: Int
+        get() = links.size
+
+    /**
+     * Number of nodes that can still be returned from a search.
+     */
+    val liveCount: Int
+        get() = size - deletedCount
+
+    /**
+     * A search hit: the node ordinal and its cosine similarity to the query.
+     */
+    data class Match(
+        val node: Int,
+        val score: Float,
+    )
+
+    /**
+     * Inserts a vector into a graph that keeps heap copies of its vectors.
+     *
+     * @param vector The vector to insert; it is copied and normalized
+     * @return The ordinal assigned to the new node
+     * @throws IllegalStateException if the graph reads its vectors through caller-provided [NodeVectors]
+     */
+    fun add(vector: FloatArray): Int {
+        val heap = checkNotNull(heapVectors) { "Vectors of this graph are provided by its NodeVectors" }
+        heap.values.add(kernel.normalize(vector))
+        return add()
+    }
+
+    /**
+     * Inserts the next node, whose vector [NodeVectors] must already return for ordinal [size].
+     *
+     * @return The ordinal assigned to the new node
+     */
+    fun add(): Int {
+        val node = size
+        val normalized = vectors.vector(node)
+        val level = randomLevel()
+        links.add(Array(level + 1) { layer -> NeighbourList(capacity(layer)) })
+
+        if (entryPoint < 0) {
+            entryPoint = node
+            topLevel = level
+            return node
+        }
+
+        var current = entryPoint
+        for (layer in topLevel downTo level + 1) {
+            current = greedyClosest(normalized, current, layer)
+        }
+
+        var entries = listOf(current)
+        for (layer in min(level, topLevel) downTo 0) {
+            val candidates = searchLayer(normalized, entries, efConstruction, layer, null)
+            val selected = selectNeighbours(candidates, m)
+            selected.forEach { neighbour ->
+                links[node][layer].add(neighbour.node)
+                connect(neighbour.node, node, layer)
+            }
+            entries = candidates.map { it.node }
+        }
+
+        if (level > topLevel) {
+            topLevel = level
+            entryPoint = node
+        }
+        return node
+    }
+
+    /**
+     * Tombstones a node so that it is no longer returned from searches.
+     */
+    fun markDeleted(node: Int) {
+        if (node in 0 until size && !deleted[node]) {
+            deleted.set(node)
+            deletedCount++
+        }
+    }
+
+    /**
+     * Finds the approximate top-k most similar live nodes.
+     *
+     * Graph traversal ignores [accept]; only the collected results are restricted,
+     * so selective predicates degrade towards an exhaustive walk rather than losing recall.
+     *
+     * @param query The query vector (does not need to be normalized)
+     * @param k Number of results to return
+     * @param ef Size of the dynamic candidate list; higher means better recall and more work
+     * @param accept Optional predicate restricting which nodes may be returned
+     * @return Matches sorted by descending similarity
+     */
+    fun search(
+        query: FloatArray,
+        k: Int,
+        ef: Int,
+        accept: ((Int) -> Boolean)? = null,
+    ): List<Match> {
+        if (entryPoint < 0 || k <= 0 || liveCount == 0) return emptyList()
+
+        val normalized = kernel.normalize(query)
+        var current = entryPoint
+        for (layer in topLevel downTo 1) {
+            current = greedyClosest(normalized, current, layer)
+        }
+
+        val acceptLive: (Int) -> Boolean = { node -> !deleted[node] && (accept == null || accept(node)) }
+        return searchLayer(normalized, listOf(current), max(ef, k), 0, acceptLive).take(k)
+    }
+
+    private fun capacity(layer: Int) = if (layer == 0) maxM0 else m
+
+    private fun randomLevel(): Int = floor(-ln(1.0 - random.nextDouble()) * levelMultiplier).toInt()
+
+    private fun greedyClosest(
+        query: FloatArray,
+        start: Int,
+        layer: Int,
+    ): Int {
+        var best = start
+        var bestScore = vectors.dot(start, query)
+        var improved = true
+        while (improved) {
+            improved = false
+            val neighbours = links[best][layer]
+            for (i in 0 until neighbours.size) {
+                val candidate = neighbours.ids[i]
+                val score = vectors.dot(candidate, query)
+                if (score > bestScore) {
+                    best = candidate
+                    bestScore = score
+                    improved = true
+                }
+            }
+        }
+        return best
+    }
+
+    /**
+     * Best-first search on a single layer.
+     *
+     * @return Up to [ef] accepted matches sorted by descending similarity
+     */
+    private fun searchLayer(
+        query: FloatArray,
+        entries: List<Int>,
+        ef: Int,
+        layer: Int,
+        accept: ((Int) -> Boolean)?,
+    ): List<Match> {
+        val visited = BitSet(size)
+        val candidates = PriorityQueue<Match>(compareByDescending { it.score })
+        val results = PriorityQueue<Match>(compareBy { it.score })
+
+        entries.forEach { entry ->
+            if (!visited[entry]) {
+                visited.set(entry)
+                val match = Match(entry, vectors.dot(entry, query))
+                candidates.add(match)
+                if (accept == null || accept(entry)) {
+                    results.add(match)
+                }
+            }
+        }
+        while (results.size > ef) results.poll()
+
+        while (candidates.isNotEmpty()) {
+            val current = candidates.poll()
+            if (results.size >= ef && current.score < results.peek().score) break
+
+            val nodeLinks = links[current.node]
+            if (layer >= nodeLinks.size) continue
+            val neighbours = nodeLinks[layer]
+            for (i in 0 until neighbours.size) {
+                val neighbour = neighbours.ids[i]
+                if (visited[neighbour]) continue
+                visited.set(neighbour)
+
+                val score = vectors.dot(neighbour, query)
+                if (results.size < ef || score > results.peek().score) {
+                    val match = Match(neighbour, score)
+                    candidates.add(match)
+                    if (accept == null || accept(neighbour)) {
+                        results.add(match)
+                        if (results.size > ef) results.poll()
+                    }
+                }
+            }
+        }
+
+        return results.sortedByDescending { it.score }
+    }
+
+    /**
+     * Neighbour selection heuristic from the HNSW paper: prefer candidates that are
+     * closer to the base node than to any already selected neighbour, then top up
+     * with the best of the discarded ones.
+     *
+     * @param candidates Candidates sorted by descending similarity to the base node
+     */
+    private fun selectNeighbours(
+        candidates: List<Match>,
+        max: Int,
+    ): List<Match> {
+        val selected = ArrayList<Match>(max)
+        val discarded = ArrayList<Match>()
+        for (candidate in candidates) {
+            if (selected.size >= max) break
+            val diverse =
+                selected.all { chosen ->
+                    vectors.dot(candidate.node, chosen.node) < candidate.score
+                }
+            if (diverse) selected.add(candidate) else discarded.add(candidate)
+        }
+        for (candidate in discarded) {
+            if (selected.size >= max) break
+            selected.add(candidate)
+        }
+        return selected
+    }
+
+    private fun connect(
+        from: Int,
+        to: Int,
+        layer: Int,
+    ) {
+        val neighbours = links[from][layer]
+        val capacity = capacity(layer)
+        if (neighbours.size < capacity) {
+            neighbours.add(to)
+            return
+        }
+
+        val candidates =
+            (neighbours.toList() + to)
+                .map { Match(it, vectors.dot(from, it)) }
+                .sortedByDescending { it.score }
+        neighbours.replace(selectNeighbours(candidates, capacity).map { it.node })
+    }
+
+    /**
+     * Normalized heap copies of the vectors, for graphs not given [NodeVectors].
+     */
+    private class HeapVectors(
+        private val kernel: SimilarityKernel,
+    ) : NodeVectors {
+        val values = ArrayList<FloatArray>()
+
+        override fun vector(node: Int): FloatArray = values[node]
+
+        override fun dot(
+            node: Int,
+            query: FloatArray,
+        ): Float = kernel.dot(values[node], query)
+
+        override fun dot(
+            a: Int,
+            b: Int,
+        ): Float = kernel.dot(values[a], values[b])
+    }
+
+    /**
+     * Growable primitive adjacency list for a node on one layer.
+     */
+    private class NeighbourList(
+        capacity: Int,
+    ) {
+        var ids = IntArray(capacity)
+            private set
+        var size = 0
+            private set
+
+        fun add(id: Int) {
+            if (size == ids.size) ids = ids.copyOf(max(1, size * 2))
+            ids[size++] = id
+        }
+
+        fun replace(newIds: List<Int>) {
+            if (newIds.size > ids.size) ids = IntArray(newIds.size)
+            newIds.forEachIndexed { index, id -> ids[index] = id }
+            size = newIds.size
+        }
+
+        fun toList(): List<Int> = List(size) { ids[it] }
+    }
+}
+
+/**
+ * Vectors of the nodes of an [HnswIndex], by node ordinal. Vectors must be L2-normalized.
+ */
+interface NodeVectors {
+    /**
+     * The vector of a node, used as the query while the node is inserted; it is not modified.
+     */
+    fun vector(node: Int): FloatArray
+
+    /**
+     * Dot product of a node's vector and a normalized query.
+     */
+    fun dot(
+        node: Int,
+        query: FloatArray,
+    ): Float
+
+    /**
+     * Dot product of the vectors of two nodes.
+     */
+    fun dot(
+        a: Int,
+        b: Int,
+    ): Float
+}
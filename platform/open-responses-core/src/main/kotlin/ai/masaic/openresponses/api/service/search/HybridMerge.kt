@@ -0,0 +1,92 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.model.VectorStoreSearchResult
+
+/**
+ * Results of the hybrid search legs merged by chunk ID into parallel primitive arrays.
+ *
+ * Index `i` describes one distinct chunk: [results] holds its first-seen result, the score
+ * arrays hold its raw score per leg (NaN when the leg did not return it) and the rank arrays
+ * its zero-based position in that leg (-1 when absent). Text legs fill the text columns in
+ * order; a later text leg only fills chunks the earlier ones did not return.
+ *
+ * Chunks are identified by their `chunk_id` attribute, or by file ID and `chunk_index` when
+ * there is none. Results with neither are kept as distinct chunks.
+ */
+class HybridMerge private constructor(
+    val results: List<VectorStoreSearchResult>,
+    val vectorScores: DoubleArray,
+    val vectorRanks: IntArray,
+    val textScores: DoubleArray,
+    val textRanks: IntArray,
+) {
+    val size: Int
+        get() = results.size
+
+    /**
+     * Orders the chunks by fused score and applies the scores to the results.
+     */
+    fun ranked(scores: DoubleArray): List<VectorStoreSearchResult> =
+        results.indices
+            .sortedByDescending { scores[it] }
+            .map { results[it].copy(score = scores[it]) }
+
+    companion object {
+        /**
+         * Merges the vector leg with any number of text legs.
+         */
+        fun of(
+            vectorResults: List<VectorStoreSearchResult>,
+            vararg textLegs: List<VectorStoreSearchResult>,
+        ): HybridMerge {
+            val capacity = vectorResults.size + textLegs.sumOf { it.size }
+            val results = ArrayList<VectorStoreSearchResult>(capacity)
+            val vectorScores = DoubleArray(capacity) { Double.NaN }
+            val vectorRanks = IntArray(capacity) { -1 }
+            val textScores = DoubleArray(capacity) { Double.NaN }
+            val textRanks = IntArray(capacity) { -1 }
+            val slots = HashMap<String, Int>(capacity * 2)
+
+            fun slotOf(result: VectorStoreSearchResult): Int {
+                val key = chunkKey(result)
+                if (key != null) slots[key]?.let { return it }
+                results.add(result)
+                val slot = results.size - 1
+                if (key != null) slots[key] = slot
+                return slot
+            }
+
+            vectorResults.forEachIndexed { rank, result ->
+                val slot = slotOf(result)
+                if (vectorRanks[slot] < 0) {
+                    vectorScores[slot] = result.score
+                    vectorRanks[slot] = rank
+                }
+            }
+            textLegs.forEach { leg ->
+                leg.forEachIndexed { rank, result ->
+                    val slot = slotOf(result)
+                    if (textRanks[slot] < 0) {
+                        textScores[slot] = result.score
+                        textRanks[slot] = rank
+                    }
+                }
+            }
+
+            val size = results.size
+            return HybridMerge(
+                results = results,
+                vectorScores = vectorScores.copyOf(size),
+                vectorRanks = vectorRanks.copyOf(size),
+                textScores = textScores.copyOf(size),
+                textRanks = textRanks.copyOf(size),
+            )
+        }
+
+        private fun chunkKey(result: VectorStoreSearchResult): String? {
+            val attributes = result.attributes ?: return null
+            (attributes["chunk_id"] as? String)?.let { return it }
+            return (attributes["chunk_index"] as? Number)?.let { "${result.fileId}#${it.toLong()}" }
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package ai.masaic.openresponses.api.service.search
 
 import ai.masaic.openresponses.api.config.VectorRepositoryProperties
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
 import ai.masaic.openresponses.api.model.*
+import ai.masaic.openresponses.api.repository.VectorStoreRepository
 import ai.masaic.openresponses.api.service.rerank.RerankerService
 import ai.masaic.openresponses.api.utils.FilterUtils
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.async
 import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.reactor.awaitSingle
+import kotlinx.coroutines.runInterruptible
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.data.annotation.Id
@@ -22,9 +31,15 @@ import org.springframework.data.mongodb.core.mapping.TextScore
 import org.springframework.data.mongodb.core.query.Criteria
 import org.springframework.data.mongodb.core.query.TextCriteria
 import org.springframework.data.mongodb.core.query.TextQuery
+import java.time.Duration
+import java.util.Optional
 
 /**
  * Hybrid search service combining vector similarity with Lucene and Mongo full-text search.
+ *
+ * The vector, Lucene and Mongo legs run concurrently on a bounded dispatcher, each under its
+ * own deadline. A leg that misses it is dropped and the merge proceeds with the others.
+ * The surviving legs are merged by chunk ID and scored with a [FusionStrategy].
  */
 open class HybridSearchService
     @Autowired
@@ -37,8 +52,25 @@ open class HybridSearchService
         private val mongoTemplate: ReactiveMongoTemplate? = null,
         @Autowired(required = false)
         private val rerankerService: RerankerService? = null,
+        searchProperties: VectorSearchConfigProperties = VectorSearchConfigProperties(),
+        private val meterRegistry: MeterRegistry = SimpleMeterRegistry(),
+        @Autowired(required = false)
+        private val vectorStoreRepository: VectorStoreRepository? = null,
     ) {
         private val log = LoggerFactory.getLogger(HybridSearchService::class.java)
+        private val hybridConfig = searchProperties.hybrid
+        private val defaultFusion = FusionStrategy.parse(hybridConfig.fusion)
+
+        /** `fusion` metadata per vector store, absent entries included, so searches do not re-read the store. */
+        private val fusionSpecs: Cache<String, Optional<String>> =
+            Caffeine
+                .newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(hybridConfig.fusionCacheSeconds))
+                .maximumSize(10_000)
+                .build()
+
+        /** Shared by the legs of all searches, so a burst of searches cannot flood the IO pool. */
+        private val legDispatcher = Dispatchers.IO.limitedParallelism(hybridConfig.parallelism)
 
         init {
             // Only initialize MongoDB text index if MongoDB is active
@@ -58,6 +90,8 @@ open class HybridSearchService
          * @param query the user query text
          * @param alpha weighting factor between [0,1] for vector vs text scores
          * @param vectorStoreIds optional list of vector store IDs to limit search to
+         * @param fusion optional fusion spec (`linear`, `rrf`, `rrf:<k>` or `zscore`); when absent the
+         *   `fusion` metadata shared by the targeted vector stores applies, then the configured default
          */
         suspend fun hybridSearch(
             query: String,
@@ -66,6 +100,7 @@ open class HybridSearchService
             vectorStoreIds: List<String>,
             alpha: Double = 0.5,
             modelSettings: ModelSettings?,
+            fusion: String? = null,
         ): List<VectorStoreSearchResult> =
             coroutineScope {
                 if (query.isBlank()) {
@@ -98,168 +133,215 @@ open class HybridSearchService
                         }
                     }
 
+                // With a reranker, every leg fetches as many candidates as it will re-score
+                val candidateCount = maxOf(maxResults, rerankerService?.maxCandidates ?: 0)
+
+                // Launch every leg at once; a leg that misses its deadline is dropped instead of failing the search
                 val vectorDeferred =
                     async {
-                        // Convert VectorSearchProvider.SearchResult to VectorStoreSearchResult
-                        searchSimilar(
-                            query = query,
-                            maxResults = maxResults,
-                            CompoundFilter(type = "and", filters = listOfNotNull(userFilter, vectorStoreFilter)),
-                            modelSettings = modelSettings,
-                        ).map { result ->
-                            VectorStoreSearchResult(
-                                fileId = result.fileId,
-                                filename = result.metadata["filename"] as? String ?: "",
-                                score = result.score,
-                                content = listOf(VectorStoreSearchResultContent("text", result.content)),
-                                attributes = result.metadata,
-                            )
+                        runLeg(LEG_VECTOR, hybridConfig.vectorTimeoutMillis, propagateErrors = true) {
+                            vectorLeg(query, candidateCount, CompoundFilter(type = "and", filters = listOfNotNull(userFilter, vectorStoreFilter)), modelSettings)
                         }
                     }
                 // Only run Lucene search if using file repository and luceneIndexService is available
-                val luceneResults =
-                    if (vectorRepositoryProperties.repository.type == "file" && luceneIndexService != null) {
-                        async { luceneIndexService.search(query, maxResults, vectorStoreIds) }.await()
-                    } else {
-                        emptyList()
-                    }
-
-                // Only run MongoDB search if using mongodb repository and mongoTemplate is available
-                val mongoResults =
-                    if (vectorRepositoryProperties.repository.type == "mongodb" && mongoTemplate != null) {
-                        // Create text criteria
-                        val textCriteria = TextCriteria.forDefaultLanguage().matching(query)
-                        
-                        // Build a list of additional criteria
-                        val additionalCriteria = mutableListOf<Criteria>()
-                        
-                        // Add vectorStoreId criteria if needed
-                        if (vectorStoreIds.isNotEmpty()) {
-                            additionalCriteria.add(Criteria.where("vector_store_id").`in`(vectorStoreIds))
-                        }
-                        
-                        // Apply userFilter if provided
-                        userFilter?.let {
-                            val filterCriteria = FilterUtils.buildCriteriaFromFilter(it)
-                            if (filterCriteria != null) {
-                                additionalCriteria.add(filterCriteria)
-                            } else {
-                                log.warn("Failed to parse user filter: $it. This may impact security filters.")
+                val luceneDeferred =
+                    async {
+                        if (vectorRepositoryProperties.repository.type == "file" && luceneIndexService != null) {
+                            runLeg(LEG_LUCENE, hybridConfig.luceneTimeoutMillis) {
+                                runInterruptible { luceneIndexService.search(query, candidateCount, vectorStoreIds) }
                             }
+                        } else {
+                            emptyList()
                         }
-                        
-                        // Build the text query
-                        val textQuery = TextQuery(textCriteria).sortByScore().includeScore().limit(maxResults)
-                        
-                        // Add combined criteria if we have any
-                        if (additionalCriteria.isNotEmpty()) {
-                            val combinedCriteria =
-                                if (additionalCriteria.size == 1) {
-                                    additionalCriteria.first()
-                                } else {
-                                    // Use a flat andOperator to avoid nested $and in the query
-                                    Criteria().andOperator(*additionalCriteria.toTypedArray())
-                                }
-                            textQuery.addCriteria(combinedCriteria)
-                        }
-                        
-                        // Work with raw Document instead of MongoChunk to properly handle the score
-                        val documents = mongoTemplate.find(textQuery, org.bson.Document::class.java, "mongo_chunks").collectList().awaitSingle()
-                        
-                        // Log for debugging
-                        log.debug("MongoDB text search returned ${documents.size} results")
-                        
-                        documents.map { doc ->
-                            VectorStoreSearchResult(
-                                fileId = doc.getString("file_id"),
-                                filename = doc.getString("filename"),
-                                score = doc.getDouble("score") ?: 0.0,
-                                content = listOf(VectorStoreSearchResultContent("text", doc.getString("content"))),
-                                attributes =
-                                    mapOf(
-                                        "chunk_id" to doc.getString("chunk_id"),
-                                        "chunk_index" to (doc.getInteger("chunk_index") ?: 0),
-                                    ),
-                            )
+                    }
+                // Only run MongoDB search if using mongodb repository and mongoTemplate is available
+                val mongoDeferred =
+                    async {
+                        if (vectorRepositoryProperties.repository.type == "mongodb" && mongoTemplate != null) {
+                            runLeg(LEG_MONGO, hybridConfig.mongoTimeoutMillis) { mongoLeg(mongoTemplate, query, candidateCount, userFilter, vectorStoreIds) }
+                        } else {
+                            emptyList()
                         }
-                    } else {
-                        emptyList()
                     }
 
                 val vectorResults = vectorDeferred.await()
+                val luceneResults = luceneDeferred.await()
+                val mongoResults = mongoDeferred.await()
 
-                // Merge results and normalize scores
-                val allResults = mutableMapOf<String, MergedResult>()
+                val merge = HybridMerge.of(vectorResults, luceneResults, mongoResults)
 
-                // Add vector results
-                vectorResults.forEach { result ->
-                    val key = getResultKey(result)
-                    allResults[key] =
-                        MergedResult(
-                            result = result,
-                            vectorScore = result.score,
-                            textScore = 0.0,
-                        )
-                }
+                // Dynamic α: if a reranker is configured, ignore the caller‑provided alpha and
+                // fall back to a constant 0.5 that’s only used for the pre‑rerank pruning step.
+                val blendAlpha = if (rerankerService != null) 0.5 else alpha
 
-                // Add Lucene results
-                luceneResults.forEach { result ->
-                    val key = getResultKey(result)
-                    val existing = allResults[key]
-                    if (existing != null) {
-                        allResults[key] = existing.copy(textScore = result.score)
-                    } else {
-                        allResults[key] =
-                            MergedResult(
-                                result = result,
-                                vectorScore = 0.0,
-                                textScore = result.score,
-                            )
-                    }
-                }
+                val strategy = resolveFusion(fusion, vectorStoreIds)
+                val prelimRanked = merge.ranked(strategy.fuse(merge, blendAlpha)).take(candidateCount)
+                if (rerankerService == null) return@coroutineScope prelimRanked
 
-                // Add MongoDB results
-                mongoResults.forEach { result ->
-                    val key = getResultKey(result)
-                    val existing = allResults[key]
-                    if (existing != null && existing.textScore == 0.0) {
-                        allResults[key] = existing.copy(textScore = result.score)
-                    } else if (existing == null) {
-                        allResults[key] =
-                            MergedResult(
-                                result = result,
-                                vectorScore = 0.0,
-                                textScore = result.score,
-                            )
-                    }
+                // Cut to maxResults only after reranking, so the reranker can promote candidates fused below it
+                withContext(Dispatchers.IO) { rerankerService.rerank(query, prelimRanked) }.take(maxResults)
+            }
+
+        /**
+         * Runs one retrieval leg on the bounded leg dispatcher under its deadline.
+         * A leg that times out, or fails when [propagateErrors] is false, yields no results
+         * and is counted in `hybrid_search.leg.dropped`.
+         */
+        private suspend fun runLeg(
+            leg: String,
+            timeoutMillis: Long,
+            propagateErrors: Boolean = false,
+            block: suspend () -> List<VectorStoreSearchResult>,
+        ): List<VectorStoreSearchResult> {
+            val results =
+                try {
+                    withTimeoutOrNull(timeoutMillis) { withContext(legDispatcher) { block() } }
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    if (propagateErrors) throw e
+                    log.warn("Hybrid search $leg leg failed, continuing without it: ${e.message}", e)
+                    recordDroppedLeg(leg, "error")
+                    return emptyList()
                 }
+            if (results == null) {
+                log.warn("Hybrid search $leg leg exceeded ${timeoutMillis}ms, continuing without it")
+                recordDroppedLeg(leg, "timeout")
+                return emptyList()
+            }
+            return results
+        }
 
-                // Calculate combined scores and sort results
-                val maxVec =
-                    allResults.values.takeIf { it.isNotEmpty() }?.maxOf { it.vectorScore }
-                        ?: 0.0
-                val maxTxt =
-                    allResults.values.takeIf { it.isNotEmpty() }?.maxOf { it.textScore }
-                        ?: 0.0
+        /**
+         * Picks the fusion strategy: the request's spec, else the `fusion` metadata entry when all
+         * targeted vector stores agree on it, else the configured default. Store metadata is read
+         * through [fusionSpecs], so a change to it applies within `fusion-cache-seconds`.
+         */
+        private suspend fun resolveFusion(
+            fusion: String?,
+            vectorStoreIds: List<String>,
+        ): FusionStrategy {
+            fusion?.let { return FusionStrategy.parse(it) }
+            if (vectorStoreRepository == null || vectorStoreIds.isEmpty()) return defaultFusion
 
-                // Dynamic α: if a reranker is configured, ignore the caller‑provided alpha and
-                // fall back to a constant 0.5 that’s only used for the pre‑rerank pruning step.
-                val blendAlpha = if (rerankerService != null) 0.5 else alpha
+            val specs =
+                vectorStoreIds
+                    .map { fusionSpec(vectorStoreRepository, it) }
+                    .toSet()
+            val spec = specs.singleOrNull() ?: return defaultFusion
+            return try {
+                FusionStrategy.parse(spec)
+            } catch (e: IllegalArgumentException) {
+                log.warn("Ignoring invalid fusion metadata '$spec' on vector stores $vectorStoreIds: ${e.message}")
+                defaultFusion
+            }
+        }
+
+        private suspend fun fusionSpec(
+            repository: VectorStoreRepository,
+            vectorStoreId: String,
+        ): String? {
+            fusionSpecs.getIfPresent(vectorStoreId)?.let { return it.orElse(null) }
+            val spec = repository.findVectorStoreById(vectorStoreId)?.metadata?.get(FusionStrategy.METADATA_KEY)
+            fusionSpecs.put(vectorStoreId, Optional.ofNullable(spec))
+            return spec
+        }
 
-                val prelimRanked =
-                    allResults.values
-                        .map { m ->
-                            val v = if (maxVec > 0) m.vectorScore / maxVec else 0.0
-                            val t = if (maxTxt > 0) m.textScore / maxTxt else 0.0
-                            m.result.copy(score = blendAlpha * v + (1 - blendAlpha) * t)
-                        }.sortedByDescending { it.score }
+        private fun recordDroppedLeg(
+            leg: String,
+            reason: String,
+        ) {
+            meterRegistry.counter("hybrid_search.leg.dropped", "leg", leg, "reason", reason).increment()
+        }
 
-                return@coroutineScope withContext(Dispatchers.IO) {
-                    rerankerService
-                        ?.rerank(query, prelimRanked)
-                }?.take(maxResults) ?: prelimRanked.take(maxResults)
+        private suspend fun vectorLeg(
+            query: String,
+            maxResults: Int,
+            filter: CompoundFilter,
+            modelSettings: ModelSettings?,
+        ): List<VectorStoreSearchResult> =
+            runInterruptible {
+                // Convert VectorSearchProvider.SearchResult to VectorStoreSearchResult
+                searchSimilar(
+                    query = query,
+                    maxResults = maxResults,
+                    filter,
+                    modelSettings = modelSettings,
+                ).map { result ->
+                    VectorStoreSearchResult(
+                        fileId = result.fileId,
+                        filename = result.metadata["filename"] as? String ?: "",
+                        score = result.score,
+                        content = listOf(VectorStoreSearchResultContent("text", result.content)),
+                        attributes = result.metadata,
+                    )
+                }
             }
 
+        private suspend fun mongoLeg(
+            mongoTemplate: ReactiveMongoTemplate,
+            query: String,
+            maxResults: Int,
+            userFilter: Filter?,
+            vectorStoreIds: List<String>,
+        ): List<VectorStoreSearchResult> {
+            // Create text criteria
+            val textCriteria = TextCriteria.forDefaultLanguage().matching(query)
+            
+            // Build a list of additional criteria
+            val additionalCriteria = mutableListOf<Criteria>()
+            
+            // Add vectorStoreId criteria if needed
+            if (vectorStoreIds.isNotEmpty()) {
+                additionalCriteria.add(Criteria.where("vector_store_id").`in`(vectorStoreIds))
+            }
+            
+            // Apply userFilter if provided
+            userFilter?.let {
+                val filterCriteria = FilterUtils.buildCriteriaFromFilter(it)
+                if (filterCriteria != null) {
+                    additionalCriteria.add(filterCriteria)
+                } else {
+                    log.warn("Failed to parse user filter: $it. This may impact security filters.")
+                }
+            }
+            
+            // Build the text query
+            val textQuery = TextQuery(textCriteria).sortByScore().includeScore().limit(maxResults)
+            
+            // Add combined criteria if we have any
+            if (additionalCriteria.isNotEmpty()) {
+                val combinedCriteria =
+                    if (additionalCriteria.size == 1) {
+                        additionalCriteria.first()
+                    } else {
+                        // Use a flat andOperator to avoid nested $and in the query
+                        Criteria().andOperator(*additionalCriteria.toTypedArray())
+                    }
+                textQuery.addCriteria(combinedCriteria)
+            }
+            
+            // Work with raw Document instead of MongoChunk to properly handle the score
+            val documents = mongoTemplate.find(textQuery, org.bson.Document::class.java, "mongo_chunks").collectList().awaitSingle()
+            
+            // Log for debugging
+            log.debug("MongoDB text search returned ${documents.size} results")
+            
+            return documents.map { doc ->
+                VectorStoreSearchResult(
+                    fileId = doc.getString("file_id"),
+                    filename = doc.getString("filename"),
+                    score = doc.getDouble("score") ?: 0.0,
+                    content = listOf(VectorStoreSearchResultContent("text", doc.getString("content"))),
+                    attributes =
+                        mapOf(
+                            "chunk_id" to doc.getString("chunk_id"),
+                            "chunk_index" to (doc.getInteger("chunk_index") ?: 0),
+                        ),
+                )
+            }
+        }
+
         open fun searchSimilar(
             query: String,
             maxResults: Int,
@@ -273,32 +355,12 @@ open class HybridSearchService
                 filter,
             )
 
-        /**
-         * Get a unique key to identify a result across different sources
-         */
-        private fun getResultKey(result: VectorStoreSearchResult): String {
-            val fileId = result.fileId
-            val chunkId =
-                result.attributes?.get("chunk_id") as? String 
-                    ?: (result.attributes?.get("chunk_index") as? Int?)?.toString()
-                    ?: result.content
-                        .firstOrNull()
-                        ?.text
-                        ?.hashCode()
-                        ?.toString()
-                    ?: fileId
-            return "$fileId-$chunkId"
+        companion object {
+            private const val LEG_VECTOR = "vector"
+            private const val LEG_LUCENE = "lucene"
+            private const val LEG_MONGO = "mongo"
         }
 
-        /**
-         * Helper class for merging results from different sources
-         */
-        private data class MergedResult(
-            val result: VectorStoreSearchResult,
-            val vectorScore: Double,
-            val textScore: Double,
-        )
-
         /**
          * Simple data model for chunks to be indexed into MongoDB
          */
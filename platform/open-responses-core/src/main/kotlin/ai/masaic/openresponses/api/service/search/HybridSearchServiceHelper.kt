@@ -109,6 +109,16 @@ class HybridSearchServiceHelper
             fileId: String,
             vectorStoreId: String? = null,
         ) {
+            // If using file repository, delete from Lucene
+            if (vectorRepositoryProperties.repository.type == "file" && luceneIndexService != null) {
+                try {
+                    luceneIndexService.deleteByFileId(fileId, vectorStoreId)
+                    log.info("Deleted chunks for file $fileId from Lucene")
+                } catch (e: Exception) {
+                    log.error("Error deleting chunks for file $fileId from Lucene: ${e.message}", e)
+                }
+            }
+
             // If using MongoDB repository, delete from MongoDB
             if (vectorRepositoryProperties.repository.type == "mongodb" && mongoTemplate != null) {
                 try {
@@ -129,4 +139,32 @@ class HybridSearchServiceHelper
                 }
             }
         }
+
+        /**
+         * Delete all chunks of a vector store from all text search stores
+         */
+        suspend fun deleteVectorStoreChunks(vectorStoreId: String) {
+            // If using file repository, delete from Lucene
+            if (vectorRepositoryProperties.repository.type == "file" && luceneIndexService != null) {
+                try {
+                    luceneIndexService.deleteByVectorStoreId(vectorStoreId)
+                    log.info("Deleted chunks for vector store $vectorStoreId from Lucene")
+                } catch (e: Exception) {
+                    log.error("Error deleting chunks for vector store $vectorStoreId from Lucene: ${e.message}", e)
+                }
+            }
+
+            // If using MongoDB repository, delete from MongoDB
+            if (vectorRepositoryProperties.repository.type == "mongodb" && mongoTemplate != null) {
+                try {
+                    val query =
+                        org.springframework.data.mongodb.core.query
+                            .Query(Criteria.where("vectorStoreId").`is`(vectorStoreId))
+                    mongoTemplate.remove(query, MongoChunk::class.java).awaitSingle()
+                    log.info("Deleted chunks for vector store $vectorStoreId from MongoDB")
+                } catch (e: Exception) {
+                    log.error("Error deleting chunks for vector store $vectorStoreId from MongoDB: ${e.message}", e)
+                }
+            }
+        }
     }
@@ -0,0 +1,19 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.model.IndexingProgress
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Receives the indexing progress of the file being indexed in the current coroutine.
+ *
+ * Installed in the coroutine context around a provider's `indexFile` call, so progress reaches
+ * the caller without widening the [VectorSearchProvider] signatures.
+ */
+class IndexingProgressListener(
+    private val onProgress: (IndexingProgress) -> Unit,
+) : AbstractCoroutineContextElement(Key) {
+    companion object Key : CoroutineContext.Key<IndexingProgressListener>
+
+    fun report(progress: IndexingProgress) = onProgress(progress)
+}
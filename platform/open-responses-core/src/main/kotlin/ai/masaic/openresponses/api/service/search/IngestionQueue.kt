@@ -0,0 +1,158 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
+import ai.masaic.openresponses.api.exception.IngestionQueueFullException
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.withTimeoutOrNull
+import org.slf4j.LoggerFactory
+import java.util.PriorityQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Bounded work queue for indexing vector store files.
+ *
+ * A fixed pool of workers indexes one file each, so a bulk upload no longer starts a parse and
+ * an embedding run per file at once. Tenants with waiting files are served round robin, and
+ * within a tenant files of up to `small-file-bytes` go before larger ones, oldest first.
+ *
+ * Once `capacity` files are waiting, [submit] suspends for up to `enqueue-timeout-millis` and then
+ * fails with [IngestionQueueFullException], which reaches the caller of `createVectorStoreFile`.
+ */
+class IngestionQueue(
+    private val config: VectorSearchConfigProperties.IngestionConfig = VectorSearchConfigProperties.IngestionConfig(),
+    meterRegistry: MeterRegistry = SimpleMeterRegistry(),
+) : AutoCloseable {
+    private val log = LoggerFactory.getLogger(IngestionQueue::class.java)
+
+    private class Task(
+        val key: String,
+        val small: Boolean,
+        val sequence: Long,
+        val enqueuedAt: Long,
+        val work: suspend () -> Unit,
+    )
+
+    // Waiting tasks per tenant; a served tenant is re-inserted at the end, which makes the map the round robin
+    private val lock = Any()
+    private val tenants = LinkedHashMap<String, PriorityQueue<Task>>()
+    private val queuedKeys = HashSet<String>()
+    private var sequence = 0L
+
+    private val capacity = Semaphore(config.capacity.coerceAtLeast(1))
+    private val ready = Channel<Unit>(Channel.UNLIMITED)
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    private val depth = AtomicInteger()
+    private val active = AtomicInteger()
+    private val waitTimer: Timer = meterRegistry.timer("vector_store.ingestion.wait")
+    private val rejected = meterRegistry.counter("vector_store.ingestion.rejected")
+
+    init {
+        meterRegistry.gauge("vector_store.ingestion.queue.depth", depth)
+        meterRegistry.gauge("vector_store.ingestion.active", active)
+        repeat(config.workers.coerceAtLeast(1)) { scope.launch { work() } }
+    }
+
+    /**
+     * The number of files waiting for a worker.
+     */
+    val queued: Int
+        get() = depth.get()
+
+    /**
+     * Queues a file for indexing.
+     *
+     * @param key Identifies the file; a file that is already waiting is not queued twice
+     * @param tenant Files of different tenants are served round robin
+     * @param sizeBytes Size of the file, used to put small files first
+     * @param work Indexes the file; errors are logged and do not stop the worker
+     * @return True if the file was queued, false if it was already waiting
+     * @throws IngestionQueueFullException if the queue stays full for the enqueue timeout
+     */
+    suspend fun submit(
+        key: String,
+        tenant: String,
+        sizeBytes: Long,
+        work: suspend () -> Unit,
+    ): Boolean {
+        synchronized(lock) { if (key in queuedKeys) return false }
+
+        val acquired =
+            if (config.enqueueTimeoutMillis > 0) {
+                withTimeoutOrNull(config.enqueueTimeoutMillis) { capacity.acquire() } != null
+            } else {
+                capacity.tryAcquire()
+            }
+        if (!acquired) {
+            rejected.increment()
+            throw IngestionQueueFullException("Ingestion queue is full (${config.capacity} files waiting), retry later")
+        }
+
+        synchronized(lock) {
+            if (!queuedKeys.add(key)) {
+                capacity.release()
+                return false
+            }
+            tenants
+                .getOrPut(tenant) { PriorityQueue(TASK_ORDER) }
+                .add(Task(key, sizeBytes <= config.smallFileBytes, sequence++, System.nanoTime(), work))
+            depth.incrementAndGet()
+        }
+        ready.trySend(Unit)
+        return true
+    }
+
+    private suspend fun work() {
+        // One signal is sent per queued task, so every signal finds a task to run
+        for (signal in ready) {
+            val task = poll() ?: continue
+            waitTimer.record(System.nanoTime() - task.enqueuedAt, TimeUnit.NANOSECONDS)
+            active.incrementAndGet()
+            try {
+                task.work()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                log.error("Error indexing {}", task.key, e)
+            } finally {
+                active.decrementAndGet()
+            }
+        }
+    }
+
+    private fun poll(): Task? =
+        synchronized(lock) {
+            val next = tenants.entries.iterator()
+            if (!next.hasNext()) return null
+            val (tenant, tasks) = next.next()
+            next.remove()
+
+            val task = tasks.poll()
+            if (tasks.isNotEmpty()) tenants[tenant] = tasks
+            queuedKeys.remove(task.key)
+            depth.decrementAndGet()
+            capacity.release()
+            task
+        }
+
+    override fun close() {
+        ready.close()
+        scope.cancel()
+    }
+
+    companion object {
+        // Small files first, then in submission order
+        private val TASK_ORDER = compareBy<Task>({ !it.small }, { it.sequence })
+    }
+}
@@ -1,8 +1,11 @@
 package ai.masaic.openresponses.api.service.search
 
 import ai.masaic.openresponses.api.config.FileStorageProperties
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
 import ai.masaic.openresponses.api.model.VectorStoreSearchResult
 import ai.masaic.openresponses.api.model.VectorStoreSearchResultContent
+import com.fasterxml.jackson.annotation.JsonProperty
+import jakarta.annotation.PreDestroy
 import org.apache.lucene.analysis.standard.StandardAnalyzer
 import org.apache.lucene.document.Document
 import org.apache.lucene.document.Field
@@ -10,59 +13,98 @@ import org.apache.lucene.document.IntPoint
 import org.apache.lucene.document.StoredField
 import org.apache.lucene.document.StringField
 import org.apache.lucene.document.TextField
-import org.apache.lucene.index.DirectoryReader
 import org.apache.lucene.index.IndexWriter
 import org.apache.lucene.index.IndexWriterConfig
 import org.apache.lucene.index.Term
+import org.apache.lucene.index.TieredMergePolicy
 import org.apache.lucene.queryparser.classic.QueryParser
 import org.apache.lucene.search.BooleanClause
 import org.apache.lucene.search.BooleanQuery
+import org.apache.lucene.search.ControlledRealTimeReopenThread
 import org.apache.lucene.search.IndexSearcher
+import org.apache.lucene.search.SearcherFactory
+import org.apache.lucene.search.SearcherManager
 import org.apache.lucene.search.TermQuery
 import org.apache.lucene.store.FSDirectory
+import org.apache.lucene.store.LockObtainFailedException
 import org.springframework.stereotype.Service
 import java.nio.file.Paths
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
 import kotlin.math.pow
 
 /**
  * Service for full-text indexing and search using Lucene.
+ *
+ * A single [IndexWriter] is opened on first use and kept for the lifetime of the service.
+ * Searches go through a [SearcherManager] whose near-real-time searchers are reopened by a
+ * background [ControlledRealTimeReopenThread], and pending changes are committed to disk
+ * periodically and on shutdown. Concurrent uploads share the writer instead of queueing on
+ * the index write lock, and queries reuse an open searcher instead of opening a reader.
+ *
+ * Chunks are replaced per file and vector store in one atomic update keyed by their
+ * `file_store_key`, since chunk IDs are new on every indexing, and removed with
+ * [deleteByFileId] and [deleteByVectorStoreId].
+ * The merge policy is tuned for frequent deletes, and the periodic commit also merges away
+ * deletes in the background once they exceed `expunge-deletes-ratio`.
  */
 @Service
 class LuceneIndexService(
     fileStorageProperties: FileStorageProperties,
+    private val searchProperties: VectorSearchConfigProperties = VectorSearchConfigProperties(),
 ) {
     private val indexPath = "${fileStorageProperties.getRootDirectory()}/lucene-index"
     private val analyzer = StandardAnalyzer()
     private val log = org.slf4j.LoggerFactory.getLogger(LuceneIndexService::class.java)
 
     /**
-     * Indexes a batch of text chunks in Lucene.
+     * The long-lived writer together with the searcher manager, reopen thread and committer built on it.
      */
-    fun indexChunks(chunks: List<LuceneChunk>) {
+    private class NrtIndex(
+        val writer: IndexWriter,
+        val searcherManager: SearcherManager,
+        val reopenThread: ControlledRealTimeReopenThread<IndexSearcher>,
+        val committer: ScheduledExecutorService,
+    )
+
+    private val nrtIndex = lazy { openIndex() }
+
+    private fun openIndex(): NrtIndex {
+        val config = searchProperties.lucene
         val dir = FSDirectory.open(Paths.get(indexPath))
+        val writer = openWriter(dir)
+        val searcherManager = SearcherManager(writer, SearcherFactory())
+        val reopenThread =
+            ControlledRealTimeReopenThread(writer, searcherManager, config.maxStaleMillis / 1000.0, config.minStaleMillis / 1000.0).apply {
+                name = "lucene-nrt-reopen"
+                isDaemon = true
+                start()
+            }
+        val committer =
+            Executors.newSingleThreadScheduledExecutor { runnable ->
+                Thread(runnable, "lucene-commit").apply { isDaemon = true }
+            }
+        committer.scheduleWithFixedDelay({ commitQuietly() }, config.commitIntervalSeconds, config.commitIntervalSeconds, TimeUnit.SECONDS)
+        log.info("Opened Lucene index at {}", indexPath)
+        return NrtIndex(writer, searcherManager, reopenThread, committer)
+    }
+
+    /**
+     * Opens the writer, waiting with exponential backoff while another process still holds the index lock.
+     */
+    private fun openWriter(dir: FSDirectory): IndexWriter {
         val maxRetries = 5
         var attempt = 0
         while (true) {
             try {
-                val writerConfig = IndexWriterConfig(analyzer)
-                IndexWriter(dir, writerConfig).use { writer ->
-                    chunks.forEach { chunk ->
-                        val doc =
-                            Document().apply {
-                                add(StringField("chunk_id", chunk.chunkId, Field.Store.YES))
-                                add(StringField("file_id", chunk.fileId, Field.Store.YES))
-                                add(StringField("filename", chunk.filename, Field.Store.YES))
-                                add(StringField("vector_store_id", chunk.vectorStoreId, Field.Store.YES))
-                                add(IntPoint("chunk_index", chunk.chunkIndex))
-                                add(StoredField("chunk_index", chunk.chunkIndex))
-                                add(TextField("content", chunk.content, Field.Store.YES))
-                            }
-                        writer.addDocument(doc)
-                    }
-                    writer.commit()
-                }
-                break
-            } catch (e: org.apache.lucene.store.LockObtainFailedException) {
+                val writerConfig =
+                    IndexWriterConfig(analyzer)
+                        .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                        .setRAMBufferSizeMB(searchProperties.lucene.ramBufferSizeMb)
+                        .setMergePolicy(TieredMergePolicy().setDeletesPctAllowed(searchProperties.lucene.deletesPctAllowed))
+                return IndexWriter(dir, writerConfig)
+            } catch (e: LockObtainFailedException) {
                 attempt++
                 if (attempt > maxRetries) {
                     log.error("Failed to obtain Lucene index lock after $attempt attempts", e)
@@ -76,6 +118,149 @@ class LuceneIndexService(
         }
     }
 
+    /**
+     * Indexes the chunks of one or more files in Lucene. Each file's chunks replace everything
+     * previously indexed for that file in the same vector store, so a batch must hold all of a file's chunks.
+     * The replacement is atomic: a search sees either the old or the new chunks of a file, never neither.
+     * The chunks are searchable when this returns; they reach disk with the next commit.
+     */
+    fun indexChunks(chunks: List<LuceneChunk>) {
+        if (chunks.isEmpty()) return
+        val index = nrtIndex.value
+        var generation = -1L
+        chunks.groupBy { fileStoreKey(it.fileId, it.vectorStoreId) }.forEach { (key, fileChunks) ->
+            generation = index.writer.updateDocuments(Term(FILE_STORE_KEY, key), fileChunks.map { toDocument(it) })
+        }
+        // Wake the reopen thread so the new chunks are visible to the next search
+        index.reopenThread.waitForGeneration(generation)
+    }
+
+    private fun toDocument(chunk: LuceneChunk): Document =
+        Document().apply {
+            add(StringField("chunk_id", chunk.chunkId, Field.Store.YES))
+            add(StringField("file_id", chunk.fileId, Field.Store.YES))
+            add(StringField("filename", chunk.filename, Field.Store.YES))
+            add(StringField("vector_store_id", chunk.vectorStoreId, Field.Store.YES))
+            add(StringField(FILE_STORE_KEY, fileStoreKey(chunk.fileId, chunk.vectorStoreId), Field.Store.NO))
+            add(IntPoint("chunk_index", chunk.chunkIndex))
+            add(StoredField("chunk_index", chunk.chunkIndex))
+            add(TextField("content", chunk.content, Field.Store.YES))
+        }
+
+    private fun fileStoreKey(
+        fileId: String,
+        vectorStoreId: String,
+    ): String = "$fileId:$vectorStoreId"
+
+    /**
+     * Matches the chunks of a file, optionally only those indexed for one vector store.
+     */
+    private fun fileQuery(
+        fileId: String,
+        vectorStoreId: String?,
+    ): BooleanQuery =
+        BooleanQuery
+            .Builder()
+            .add(TermQuery(Term("file_id", fileId)), BooleanClause.Occur.FILTER)
+            .apply { vectorStoreId?.let { add(TermQuery(Term("vector_store_id", it)), BooleanClause.Occur.FILTER) } }
+            .build()
+
+    /**
+     * Deletes the chunks of a file, optionally only those indexed for one vector store.
+     * The chunks stop matching searches when this returns.
+     */
+    fun deleteByFileId(
+        fileId: String,
+        vectorStoreId: String? = null,
+    ) {
+        val index = nrtIndex.value
+        index.reopenThread.waitForGeneration(index.writer.deleteDocuments(fileQuery(fileId, vectorStoreId)))
+    }
+
+    /**
+     * Deletes every chunk of a vector store.
+     * The chunks stop matching searches when this returns.
+     */
+    fun deleteByVectorStoreId(vectorStoreId: String) {
+        val index = nrtIndex.value
+        index.reopenThread.waitForGeneration(index.writer.deleteDocuments(Term("vector_store_id", vectorStoreId)))
+    }
+
+    /**
+     * Reports the size of the index and how much of it is taken up by deleted documents,
+     * including changes not yet committed.
+     */
+    fun stats(): LuceneIndexStats {
+        val index = nrtIndex.value
+        val writer = index.writer
+        val docStats = writer.docStats
+        val directory = writer.directory
+        val sizeInBytes =
+            directory.listAll().sumOf { name ->
+                try {
+                    directory.fileLength(name)
+                } catch (e: java.io.IOException) {
+                    // Files can disappear while merges complete
+                    0L
+                }
+            }
+        val searcher = index.searcherManager.acquire()
+        val segmentCount =
+            try {
+                searcher.indexReader.leaves().size
+            } finally {
+                index.searcherManager.release(searcher)
+            }
+        val deletedDocs = docStats.maxDoc - docStats.numDocs
+        return LuceneIndexStats(
+            numDocs = docStats.numDocs,
+            deletedDocs = deletedDocs,
+            deletedRatio = if (docStats.maxDoc == 0) 0.0 else deletedDocs.toDouble() / docStats.maxDoc,
+            sizeInBytes = sizeInBytes,
+            segmentCount = segmentCount,
+        )
+    }
+
+    /**
+     * Commits pending changes to disk. Commits also happen periodically and on shutdown.
+     */
+    fun commit() {
+        if (!nrtIndex.isInitialized()) return
+        val writer = nrtIndex.value.writer
+        if (writer.hasUncommittedChanges()) {
+            writer.commit()
+        }
+    }
+
+    private fun commitQuietly() {
+        try {
+            commit()
+            val writer = nrtIndex.value.writer
+            val docStats = writer.docStats
+            if (docStats.maxDoc > 0 && (docStats.maxDoc - docStats.numDocs).toDouble() / docStats.maxDoc >= searchProperties.lucene.expungeDeletesRatio) {
+                log.info("Merging deleted documents out of the Lucene index")
+                // Runs on the merge scheduler's threads
+                writer.forceMergeDeletes(false)
+            }
+        } catch (e: Exception) {
+            log.error("Failed to commit Lucene index: ${e.message}", e)
+        }
+    }
+
+    /**
+     * Stops the background threads, commits and closes the writer.
+     */
+    @PreDestroy
+    fun close() {
+        if (!nrtIndex.isInitialized()) return
+        val index = nrtIndex.value
+        if (!index.writer.isOpen) return
+        index.committer.shutdownNow()
+        index.reopenThread.close()
+        index.searcherManager.close()
+        index.writer.use { it.commit() }
+    }
+
     /**
      * Performs a full-text search over the Lucene index.
      * @param queryText The search text
@@ -91,9 +276,9 @@ class LuceneIndexService(
             return emptyList()
         }
 
-        val dir = FSDirectory.open(Paths.get(indexPath))
-        DirectoryReader.open(dir).use { reader ->
-            val searcher = IndexSearcher(reader)
+        val searcherManager = nrtIndex.value.searcherManager
+        val searcher = searcherManager.acquire()
+        try {
             val parser = QueryParser("content", analyzer)
 
             // Build query combining text search with vector store filter if needed
@@ -135,8 +320,15 @@ class LuceneIndexService(
                         ),
                 )
             }
+        } finally {
+            searcherManager.release(searcher)
         }
     }
+
+    companion object {
+        // Identifies all chunks of one file in one vector store, so they can be replaced in one update
+        private const val FILE_STORE_KEY = "file_store_key"
+    }
 }
 
 /**
@@ -149,4 +341,20 @@ data class LuceneChunk(
     val vectorStoreId: String,
     val chunkIndex: Int,
     val content: String,
-) 
+)
+
+/**
+ * Size and deletion statistics of the Lucene index.
+ */
+data class LuceneIndexStats(
+    @JsonProperty("num_docs")
+    val numDocs: Int,
+    @JsonProperty("deleted_docs")
+    val deletedDocs: Int,
+    @JsonProperty("deleted_ratio")
+    val deletedRatio: Double,
+    @JsonProperty("size_in_bytes")
+    val sizeInBytes: Long,
+    @JsonProperty("segment_count")
+    val segmentCount: Int,
+)
@@ -5,10 +5,12 @@ import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
 import ai.masaic.openresponses.api.model.*
 import ai.masaic.openresponses.api.service.embedding.EmbeddingService
 import ai.masaic.openresponses.api.service.search.HybridSearchService.ChunkForIndexing
+import ai.masaic.openresponses.api.utils.ChunkingDefaults
 import ai.masaic.openresponses.api.utils.DocumentTextExtractor
 import ai.masaic.openresponses.api.utils.FilterUtils
 import ai.masaic.openresponses.api.utils.IdGenerator
-import ai.masaic.openresponses.api.utils.TextChunkingUtil
+import ai.masaic.openresponses.api.utils.TokenCounter
+import ai.masaic.openresponses.api.utils.TokenCounters
 import dev.langchain4j.data.document.Metadata
 import dev.langchain4j.data.embedding.Embedding
 import dev.langchain4j.data.segment.TextSegment
@@ -17,6 +19,8 @@ import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo
 import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore
 import io.qdrant.client.QdrantClient
 import io.qdrant.client.grpc.Collections
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.toList
 import org.slf4j.LoggerFactory
 import java.io.InputStream
 import java.time.Duration
@@ -33,12 +37,21 @@ open class QdrantVectorSearchProvider(
     vectorSearchProperties: VectorSearchConfigProperties,
     private val hybridSearchServiceHelper: HybridSearchServiceHelper,
     client: QdrantClient,
+    tokenCounter: TokenCounter = TokenCounters.default,
 ) : VectorSearchProvider {
     private val log = LoggerFactory.getLogger(QdrantVectorSearchProvider::class.java)
     private val collectionName = vectorSearchProperties.collectionName
     private val vectorDimension: Long = vectorSearchProperties.vectorDimension.toLong()
-    private val defaultStaticChunkingConfig = StaticChunkingConfig(vectorSearchProperties.chunkSize, vectorSearchProperties.chunkOverlap)
+    private val chunkingDefaults =
+        ChunkingDefaults(
+            chunkSize = vectorSearchProperties.chunkSize,
+            chunkOverlap = vectorSearchProperties.chunkOverlap,
+            maxTokens = vectorSearchProperties.chunkMaxTokens,
+            overlapTokens = vectorSearchProperties.chunkOverlapTokens,
+            tokenCounter = tokenCounter,
+        )
     private val embeddingStore: QdrantEmbeddingStore
+    private val embeddingPipeline = EmbeddingBatchPipeline(vectorSearchProperties.indexing)
 
     init {
         // Create collection if it doesn't exist
@@ -144,26 +157,17 @@ open class QdrantVectorSearchProvider(
                 }
             }
 
-            // Extract text content from the document
-            val text =
+            // Stream the document into chunks without materializing its whole text
+            val textChunks =
                 try {
-                    DocumentTextExtractor.Companion.extractAndCleanText(inputStream, filename)
+                    DocumentTextExtractor.extractChunks(inputStream, filename, chunkingStrategy, chunkingDefaults).toList()
                 } catch (e: Exception) {
-                    log.warn("Extracted text is empty for file: {}", filename)
+                    log.warn("Failed to extract text from file {}: {}", filename, e.message)
                     return false
                 }
 
-            if (text.isBlank()) {
-                log.warn("Extracted text is empty for file: {}", filename)
-                return false
-            }
-
-            // Use the TextChunkingUtil to chunk the text
-            log.debug("Chunking text for file: {}", filename)
-            val textChunks = TextChunkingUtil.chunkText(text, effectiveChunkingStrategy(chunkingStrategy))
-
             if (textChunks.isEmpty()) {
-                log.warn("No chunks created for file: {}", filename)
+                log.warn("Extracted text is empty for file: {}", filename)
                 return false
             }
 
@@ -173,7 +177,6 @@ open class QdrantVectorSearchProvider(
             val chunksForIndexing = mutableListOf<ChunkForIndexing>()
 
             // Prepare batch embedding
-            val chunkTexts = textChunks.map { it.text }
             val chunkMetadataList = mutableListOf<Map<String, Any>>()
             val textSegments = mutableListOf<TextSegment>()
 
@@ -190,6 +193,8 @@ open class QdrantVectorSearchProvider(
                         "vector_store_id" to vectorStoreId,
                         "total_chunks" to textChunks.size,
                     )
+                // Add what the chunker knows about the chunk, such as its Markdown heading
+                metadata.putAll(chunk.metadata)
 
                 // Add any additional user-provided attributes to the metadata
                 if (attributes != null) {
@@ -215,16 +220,17 @@ open class QdrantVectorSearchProvider(
             }
 
             try {
-                // Generate embeddings for all chunks in batch
-                log.debug("Generating batch embeddings for {} chunks", chunkTexts.size)
-                val embeddings = embeddings(chunkTexts, modelSettings)
-
-                // Convert to Embedding list for Qdrant
-                val embeddingList = embeddings.map { Embedding.from(it.toFloatArray()) }
-
-                // Store all embeddings with metadata in a single batch operation
-                embeddingStore.addAll(embeddingList, textSegments)
-                log.info("Successfully stored {} embeddings in batch", embeddings.size)
+                // Embed in concurrent token-sized batches and store each batch as soon as it is embedded
+                log.debug("Generating batch embeddings for {} chunks", textSegments.size)
+                val stored =
+                    embeddingPipeline.run(
+                        items = textSegments.asFlow(),
+                        text = { it.text() },
+                        embed = { texts -> embeddings(texts, modelSettings) },
+                    ) { _, segments, vectors ->
+                        embeddingStore.addAll(vectors.map { Embedding.from(it) }, segments)
+                    }
+                log.info("Successfully stored {} embeddings in batches", stored)
             } catch (e: Exception) {
                 log.error("Error generating or storing batch embeddings: {}", e.message, e)
                 deleteFile(fileId) // Rollback
@@ -255,12 +261,12 @@ open class QdrantVectorSearchProvider(
     open fun embeddings(
         chunkTexts: List<String>,
         modelSettings: ModelSettings?,
-    ): List<List<Float>> = embeddingService.embedTexts(chunkTexts)
+    ): List<FloatArray> = embeddingService.embedTextsAsArrays(chunkTexts)
 
     open fun embedding(
         query: String,
         modelSettings: ModelSettings?,
-    ): List<Float> = embeddingService.embedText(query)
+    ): FloatArray = embeddingService.embedTextAsArray(query)
 
     /**
      * Indexes a file with attributes.
@@ -452,6 +458,4 @@ open class QdrantVectorSearchProvider(
             return null
         }
     }
-
-    private fun effectiveChunkingStrategy(chunkingStrategy: ChunkingStrategy?): ChunkingStrategy = chunkingStrategy?.let { chunkingStrategy } ?: ChunkingStrategy("static", defaultStaticChunkingConfig)
 }
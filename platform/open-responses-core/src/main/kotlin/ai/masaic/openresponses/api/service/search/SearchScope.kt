@@ -0,0 +1,135 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.model.ComparisonFilter
+import ai.masaic.openresponses.api.model.CompoundFilter
+import ai.masaic.openresponses.api.model.Filter
+import ai.masaic.openresponses.api.utils.CompiledFilter
+import ai.masaic.openresponses.api.utils.FilterUtils
+
+/**
+ * A search filter split into the parts the file-based provider can answer without
+ * evaluating [FilterUtils.matchesFilter] per chunk.
+ *
+ * Top-level `and` conjuncts on `vector_store_id` select the partitions to search,
+ * conjuncts on `file_id` (an `eq`, an `in`, or an `or` of `eq` clauses) become a single
+ * `in` lookup, and `ne`/`nin` conjuncts on `file_id` (as built by
+ * [VectorStoreService.searchVectorStore] for files that are not completed) a single `nin`
+ * lookup. Everything else is kept as the [residual] filter; all are compiled into [filter]
+ * for the attribute index.
+ *
+ * @property vectorStoreIds Vector stores the results must belong to, or null for any store
+ * @property fileIds Files the results must belong to, or null for any file
+ * @property excludedFileIds Files the results must not belong to, or null for none
+ * @property residual The remaining filter, or null if nothing remains
+ */
+internal data class SearchScope(
+    val vectorStoreIds: Set<String>?,
+    val fileIds: Set<String>?,
+    val excludedFileIds: Set<String>?,
+    val residual: Filter?,
+) {
+    /**
+     * The file and residual constraints compiled once for the whole search, or null if every
+     * chunk in the selected partitions matches.
+     */
+    val filter: CompiledFilter? by lazy {
+        val filters =
+            listOfNotNull(
+                fileIds?.let { CompiledFilter.Comparison(CompiledFilter.FILE_ID, CompiledFilter.Operator.IN, it) },
+                excludedFileIds?.let { CompiledFilter.Comparison(CompiledFilter.FILE_ID, CompiledFilter.Operator.NIN, it) },
+                CompiledFilter.compile(residual),
+            )
+        when (filters.size) {
+            0 -> null
+            1 -> filters.single()
+            else -> CompiledFilter.And(filters)
+        }
+    }
+
+    companion object {
+        private const val VECTOR_STORE_ID = "vector_store_id"
+        private const val FILE_ID = "file_id"
+
+        /**
+         * Splits a filter into its scope.
+         */
+        fun of(filter: Filter?): SearchScope {
+            var vectorStoreIds: Set<String>? = null
+            var fileIds: Set<String>? = null
+            var excludedFileIds: Set<String>? = null
+            val residual = mutableListOf<Filter>()
+
+            conjuncts(filter).forEach { conjunct ->
+                val storeIds = idSet(conjunct, VECTOR_STORE_ID)
+                val files = idSet(conjunct, FILE_ID)
+                val excludedFiles = excludedIdSet(conjunct, FILE_ID)
+                when {
+                    storeIds != null -> vectorStoreIds = vectorStoreIds?.intersect(storeIds) ?: storeIds
+                    files != null -> fileIds = fileIds?.intersect(files) ?: files
+                    excludedFiles != null -> excludedFileIds = excludedFileIds?.union(excludedFiles) ?: excludedFiles
+                    else -> residual.add(conjunct)
+                }
+            }
+
+            return SearchScope(
+                vectorStoreIds = vectorStoreIds,
+                fileIds = fileIds,
+                excludedFileIds = excludedFileIds,
+                residual =
+                    when (residual.size) {
+                        0 -> null
+                        1 -> residual.single()
+                        else -> CompoundFilter(type = "and", filters = residual)
+                    },
+            )
+        }
+
+        private fun conjuncts(filter: Filter?): List<Filter> =
+            when {
+                filter == null -> emptyList()
+                filter is CompoundFilter && filter.type.equals("and", ignoreCase = true) -> filter.filters.flatMap { conjuncts(it) }
+                else -> listOf(filter)
+            }
+
+        /**
+         * Returns the set of IDs a conjunct restricts the key to, or null if it is not a plain ID restriction.
+         */
+        private fun idSet(
+            filter: Filter,
+            key: String,
+        ): Set<String>? =
+            when {
+                filter is ComparisonFilter && filter.key == key -> {
+                    val value = filter.value
+                    when {
+                        filter.type.equals("eq", ignoreCase = true) && value is String -> setOf(value)
+                        filter.type.equals("in", ignoreCase = true) && value is List<*> && value.all { it is String } ->
+                            value.mapTo(HashSet()) { it as String }
+                        else -> null
+                    }
+                }
+                filter is CompoundFilter && filter.type.equals("or", ignoreCase = true) && filter.filters.isNotEmpty() -> {
+                    val parts = filter.filters.map { idSet(it, key) }
+                    if (parts.all { it != null }) parts.flatMapTo(HashSet()) { it!! } else null
+                }
+                else -> null
+            }
+
+        /**
+         * Returns the set of IDs a conjunct excludes for the key, or null if it is not a plain ID exclusion.
+         */
+        private fun excludedIdSet(
+            filter: Filter,
+            key: String,
+        ): Set<String>? {
+            if (filter !is ComparisonFilter || filter.key != key) return null
+            val value = filter.value
+            return when {
+                filter.type.equals("ne", ignoreCase = true) && value is String -> setOf(value)
+                filter.type.equals("nin", ignoreCase = true) && value is List<*> && value.all { it is String } ->
+                    value.mapTo(HashSet()) { it as String }
+                else -> null
+            }
+        }
+    }
+}
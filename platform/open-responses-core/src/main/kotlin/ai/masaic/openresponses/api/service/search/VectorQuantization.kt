@@ -0,0 +1,251 @@
+package ai.masaic.openresponses.api.service.search
+
+import kotlin.math.abs
+import kotlin.math.roundToInt
+import kotlin.math.sqrt
+
+/**
+ * Which vectors a file's HNSW graph is built and traversed over.
+ *
+ * Full-precision vectors always stay in the mapped [EmbeddingSegment] and are used to
+ * re-score the candidates. A quantized file is traversed over compact codes held on the heap
+ * in addition to the mapped floats, so a search reads the floats of its candidates only, at
+ * the cost of first-pass accuracy.
+ */
+enum class QuantizationMode(
+    /**
+     * How many times smaller than its float32 vector a code is.
+     */
+    val compression: Int,
+) {
+    /** Graph traversed over the mapped float vectors; no codes are kept. */
+    NONE(1),
+
+    /** One signed byte per dimension with a per-vector scale. */
+    INT8(4),
+
+    /** One sign bit per dimension, compared by Hamming distance. */
+    BINARY(32),
+    ;
+
+    companion object {
+        /**
+         * Vector store metadata key that selects the mode for a store.
+         */
+        const val METADATA_KEY = "quantization"
+
+        /**
+         * Parses a mode name, case-insensitively.
+         *
+         * @throws IllegalArgumentException if the name is unknown
+         */
+        fun from(value: String): QuantizationMode =
+            entries.firstOrNull { it.name.equals(value.trim(), ignoreCase = true) }
+                ?: throw IllegalArgumentException("Unknown quantization mode: $value. Supported modes: none, int8, binary")
+    }
+}
+
+/**
+ * Quantized copy of a set of L2-normalized vectors. The dot products approximate those of
+ * the original vectors, so the codes can back an [HnswIndex] through [NodeVectors].
+ */
+sealed interface QuantizedVectors {
+    /**
+     * Number of vectors.
+     */
+    val count: Int
+
+    /**
+     * Resident size of the codes in bytes.
+     */
+    val sizeInBytes: Long
+
+    /**
+     * The vector a code decodes to.
+     */
+    fun vector(ordinal: Int): FloatArray
+
+    /**
+     * Approximate dot product of a vector and a normalized float query.
+     */
+    fun dot(
+        ordinal: Int,
+        query: FloatArray,
+    ): Float
+
+    /**
+     * Approximate dot product of a vector and a vector of another (or the same) set.
+     */
+    fun dot(
+        ordinal: Int,
+        other: QuantizedVectors,
+        otherOrdinal: Int,
+    ): Float
+
+    companion object {
+        /**
+         * Quantizes vectors with the given mode.
+         *
+         * @throws IllegalArgumentException for [QuantizationMode.NONE]
+         */
+        fun of(
+            mode: QuantizationMode,
+            vectors: List<FloatArray>,
+        ): QuantizedVectors =
+            when (mode) {
+                QuantizationMode.INT8 -> Int8Vectors.of(vectors)
+                QuantizationMode.BINARY -> BinaryVectors.of(vectors)
+                QuantizationMode.NONE -> throw IllegalArgumentException("Vectors are not quantized in mode NONE")
+            }
+    }
+}
+
+/**
+ * Symmetric per-vector int8 quantization. The query stays in float, so the score is
+ * an asymmetric dot product scaled back by the vector's scale.
+ */
+class Int8Vectors private constructor(
+    private val dimension: Int,
+    private val codes: ByteArray,
+    private val scales: FloatArray,
+) : QuantizedVectors {
+    override val count: Int
+        get() = scales.size
+
+    override val sizeInBytes: Long
+        get() = codes.size.toLong() + scales.size.toLong() * Float.SIZE_BYTES
+
+    override fun vector(ordinal: Int): FloatArray {
+        val base = ordinal * dimension
+        val scale = scales[ordinal]
+        return FloatArray(dimension) { codes[base + it] * scale }
+    }
+
+    override fun dot(
+        ordinal: Int,
+        query: FloatArray,
+    ): Float {
+        val base = ordinal * dimension
+        val length = minOf(dimension, query.size)
+        var sum = 0f
+        for (i in 0 until length) {
+            sum += query[i] * codes[base + i]
+        }
+        return sum * scales[ordinal]
+    }
+
+    override fun dot(
+        ordinal: Int,
+        other: QuantizedVectors,
+        otherOrdinal: Int,
+    ): Float {
+        if (other !is Int8Vectors || other.dimension != dimension) return dot(ordinal, other.vector(otherOrdinal))
+        // Both sides stay in bytes, accumulated as an int
+        val base = ordinal * dimension
+        val otherBase = otherOrdinal * dimension
+        var sum = 0
+        for (i in 0 until dimension) {
+            sum += codes[base + i] * other.codes[otherBase + i]
+        }
+        return sum * scales[ordinal] * other.scales[otherOrdinal]
+    }
+
+    companion object {
+        fun of(vectors: List<FloatArray>): Int8Vectors {
+            val dimension = vectors.firstOrNull()?.size ?: 0
+            val codes = ByteArray(dimension * vectors.size)
+            val scales = FloatArray(vectors.size)
+            vectors.forEachIndexed { ordinal, vector ->
+                val max = vector.maxOfOrNull { abs(it) } ?: 0f
+                val scale = if (max == 0f) 1f else max / 127f
+                scales[ordinal] = scale
+                val base = ordinal * dimension
+                for (i in 0 until dimension) {
+                    codes[base + i] = (vector[i] / scale).roundToInt().coerceIn(-127, 127).toByte()
+                }
+            }
+            return Int8Vectors(dimension, codes, scales)
+        }
+    }
+}
+
+/**
+ * Sign-bit quantization. A code decodes to the unit vector of its signs, so the dot product
+ * of two codes follows from the number of differing signs and approximates their angle.
+ */
+class BinaryVectors private constructor(
+    private val dimension: Int,
+    private val wordsPerVector: Int,
+    private val words: LongArray,
+) : QuantizedVectors {
+    override val count: Int
+        get() = if (wordsPerVector == 0) 0 else words.size / wordsPerVector
+
+    override val sizeInBytes: Long
+        get() = words.size.toLong() * Long.SIZE_BYTES
+
+    // Magnitude of every component of a decoded vector
+    private val component = if (dimension == 0) 0f else 1f / sqrt(dimension.toFloat())
+
+    private fun sign(
+        base: Int,
+        i: Int,
+    ): Boolean = (words[base + i / Long.SIZE_BITS] ushr (i % Long.SIZE_BITS)) and 1L != 0L
+
+    override fun vector(ordinal: Int): FloatArray {
+        val base = ordinal * wordsPerVector
+        return FloatArray(dimension) { if (sign(base, it)) component else -component }
+    }
+
+    override fun dot(
+        ordinal: Int,
+        query: FloatArray,
+    ): Float {
+        val base = ordinal * wordsPerVector
+        var sum = 0f
+        for (i in 0 until minOf(dimension, query.size)) {
+            sum += if (sign(base, i)) query[i] else -query[i]
+        }
+        return sum * component
+    }
+
+    override fun dot(
+        ordinal: Int,
+        other: QuantizedVectors,
+        otherOrdinal: Int,
+    ): Float {
+        if (other !is BinaryVectors || other.dimension != dimension) return dot(ordinal, other.vector(otherOrdinal))
+        val base = ordinal * wordsPerVector
+        val otherBase = otherOrdinal * wordsPerVector
+        var differing = 0
+        for (i in 0 until wordsPerVector) {
+            differing += java.lang.Long.bitCount(words[base + i] xor other.words[otherBase + i])
+        }
+        return if (dimension == 0) 0f else (dimension - 2 * differing).toFloat() / dimension
+    }
+
+    companion object {
+        fun of(vectors: List<FloatArray>): BinaryVectors {
+            val dimension = vectors.firstOrNull()?.size ?: 0
+            val wordsPerVector = (dimension + Long.SIZE_BITS - 1) / Long.SIZE_BITS
+            val words = LongArray(wordsPerVector * vectors.size)
+            vectors.forEachIndexed { ordinal, vector ->
+                pack(vector).copyInto(words, ordinal * wordsPerVector)
+            }
+            return BinaryVectors(dimension, wordsPerVector, words)
+        }
+
+        /**
+         * Packs the sign bits of a vector, one bit per dimension.
+         */
+        fun pack(vector: FloatArray): LongArray {
+            val packed = LongArray((vector.size + Long.SIZE_BITS - 1) / Long.SIZE_BITS)
+            vector.forEachIndexed { i, value ->
+                if (value > 0f) {
+                    packed[i / Long.SIZE_BITS] = packed[i / Long.SIZE_BITS] or (1L shl (i % Long.SIZE_BITS))
+                }
+            }
+            return packed
+        }
+    }
+}
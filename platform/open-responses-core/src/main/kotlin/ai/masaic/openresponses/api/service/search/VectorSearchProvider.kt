@@ -115,6 +115,18 @@ interface VectorSearchProvider {
      */
     suspend fun deleteFile(fileId: String): Boolean
 
+    /**
+     * Applies provider-specific settings from a vector store's metadata, such as the
+     * quantization mode. Called before files are indexed into the store.
+     *
+     * @param vectorStoreId The ID of the vector store
+     * @param metadata The vector store metadata
+     */
+    fun configureVectorStore(
+        vectorStoreId: String,
+        metadata: Map<String, String>?,
+    ) {}
+
     /**
      * Gets metadata for a file from the vector store.
      *
@@ -0,0 +1,86 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.repository.VectorStoreRepository
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.slf4j.LoggerFactory
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Write-behind accumulator for the `last_active_at` time of vector stores.
+ *
+ * Searches and content reads only record the time in memory; the latest time per vector store is
+ * written every [flushIntervalMillis] with [VectorStoreRepository.updateLastActiveAt], so reads
+ * no longer rewrite the vector store document. Pending times are flushed on [close].
+ */
+class VectorStoreActivityTracker(
+    private val vectorStoreRepository: VectorStoreRepository,
+    flushIntervalMillis: Long = DEFAULT_FLUSH_INTERVAL_MILLIS,
+) : AutoCloseable {
+    private val log = LoggerFactory.getLogger(VectorStoreActivityTracker::class.java)
+
+    private val pending = ConcurrentHashMap<String, Long>()
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    init {
+        val interval = flushIntervalMillis.coerceAtLeast(MIN_FLUSH_INTERVAL_MILLIS)
+        scope.launch {
+            while (isActive) {
+                delay(interval)
+                flush()
+            }
+        }
+    }
+
+    /**
+     * Records activity on a vector store.
+     */
+    fun touch(
+        vectorStoreId: String,
+        at: Long = Instant.now().epochSecond,
+    ) {
+        pending.merge(vectorStoreId, at) { old, new -> maxOf(old, new) }
+    }
+
+    /**
+     * The latest activity on a vector store that has not been written yet.
+     */
+    fun pendingLastActiveAt(vectorStoreId: String): Long? = pending[vectorStoreId]
+
+    /**
+     * Writes the pending times. A failed write is kept for the next flush.
+     *
+     * @return The number of vector stores written
+     */
+    suspend fun flush(): Int {
+        var flushed = 0
+        for (vectorStoreId in pending.keys) {
+            val at = pending.remove(vectorStoreId) ?: continue
+            try {
+                vectorStoreRepository.updateLastActiveAt(vectorStoreId, at)
+                flushed++
+            } catch (e: Exception) {
+                pending.merge(vectorStoreId, at) { old, new -> maxOf(old, new) }
+                log.warn("Could not update last active time of vector store $vectorStoreId", e)
+            }
+        }
+        return flushed
+    }
+
+    override fun close() {
+        scope.cancel()
+        runBlocking(Dispatchers.IO) { flush() }
+    }
+
+    companion object {
+        const val DEFAULT_FLUSH_INTERVAL_MILLIS = 10_000L
+        private const val MIN_FLUSH_INTERVAL_MILLIS = 100L
+    }
+}
@@ -0,0 +1,292 @@
+package ai.masaic.openresponses.api.service.search
+
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernel
+import ai.masaic.openresponses.api.utils.CompiledFilter
+import java.nio.file.Path
+
+/**
+ * Location of a chunk within its segment, and its slot in the partition's [AttributeIndex].
+ */
+internal data class ChunkRef(
+    val segment: EmbeddingSegment,
+    val ordinal: Int,
+    val slot: Int,
+) {
+    val chunk: SegmentChunk
+        get() = segment.chunks[ordinal]
+
+    /**
+     * The attributes filters are evaluated against: chunk metadata combined with file metadata.
+     */
+    val attributes: Map<String, Any>
+        get() = chunk.chunkMetadata + segment.metadata
+}
+
+/**
+ * Resident search state of a single vector store in the file-based provider.
+ *
+ * Each partition owns the segments in its own directory, an [HnswIndex] over its
+ * full-precision files that reads their vectors from the mapped segments, a second one over
+ * the quantized codes of its quantized files and an [AttributeIndex] over the attributes of
+ * all its chunks, so a search only touches the partitions of the vector stores it targets and
+ * a filter is resolved to bitmaps before anything is scored.
+ *
+ * This class is not thread-safe; the provider guards all partitions with one lock.
+ */
+internal class VectorStorePartition(
+    val vectorStoreId: String,
+    val dir: Path,
+    private val hnswConfig: VectorSearchConfigProperties.HnswConfig,
+    private val kernel: SimilarityKernel,
+) {
+    /**
+     * An indexed file: its mapped segment, the slot of its first chunk, its quantized codes if any
+     * and the nodes holding its chunks in the full-precision graph or, with codes, the quantized one.
+     */
+    private data class ResidentFile(
+        val segment: EmbeddingSegment,
+        val firstSlot: Int,
+        val nodes: IntArray,
+        val codes: QuantizedVectors? = null,
+    )
+
+    private var nodeRefs = ArrayList<ChunkRef>()
+
+    // The graph reads its nodes' vectors from the mapped segments instead of keeping heap copies,
+    // bulk-copying them into per-thread scratch arrays so every dot product runs on the kernel
+    private val segmentVectors =
+        object : NodeVectors {
+            override fun vector(node: Int): FloatArray = nodeRefs[node].let { it.segment.vector(it.ordinal) }
+
+            override fun dot(
+                node: Int,
+                query: FloatArray,
+            ): Float {
+                val ref = nodeRefs[node]
+                return ref.segment.dot(ref.ordinal, query, kernel, scratch.get().first(ref.segment.dimension))
+            }
+
+            override fun dot(
+                a: Int,
+                b: Int,
+            ): Float {
+                val refA = nodeRefs[a]
+                val refB = nodeRefs[b]
+                val buffers = scratch.get()
+                return refA.segment.dot(
+                    refA.ordinal,
+                    refB.segment,
+                    refB.ordinal,
+                    kernel,
+                    buffers.first(refA.segment.dimension),
+                    buffers.second(refB.segment.dimension),
+                )
+            }
+        }
+
+    /**
+     * A node of the quantized graph: its chunk and the codes of the chunk's file.
+     */
+    private class QuantizedNode(
+        val ref: ChunkRef,
+        val codes: QuantizedVectors,
+    )
+
+    private var quantizedNodes = ArrayList<QuantizedNode>()
+
+    // The quantized graph is built and traversed over the codes; candidates are re-scored from the mapped floats
+    private val codeVectors =
+        object : NodeVectors {
+            override fun vector(node: Int): FloatArray = quantizedNodes[node].let { it.codes.vector(it.ref.ordinal) }
+
+            override fun dot(
+                node: Int,
+                query: FloatArray,
+            ): Float = quantizedNodes[node].let { it.codes.dot(it.ref.ordinal, query) }
+
+            override fun dot(
+                a: Int,
+                b: Int,
+            ): Float {
+                val nodeA = quantizedNodes[a]
+                val nodeB = quantizedNodes[b]
+                return nodeA.codes.dot(nodeA.ref.ordinal, nodeB.codes, nodeB.ref.ordinal)
+            }
+        }
+
+    private var index = newIndex(segmentVectors)
+    private var quantizedIndex = newIndex(codeVectors)
+    private var attributeIndex = AttributeIndex()
+
+    /** Chunk of every slot handed out, or null once its file is removed. */
+    private var slotRefs = ArrayList<ChunkRef?>()
+    private val files = HashMap<String, ResidentFile>()
+
+    val fileCount: Int
+        get() = files.size
+
+    val chunkCount: Int
+        get() = attributeIndex.size
+
+    fun contains(fileId: String): Boolean = files.containsKey(fileId)
+
+    fun segment(fileId: String): EmbeddingSegment? = files[fileId]?.segment
+
+    private fun newIndex(nodeVectors: NodeVectors) = HnswIndex(m = hnswConfig.m, efConstruction = hnswConfig.efConstruction, kernel = kernel, nodeVectors = nodeVectors)
+
+    /**
+     * Adds a file, replacing any previous version of it.
+     *
+     * @param codes Quantized codes for quantized segments, computed by the caller outside the lock
+     */
+    fun add(
+        segment: EmbeddingSegment,
+        codes: QuantizedVectors?,
+    ) {
+        files.remove(segment.fileId)?.let { release(it) }
+        files[segment.fileId] = place(segment, codes)
+    }
+
+    /**
+     * Assigns slots to the chunks of a segment and adds them to the attribute index and to the graph matching its codes.
+     */
+    private fun place(
+        segment: EmbeddingSegment,
+        codes: QuantizedVectors?,
+    ): ResidentFile {
+        val firstSlot = slotRefs.size
+        val refs = List(segment.count) { ChunkRef(segment, it, firstSlot + it) }
+        refs.forEach { ref ->
+            slotRefs.add(ref)
+            attributeIndex.add(ref.slot, ref.attributes + (CompiledFilter.FILE_ID to segment.fileId))
+        }
+        if (codes != null) {
+            val nodes =
+                IntArray(segment.count) { ordinal ->
+                    quantizedNodes.add(QuantizedNode(refs[ordinal], codes))
+                    quantizedIndex.add()
+                }
+            return ResidentFile(segment, firstSlot, nodes, codes)
+        }
+
+        val nodes =
+            IntArray(segment.count) { ordinal ->
+                nodeRefs.add(refs[ordinal])
+                index.add()
+            }
+        return ResidentFile(segment, firstSlot, nodes)
+    }
+
+    /**
+     * Drops a file's chunks from the graph and the attribute index.
+     */
+    private fun release(file: ResidentFile) {
+        val graph = if (file.codes == null) index else quantizedIndex
+        file.nodes.forEach { graph.markDeleted(it) }
+        for (ordinal in 0 until file.segment.count) {
+            val slot = file.firstSlot + ordinal
+            slotRefs[slot]?.let { attributeIndex.remove(slot, it.attributes + (CompiledFilter.FILE_ID to file.segment.fileId)) }
+            slotRefs[slot] = null
+        }
+    }
+
+    /**
+     * Removes a file, rebuilding the graphs and the slot numbering when tombstones pile up.
+     *
+     * @return True if the file was resident
+     */
+    fun remove(fileId: String): Boolean {
+        val removed = files.remove(fileId) ?: return false
+        release(removed)
+        val deletedNodes = mostlyDeleted(index) || mostlyDeleted(quantizedIndex)
+        val deletedSlots = slotRefs.size > 0 && (slotRefs.size - attributeIndex.size).toDouble() / slotRefs.size >= hnswConfig.rebuildDeletedRatio
+        if (deletedNodes || deletedSlots) {
+            rebuild()
+        }
+        return true
+    }
+
+    private fun mostlyDeleted(graph: HnswIndex): Boolean = graph.size > 0 && graph.deletedCount.toDouble() / graph.size >= hnswConfig.rebuildDeletedRatio
+
+    /**
+     * Rebuilds the graphs, the slot numbering and the attribute index from the live chunks only.
+     */
+    private fun rebuild() {
+        index = newIndex(segmentVectors)
+        quantizedIndex = newIndex(codeVectors)
+        nodeRefs = ArrayList()
+        quantizedNodes = ArrayList()
+        attributeIndex = AttributeIndex()
+        slotRefs = ArrayList(files.values.sumOf { it.segment.count })
+        files.replaceAll { _, file -> place(file.segment, file.codes) }
+    }
+
+    /**
+     * Collects first-pass candidates: nearest neighbours from the full-precision graph and
+     * from the quantized graph. Candidates still need re-scoring against the full vectors.
+     *
+     * A filter is first resolved to a bitmap of matching slots through the attribute index.
+     * When no more chunks match than the graph search would visit anyway, every matching
+     * chunk is returned as a candidate and the graphs are skipped.
+     *
+     * @param query The normalized query vector
+     * @param maxResults Number of full-precision neighbours to return
+     * @param quantizedLimit Number of quantized neighbours to return
+     * @param filter Optional compiled filter
+     */
+    fun candidates(
+        query: FloatArray,
+        maxResults: Int,
+        quantizedLimit: Int,
+        filter: CompiledFilter?,
+    ): List<ChunkRef> {
+        val accept =
+            filter?.let { compiled ->
+                val plan = attributeIndex.plan(compiled)
+                val slots = plan.slots
+                if (slots.cardinality() <= maxOf(maxResults, hnswConfig.efSearch)) {
+                    val refs = ArrayList<ChunkRef>()
+                    var slot = slots.nextSetBit(0)
+                    while (slot >= 0) {
+                        val ref = slotRefs[slot]!!
+                        if (plan.exact || compiled.matches(ref.attributes, ref.segment.fileId)) refs.add(ref)
+                        slot = slots.nextSetBit(slot + 1)
+                    }
+                    return refs
+                }
+                if (plan.exact) {
+                    { ref: ChunkRef -> slots.get(ref.slot) }
+                } else {
+                    { ref: ChunkRef -> slots.get(ref.slot) && compiled.matches(ref.attributes, ref.segment.fileId) }
+                }
+            }
+        val acceptNode = accept?.let { predicate -> { node: Int -> predicate(nodeRefs[node]) } }
+        val acceptQuantized = accept?.let { predicate -> { node: Int -> predicate(quantizedNodes[node].ref) } }
+        val matches = index.search(query, maxResults, hnswConfig.efSearch, acceptNode)
+        val quantizedMatches = quantizedIndex.search(query, quantizedLimit, hnswConfig.efSearch, acceptQuantized)
+        return matches.map { nodeRefs[it.node] } + quantizedMatches.map { quantizedNodes[it.node].ref }
+    }
+
+    /**
+     * Reused arrays mapped vectors are copied into, one pair per searching thread.
+     */
+    private class ScratchVectors {
+        private var first = FloatArray(0)
+        private var second = FloatArray(0)
+
+        fun first(dimension: Int): FloatArray {
+            if (first.size != dimension) first = FloatArray(dimension)
+            return first
+        }
+
+        fun second(dimension: Int): FloatArray {
+            if (second.size != dimension) second = FloatArray(dimension)
+            return second
+        }
+    }
+
+    companion object {
+        private val scratch: ThreadLocal<ScratchVectors> = ThreadLocal.withInitial { ScratchVectors() }
+    }
+}
@@ -1,6 +1,7 @@
 package ai.masaic.openresponses.api.service.search
 
 import ai.masaic.openresponses.api.exception.FileNotFoundException
+import ai.masaic.openresponses.api.exception.IngestionQueueFullException
 import ai.masaic.openresponses.api.exception.VectorSearchException
 import ai.masaic.openresponses.api.exception.VectorStoreFileNotFoundException
 import ai.masaic.openresponses.api.exception.VectorStoreNotFoundException
@@ -15,8 +16,11 @@ import ai.masaic.openresponses.api.utils.IdGenerator
 import io.micrometer.core.instrument.Timer
 import kotlinx.coroutines.*
 import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
 import java.io.InputStream
 import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Service for managing vector stores.
@@ -30,52 +34,118 @@ open class VectorStoreService(
     private val vectorSearchProvider: VectorSearchProvider,
     private val telemetryService: TelemetryService,
     private val hybridSearchServiceHelper: HybridSearchServiceHelper,
+    private val ingestionQueue: IngestionQueue = IngestionQueue(),
+    private val resumeOnStartup: Boolean = true,
+    private val activityTracker: VectorStoreActivityTracker = VectorStoreActivityTracker(vectorStoreRepository),
 ) {
     private val log = LoggerFactory.getLogger(VectorStoreService::class.java)
 
-    // Create a background CoroutineScope for async operations
-    private val backgroundScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    // Live progress of the files being indexed by this instance, keyed by progressKey
+    private val indexingProgress = ConcurrentHashMap<String, IndexingProgress>()
+
+    private fun progressKey(
+        vectorStoreId: String,
+        fileId: String,
+    ) = "$vectorStoreId/$fileId"
 
     /**
-     * Updates the file counts and bytes for a vector store based on the current files.
-     *
-     * @param vectorStoreId The ID of the vector store to update
-     * @return The updated vector store, or null if the vector store doesn't exist
+     * Creates the coroutine context element through which indexing reports progress for a file.
      */
-    private suspend fun updateVectorStoreFileCounts(vectorStoreId: String): VectorStore? =
-        withContext(Dispatchers.IO) {
-            val vectorStore = vectorStoreRepository.findVectorStoreById(vectorStoreId) ?: return@withContext null
+    private fun progressListener(
+        vectorStoreId: String,
+        fileId: String,
+    ) = IndexingProgressListener { indexingProgress[progressKey(vectorStoreId, fileId)] = it }
 
-            // Get all files in the vector store
-            val allFiles = vectorStoreRepository.listVectorStoreFiles(vectorStoreId, Int.MAX_VALUE)
+    /**
+     * Overlays the live progress of a file that is still being indexed.
+     */
+    private fun withLiveProgress(file: VectorStoreFile): VectorStoreFile {
+        if (file.status != "in_progress") return file
+        val progress = indexingProgress[progressKey(file.vectorStoreId, file.id)] ?: return file
+        return file.copy(indexingProgress = progress)
+    }
 
-            // Count files by status
-            val inProgress = allFiles.count { it.status == "in_progress" }
-            val completed = allFiles.count { it.status == "completed" }
-            val failed = allFiles.count { it.status == "failed" }
-            val cancelled = allFiles.count { it.status == "cancelled" }
-            val total = allFiles.size
+    /**
+     * Adjusts the file counts and bytes of a vector store for a file that was added (`before` is
+     * null), changed status, or was removed (`after` is null), without listing the store's files.
+     */
+    private suspend fun recordFileChange(
+        vectorStoreId: String,
+        before: VectorStoreFile?,
+        after: VectorStoreFile?,
+    ) {
+        activityTracker.touch(vectorStoreId)
+        val delta = fileCountsOf(after) - fileCountsOf(before)
+        val bytes = (after?.usageBytes ?: 0L) - (before?.usageBytes ?: 0L)
+        if (delta == FileCounts() && bytes == 0L) return
+        vectorStoreRepository.incrementFileCounts(vectorStoreId, delta, bytes)
+    }
 
-            // Calculate total bytes
-            val bytes = allFiles.sumOf { it.usageBytes }
+    private fun fileCountsOf(file: VectorStoreFile?): FileCounts {
+        if (file == null) return FileCounts()
+        return FileCounts(
+            inProgress = if (file.status == "in_progress") 1 else 0,
+            completed = if (file.status == "completed") 1 else 0,
+            failed = if (file.status == "failed") 1 else 0,
+            cancelled = if (file.status == "cancelled") 1 else 0,
+            total = 1,
+        )
+    }
 
-            // Update the vector store
-            val updatedVectorStore =
-                vectorStore.copy(
-                    bytes = bytes,
-                    fileCounts =
-                        FileCounts(
-                            inProgress = inProgress,
-                            completed = completed,
-                            failed = failed,
-                            cancelled = cancelled,
-                            total = total,
-                        ),
-                    lastActiveAt = Instant.now().epochSecond,
-                )
+    private operator fun FileCounts.plus(other: FileCounts) =
+        FileCounts(
+            inProgress = inProgress + other.inProgress,
+            completed = completed + other.completed,
+            failed = failed + other.failed,
+            cancelled = cancelled + other.cancelled,
+            total = total + other.total,
+        )
 
-            vectorStoreRepository.saveVectorStore(updatedVectorStore)
-        }
+    private operator fun FileCounts.minus(other: FileCounts) =
+        FileCounts(
+            inProgress = inProgress - other.inProgress,
+            completed = completed - other.completed,
+            failed = failed - other.failed,
+            cancelled = cancelled - other.cancelled,
+            total = total - other.total,
+        )
+
+    /**
+     * Recounts the files of a vector store and corrects its file counts and bytes.
+     * Used by [cleanupVectorStores] to repair counts that drifted, such as after a crash.
+     *
+     * @param vectorStoreId The ID of the vector store to recount
+     * @return The updated vector store, or null if the vector store doesn't exist
+     */
+    private suspend fun recountVectorStoreFiles(vectorStoreId: String): VectorStore? {
+        val vectorStore = vectorStoreRepository.findVectorStoreById(vectorStoreId) ?: return null
+
+        // Page through all files; the repository caps the page size
+        var counts = FileCounts()
+        var bytes = 0L
+        var after: String? = null
+        do {
+            val page = vectorStoreRepository.listVectorStoreFiles(vectorStoreId, RECOUNT_PAGE_SIZE, "asc", after)
+            page.forEach { file ->
+                counts = counts + fileCountsOf(file)
+                bytes += file.usageBytes
+            }
+            after = page.lastOrNull()?.id
+        } while (page.size >= RECOUNT_PAGE_SIZE)
+
+        val delta = counts - vectorStore.fileCounts
+        val bytesDelta = bytes - vectorStore.bytes
+        if (delta == FileCounts() && bytesDelta == 0L) return vectorStore
+        return vectorStoreRepository.incrementFileCounts(vectorStoreId, delta, bytesDelta)
+    }
+
+    /**
+     * Shows activity on a vector store that has not been written yet.
+     */
+    private fun withPendingActivity(vectorStore: VectorStore): VectorStore {
+        val pending = activityTracker.pendingLastActiveAt(vectorStore.id) ?: return vectorStore
+        return if (pending > (vectorStore.lastActiveAt ?: 0L)) vectorStore.copy(lastActiveAt = pending) else vectorStore
+    }
 
     /**
      * Updates the expiration timestamp for a vector store based on its expiration policy.
@@ -105,9 +175,8 @@ open class VectorStoreService(
     private suspend fun checkAndUpdateExpiration(vectorStore: VectorStore): VectorStore =
         withContext(Dispatchers.IO) {
             if (vectorStore.isExpired() && vectorStore.status != "expired") {
-                val updatedVectorStore = vectorStore.copy(status = "expired")
-                vectorStoreRepository.saveVectorStore(updatedVectorStore)
-                updatedVectorStore
+                // Only the status is written, so file count updates made meanwhile are kept
+                vectorStoreRepository.updateVectorStoreStatus(vectorStore.id, "expired") ?: vectorStore.copy(status = "expired")
             } else {
                 vectorStore
             }
@@ -121,6 +190,10 @@ open class VectorStoreService(
      */
     suspend fun createVectorStore(request: CreateVectorStoreRequest): VectorStore =
         withContext(Dispatchers.IO) {
+            // Reject unknown quantization modes up front rather than failing every file later
+            request.metadata?.get(QuantizationMode.METADATA_KEY)?.let { QuantizationMode.from(it) }
+            request.metadata?.get(FusionStrategy.METADATA_KEY)?.let { FusionStrategy.parse(it) }
+
             // Compute access control for the vector store
             val accessControl = AccessManager.toString(AccessManager.computeAccessControl())
             
@@ -128,12 +201,35 @@ open class VectorStoreService(
             val vectorStoreId = IdGenerator.generateVectorStoreId()
             val createdAt = Instant.now().epochSecond
 
-            // Initialize file counts
-            var fileCount = 0
-            var inProgressCount = 0
-            var failedCount = 0
+            // Check the files up front, so the initial counts are final for files that cannot be indexed
+            val files =
+                request.fileIds.orEmpty().mapNotNull { fileId ->
+                    try {
+                        if (!vectorStoreFileManager.fileExists(fileId)) {
+                            throw FileNotFoundException("File not found: $fileId")
+                        }
+
+                        // Get file metadata
+                        val fileMetadata = vectorStoreFileManager.getFileMetadata(fileId)
+                        val filename = fileMetadata["filename"] as String
+                        val bytes = fileMetadata["bytes"] as Long
+
+                        VectorStoreFile(
+                            id = fileId,
+                            createdAt = createdAt,
+                            usageBytes = bytes,
+                            vectorStoreId = vectorStoreId,
+                            status = "in_progress",
+                            attributes = mapOf("filename" to filename),
+                        )
+                    } catch (e: Exception) {
+                        log.error("Error processing file $fileId", e)
+                        null
+                    }
+                }
+            val failedCount = request.fileIds.orEmpty().size - files.size
 
-            // Set up initial vector store with empty file counts
+            // Set up initial vector store with the file counts
             val vectorStore =
                 VectorStore(
                     id = vectorStoreId,
@@ -141,106 +237,44 @@ open class VectorStoreService(
                     createdAt = createdAt,
                     lastActiveAt = createdAt,
                     metadata = request.metadata,
+                    bytes = files.sumOf { it.usageBytes },
                     fileCounts =
                         FileCounts(
-                            inProgress = 0,
+                            inProgress = files.size,
                             completed = 0,
-                            failed = 0,
+                            failed = failedCount,
                             cancelled = 0,
-                            total = 0,
+                            total = files.size + failedCount,
                         ),
                     accessControl = accessControl,
+                    // Set to completed if there were errors
+                    status = if (failedCount > 0) "completed" else "in_progress",
                 )
 
-            // Apply expiration policy if provided
-            val vectorStoreWithExpiration = updateExpirationTimestamp(vectorStore, request.expiresAfter)
-
-            // Process file IDs if provided
-            var vectorStoreToSave = vectorStoreWithExpiration
-            if (!request.fileIds.isNullOrEmpty()) {
-                fileCount = request.fileIds.size
-                inProgressCount = fileCount // All files start as in_progress
-
-                // Update the vector store with initial file counts before processing files
-                vectorStoreToSave =
-                    vectorStoreWithExpiration.copy(
-                        fileCounts =
-                            FileCounts(
-                                inProgress = inProgressCount,
-                                completed = 0,
-                                failed = 0,
-                                cancelled = 0,
-                                total = fileCount,
-                            ),
-                    )
-            }
+            // Apply expiration policy if provided, and store the vector store with its initial counts
+            val savedVectorStore = vectorStoreRepository.saveVectorStore(updateExpirationTimestamp(vectorStore, request.expiresAfter))
 
-            // Store the vector store with initial counts
-            val savedVectorStore = vectorStoreRepository.saveVectorStore(vectorStoreToSave)
-
-            // Index any files that were provided
-            request.fileIds?.forEach { fileId ->
+            // Index the files; from here on the counts are maintained incrementally
+            files.forEach { file ->
                 try {
-                    // Check if the file exists
-                    if (!vectorStoreFileManager.fileExists(fileId)) {
-                        throw FileNotFoundException("File not found: $fileId")
-                    }
-
-                    // Get file metadata
-                    val fileMetadata = vectorStoreFileManager.getFileMetadata(fileId)
-                    val filename = fileMetadata["filename"] as String
-                    val bytes = fileMetadata["bytes"] as Long
-
-                    // Create the vector store file
-                    val vectorStoreFile =
-                        VectorStoreFile(
-                            id = fileId,
-                            createdAt = createdAt,
-                            usageBytes = bytes,
-                            vectorStoreId = vectorStoreId,
-                            status = "in_progress",
-                            attributes = mapOf("filename" to filename),
-                        )
-
-                    // Save the vector store file
-                    val savedFile = vectorStoreRepository.saveVectorStoreFile(vectorStoreFile)
-
-                    // Process the file asynchronously
-                    processFile(savedFile.vectorStoreId, savedFile, modelSettings = ModelInfo.modelSettings(request.modelInfo))
+                    val savedFile = vectorStoreRepository.saveVectorStoreFile(file)
+                    processFile(savedFile.vectorStoreId, savedFile, modelSettings = ModelInfo.modelSettings(request.modelInfo), tenant = accessControl)
                 } catch (e: Exception) {
-                    log.error("Error processing file $fileId", e)
-                    // In case of immediate error, update counts directly
-                    failedCount++
-                    inProgressCount--
+                    log.error("Error processing file ${file.id}", e)
                 }
             }
 
-            // If there were any immediate errors, update the vector store again
-            if (failedCount > 0) {
-                val updatedVectorStore =
-                    savedVectorStore.copy(
-                        fileCounts =
-                            FileCounts(
-                                inProgress = inProgressCount,
-                                completed = 0,
-                                failed = failedCount,
-                                cancelled = 0,
-                                total = fileCount,
-                            ),
-                        status = "completed", // Set to completed if there were errors
-                    )
-                vectorStoreRepository.saveVectorStore(updatedVectorStore)
-                return@withContext updatedVectorStore
-            }
-
-            // Return the saved vector store (with correct initial counts)
-            return@withContext savedVectorStore
+            savedVectorStore
         }
 
     /**
-     * Lists all vector stores.
+     * Lists the vector stores the caller can read.
+     *
+     * Pages of `limit + 1` stores are read from the repository until `limit` readable ones are
+     * found, so stores dropped by access filtering never shorten a page, and `hasMore` is only
+     * set when a readable store follows the last one returned.
      *
-     * @param limit Maximum number of vector stores to return
+     * @param limit Maximum number of vector stores to return, at most 100
      * @param order Sort order (asc or desc)
      * @param after Return vector stores after this ID (for pagination)
      * @param before Return vector stores before this ID (for pagination)
@@ -253,27 +287,34 @@ open class VectorStoreService(
         before: String? = null,
     ): VectorStoreListResponse =
         withContext(Dispatchers.IO) {
-            // Get vector stores from repository  
-            val vectorStores = vectorStoreRepository.listVectorStores(Int.MAX_VALUE, order, after, before)
-
-            // Filter by access permission
-            val accessibleVectorStores =
-                vectorStores.filter { vectorStore ->
-                    canRead(vectorStore.accessControl)
-                }
+            val pageLimit = limit.coerceIn(1, MAX_PAGE_SIZE)
+            val pageSize = minOf(pageLimit + 1, MAX_PAGE_SIZE)
+            // Paging before an ID walks backwards, so each earlier page is prepended
+            val backwards = after == null && before != null
+            val readable = ArrayList<VectorStore>()
+            var cursor = if (backwards) before else after
+            while (readable.size <= pageLimit) {
+                val page =
+                    if (backwards) {
+                        vectorStoreRepository.listVectorStores(pageSize, order, null, cursor)
+                    } else {
+                        vectorStoreRepository.listVectorStores(pageSize, order, cursor, null)
+                    }
+                val accessible = page.filter { canRead(it.accessControl) }
+                if (backwards) readable.addAll(0, accessible) else readable.addAll(accessible)
+                if (page.size < pageSize) break
+                cursor = if (backwards) page.first().id else page.last().id
+            }
 
-            // Check and update expiration status for each accessible vector store
-            val updatedVectorStores = accessibleVectorStores.map { checkAndUpdateExpiration(it) }
-            
-            // Apply limit after filtering
-            val limitedVectorStores = updatedVectorStores.take(limit)
+            // Only the stores returned are checked for expiration
+            val selected = if (backwards) readable.takeLast(pageLimit) else readable.take(pageLimit)
+            val vectorStores = selected.map { withPendingActivity(checkAndUpdateExpiration(it)) }
 
-            // Create response
             VectorStoreListResponse(
-                data = limitedVectorStores,
-                firstId = limitedVectorStores.firstOrNull()?.id,
-                lastId = limitedVectorStores.lastOrNull()?.id,
-                hasMore = limitedVectorStores.size >= limit, // If we got exactly the limit, there might be more
+                data = vectorStores,
+                firstId = vectorStores.firstOrNull()?.id,
+                lastId = vectorStores.lastOrNull()?.id,
+                hasMore = readable.size > pageLimit,
             )
         }
 
@@ -296,7 +337,7 @@ open class VectorStoreService(
             }
 
             // Check and update expiration status
-            checkAndUpdateExpiration(vectorStore)
+            withPendingActivity(checkAndUpdateExpiration(vectorStore))
         }
 
     /**
@@ -333,7 +374,14 @@ open class VectorStoreService(
             // Apply expiration policy if provided
             val vectorStoreWithExpiration = updateExpirationTimestamp(updatedVectorStore, request.expiresAfter)
 
-            vectorStoreRepository.saveVectorStore(vectorStoreWithExpiration)
+            // Only the modified fields are written, so file count updates made meanwhile are kept
+            vectorStoreRepository.updateVectorStoreDetails(
+                vectorStoreId,
+                name = vectorStoreWithExpiration.name,
+                metadata = vectorStoreWithExpiration.metadata,
+                expiresAt = vectorStoreWithExpiration.expiresAt,
+                lastActiveAt = vectorStoreWithExpiration.lastActiveAt ?: Instant.now().epochSecond,
+            ) ?: throw VectorStoreNotFoundException("Vector store not found: $vectorStoreId")
         }
 
     /**
@@ -375,6 +423,15 @@ open class VectorStoreService(
                 }
             }
 
+            // Drop any text-index chunks left behind by files no longer attached to the store
+            hybridSearchServiceHelper?.let {
+                try {
+                    it.deleteVectorStoreChunks(vectorStoreId)
+                } catch (e: Exception) {
+                    log.error("Error deleting vector store $vectorStoreId chunks from hybrid search indexes", e)
+                }
+            }
+
             // Delete the vector store from the repository
             val deleted = vectorStoreRepository.deleteVectorStore(vectorStoreId)
 
@@ -436,14 +493,15 @@ open class VectorStoreService(
                         chunkingStrategy = request.chunkingStrategy,
                     )
 
-                // Save the vector store file
+                // Save the vector store file, replacing any earlier attachment of the same file
+                val previousFile = vectorStoreRepository.findVectorStoreFileById(vectorStoreId, fileId)
                 val savedFile = vectorStoreRepository.saveVectorStoreFile(vectorStoreFile)
 
                 // Update the vector store counts
-                updateVectorStoreFileCounts(vectorStoreId)
+                recordFileChange(vectorStoreId, previousFile, savedFile)
 
                 // Process the file asynchronously
-                processFile(savedFile.vectorStoreId, savedFile, ModelInfo.modelSettings(request.modelInfo))
+                processFile(savedFile.vectorStoreId, savedFile, ModelInfo.modelSettings(request.modelInfo), tenant = vectorStore.accessControl)
 
                 // Return the saved file
                 savedFile
@@ -486,7 +544,7 @@ open class VectorStoreService(
 
             // Create response
             VectorStoreFileListResponse(
-                data = files,
+                data = files.map { withLiveProgress(it) },
                 firstId = files.firstOrNull()?.id,
                 lastId = files.lastOrNull()?.id,
                 hasMore = files.size >= limit, // If we got exactly the limit, there might be more
@@ -528,12 +586,12 @@ open class VectorStoreService(
                 // Remove the file from the vector store since it no longer exists
                 vectorStoreRepository.deleteVectorStoreFile(vectorStoreId, fileId)
                 vectorSearchProvider.deleteFile(fileId)
-                updateVectorStoreFileCounts(vectorStoreId)
+                recordFileChange(vectorStoreId, file, null)
 
                 throw FileNotFoundException("File $fileId referenced in vector store $vectorStoreId no longer exists in storage")
             }
 
-            file
+            withLiveProgress(file)
         }
 
     /**
@@ -573,7 +631,7 @@ open class VectorStoreService(
                 // Remove the file from the vector store since it no longer exists
                 vectorStoreRepository.deleteVectorStoreFile(vectorStoreId, fileId)
                 vectorSearchProvider.deleteFile(fileId)
-                updateVectorStoreFileCounts(vectorStoreId)
+                recordFileChange(vectorStoreId, file, null)
 
                 throw FileNotFoundException("File $fileId referenced in vector store $vectorStoreId no longer exists in storage")
             }
@@ -583,6 +641,7 @@ open class VectorStoreService(
 
             // Save the updated file
             val savedFile = vectorStoreRepository.saveVectorStoreFile(updatedFile)
+            recordFileChange(vectorStoreId, file, savedFile)
 
             // Get file metadata and prepare for re-indexing
             val fileMetadata = vectorStoreFileManager.getFileMetadata(fileId)
@@ -591,28 +650,36 @@ open class VectorStoreService(
             // Update file status to in_progress during reindexing
             val processingFile = savedFile.copy(status = "in_progress")
             vectorStoreRepository.saveVectorStoreFile(processingFile)
-            updateVectorStoreFileCounts(vectorStoreId)
+            recordFileChange(vectorStoreId, savedFile, processingFile)
 
             // Get the file resource
             val resource = vectorStoreFileManager.getFileAsResource(fileId)
 
             // Re-index the file with the new attributes in a single operation
+            var finalProgress: IndexingProgress? = null
+            vectorSearchProvider.configureVectorStore(vectorStoreId, vectorStore.metadata)
             val success =
-                vectorSearchProvider.indexFile(
-                    fileId = fileId,
-                    content = resource.inputStream,
-                    filename = filename,
-                    chunkingStrategy = file.chunkingStrategy,
-                    preDeleteIfExists = true, // Always delete existing embeddings first
-                    attributes = request.attributes,
-                    vectorStoreId = vectorStoreId,
-                )
+                try {
+                    withContext(progressListener(vectorStoreId, fileId)) {
+                        vectorSearchProvider.indexFile(
+                            fileId = fileId,
+                            content = resource.inputStream,
+                            filename = filename,
+                            chunkingStrategy = file.chunkingStrategy,
+                            preDeleteIfExists = true, // Always delete existing embeddings first
+                            attributes = request.attributes,
+                            vectorStoreId = vectorStoreId,
+                        )
+                    }
+                } finally {
+                    finalProgress = indexingProgress.remove(progressKey(vectorStoreId, fileId))
+                }
 
             // Update the file status based on indexing result
             val finalFile =
                 if (success) {
                     // Success - mark as completed
-                    processingFile.copy(status = "completed")
+                    processingFile.copy(status = "completed", indexingProgress = finalProgress)
                 } else {
                     // Failed - mark as failed
                     log.error("Failed to re-index file $fileId with updated attributes")
@@ -621,7 +688,7 @@ open class VectorStoreService(
 
             // Save the final file status
             val result = vectorStoreRepository.saveVectorStoreFile(finalFile)
-            updateVectorStoreFileCounts(vectorStoreId)
+            recordFileChange(vectorStoreId, processingFile, result)
 
             log.info("Updated attributes for file $fileId in vector store $vectorStoreId")
             result
@@ -647,8 +714,9 @@ open class VectorStoreService(
                     ?: throw VectorStoreNotFoundException("Vector store not found: $vectorStoreId")
 
             // Get the file from repository
-            vectorStoreRepository.findVectorStoreFileById(vectorStoreId, fileId)
-                ?: throw VectorStoreFileNotFoundException("File not found in vector store: $fileId")
+            val file =
+                vectorStoreRepository.findVectorStoreFileById(vectorStoreId, fileId)
+                    ?: throw VectorStoreFileNotFoundException("File not found in vector store: $fileId")
 
             // Delete the file from the repository
             val deleted = vectorStoreRepository.deleteVectorStoreFile(vectorStoreId, fileId)
@@ -669,8 +737,10 @@ open class VectorStoreService(
                 }
             }
 
-            // Update vector store counts 
-            updateVectorStoreFileCounts(vectorStoreId)
+            // Update vector store counts
+            if (deleted) {
+                recordFileChange(vectorStoreId, file, null)
+            }
 
             VectorStoreFileDeleteResponse(id = fileId, deleted = deleted)
         }
@@ -718,42 +788,31 @@ open class VectorStoreService(
                     throw AccessDeniedException("Access denied to vector store: $vectorStoreId")
                 }
 
-                // Get all files in the vector store
-                val files = vectorStoreRepository.listVectorStoreFiles(vectorStoreId, Int.MAX_VALUE)
-
-                // Filter out files that are not in completed state
-                val existingFiles = files.filter { it.status == "completed" }
-
-                // Prepare list of file IDs to search
-                val fileIds = existingFiles.map { it.id }
-                if (fileIds.isEmpty()) {
-                    // Return empty results if there are no files
-                    telemetryService.stopSearchOperation(
-                        observation,
-                        resultsCount = 0,
-                        success = true,
-                    )
-                    sample.stop(timer)
-                    return@withContext VectorStoreSearchResults(
-                        searchQuery = request.query,
-                        data = emptyList(),
-                    )
-                }
+                // Chunks of files still being indexed, or whose indexing failed, must not be found
+                val unsearchableFileIds = listUnsearchableFileIds(vectorStoreId)
 
                 // Process the search request
                 try {
-                    // Create a fileIds filter
-                    val fileIdsFilter =
+                    // Scope the search to this store: a file attached to several stores has a copy in each,
+                    // carrying that store's attributes, and providers can go straight to the store's own data
+                    val scopeFilter =
                         ai.masaic.openresponses.api.model.CompoundFilter(
-                            type = "or",
+                            type = "and",
                             filters =
-                                fileIds.map { fileId ->
+                                listOf(
                                     ai.masaic.openresponses.api.model.ComparisonFilter(
-                                        key = "file_id",
+                                        key = "vector_store_id",
                                         type = "eq",
-                                        value = fileId,
-                                    )
-                                },
+                                        value = vectorStoreId,
+                                    ),
+                                ) +
+                                    unsearchableFileIds.map { fileId ->
+                                        ai.masaic.openresponses.api.model.ComparisonFilter(
+                                            key = "file_id",
+                                            type = "ne",
+                                            value = fileId,
+                                        )
+                                    },
                         )
 
                     // Log user filter for debugging
@@ -765,27 +824,31 @@ open class VectorStoreService(
                     val filterObject =
                         when {
                             request.filters != null -> {
-                                // Combine fileIds filter with user filter using AND
+                                // Combine the store scope with user filter using AND
                                 val combinedFilter =
                                     ai.masaic.openresponses.api.model.CompoundFilter(
                                         type = "and",
-                                        filters = listOf(fileIdsFilter, request.filters),
+                                        filters = listOf(scopeFilter, request.filters),
                                     )
                                 log.debug("Combined filter with AND: $combinedFilter")
                                 combinedFilter
                             }
-                            else -> fileIdsFilter
+                            else -> scopeFilter
                         }
 
                     // Execute search with structured filters (new approach)
                     val searchResults = searchSimilar(vectorStoreId, filterObject, request)
 
-                    // Update the vector store's last active timestamp
-                    val updatedVectorStore = vectorStore.copy(lastActiveAt = Instant.now().epochSecond)
-                    vectorStoreRepository.saveVectorStore(updatedVectorStore)
+                    // Record the activity; the last active timestamp is written behind
+                    activityTracker.touch(vectorStoreId)
 
-                    // Convert search results to VectorStoreSearchResult objects
-                    val results = mapSearchResultsToVectorStoreSearchResults(searchResults, existingFiles)
+                    // Convert search results to VectorStoreSearchResult objects, reading only the files found
+                    val foundFiles =
+                        searchResults
+                            .map { it.fileId }
+                            .distinct()
+                            .mapNotNull { vectorStoreRepository.findVectorStoreFileById(vectorStoreId, it) }
+                    val results = mapSearchResultsToVectorStoreSearchResults(searchResults, foundFiles)
 
                     // Record search telemetry
                     telemetryService.stopSearchOperation(
@@ -822,6 +885,21 @@ open class VectorStoreService(
         filter = filter,
     )
 
+    /**
+     * Lists the files of a vector store that are not completed, page by page through the status filter.
+     */
+    private suspend fun listUnsearchableFileIds(vectorStoreId: String): List<String> =
+        UNSEARCHABLE_FILE_STATUSES.flatMap { status ->
+            val fileIds = mutableListOf<String>()
+            var after: String? = null
+            do {
+                val page = vectorStoreRepository.listVectorStoreFiles(vectorStoreId, RECOUNT_PAGE_SIZE, "asc", after, filter = status)
+                page.mapTo(fileIds) { it.id }
+                after = page.lastOrNull()?.id
+            } while (page.size >= RECOUNT_PAGE_SIZE)
+            fileIds
+        }
+
     /**
      * Gets the content of a vector store file.
      *
@@ -857,14 +935,13 @@ open class VectorStoreService(
                 // Remove the file from the vector store since it no longer exists
                 vectorStoreRepository.deleteVectorStoreFile(vectorStoreId, fileId)
                 vectorStoreFileManager.deleteFileFromVectorSearch(fileId)
-                updateVectorStoreFileCounts(vectorStoreId)
+                recordFileChange(vectorStoreId, file, null)
 
                 throw FileNotFoundException("File $fileId referenced in vector store $vectorStoreId no longer exists in storage")
             }
 
-            // Update the vector store's last active timestamp
-            val updatedVectorStore = vectorStore.copy(lastActiveAt = Instant.now().epochSecond)
-            vectorStoreRepository.saveVectorStore(updatedVectorStore)
+            // Record the activity; the last active timestamp is written behind
+            activityTracker.touch(vectorStoreId)
 
             // Get filename from file attributes or fall back to file metadata
             val filename =
@@ -925,10 +1002,8 @@ open class VectorStoreService(
                         }
                     }
 
-                    // Update vector store counts if files were removed
-                    if (missingFiles.isNotEmpty()) {
-                        updateVectorStoreFileCounts(vectorStore.id)
-                    }
+                    // Recount the files, which also repairs counts that drifted
+                    recountVectorStoreFiles(vectorStore.id)
                 }
 
                 log.info("Vector store cleanup completed: removed $removedFilesCount file references")
@@ -958,8 +1033,7 @@ open class VectorStoreService(
                     if (vectorStore.isExpired() && vectorStore.status != "expired") {
                         try {
                             // Update the vector store status to expired
-                            val updatedVectorStore = vectorStore.copy(status = "expired")
-                            vectorStoreRepository.saveVectorStore(updatedVectorStore)
+                            vectorStoreRepository.updateVectorStoreStatus(vectorStore.id, "expired")
                             cleanedUpCount++
                             log.info("Marked vector store ${vectorStore.id} as expired")
                         } catch (e: Exception) {
@@ -977,46 +1051,103 @@ open class VectorStoreService(
         }
 
     /**
-     * Processes a file in the background.
-     * This method indexes the file in the vector search provider.
+     * Queues a file for indexing in the background.
+     *
+     * If the queue stays full, the file is marked as failed and [IngestionQueueFullException] is
+     * rethrown so the caller can retry later.
+     *
+     * @param tenant Owner of the vector store, used to share the indexing workers fairly; defaults to the vector store
      */
     suspend fun processFile(
         vectorStoreId: String,
         file: VectorStoreFile,
         modelSettings: ModelSettings?,
+        tenant: String? = null,
     ) {
-        backgroundScope.launch {
-            try {
-                // Get the vector store
-                val vectorStore =
-                    vectorStoreRepository.findVectorStoreById(vectorStoreId)
-                        ?: throw VectorStoreNotFoundException("Vector store not found: $vectorStoreId")
-
-                // Check if the file still exists in storage
-                if (!vectorStoreFileManager.fileExists(file.id)) {
-                    // Remove the file from the vector store since it no longer exists
-                    vectorStoreRepository.deleteVectorStoreFile(vectorStoreId, file.id)
-                    updateVectorStoreFileCounts(vectorStoreId)
+        try {
+            ingestionQueue.submit(
+                key = progressKey(vectorStoreId, file.id),
+                tenant = tenant ?: vectorStoreId,
+                sizeBytes = file.usageBytes,
+            ) { indexQueuedFile(vectorStoreId, file, modelSettings) }
+        } catch (e: IngestionQueueFullException) {
+            val failedFile = vectorStoreRepository.saveVectorStoreFile(file.copy(status = "failed", lastError = e.message))
+            recordFileChange(vectorStoreId, file, failedFile)
+            throw e
+        }
+    }
 
-                    log.error("File ${file.id} no longer exists in storage")
-                    return@launch
+    /**
+     * Queues the files left in_progress by a previous run, such as after a crash or restart.
+     * Their model settings were not persisted, so they are indexed with the default embedding model.
+     */
+    @EventListener(ApplicationReadyEvent::class)
+    fun resumeInterruptedIndexing() {
+        if (!resumeOnStartup) return
+        runBlocking(Dispatchers.IO) {
+            val interrupted = vectorStoreRepository.findVectorStoreFilesByStatus("in_progress")
+            if (interrupted.isEmpty()) return@runBlocking
+            log.info("Resuming indexing of ${interrupted.size} vector store files left in progress")
+
+            val tenants = mutableMapOf<String, String?>()
+            interrupted.forEach { file ->
+                try {
+                    val tenant =
+                        tenants.getOrPut(file.vectorStoreId) {
+                            vectorStoreRepository.findVectorStoreById(file.vectorStoreId)?.accessControl
+                        }
+                    processFile(file.vectorStoreId, file, modelSettings = null, tenant = tenant)
+                } catch (e: Exception) {
+                    log.error("Could not resume indexing of file ${file.id} in vector store ${file.vectorStoreId}", e)
                 }
+            }
+        }
+    }
 
-                // Get file metadata
-                val fileMetadata = vectorStoreFileManager.getFileMetadata(file.id)
-                val filename = fileMetadata["filename"] as String
+    /**
+     * Indexes a file taken from the ingestion queue in the vector search provider.
+     */
+    private suspend fun indexQueuedFile(
+        vectorStoreId: String,
+        file: VectorStoreFile,
+        modelSettings: ModelSettings?,
+    ) {
+        try {
+            // Get the vector store
+            val vectorStore =
+                vectorStoreRepository.findVectorStoreById(vectorStoreId)
+                    ?: throw VectorStoreNotFoundException("Vector store not found: $vectorStoreId")
 
-                // Index the file in the vector search provider
-                log.info("Indexing file ${file.id} in vector store ${file.vectorStoreId}")
-                try {
-                    val resource = vectorStoreFileManager.getFileAsResource(file.id)
-                    val effectiveChunkingStrategy = file.chunkingStrategy // Use the file's chunking strategy
+            // Check if the file still exists in storage
+            if (!vectorStoreFileManager.fileExists(file.id)) {
+                // Remove the file from the vector store since it no longer exists
+                vectorStoreRepository.deleteVectorStoreFile(vectorStoreId, file.id)
+                recordFileChange(vectorStoreId, file, null)
+
+                log.error("File ${file.id} no longer exists in storage")
+                return
+            }
+
+            // Get file metadata
+            val fileMetadata = vectorStoreFileManager.getFileMetadata(file.id)
+            val filename = fileMetadata["filename"] as String
 
-                    // Check if this is a re-index (existing file being processed again)
-                    val isReindex = vectorSearchProvider.getFileMetadata(file.id) != null
+            // Apply store-level settings such as quantization before indexing
+            vectorSearchProvider.configureVectorStore(vectorStoreId, vectorStore.metadata)
 
-                    // Process with a single indexing operation that includes attributes
-                    val success =
+            // Index the file in the vector search provider
+            log.info("Indexing file ${file.id} in vector store ${file.vectorStoreId}")
+            var finalFile: VectorStoreFile? = null
+            try {
+                val resource = vectorStoreFileManager.getFileAsResource(file.id)
+                val effectiveChunkingStrategy = file.chunkingStrategy // Use the file's chunking strategy
+
+                // Check if this is a re-index (existing file being processed again)
+                val isReindex = vectorSearchProvider.getFileMetadata(file.id) != null
+
+                // Process with a single indexing operation that includes attributes
+                val success =
+                    withContext(progressListener(vectorStoreId, file.id)) {
                         indexFile(
                             fileId = file.id,
                             content = resource.inputStream,
@@ -1026,30 +1157,31 @@ open class VectorStoreService(
                             vectorStoreId = vectorStoreId,
                             modelSettings = modelSettings,
                         )
-
-                    if (success) {
-                        // Update the file status
-                        val updatedFile = file.copy(status = "completed")
-                        vectorStoreRepository.saveVectorStoreFile(updatedFile)
-                        log.info("Indexed file ${file.id} in vector store ${file.vectorStoreId}")
-                    } else {
-                        // Update the file status to failed
-                        val updatedFile = file.copy(status = "failed")
-                        vectorStoreRepository.saveVectorStoreFile(updatedFile)
-                        log.error("Failed to index file ${file.id} in vector store ${file.vectorStoreId}")
                     }
-                } catch (e: Exception) {
+
+                if (success) {
+                    // Update the file status, keeping the final chunk counts
+                    val updatedFile = file.copy(status = "completed", indexingProgress = indexingProgress[progressKey(vectorStoreId, file.id)])
+                    finalFile = vectorStoreRepository.saveVectorStoreFile(updatedFile)
+                    log.info("Indexed file ${file.id} in vector store ${file.vectorStoreId}")
+                } else {
                     // Update the file status to failed
                     val updatedFile = file.copy(status = "failed")
-                    vectorStoreRepository.saveVectorStoreFile(updatedFile)
-                    log.error("Error indexing file ${file.id} in vector store ${file.vectorStoreId}", e)
-                } finally {
-                    // Update vector store file counts
-                    updateVectorStoreFileCounts(vectorStoreId)
+                    finalFile = vectorStoreRepository.saveVectorStoreFile(updatedFile)
+                    log.error("Failed to index file ${file.id} in vector store ${file.vectorStoreId}")
                 }
             } catch (e: Exception) {
-                log.error("Error processing file ${file.id}", e)
+                // Update the file status to failed
+                val updatedFile = file.copy(status = "failed")
+                finalFile = vectorStoreRepository.saveVectorStoreFile(updatedFile)
+                log.error("Error indexing file ${file.id} in vector store ${file.vectorStoreId}", e)
+            } finally {
+                indexingProgress.remove(progressKey(vectorStoreId, file.id))
+                // Update vector store file counts
+                finalFile?.let { recordFileChange(vectorStoreId, file, it) }
             }
+        } catch (e: Exception) {
+            log.error("Error processing file ${file.id}", e)
         }
     }
 
@@ -1121,4 +1253,15 @@ open class VectorStoreService(
     private suspend fun getAccessControl(accessControlStr: String?) = accessControlStr?.let { AccessManager.fromString(accessControlStr) }
 
     private suspend fun canRead(accessControlStr: String?) = AccessManager.isAccessPermitted(getAccessControl(accessControlStr)).read
+
+    companion object {
+        // Largest page the repository returns
+        private const val MAX_PAGE_SIZE = 100
+
+        // Page size when walking a store's files, the largest the repository returns
+        private const val RECOUNT_PAGE_SIZE = MAX_PAGE_SIZE
+
+        // File statuses whose chunks are kept out of search results
+        private val UNSEARCHABLE_FILE_STATUSES = listOf("in_progress", "failed", "cancelled")
+    }
 }
@@ -10,7 +10,10 @@ import ai.masaic.openresponses.api.support.service.TelemetryService
 import ai.masaic.openresponses.api.user.AccessControl
 import ai.masaic.openresponses.api.user.AccessManager
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.flow.take
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.withContext
 import org.slf4j.LoggerFactory
@@ -80,6 +83,9 @@ class FileService(
     /**
      * Lists all files, with optional filtering.
      *
+     * When the storage keeps its files sorted ([SortedFileListing]), only the files of the page
+     * are read; otherwise every file is loaded, sorted and paged in memory.
+     *
      * @param purpose Optional purpose to filter by
      * @param limit Maximum number of files to return
      * @param order Sort order (asc or desc)
@@ -93,6 +99,18 @@ class FileService(
         after: String? = null,
     ): FileListResponse =
         withContext(Dispatchers.IO) {
+            (fileStorageService as? SortedFileListing)?.let { listing ->
+                if (limit <= 0) return@withContext FileListResponse(data = emptyList())
+                val files =
+                    listing
+                        .listFileIds(purpose, if (order.equals("asc", ignoreCase = true)) "asc" else "desc", after)
+                        .mapNotNull { storedFile(it) }
+                        .filter { AccessManager.isAccessPermitted(it.accessControl).delete }
+                        .take(limit)
+                        .toList()
+                return@withContext FileListResponse(data = files)
+            }
+
             // Get all files
             val allFiles =
                 if (purpose != null) {
@@ -223,19 +241,26 @@ class FileService(
     /**
      * Converts a Path to a File object.
      */
-    private suspend fun pathToFile(path: Path): File =
+    private suspend fun pathToFile(path: Path): File {
+        val fileId = path.fileName.toString()
+        return storedFile(fileId) ?: File(
+            id = fileId,
+            bytes = 0,
+            filename = "",
+            purpose = "",
+            createdAt = Instant.now().epochSecond,
+        )
+    }
+
+    /**
+     * Reads a file from its storage metadata, or null when there is none.
+     */
+    private suspend fun storedFile(fileId: String): File? =
         withContext(Dispatchers.IO) {
-            val fileId = path.fileName.toString()
             val metadata = fileStorageService.getFileMetadata(fileId)
 
             if (metadata.isEmpty()) {
-                return@withContext File(
-                    id = fileId,
-                    bytes = 0,
-                    filename = "",
-                    purpose = "",
-                    createdAt = Instant.now().epochSecond,
-                )
+                return@withContext null
             }
             File(
                 id = fileId,
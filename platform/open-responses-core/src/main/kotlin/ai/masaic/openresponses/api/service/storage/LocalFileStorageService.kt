@@ -4,6 +4,7 @@ import ai.masaic.openresponses.api.config.FileStorageProperties
 import ai.masaic.openresponses.api.user.AccessControl
 import ai.masaic.openresponses.api.user.AccessManager
 import ai.masaic.openresponses.api.utils.IdGenerator
+import ai.masaic.openresponses.api.utils.SortedManifest
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.module.kotlin.readValue
 import kotlinx.coroutines.Dispatchers
@@ -36,12 +37,16 @@ import kotlin.streams.asSequence
 
 /**
  * Implementation of FileStorageService that stores files in the local filesystem.
+ *
+ * Stored files are indexed by creation time in a [SortedManifest], tagged with their purpose, so
+ * files can be listed a page at a time.
  */
 @Service
 class LocalFileStorageService(
     fileStorageProperties: FileStorageProperties,
     private val objectMapper: ObjectMapper,
-) : FileStorageService {
+) : FileStorageService,
+    SortedFileListing {
     private val log = LoggerFactory.getLogger(LocalFileStorageService::class.java)
     private val rootLocation: Path = Paths.get(fileStorageProperties.getRootDirectory())
     private val postProcessHooks = mutableListOf<suspend (String, String) -> Unit>()
@@ -65,6 +70,38 @@ class LocalFileStorageService(
         }
     }
 
+    private val manifest by lazy {
+        SortedManifest(rootLocation.resolve("manifests").resolve("files.jsonl"), objectMapper) {
+            Files
+                .walk(rootLocation, 2)
+                .filter { path -> Files.isRegularFile(path) && !Files.isHidden(path) && path.fileName.name.startsWith("open-responses-file") }
+                .filter { !it.name.endsWith(".metadata") }
+                .asSequence()
+                .map { manifestEntry(it) }
+                .toList()
+        }
+    }
+
+    private fun manifestEntry(path: Path): SortedManifest.Entry {
+        val attrs = Files.readAttributes(path, BasicFileAttributes::class.java)
+        return SortedManifest.Entry(path.fileName.name, attrs.creationTime().toInstant().epochSecond, path.parent.fileName.name)
+    }
+
+    override fun listFileIds(
+        purpose: String?,
+        order: String,
+        after: String?,
+    ): Flow<String> =
+        flow {
+            var cursor = after
+            while (true) {
+                val page = manifest.page(LIST_PAGE_SIZE, order, after = cursor) { purpose == null || it.tag == purpose }
+                page.forEach { emit(it.id) }
+                if (page.size < LIST_PAGE_SIZE) break
+                cursor = page.last().id
+            }
+        }.flowOn(Dispatchers.IO)
+
     override fun loadAll(): Flow<Path> =
         flow {
             try {
@@ -131,7 +168,7 @@ class LocalFileStorageService(
         withContext(Dispatchers.IO) {
             try {
                 val filePath = load(fileId)
-                Files.deleteIfExists(filePath)
+                Files.deleteIfExists(filePath).also { manifest.remove(fileId) }
             } catch (e: IOException) {
                 log.error("Error deleting file $fileId", e)
                 false
@@ -309,6 +346,7 @@ class LocalFileStorageService(
                 }
                 
                 log.info("File $fileId stored successfully in purpose directory $purpose")
+                manifest.put(manifestEntry(filePath))
 
                 // Store the original filename in metadata file asynchronously
                 // This is done in a separate coroutine to not block the main file upload
@@ -353,6 +391,11 @@ class LocalFileStorageService(
                 throw FileStorageException("Failed to store file part", e)
             }
         }
+
+    companion object {
+        // Manifest entries read per step of a listing
+        private const val LIST_PAGE_SIZE = 100
+    }
 }
 
 class FileStorageException : IOException {
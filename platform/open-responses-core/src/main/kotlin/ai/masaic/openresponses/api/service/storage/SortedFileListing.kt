@@ -0,0 +1,23 @@
+package ai.masaic.openresponses.api.service.storage
+
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Optional capability of a [FileStorageService] that keeps its files indexed by creation time, so a
+ * page of files can be listed without loading every file.
+ */
+interface SortedFileListing {
+    /**
+     * Lists file IDs in creation order, reading the index lazily as the flow is collected.
+     *
+     * @param purpose Optional purpose to filter by
+     * @param order Sort order (asc or desc)
+     * @param after Return files after this ID; an unknown ID returns nothing
+     * @return A flow of file IDs
+     */
+    fun listFileIds(
+        purpose: String?,
+        order: String,
+        after: String?,
+    ): Flow<String>
+}
@@ -426,10 +426,10 @@ open class TelemetryService(
         summary.record(tokenCount.toDouble())
     }
 
-    fun <T> withTimer(
+    suspend fun <T> withTimer(
         params: ResponseCreateParams,
         metadata: InstrumentationMetadataInput,
-        block: () -> T,
+        block: suspend () -> T,
     ): T {
         val timerBuilder =
             Timer
@@ -815,10 +815,10 @@ open class TelemetryService(
     /**
      * Creates a timer for chat completion operations.
      */
-    fun <T> withChatCompletionTimer(
+    suspend fun <T> withChatCompletionTimer(
         params: ChatCompletionCreateParams,
         metadata: InstrumentationMetadataInput,
-        block: () -> T,
+        block: suspend () -> T,
     ): T {
         val timerBuilder =
             Timer
@@ -0,0 +1,151 @@
+package ai.masaic.openresponses.api.utils
+
+import ai.masaic.openresponses.api.model.ComparisonFilter
+import ai.masaic.openresponses.api.model.CompoundFilter
+import ai.masaic.openresponses.api.model.Filter
+
+/**
+ * A [Filter] resolved once into a tree of typed nodes, so evaluating it against many
+ * chunks does no string comparisons on operator names and no per-node logging.
+ *
+ * Semantics follow [FilterUtils.matchesFilter]: a comparison on a missing attribute is false,
+ * `file_id` is compared against the file ID when one is given, and `and`/`or` short-circuit.
+ * In addition, `in` and `nin` take a list value as they do in [FilterUtils.buildCriteriaFromFilter].
+ */
+sealed interface CompiledFilter {
+    /**
+     * Evaluates the filter against an entity's attributes.
+     *
+     * @param attributes Map of attributes to check against the filter
+     * @param fileId Optional file ID for file_id-specific filters
+     */
+    fun matches(
+        attributes: Map<String, Any>,
+        fileId: String? = null,
+    ): Boolean
+
+    enum class Operator {
+        EQ,
+        NE,
+        GT,
+        GTE,
+        LT,
+        LTE,
+        IN,
+        NIN,
+    }
+
+    /**
+     * A single attribute comparison. For [Operator.IN] and [Operator.NIN] the value is a [Set].
+     */
+    data class Comparison(
+        val key: String,
+        val operator: Operator,
+        val value: Any,
+    ) : CompiledFilter {
+        override fun matches(
+            attributes: Map<String, Any>,
+            fileId: String?,
+        ): Boolean {
+            val attributeValue = if (key == FILE_ID && fileId != null) fileId else attributes[key] ?: return false
+            return when (operator) {
+                Operator.EQ -> attributeValue == value
+                Operator.NE -> attributeValue != value
+                Operator.GT -> compareValues(attributeValue, value) > 0
+                Operator.GTE -> compareValues(attributeValue, value) >= 0
+                Operator.LT -> compareValues(attributeValue, value) < 0
+                Operator.LTE -> compareValues(attributeValue, value) <= 0
+                Operator.IN -> attributeValue in (value as Set<*>)
+                Operator.NIN -> attributeValue !in (value as Set<*>)
+            }
+        }
+    }
+
+    data class And(
+        val filters: List<CompiledFilter>,
+    ) : CompiledFilter {
+        override fun matches(
+            attributes: Map<String, Any>,
+            fileId: String?,
+        ): Boolean = filters.all { it.matches(attributes, fileId) }
+    }
+
+    data class Or(
+        val filters: List<CompiledFilter>,
+    ) : CompiledFilter {
+        override fun matches(
+            attributes: Map<String, Any>,
+            fileId: String?,
+        ): Boolean = filters.any { it.matches(attributes, fileId) }
+    }
+
+    /**
+     * A filter nothing matches, such as one with an unknown operator.
+     */
+    data object Never : CompiledFilter {
+        override fun matches(
+            attributes: Map<String, Any>,
+            fileId: String?,
+        ): Boolean = false
+    }
+
+    companion object {
+        const val FILE_ID = "file_id"
+
+        /**
+         * Compiles a filter.
+         *
+         * @return The compiled filter, or null if the filter is null
+         * @throws IllegalArgumentException if an `in` or `nin` filter does not have a list value
+         */
+        fun compile(filter: Filter?): CompiledFilter? = filter?.let { compileNode(it) }
+
+        private fun compileNode(filter: Filter): CompiledFilter =
+            when (filter) {
+                is ComparisonFilter -> {
+                    when (val type = filter.type.lowercase()) {
+                        "in", "nin" -> {
+                            val values =
+                                filter.value as? List<*>
+                                    ?: throw IllegalArgumentException("Invalid '$type' filter value. Expected List but got: ${filter.value}")
+                            Comparison(filter.key, if (type == "in") Operator.IN else Operator.NIN, values.filterNotNull().toHashSet())
+                        }
+                        else -> operator(type)?.let { Comparison(filter.key, it, filter.value) } ?: Never
+                    }
+                }
+                is CompoundFilter ->
+                    when (filter.type.lowercase()) {
+                        "and" -> And(filter.filters.map { compileNode(it) })
+                        "or" -> Or(filter.filters.map { compileNode(it) })
+                        else -> Never
+                    }
+                else -> Never
+            }
+
+        private fun operator(type: String): Operator? =
+            when (type) {
+                "eq" -> Operator.EQ
+                "ne" -> Operator.NE
+                "gt" -> Operator.GT
+                "gte" -> Operator.GTE
+                "lt" -> Operator.LT
+                "lte" -> Operator.LTE
+                else -> null
+            }
+
+        /**
+         * Compares two values, handling different types appropriately.
+         * Returns a negative number if v1 < v2, zero if v1 = v2, positive if v1 > v2.
+         */
+        private fun compareValues(
+            v1: Any,
+            v2: Any,
+        ): Int =
+            when {
+                v1 is Number && v2 is Number -> v1.toDouble().compareTo(v2.toDouble())
+                v1 is String && v2 is String -> v1.compareTo(v2)
+                v1 is Boolean && v2 is Boolean -> v1.compareTo(v2)
+                else -> throw IllegalArgumentException("Cannot compare ${v1.javaClass} with ${v2.javaClass}")
+            }
+    }
+}
@@ -0,0 +1,99 @@
+package ai.masaic.openresponses.api.utils
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder
+import com.openai.models.responses.ResponseFunctionCallArgumentsDeltaEvent
+import com.openai.models.responses.ResponseStreamEvent
+import com.openai.models.responses.ResponseTextDeltaEvent
+import org.springframework.http.codec.ServerSentEvent
+
+/**
+ * Writes the server-sent events of text and function-argument deltas, by far the most frequent
+ * stream events, in one pass.
+ *
+ * The JSON around the variable fields is precomputed and only the delta and item ID are escaped,
+ * into a per-thread builder, instead of converting the event to a JSON tree and serializing the
+ * tree. The payload is the same JSON as [EventUtils.convertEvent] writes through [PayloadFormatter],
+ * which has nothing to rewrite in a delta. Deltas carrying additional properties are left to it.
+ */
+object DeltaEventSerializer {
+    private const val TEXT_DELTA_TYPE = "response.output_text.delta"
+    private const val ARGUMENTS_DELTA_TYPE = "response.function_call_arguments.delta"
+
+    private const val TEXT_DELTA_EVENT = " $TEXT_DELTA_TYPE"
+    private const val ARGUMENTS_DELTA_EVENT = " $ARGUMENTS_DELTA_TYPE"
+
+    private const val TEXT_DELTA_PREFIX = " {\"content_index\":"
+    private const val ARGUMENTS_DELTA_PREFIX = " {\"delta\":\""
+    private const val DELTA_FIELD = ",\"delta\":\""
+    private const val ITEM_ID_FIELD = "\",\"item_id\":\""
+    private const val OUTPUT_INDEX_FIELD = "\",\"output_index\":"
+    private const val SEQUENCE_NUMBER_FIELD = ",\"sequence_number\":"
+    private const val TEXT_DELTA_SUFFIX = ",\"type\":\"$TEXT_DELTA_TYPE\"}"
+    private const val ARGUMENTS_DELTA_SUFFIX = ",\"type\":\"$ARGUMENTS_DELTA_TYPE\"}"
+
+    // Builders grow to the largest delta written on their thread and are reused after that
+    private const val INITIAL_CAPACITY = 512
+    private const val MAX_RETAINED_CAPACITY = 64 * 1024
+
+    private val encoder = JsonStringEncoder.getInstance()
+    private val builders = ThreadLocal.withInitial { StringBuilder(INITIAL_CAPACITY) }
+
+    /**
+     * Returns the server-sent event of a delta, or null if [event] is not one this writes.
+     */
+    fun serialize(event: ResponseStreamEvent): ServerSentEvent<String>? =
+        when {
+            event.isOutputTextDelta() -> textDelta(event.asOutputTextDelta())
+            event.isFunctionCallArgumentsDelta() -> argumentsDelta(event.asFunctionCallArgumentsDelta())
+            else -> null
+        }
+
+    private fun textDelta(delta: ResponseTextDeltaEvent): ServerSentEvent<String>? {
+        if (delta._additionalProperties().isNotEmpty()) return null
+        val data =
+            write {
+                append(TEXT_DELTA_PREFIX).append(delta.contentIndex())
+                append(DELTA_FIELD)
+                encoder.quoteAsString(delta.delta(), this)
+                append(ITEM_ID_FIELD)
+                encoder.quoteAsString(delta.itemId(), this)
+                append(OUTPUT_INDEX_FIELD).append(delta.outputIndex())
+                append(SEQUENCE_NUMBER_FIELD).append(delta.sequenceNumber())
+                append(TEXT_DELTA_SUFFIX)
+            }
+        return ServerSentEvent
+            .builder(data)
+            .event(TEXT_DELTA_EVENT)
+            .build()
+    }
+
+    private fun argumentsDelta(delta: ResponseFunctionCallArgumentsDeltaEvent): ServerSentEvent<String>? {
+        if (delta._additionalProperties().isNotEmpty()) return null
+        val data =
+            write {
+                append(ARGUMENTS_DELTA_PREFIX)
+                encoder.quoteAsString(delta.delta(), this)
+                append(ITEM_ID_FIELD)
+                encoder.quoteAsString(delta.itemId(), this)
+                append(OUTPUT_INDEX_FIELD).append(delta.outputIndex())
+                append(SEQUENCE_NUMBER_FIELD).append(delta.sequenceNumber())
+                append(ARGUMENTS_DELTA_SUFFIX)
+            }
+        return ServerSentEvent
+            .builder(data)
+            .event(ARGUMENTS_DELTA_EVENT)
+            .build()
+    }
+
+    private inline fun write(block: StringBuilder.() -> Unit): String {
+        var builder = builders.get()
+        if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+            // Don't hold on to the buffer of an unusually large delta
+            builder = StringBuilder(INITIAL_CAPACITY)
+            builders.set(builder)
+        }
+        builder.setLength(0)
+        builder.block()
+        return builder.toString()
+    }
+}
@@ -1,9 +1,21 @@
 package ai.masaic.openresponses.api.utils
 
+import ai.masaic.openresponses.api.model.ChunkingStrategy
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.trySendBlocking
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.runInterruptible
 import org.apache.tika.Tika
 import org.apache.tika.metadata.Metadata
 import org.apache.tika.metadata.TikaCoreProperties
+import org.apache.tika.parser.AutoDetectParser
+import org.apache.tika.parser.ParseContext
+import org.apache.tika.parser.Parser
+import org.apache.tika.sax.BodyContentHandler
 import org.slf4j.LoggerFactory
+import org.xml.sax.helpers.DefaultHandler
 import java.io.InputStream
 
 /**
@@ -16,6 +28,10 @@ class DocumentTextExtractor {
     companion object {
         private val log = LoggerFactory.getLogger(DocumentTextExtractor::class.java)
         private val tika = Tika()
+        private val parser = AutoDetectParser()
+
+        /** Chunks parsed ahead of the collector before parsing pauses. */
+        const val DEFAULT_CHUNK_BUFFER = 64
 
         /**
          * Extracts text content from an input stream.
@@ -56,6 +72,75 @@ class DocumentTextExtractor {
             return cleanText(text)
         }
 
+        /**
+         * Streams a document as cleaned chunks while it is being parsed.
+         *
+         * Tika's SAX events feed a [StreamingTextChunker] directly, or a [TokenAwareChunker] for the
+         * token-aware chunking strategies, so the document text is never
+         * held as one string and is not subject to Tika's string length limit. Parsing runs on the
+         * IO dispatcher and pauses once [bufferedChunks] chunks are waiting for the collector, so a
+         * slow consumer such as an embedding call bounds the memory used. The chunks equal those of
+         * [TextChunkingUtil.chunkText] applied to [extractAndCleanText], or to the extracted text for
+         * token-aware strategies, whose paragraph and heading boundaries need its line breaks.
+         *
+         * Parse errors are thrown to the collector.
+         *
+         * @param inputStream The input stream of the document
+         * @param filename The name of the file, used for type detection
+         * @param chunkingStrategy Optional chunking strategy for chunk size and overlap
+         * @param chunkingDefaults Sizes used when the strategy sets none, and the token counter
+         * @param bufferedChunks Number of chunks parsed ahead of the collector
+         */
+        fun extractChunks(
+            inputStream: InputStream,
+            filename: String,
+            chunkingStrategy: ChunkingStrategy?,
+            chunkingDefaults: ChunkingDefaults = ChunkingDefaults(),
+            bufferedChunks: Int = DEFAULT_CHUNK_BUFFER,
+        ): Flow<TextChunk> =
+            channelFlow {
+                val (chunkSize, chunkOverlap, chunkingMethod) = TextChunkingUtil.chunkingParameters(chunkingStrategy, chunkingDefaults)
+                val emit: (TextChunk) -> Unit = { trySendBlocking(it).getOrThrow() }
+                val chunker =
+                    ChunkingMethod.from(chunkingMethod)?.let { method ->
+                        TokenAwareChunker(method, chunkSize, chunkOverlap, chunkingDefaults.tokenCounter, emit = emit).let { TextSink(it::append, it::finish) }
+                    } ?: StreamingTextChunker(chunkSize, chunkOverlap, emit).let { TextSink(it::append, it::finish) }
+                val handler =
+                    object : DefaultHandler() {
+                        override fun characters(
+                            ch: CharArray,
+                            start: Int,
+                            length: Int,
+                        ) = chunker.append(ch, start, length)
+
+                        override fun ignorableWhitespace(
+                            ch: CharArray,
+                            start: Int,
+                            length: Int,
+                        ) = chunker.append(ch, start, length)
+                    }
+                val metadata = Metadata()
+                metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, filename)
+                val context = ParseContext()
+                // Parse embedded documents too, as Tika.parseToString does
+                context.set(Parser::class.java, parser)
+
+                log.debug("Streaming text from file: {}", filename)
+                runInterruptible(Dispatchers.IO) {
+                    parser.parse(inputStream, BodyContentHandler(handler), metadata, context)
+                    val chunks = chunker.finish()
+                    log.debug("Streamed {} chunks from file: {}", chunks, filename)
+                }
+            }.buffer(bufferedChunks)
+
+        /**
+         * The chunker fed by the SAX handler.
+         */
+        private class TextSink(
+            val append: (CharArray, Int, Int) -> Unit,
+            val finish: () -> Int,
+        )
+
         /**
          * Performs basic text cleanup on extracted content.
          *
@@ -24,7 +24,8 @@ class EventUtils {
         private val logger: Logger = LoggerFactory.getLogger(EventUtils::class.java)
 
         /**
-         * Converts a ResponseStreamEvent to a ServerSentEvent.
+         * Converts a ResponseStreamEvent to a ServerSentEvent. Deltas are written directly by
+         * [DeltaEventSerializer].
          *
          * @param event The event to convert
          * @return A ServerSentEvent containing the event data
@@ -35,6 +36,8 @@ class EventUtils {
             payloadFormatter: PayloadFormatter,
             objectMapper: ObjectMapper,
         ): ServerSentEvent<String> {
+            DeltaEventSerializer.serialize(event)?.let { return it }
+
             val eventType = getEventType(event)
             val eventData = SPACE + objectMapper.writeValueAsString(payloadFormatter.formatResponseStreamEvent(event))
 
@@ -20,6 +20,7 @@ object FilterUtils {
 
     /**
      * Evaluates whether an entity with the given attributes matches a filter.
+     * Callers evaluating the same filter against many entities should [compile] it once instead.
      * 
      * @param filter The filter to evaluate
      * @param attributes Map of attributes to check against the filter
@@ -30,29 +31,15 @@ object FilterUtils {
         filter: Filter?,
         attributes: Map<String, Any>,
         fileId: String? = null,
-    ): Boolean {
-        if (filter == null) return true
-        
-        val result =
-            when (filter) {
-                is ComparisonFilter -> {
-                    val matches = evaluateComparisonFilter(filter, attributes, fileId)
-                    log.debug("Comparison filter $filter result: $matches")
-                    matches
-                }
-                is CompoundFilter -> {
-                    val matches = evaluateCompoundFilter(filter, attributes, fileId)
-                    log.debug("Compound filter $filter result: $matches")
-                    matches
-                }
-                else -> {
-                    log.warn("Unknown filter type: ${filter.javaClass.name}")
-                    false
-                }
-            }
-        
-        return result
-    }
+    ): Boolean = compile(filter)?.matches(attributes, fileId) ?: true
+
+    /**
+     * Compiles a filter for repeated evaluation.
+     *
+     * @return The compiled filter, or null if the filter is null
+     * @throws IllegalArgumentException if an `in` or `nin` filter does not have a list value
+     */
+    fun compile(filter: Filter?): CompiledFilter? = CompiledFilter.compile(filter)
 
     /**
      * Helper method to build MongoDB Criteria from Filter
@@ -110,119 +97,6 @@ object FilterUtils {
             else -> throw IllegalArgumentException("Unsupported filter type: ${filter::class.simpleName}")
         }
 
-    /**
-     * Evaluates a comparison filter against entity attributes.
-     */
-    private fun evaluateComparisonFilter(
-        filter: ComparisonFilter,
-        attributes: Map<String, Any>,
-        fileId: String?,
-    ): Boolean {
-        val key = filter.key
-        val value = filter.value
-        
-        // Special handling for file_id
-        if (key == "file_id" && fileId != null) {
-            val matches = evaluateComparison(filter.type, fileId, value)
-            log.debug("file_id filter $filter with value=$fileId, result: $matches")
-            return matches
-        }
-        
-        // Check if the attribute exists
-        if (!attributes.containsKey(key)) {
-            log.debug("Key $key not found in attributes: $attributes")
-            return false
-        }
-        
-        val attrValue = attributes[key]
-        val matches = evaluateComparison(filter.type, attrValue, value)
-        log.debug("Attribute filter $filter with attr value=$attrValue, result: $matches")
-        return matches
-    }
-
-    /**
-     * Evaluates a compound filter (AND/OR) against entity attributes.
-     */
-    private fun evaluateCompoundFilter(
-        filter: CompoundFilter,
-        attributes: Map<String, Any>,
-        fileId: String?,
-    ): Boolean {
-        val results =
-            when (filter.type.lowercase()) {
-                "and" -> {
-                    val matches =
-                        filter.filters.all { 
-                            val result = matchesFilter(it, attributes, fileId)
-                            log.debug("AND filter component $it result: $result")
-                            result
-                        }
-                    log.debug("AND filter overall result: $matches")
-                    matches
-                }
-                "or" -> {
-                    val matches =
-                        filter.filters.any { 
-                            val result = matchesFilter(it, attributes, fileId)
-                            log.debug("OR filter component $it result: $result")
-                            result
-                        }
-                    log.debug("OR filter overall result: $matches")
-                    matches
-                }
-                else -> {
-                    log.warn("Unknown compound filter type: ${filter.type}")
-                    false
-                }
-            }
-        
-        return results
-    }
-
-    /**
-     * Evaluates a comparison operation between two values.
-     */
-    private fun evaluateComparison(
-        type: String,
-        attributeValue: Any?,
-        filterValue: Any,
-    ): Boolean {
-        if (attributeValue == null) return false
-        
-        return when (type.lowercase()) {
-            "eq" -> attributeValue == filterValue
-            "ne" -> attributeValue != filterValue
-            "gt" -> compareValues(attributeValue, filterValue) > 0
-            "gte" -> compareValues(attributeValue, filterValue) >= 0
-            "lt" -> compareValues(attributeValue, filterValue) < 0
-            "lte" -> compareValues(attributeValue, filterValue) <= 0
-            else -> {
-                log.warn("Unknown comparison type: $type")
-                false
-            }
-        }
-    }
-
-    /**
-     * Compares two values, handling different types appropriately.
-     * Returns a negative number if v1 < v2, zero if v1 = v2, positive if v1 > v2.
-     */
-    @Suppress("UNCHECKED_CAST")
-    private fun compareValues(
-        v1: Any,
-        v2: Any,
-    ): Int =
-        when {
-            v1 is Number && v2 is Number -> {
-                val d1 = v1.toDouble()
-                val d2 = v2.toDouble()
-                d1.compareTo(d2)
-            }
-            v1 is String && v2 is String -> v1.compareTo(v2)
-            v1 is Boolean && v2 is Boolean -> v1.compareTo(v2)
-            else -> throw IllegalArgumentException("Cannot compare ${v1.javaClass} with ${v2.javaClass}")
-        }
-
     /**
      * Converts a Filter to a Qdrant filter for langchain4j.
      * @throws IllegalArgumentException if the filter cannot be parsed
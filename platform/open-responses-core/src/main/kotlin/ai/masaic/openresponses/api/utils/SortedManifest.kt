@@ -0,0 +1,190 @@
+package ai.masaic.openresponses.api.utils
+
+import com.fasterxml.jackson.annotation.JsonInclude
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import org.slf4j.LoggerFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.NavigableSet
+import java.util.TreeSet
+
+/**
+ * Persistent index of records sorted by creation time, for paging through records stored one per
+ * file without reading them all.
+ *
+ * Entries are kept in memory in a sorted set and persisted as an append-only log of JSON lines,
+ * one per put or remove, which is rewritten once it holds many more lines than live entries. If the
+ * log does not exist yet, it is built once from [rebuild], which scans the records themselves.
+ *
+ * Paging follows the ordering of the list endpoints: `after` returns the entries that follow the
+ * cursor in the requested order, `before` the entries that directly precede it, and an unknown
+ * cursor returns nothing.
+ *
+ * @param path The log file
+ * @param rebuild Scans the records for the entries of a missing log
+ */
+class SortedManifest(
+    private val path: Path,
+    private val objectMapper: ObjectMapper,
+    private val rebuild: () -> List<Entry>,
+) {
+    private val log = LoggerFactory.getLogger(SortedManifest::class.java)
+
+    /**
+     * A record in the manifest.
+     *
+     * @param tag A value that pages can be filtered on without reading the record, such as a status
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    data class Entry(
+        val id: String,
+        val createdAt: Long,
+        val tag: String? = null,
+        val removed: Boolean? = null,
+    )
+
+    private val entries = TreeSet(ORDER)
+    private val byId = HashMap<String, Entry>()
+    private var logLines = 0
+    private var loaded = false
+
+    /**
+     * Adds or replaces the entry with the same ID.
+     */
+    @Synchronized
+    fun put(entry: Entry) {
+        load()
+        val previous = byId.put(entry.id, entry)
+        if (previous == entry) return
+        previous?.let { entries.remove(it) }
+        entries.add(entry)
+        append(entry)
+    }
+
+    @Synchronized
+    fun remove(id: String) {
+        load()
+        val previous = byId.remove(id) ?: return
+        entries.remove(previous)
+        append(Entry(id, previous.createdAt, removed = true))
+    }
+
+    @Synchronized
+    fun size(): Int {
+        load()
+        return entries.size
+    }
+
+    /**
+     * Returns up to [limit] entries in [order] (`asc` or `desc` by creation time), starting after
+     * or before a cursor, that match [filter].
+     */
+    @Synchronized
+    fun page(
+        limit: Int,
+        order: String,
+        after: String? = null,
+        before: String? = null,
+        filter: (Entry) -> Boolean = { true },
+    ): List<Entry> {
+        load()
+        val ascending = order.equals("asc", ignoreCase = true)
+        val cursorId = after ?: before
+        val cursor = cursorId?.let { byId[it] ?: return emptyList() }
+
+        // Entries are walked away from the cursor, so a before page is read backwards and reversed
+        val backwards = after == null && before != null
+        val walk: NavigableSet<Entry> =
+            when {
+                cursor == null -> if (ascending) entries else entries.descendingSet()
+                ascending != backwards -> entries.tailSet(cursor, false)
+                else -> entries.headSet(cursor, false).descendingSet()
+            }
+
+        val page = ArrayList<Entry>(minOf(limit, walk.size))
+        for (entry in walk) {
+            if (page.size >= limit) break
+            if (filter(entry)) page.add(entry)
+        }
+        if (backwards) page.reverse()
+        return page
+    }
+
+    /**
+     * Removes the log, such as when the records it indexes were deleted.
+     */
+    @Synchronized
+    fun delete() {
+        entries.clear()
+        byId.clear()
+        logLines = 0
+        loaded = true
+        Files.deleteIfExists(path)
+    }
+
+    private fun load() {
+        if (loaded) return
+        loaded = true
+        if (Files.exists(path)) {
+            Files.newBufferedReader(path).useLines { lines ->
+                lines.forEach { line ->
+                    if (line.isBlank()) return@forEach
+                    logLines++
+                    // A line cut short by a crash is skipped; the next compaction drops it
+                    val entry = runCatching { objectMapper.readValue<Entry>(line) }.getOrNull() ?: return@forEach
+                    byId.remove(entry.id)?.let { entries.remove(it) }
+                    if (entry.removed != true) {
+                        byId[entry.id] = entry
+                        entries.add(entry)
+                    }
+                }
+            }
+            if (logLines > COMPACT_MIN_LINES && logLines > entries.size * 2) compact()
+        } else {
+            rebuild().forEach { entry ->
+                byId.put(entry.id, entry)?.let { entries.remove(it) }
+                entries.add(entry)
+            }
+            log.info("Built manifest {} with {} entries", path, entries.size)
+            compact()
+        }
+    }
+
+    private fun append(entry: Entry) {
+        Files.createDirectories(path.parent)
+        Files.write(
+            path,
+            (objectMapper.writeValueAsString(entry) + "\n").toByteArray(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND,
+        )
+        logLines++
+        if (logLines > COMPACT_MIN_LINES && logLines > entries.size * 2) compact()
+    }
+
+    /**
+     * Rewrites the log with one line per live entry, replacing the old log atomically.
+     */
+    private fun compact() {
+        Files.createDirectories(path.parent)
+        val temp = path.resolveSibling("${path.fileName}.tmp")
+        Files.newBufferedWriter(temp).use { writer ->
+            entries.forEach { entry ->
+                writer.write(objectMapper.writeValueAsString(entry))
+                writer.newLine()
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        logLines = entries.size
+    }
+
+    companion object {
+        private val ORDER = compareBy<Entry>({ it.createdAt }, { it.id })
+
+        // Small logs are not worth rewriting
+        private const val COMPACT_MIN_LINES = 1000
+    }
+}
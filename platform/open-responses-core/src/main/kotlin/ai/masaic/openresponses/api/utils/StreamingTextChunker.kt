@@ -0,0 +1,91 @@
+package ai.masaic.openresponses.api.utils
+
+/**
+ * Fixed-size chunker fed text incrementally, for documents too large to hold as one string.
+ *
+ * Text is cleaned on the way in exactly as [DocumentTextExtractor.extractAndCleanText] does:
+ * runs of whitespace collapse to one space and the document is trimmed. Chunks are cut as in
+ * [TextChunkingUtil.chunkByFixedSize]: a window of [chunkSize] characters is shortened to the
+ * last space in its final 20% (at most 100 characters), and the next window starts [chunkOverlap]
+ * characters before the cut. A window is only cut once text beyond it has arrived, so the chunks
+ * are identical to chunking the whole cleaned text, while at most one window plus the latest
+ * input is held in memory.
+ *
+ * This class is not thread-safe.
+ *
+ * @param emit Receives every chunk as soon as it is complete
+ */
+class StreamingTextChunker(
+    private val chunkSize: Int,
+    private val chunkOverlap: Int,
+    private val emit: (TextChunk) -> Unit,
+) {
+    private val window = StringBuilder(chunkSize * 2)
+    private val lookBack = minOf((chunkSize * 0.2).toInt(), 100)
+    private var chunkIndex = 0
+    private var seenText = false
+    private var pendingSpace = false
+    private var finished = false
+
+    init {
+        require(chunkSize > 0) { "chunkSize must be positive: $chunkSize" }
+        require(chunkOverlap >= 0) { "chunkOverlap must not be negative: $chunkOverlap" }
+    }
+
+    fun append(text: CharSequence) {
+        for (c in text) accept(c)
+        cutFullWindows()
+    }
+
+    fun append(
+        chars: CharArray,
+        start: Int,
+        length: Int,
+    ) {
+        for (i in start until start + length) accept(chars[i])
+        cutFullWindows()
+    }
+
+    private fun accept(c: Char) {
+        if (isWhitespace(c)) {
+            // Only materialized if more text follows, which trims the end of the document
+            pendingSpace = seenText
+            return
+        }
+        if (pendingSpace) {
+            window.append(' ')
+            pendingSpace = false
+        }
+        window.append(c)
+        seenText = true
+    }
+
+    /**
+     * Cuts every window that is known not to be the last one.
+     */
+    private fun cutFullWindows() {
+        while (window.length > chunkSize) {
+            val lastSpace = window.lastIndexOf(" ", chunkSize - 1)
+            val end = if (lastSpace >= chunkSize - lookBack) lastSpace else chunkSize
+            emit(TextChunk(window.substring(0, end), chunkIndex++))
+            // Always advance, even if the overlap would swallow the whole chunk
+            window.delete(0, maxOf(end - chunkOverlap, 1))
+        }
+    }
+
+    /**
+     * Emits the rest of the text. Returns the number of chunks emitted in total.
+     */
+    fun finish(): Int {
+        check(!finished) { "finish() was already called" }
+        finished = true
+        if (window.isNotEmpty()) emit(TextChunk(window.toString(), chunkIndex++))
+        window.setLength(0)
+        return chunkIndex
+    }
+
+    companion object {
+        /** The characters matched by `\s` in [Regex]. */
+        private fun isWhitespace(c: Char) = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\u000C' || c == '\r'
+    }
+}
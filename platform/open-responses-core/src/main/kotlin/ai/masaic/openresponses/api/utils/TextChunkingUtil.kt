@@ -10,9 +10,13 @@ import ai.masaic.openresponses.api.model.ChunkingStrategy
  * Supports multiple chunking strategies and maintains backward compatibility.
  */
 object TextChunkingUtil {
-    // Default chunking parameters
-    private const val DEFAULT_CHUNK_SIZE = 1000
-    private const val DEFAULT_CHUNK_OVERLAP = 200
+    // Default chunking parameters, in characters
+    const val DEFAULT_CHUNK_SIZE = 1000
+    const val DEFAULT_CHUNK_OVERLAP = 200
+
+    // Defaults of the token-aware strategies, about the character defaults at four characters per token
+    const val DEFAULT_MAX_TOKENS = 250
+    const val DEFAULT_OVERLAP_TOKENS = 50
 
     /**
      * Splits text into overlapping chunks (legacy method).
@@ -35,34 +39,44 @@ object TextChunkingUtil {
     /**
      * Splits text into overlapping chunks using the specified chunking strategy.
      *
+     * Without a strategy, or with `auto`, text is cut into fixed windows measured in characters.
+     * The `static`, `sentence`, `paragraph`, `semantic` and `markdown-heading` strategies measure
+     * their sizes in tokens with the defaults' token counter, see [TokenAwareChunker].
+     *
      * @param text The text to split
      * @param strategy The chunking strategy to use, or null for default strategy
+     * @param defaults Sizes used when the strategy sets none, and the token counter
      * @return List of text chunks with metadata
      */
     @JvmStatic
     fun chunkText(
         text: String,
         strategy: ChunkingStrategy?,
+        defaults: ChunkingDefaults = ChunkingDefaults(),
     ): List<TextChunk> {
-        // Extract chunking parameters from strategy or use defaults
-        val chunkSize: Int
-        val chunkOverlap: Int
-        val chunkingMethod: String
-        
-        if (strategy != null && strategy.type == "static" && strategy.static != null) {
-            chunkSize = strategy.static.maxChunkSizeTokens
-            chunkOverlap = strategy.static.chunkOverlapTokens
-            chunkingMethod = strategy.type
-        } else {
-            chunkSize = DEFAULT_CHUNK_SIZE
-            chunkOverlap = DEFAULT_CHUNK_OVERLAP
-            chunkingMethod = "fixed" // Default method
-        }
-        
-        return when (chunkingMethod.lowercase()) {
-            "sentence" -> chunkBySentences(text, chunkSize, chunkOverlap)
-            "paragraph" -> chunkByParagraphs(text, chunkSize, chunkOverlap)
-            else -> chunkByFixedSize(text, chunkSize, chunkOverlap) // Default to fixed size
+        val (chunkSize, chunkOverlap, chunkingMethod) = chunkingParameters(strategy, defaults)
+        val method = ChunkingMethod.from(chunkingMethod) ?: return chunkByFixedSize(text, chunkSize, chunkOverlap)
+        return TokenAwareChunker.chunk(text, method, chunkSize, chunkOverlap, defaults.tokenCounter)
+    }
+
+    /**
+     * Chunk size, overlap and method of a chunking strategy, or the defaults for fixed-size chunking.
+     *
+     * Token-aware strategies take their sizes from the `static` settings when given, otherwise
+     * from the token sizes of [defaults]. Fixed-size chunking takes the character sizes of [defaults].
+     */
+    @JvmStatic
+    fun chunkingParameters(
+        strategy: ChunkingStrategy?,
+        defaults: ChunkingDefaults = ChunkingDefaults(),
+    ): Triple<Int, Int, String> {
+        val method = strategy?.let { ChunkingMethod.from(it.type) }
+        val static = strategy?.static
+        return when {
+            method == null -> Triple(defaults.chunkSize, defaults.chunkOverlap, "fixed")
+            static != null -> Triple(static.maxChunkSizeTokens, static.chunkOverlapTokens, method.type)
+            method == ChunkingMethod.STATIC -> Triple(defaults.chunkSize, defaults.chunkOverlap, "fixed")
+            else -> Triple(defaults.maxTokens, defaults.overlapTokens, method.type)
         }
     }
 
@@ -112,136 +126,24 @@ object TextChunkingUtil {
     }
 
     /**
-     * Chunks text by paragraphs while respecting maximum chunk size.
+     * Chunks text by paragraphs while respecting maximum chunk size, measured in characters.
      */
     @JvmStatic
     fun chunkByParagraphs(
         text: String,
         maxChunkSize: Int,
         chunkOverlap: Int,
-    ): List<TextChunk> {
-        val result = mutableListOf<TextChunk>()
-        
-        // Split by paragraph breaks
-        val paragraphs = text.split(Regex("\\n\\s*\\n"))
-        
-        var currentChunk = StringBuilder()
-        var chunkIndex = 0
-        
-        for (paragraph in paragraphs) {
-            val trimmedParagraph = paragraph.trim()
-            
-            // Skip empty paragraphs
-            if (trimmedParagraph.isEmpty()) continue
-            
-            // If this paragraph would make the chunk too big, store the current chunk and start a new one
-            if (currentChunk.isNotEmpty() && currentChunk.length + trimmedParagraph.length > maxChunkSize) {
-                result.add(TextChunk(currentChunk.toString(), chunkIndex++))
-                
-                // Start a new chunk with overlap if possible
-                if (currentChunk.length > chunkOverlap) {
-                    val overlapText = currentChunk.substring(currentChunk.length - chunkOverlap)
-                    currentChunk = StringBuilder(overlapText)
-                } else {
-                    currentChunk = StringBuilder()
-                }
-            }
-            
-            // Add a newline before the paragraph if this isn't the start of a chunk
-            if (currentChunk.isNotEmpty()) {
-                currentChunk.append("\n\n")
-            }
-            
-            currentChunk.append(trimmedParagraph)
-        }
-        
-        // Don't forget the last chunk
-        if (currentChunk.isNotEmpty()) {
-            result.add(TextChunk(currentChunk.toString(), chunkIndex))
-        }
-        
-        return result
-    }
+    ): List<TextChunk> = TokenAwareChunker.chunk(text, ChunkingMethod.PARAGRAPH, maxChunkSize, chunkOverlap, TokenCounters.CHARACTERS)
 
     /**
-     * Chunks text by sentences while respecting maximum chunk size.
+     * Chunks text by sentences while respecting maximum chunk size, measured in characters.
      */
     @JvmStatic
     fun chunkBySentences(
         text: String,
         maxChunkSize: Int,
         chunkOverlap: Int,
-    ): List<TextChunk> {
-        val result = mutableListOf<TextChunk>()
-        
-        // Split by sentence-ending punctuation followed by space or newline
-        val sentences = text.split(Regex("(?<=[.!?])\\s+"))
-        
-        var currentChunk = StringBuilder()
-        var lastChunkText = ""
-        var chunkIndex = 0
-        
-        for (sentence in sentences) {
-            val trimmedSentence = sentence.trim()
-            
-            // Skip empty sentences
-            if (trimmedSentence.isEmpty()) continue
-            
-            // If this sentence would make the chunk too big, store the current chunk and start a new one
-            if (currentChunk.isNotEmpty() && currentChunk.length + trimmedSentence.length > maxChunkSize) {
-                val chunkText = currentChunk.toString()
-                result.add(TextChunk(chunkText, chunkIndex++))
-                lastChunkText = chunkText
-                
-                // Start a new chunk with overlap if possible
-                if (lastChunkText.length > chunkOverlap) {
-                    // Try to find a sentence boundary for the overlap
-                    val overlapText = findOverlapAtSentenceBoundary(lastChunkText, chunkOverlap)
-                    currentChunk = StringBuilder(overlapText)
-                } else {
-                    currentChunk = StringBuilder()
-                }
-            }
-            
-            // Add a space before the sentence if this isn't the start of a chunk
-            if (currentChunk.isNotEmpty() && !currentChunk.endsWith(" ")) {
-                currentChunk.append(" ")
-            }
-            
-            currentChunk.append(trimmedSentence)
-        }
-        
-        // Don't forget the last chunk
-        if (currentChunk.isNotEmpty()) {
-            result.add(TextChunk(currentChunk.toString(), chunkIndex))
-        }
-        
-        return result
-    }
-
-    /**
-     * Helper method to find a clean sentence boundary for overlap.
-     */
-    @JvmStatic
-    private fun findOverlapAtSentenceBoundary(
-        text: String,
-        desiredOverlap: Int,
-    ): String {
-        val startIdx = maxOf(0, text.length - desiredOverlap)
-        
-        // Look for sentence boundary after the start index
-        val sentenceBoundaryPattern = Regex("(?<=[.!?])\\s+")
-        val matches = sentenceBoundaryPattern.findAll(text.substring(startIdx))
-        
-        return if (matches.count() > 0) {
-            // Get the text from the first sentence boundary after start index
-            val firstMatchEnd = startIdx + matches.first().range.last + 1
-            text.substring(firstMatchEnd)
-        } else {
-            // No sentence boundary found, return from the start index
-            text.substring(startIdx)
-        }
-    }
+    ): List<TextChunk> = TokenAwareChunker.chunk(text, ChunkingMethod.SENTENCE, maxChunkSize, chunkOverlap, TokenCounters.CHARACTERS)
 }
 
 /**
@@ -253,3 +155,16 @@ data class TextChunk(
     val index: Int,
     val metadata: Map<String, Any> = emptyMap(),
 )
+
+/**
+ * Chunk sizes used when a chunking strategy sets none, and the counter that measures tokens.
+ */
+data class ChunkingDefaults(
+    // Fixed-size chunking, in characters
+    val chunkSize: Int = TextChunkingUtil.DEFAULT_CHUNK_SIZE,
+    val chunkOverlap: Int = TextChunkingUtil.DEFAULT_CHUNK_OVERLAP,
+    // Token-aware strategies, in tokens
+    val maxTokens: Int = TextChunkingUtil.DEFAULT_MAX_TOKENS,
+    val overlapTokens: Int = TextChunkingUtil.DEFAULT_OVERLAP_TOKENS,
+    val tokenCounter: TokenCounter = TokenCounters.default,
+)
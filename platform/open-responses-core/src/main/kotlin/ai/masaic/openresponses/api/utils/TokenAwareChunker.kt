@@ -0,0 +1,427 @@
+package ai.masaic.openresponses.api.utils
+
+import java.util.regex.Pattern
+
+/**
+ * Chunking methods measured in tokens, selected by `ChunkingStrategy.type`.
+ */
+enum class ChunkingMethod(
+    val type: String,
+) {
+    /** Windows of whole words. */
+    STATIC("static"),
+
+    /** Runs of whole sentences. */
+    SENTENCE("sentence"),
+
+    /** Runs of whole paragraphs. */
+    PARAGRAPH("paragraph"),
+
+    /** Whole paragraphs where they fit, otherwise whole sentences, otherwise words. */
+    SEMANTIC("semantic"),
+
+    /** Semantic chunks that never span a Markdown heading and carry their heading path. */
+    MARKDOWN_HEADING("markdown-heading"),
+    ;
+
+    /** Whether line breaks survive cleaning, because boundaries depend on them. */
+    val keepsLines: Boolean
+        get() = this == PARAGRAPH || this == SEMANTIC || this == MARKDOWN_HEADING
+
+    companion object {
+        fun from(type: String): ChunkingMethod? {
+            val normalized = type.trim().lowercase()
+            return entries.firstOrNull { it.type == normalized } ?: if (normalized == "markdown") MARKDOWN_HEADING else null
+        }
+    }
+}
+
+/**
+ * Token-aware chunker fed text incrementally.
+ *
+ * Text is cleaned on the way in: runs of spaces and tabs collapse to one space and, for methods
+ * that [keep lines][ChunkingMethod.keepsLines], runs of line breaks collapse to one or two, so a
+ * paragraph break is always `\n\n`. Everything else collapses to one space, as in
+ * [StreamingTextChunker].
+ *
+ * Text is processed in segments of about [segmentChars] characters that end at a safe boundary.
+ * A single forward scan with precompiled patterns splits a segment into units (words, sentences,
+ * paragraphs or heading lines) recorded as offsets, every unit is counted once with [counter], and
+ * units are packed greedily into chunks of at most [maxTokens] tokens. The next chunk starts with
+ * the trailing units of the previous one that fit in [overlapTokens]. A chunk is only emitted once
+ * the unit that ends it is known, and the text from the next chunk's start is carried into the
+ * next segment, so no chunk is cut short by a segment boundary. Text is only copied when a
+ * chunk is emitted.
+ *
+ * This class is not thread-safe.
+ *
+ * @param emit Receives every chunk as soon as it is complete
+ */
+class TokenAwareChunker(
+    private val method: ChunkingMethod,
+    private val maxTokens: Int,
+    private val overlapTokens: Int,
+    private val counter: TokenCounter = TokenCounters.default,
+    private val segmentChars: Int = DEFAULT_SEGMENT_CHARS,
+    private val emit: (TextChunk) -> Unit,
+) {
+    private val buffer = StringBuilder()
+    private var chunkIndex = 0
+    private var seenText = false
+    private var pendingSpace = false
+    private var pendingBreaks = 0
+    private var finished = false
+
+    // Buffer length at which the next segment is processed
+    private var processAt = segmentChars
+
+    // Heading titles by level (index 0 is "#") at the start of the buffer
+    private var headings = arrayOfNulls<String>(6)
+
+    init {
+        require(maxTokens > 0) { "maxTokens must be positive: $maxTokens" }
+        require(overlapTokens >= 0) { "overlapTokens must not be negative: $overlapTokens" }
+    }
+
+    fun append(text: CharSequence) {
+        for (c in text) accept(c)
+        processIfDue()
+    }
+
+    fun append(
+        chars: CharArray,
+        start: Int,
+        length: Int,
+    ) {
+        for (i in start until start + length) accept(chars[i])
+        processIfDue()
+    }
+
+    private fun processIfDue() {
+        if (buffer.length < processAt) return
+        process(false)
+        // Whatever is left over waits for another segment's worth of text
+        processAt = buffer.length + segmentChars
+    }
+
+    /**
+     * Emits the rest of the text. Returns the number of chunks emitted in total.
+     */
+    fun finish(): Int {
+        check(!finished) { "finish() was already called" }
+        finished = true
+        process(true)
+        buffer.setLength(0)
+        return chunkIndex
+    }
+
+    private fun accept(c: Char) {
+        if (c == '\n' && method.keepsLines) {
+            if (seenText) pendingBreaks = minOf(pendingBreaks + 1, 2)
+            return
+        }
+        if (isWhitespace(c)) {
+            // Only materialized if more text follows, which trims the end of the document
+            pendingSpace = seenText
+            return
+        }
+        when {
+            pendingBreaks > 0 -> repeat(pendingBreaks) { buffer.append('\n') }
+            pendingSpace -> buffer.append(' ')
+        }
+        pendingBreaks = 0
+        pendingSpace = false
+        buffer.append(c)
+        seenText = true
+    }
+
+    /**
+     * A unit of text (word, sentence, paragraph or heading line), `[start, end)` in the segment, with the heading titles in effect at it.
+     */
+    private class Span(
+        val start: Int,
+        val end: Int,
+        val headings: Array<String?>,
+        val startsSection: Boolean,
+    ) {
+        var tokens = 0
+    }
+
+    private fun process(final: Boolean) {
+        val end = if (final) buffer.length else safeEnd()
+        if (end <= 0) return
+
+        val text = buffer.substring(0, end)
+        val units = scan(text)
+        if (units.isEmpty()) {
+            buffer.delete(0, end)
+            return
+        }
+
+        var first = 0
+        while (first < units.size) {
+            var last = first
+            var tokens = units[first].tokens
+            while (last + 1 < units.size && !units[last + 1].startsSection && tokens + units[last + 1].tokens <= maxTokens) {
+                last++
+                tokens += units[last].tokens
+            }
+            // The chunk could still grow with text that has not arrived yet
+            if (!final && last + 1 == units.size) break
+
+            emit(chunkOf(text, units, first, last))
+            first =
+                when {
+                    last + 1 == units.size -> units.size
+                    units[last + 1].startsSection -> last + 1
+                    else -> overlapStart(units, first, last)
+                }
+        }
+
+        if (first < units.size) {
+            headings = units[first].headings
+            buffer.delete(0, units[first].start)
+        } else {
+            headings = units.last().headings
+            buffer.delete(0, end)
+        }
+    }
+
+    /**
+     * The first unit of the next chunk: the trailing units of this one that fit in the overlap.
+     */
+    private fun overlapStart(
+        units: List<Span>,
+        first: Int,
+        last: Int,
+    ): Int {
+        // Stops short of the chunk's first unit, so every chunk moves forward
+        var start = last + 1
+        var tokens = 0
+        while (start - 1 > first && tokens + units[start - 1].tokens <= overlapTokens) {
+            start--
+            tokens += units[start].tokens
+        }
+        return start
+    }
+
+    private fun chunkOf(
+        text: String,
+        units: List<Span>,
+        first: Int,
+        last: Int,
+    ): TextChunk {
+        val chunkText = text.substring(units[first].start, units[last].end)
+        val path = units[first].headings.filterNotNull()
+        return if (method == ChunkingMethod.MARKDOWN_HEADING && path.isNotEmpty()) {
+            TextChunk(chunkText, chunkIndex++, mapOf(HEADING_METADATA_KEY to path.joinToString(" > ")))
+        } else {
+            TextChunk(chunkText, chunkIndex++)
+        }
+    }
+
+    /**
+     * End of the part of the buffer that can be split into units without seeing more text,
+     * or 0 if no boundary has arrived yet.
+     */
+    private fun safeEnd(): Int {
+        val paragraphEnd = if (method.keepsLines) buffer.lastIndexOf("\n\n") else -1
+        if (paragraphEnd > 0) return paragraphEnd
+        // A paragraph longer than several segments is split at a word boundary instead
+        if (method.keepsLines && buffer.length < segmentChars * 4) return 0
+        return maxOf(buffer.lastIndexOf(" "), buffer.lastIndexOf("\n"), 0)
+    }
+
+    /**
+     * Splits a segment into units in one forward scan and counts their tokens.
+     */
+    private fun scan(text: String): List<Span> {
+        val units = ArrayList<Span>()
+        when (method) {
+            ChunkingMethod.STATIC -> words(text, 0, text.length, headings, false, units)
+            ChunkingMethod.SENTENCE -> sentences(text, 0, text.length, headings, false, units)
+            ChunkingMethod.PARAGRAPH -> paragraphs(text, headings, units)
+            ChunkingMethod.SEMANTIC -> paragraphs(text, headings, units)
+            ChunkingMethod.MARKDOWN_HEADING -> markdown(text, units)
+        }
+        count(text, units)
+        if (method == ChunkingMethod.SEMANTIC || method == ChunkingMethod.MARKDOWN_HEADING) return refine(text, units)
+        return units
+    }
+
+    private fun count(
+        text: String,
+        units: List<Span>,
+    ) {
+        if (units.isEmpty()) return
+        val counts = counter.count(text, IntArray(units.size) { units[it].start }, IntArray(units.size) { units[it].end })
+        for (i in units.indices) units[i].tokens = counts[i]
+    }
+
+    /**
+     * Splits paragraphs that exceed [maxTokens] into sentences, and sentences into words.
+     */
+    private fun refine(
+        text: String,
+        units: List<Span>,
+    ): List<Span> {
+        if (units.none { it.tokens > maxTokens }) return units
+        val refined = ArrayList<Span>(units.size)
+        for (unit in units) {
+            if (unit.tokens <= maxTokens) {
+                refined.add(unit)
+                continue
+            }
+            val sentences = ArrayList<Span>()
+            sentences(text, unit.start, unit.end, unit.headings, unit.startsSection, sentences)
+            count(text, sentences)
+            for (sentence in sentences) {
+                if (sentence.tokens <= maxTokens) {
+                    refined.add(sentence)
+                } else {
+                    val words = ArrayList<Span>()
+                    words(text, sentence.start, sentence.end, sentence.headings, sentence.startsSection, words)
+                    count(text, words)
+                    refined.addAll(words)
+                }
+            }
+        }
+        return refined
+    }
+
+    private fun words(
+        text: String,
+        from: Int,
+        to: Int,
+        headings: Array<String?>,
+        startsSection: Boolean,
+        units: MutableList<Span>,
+    ) = matches(WORD, text, from, to, headings, startsSection, units)
+
+    private fun sentences(
+        text: String,
+        from: Int,
+        to: Int,
+        headings: Array<String?>,
+        startsSection: Boolean,
+        units: MutableList<Span>,
+    ) = matches(SENTENCE, text, from, to, headings, startsSection, units)
+
+    private fun matches(
+        pattern: Pattern,
+        text: String,
+        from: Int,
+        to: Int,
+        headings: Array<String?>,
+        startsSection: Boolean,
+        units: MutableList<Span>,
+    ) {
+        val matcher = pattern.matcher(text).region(from, to)
+        var first = true
+        while (matcher.find()) {
+            val end = trimEnd(text, matcher.start(), matcher.end())
+            if (end > matcher.start()) {
+                units.add(Span(matcher.start(), end, headings, startsSection && first))
+                first = false
+            }
+        }
+    }
+
+    private fun paragraphs(
+        text: String,
+        headings: Array<String?>,
+        units: MutableList<Span>,
+    ) {
+        var start = 0
+        while (start < text.length) {
+            val breakAt = text.indexOf("\n\n", start).let { if (it < 0) text.length else it }
+            val end = trimEnd(text, start, breakAt)
+            if (end > start) units.add(Span(start, end, headings, false))
+            start = breakAt + 2
+        }
+    }
+
+    /**
+     * Splits a segment into heading lines, which start sections, and the paragraphs between them.
+     */
+    private fun markdown(
+        text: String,
+        units: MutableList<Span>,
+    ) {
+        var current = headings
+        var paragraphStart = -1
+        var lineStart = 0
+        val matcher = HEADING.matcher(text)
+
+        fun closeParagraph(end: Int) {
+            if (paragraphStart >= 0) {
+                val trimmed = trimEnd(text, paragraphStart, end)
+                if (trimmed > paragraphStart) units.add(Span(paragraphStart, trimmed, current, false))
+                paragraphStart = -1
+            }
+        }
+
+        while (lineStart < text.length) {
+            val lineEnd = text.indexOf('\n', lineStart).let { if (it < 0) text.length else it }
+            matcher.region(lineStart, lineEnd)
+            when {
+                matcher.lookingAt() -> {
+                    closeParagraph(lineStart)
+                    val level = matcher.group(1).length
+                    current = current.copyOf()
+                    current[level - 1] = matcher.group(2).trim()
+                    for (deeper in level until current.size) current[deeper] = null
+                    units.add(Span(lineStart, lineEnd, current, true))
+                }
+                lineStart == lineEnd -> closeParagraph(lineStart)
+                paragraphStart < 0 -> paragraphStart = lineStart
+            }
+            lineStart = lineEnd + 1
+        }
+        closeParagraph(text.length)
+    }
+
+    companion object {
+        /** Metadata key of the heading path of a Markdown chunk, such as `Guide > Setup`. */
+        const val HEADING_METADATA_KEY = "heading"
+
+        const val DEFAULT_SEGMENT_CHARS = 64 * 1024
+
+        private val WORD = Pattern.compile("\\S+")
+
+        // A sentence runs up to and including its closing punctuation, or to the end of the region
+        private val SENTENCE = Pattern.compile("[^.!?\\s][^.!?]*(?:[.!?]+|$)")
+
+        private val HEADING = Pattern.compile("(#{1,6})[ \\t]+(.+)")
+
+        private fun trimEnd(
+            text: String,
+            start: Int,
+            end: Int,
+        ): Int {
+            var trimmed = end
+            while (trimmed > start && text[trimmed - 1].isWhitespace()) trimmed--
+            return trimmed
+        }
+
+        /** The characters matched by `\s` in [Regex]. */
+        private fun isWhitespace(c: Char) = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\u000C' || c == '\r'
+
+        /**
+         * Chunks a whole text.
+         */
+        fun chunk(
+            text: String,
+            method: ChunkingMethod,
+            maxTokens: Int,
+            overlapTokens: Int,
+            counter: TokenCounter = TokenCounters.default,
+        ): List<TextChunk> {
+            val chunks = ArrayList<TextChunk>()
+            val chunker = TokenAwareChunker(method, maxTokens, overlapTokens, counter) { chunks.add(it) }
+            chunker.append(text)
+            chunker.finish()
+            return chunks
+        }
+    }
+}
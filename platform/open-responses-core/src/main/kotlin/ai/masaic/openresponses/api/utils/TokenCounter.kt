@@ -0,0 +1,103 @@
+package ai.masaic.openresponses.api.utils
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer
+import org.slf4j.LoggerFactory
+import java.io.InputStream
+import java.nio.file.Files
+import java.nio.file.Paths
+
+/**
+ * Counts the tokens of spans of a text, as measured by a chunking strategy's `*_tokens` sizes.
+ */
+fun interface TokenCounter {
+    /**
+     * Counts the tokens of each span `[starts[i], ends[i])` of [text].
+     */
+    fun count(
+        text: String,
+        starts: IntArray,
+        ends: IntArray,
+    ): IntArray
+}
+
+/**
+ * Counts tokens with a HuggingFace `tokenizer.json`, without special tokens, truncation or padding.
+ * The vocabulary is loaded once; spans are encoded in batches.
+ */
+class HuggingFaceTokenCounter(
+    tokenizerJson: InputStream,
+) : TokenCounter,
+    AutoCloseable {
+    private val tokenizer =
+        tokenizerJson.use {
+            HuggingFaceTokenizer.newInstance(
+                it,
+                mapOf(
+                    "addSpecialTokens" to "false",
+                    "truncation" to "false",
+                    "padding" to "false",
+                ),
+            )
+        }
+
+    override fun count(
+        text: String,
+        starts: IntArray,
+        ends: IntArray,
+    ): IntArray {
+        val counts = IntArray(starts.size)
+        var from = 0
+        while (from < starts.size) {
+            val to = minOf(from + BATCH_SIZE, starts.size)
+            val encodings = tokenizer.batchEncode(List(to - from) { text.substring(starts[from + it], ends[from + it]) })
+            for (i in encodings.indices) counts[from + i] = encodings[i].ids.size
+            from = to
+        }
+        return counts
+    }
+
+    override fun close() = tokenizer.close()
+
+    companion object {
+        private const val BATCH_SIZE = 1024
+    }
+}
+
+/**
+ * The token counters used for chunking.
+ *
+ * [default] is the tokenizer bundled with the local embedding model, loaded on first use. The counter
+ * configured through `open-responses.store.vector.search.chunk-tokenizer` is a bean built with [from].
+ */
+object TokenCounters {
+    private val log = LoggerFactory.getLogger(TokenCounters::class.java)
+
+    private const val BUNDLED_TOKENIZER = "all-minilm-l6-v2-tokenizer.json"
+
+    /** One token per character, the unit of the legacy character-based chunking. */
+    val CHARACTERS = TokenCounter { _, starts, ends -> IntArray(starts.size) { ends[it] - starts[it] } }
+
+    /** About four characters per token, for when no tokenizer is available. */
+    val ESTIMATE = TokenCounter { _, starts, ends -> IntArray(starts.size) { (ends[it] - starts[it] + 3) / 4 } }
+
+    val default: TokenCounter by lazy {
+        val stream = TokenCounters::class.java.classLoader.getResourceAsStream(BUNDLED_TOKENIZER)
+        if (stream == null) {
+            log.warn("Bundled tokenizer {} not found, chunk sizes are estimated at four characters per token", BUNDLED_TOKENIZER)
+            ESTIMATE
+        } else {
+            HuggingFaceTokenCounter(stream)
+        }
+    }
+
+    /**
+     * Resolves a tokenizer setting: `bundled`, `estimate`, `characters` or the path of a `tokenizer.json`.
+     */
+    fun from(setting: String): TokenCounter =
+        when (setting.trim().lowercase()) {
+            "bundled" -> default
+            "estimate" -> ESTIMATE
+            "characters" -> CHARACTERS
+            else -> HuggingFaceTokenCounter(Files.newInputStream(Paths.get(setting.trim())))
+        }
+}
@@ -280,6 +280,7 @@ open class NativeToolRegistry(
                     eventEmitter = eventEmitter,
                     toolMetadata = toolMetadata,
                     modelSettings = ModelInfo.modelSettings(agenticToolConfig.modelInfo),
+                    fusion = agenticToolConfig.fusion,
                 )
 
             log.info("AgenticSearch completed with ${response.data.size} results and ${response.search_iterations.size} iterations")
@@ -49,6 +49,7 @@ class AgenticSearchService(
         eventEmitter: (ServerSentEvent<String>) -> Unit,
         toolMetadata: Map<String, Any>,
         modelSettings: ModelSettings?,
+        fusion: String? = null,
     ): AgenticSearchResponse {
         require(params.query.isNotBlank()) { "Question must not be blank" }
         require(maxResults > 0) { "maxResults must be positive" }
@@ -62,6 +63,7 @@ class AgenticSearchService(
             var conclusion: String? = null
             val additionalParams = mutableMapOf<String, Any>()
             additionalParams["alpha"] = alpha
+            fusion?.let { additionalParams["fusion"] = it }
         
             // Initial query and filters
             var currentQuery = params.query
@@ -22,7 +22,8 @@ class HybridSimilaritySeed(
             userFilter = userFilter,
             vectorStoreIds = vectorStoreIds,
             alpha = additionalParams["alpha"] as? Double ?: 0.5,
-            modelSettings,
+            modelSettings = modelSettings,
+            fusion = additionalParams["fusion"] as? String,
         )
     }
 }
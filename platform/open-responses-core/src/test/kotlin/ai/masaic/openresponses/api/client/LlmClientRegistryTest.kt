@@ -0,0 +1,105 @@
+package ai.masaic.openresponses.api.client
+
+import com.openai.credential.BearerTokenCredential
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.time.Duration
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class LlmClientRegistryTest {
+    private val meterRegistry = SimpleMeterRegistry()
+    private val registry = LlmClientRegistry(maxClients = 8, idleTimeout = Duration.ofMinutes(1), meterRegistry = meterRegistry)
+
+    @AfterEach
+    fun tearDown() {
+        registry.close()
+    }
+
+    @Test
+    fun `requests to the same base URL should share one upstream client`() {
+        val first = registry.lease("https://api.openai.com/v1", BearerTokenCredential.create("key-1"))
+        val second = registry.lease("https://api.openai.com/v1", BearerTokenCredential.create("key-2"))
+        registry.lease("https://api.groq.com/openai/v1", BearerTokenCredential.create("key-1"))
+
+        assertNotSame(first.client, second.client)
+        assertSame(first.shared, second.shared)
+        assertEquals(2L, registry.size())
+        assertEquals(1.0, meterRegistry.counter("llm.client.pool.hits").count())
+        assertEquals(2.0, meterRegistry.counter("llm.client.pool.misses").count())
+        assertEquals(2.0, meterRegistry.get("llm.client.pool.size").gauge().value())
+    }
+
+    @Test
+    fun `dispatcher utilization should be published as gauges`() {
+        registry.lease("https://api.openai.com/v1", BearerTokenCredential.create("key-1"))
+
+        assertEquals(0.0, meterRegistry.get("llm.client.pool.in_flight").gauge().value())
+        assertEquals(0.0, meterRegistry.get("llm.client.pool.queued").gauge().value())
+        assertEquals(0.0, meterRegistry.get("llm.client.pool.connections").gauge().value())
+        assertEquals(0, registry.inFlightCalls())
+    }
+
+    @Test
+    fun `closing the registry should release every shared client`() {
+        val lease = registry.lease("https://api.openai.com/v1", BearerTokenCredential.create("key-1"))
+        lease.close()
+
+        registry.close()
+
+        assertEquals(0L, registry.size())
+        awaitClosed(lease)
+    }
+
+    @Test
+    fun `an idle client should stay open until its outstanding lease is closed`() {
+        val shortLived = LlmClientRegistry(idleTimeout = Duration.ofMillis(50), meterRegistry = SimpleMeterRegistry())
+        val lease = shortLived.lease("https://api.openai.com/v1", BearerTokenCredential.create("key-1"))
+
+        Thread.sleep(100)
+        assertEquals(0L, shortLived.size())
+        Thread.sleep(50)
+        assertFalse(lease.shared.isClosed(), "A leased client must not be closed while a request still uses it")
+
+        val next = shortLived.lease("https://api.openai.com/v1", BearerTokenCredential.create("key-1"))
+        assertNotSame(lease.shared, next.shared)
+
+        lease.close()
+        awaitClosed(lease)
+        next.close()
+        shortLived.close()
+    }
+
+    @Test
+    fun `a client evicted for size should be closed once its leases are`() {
+        val small = LlmClientRegistry(maxClients = 1, meterRegistry = SimpleMeterRegistry())
+        val leases =
+            listOf(
+                small.lease("https://api.openai.com/v1", BearerTokenCredential.create("key-1")),
+                small.lease("https://api.groq.com/openai/v1", BearerTokenCredential.create("key-1")),
+            )
+
+        assertEquals(1L, small.size())
+        assertTrue(leases.none { it.shared.isClosed() })
+
+        leases.forEach { it.close() }
+        awaitUntil("The evicted client should be closed") { leases.count { it.shared.isClosed() } == 1 }
+        small.close()
+    }
+
+    private fun awaitClosed(lease: LlmClientRegistry.Lease) = awaitUntil("The retired client should be closed") { lease.shared.isClosed() }
+
+    // Removal listeners run asynchronously
+    private fun awaitUntil(
+        message: String,
+        condition: () -> Boolean,
+    ) {
+        val deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos()
+        while (!condition() && System.nanoTime() < deadline) Thread.sleep(10)
+        assertTrue(condition(), message)
+    }
+}
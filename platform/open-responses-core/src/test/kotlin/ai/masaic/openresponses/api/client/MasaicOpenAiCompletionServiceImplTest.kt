@@ -6,6 +6,7 @@ import ai.masaic.openresponses.tool.CompletionToolRequestContext
 import ai.masaic.openresponses.tool.ToolService
 import com.openai.client.OpenAIClient
 import com.openai.core.JsonValue
+import com.openai.credential.BearerTokenCredential
 import com.openai.models.ChatModel
 import com.openai.models.chat.completions.ChatCompletion
 import com.openai.models.chat.completions.ChatCompletionChunk
@@ -22,12 +23,26 @@ import io.mockk.mockk
 import io.mockk.spyk
 import io.mockk.verify
 import io.opentelemetry.api.trace.Span
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
 import org.junit.jupiter.api.AfterEach
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.ExtendWith
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.stream.Stream
 import kotlin.test.assertEquals
 
@@ -64,8 +79,8 @@ class MasaicOpenAiCompletionServiceImplTest {
             val block = arg<suspend (Span) -> ChatCompletion>(3)
             block(mockSpan)
         }
-        every { telemetryService.withChatCompletionTimer(any(), any(), any<() -> ChatCompletion>()) } answers {
-            val block = arg<() -> ChatCompletion>(2)
+        coEvery { telemetryService.withChatCompletionTimer(any(), any(), any<suspend () -> ChatCompletion>()) } coAnswers {
+            val block = arg<suspend () -> ChatCompletion>(2)
             block()
         }
         coEvery { telemetryService.emitModelInputEventsForOtelSpan(any(), any(), any()) } returns Unit
@@ -122,7 +137,7 @@ class MasaicOpenAiCompletionServiceImplTest {
                     .build()
             
             // Mock client call to return the chat completion
-            every { client.chat().completions().create(any<ChatCompletionCreateParams>()) } returns chatCompletion
+            every { client.async().chat().completions().create(any<ChatCompletionCreateParams>()) } returns CompletableFuture.completedFuture(chatCompletion)
 
             val params =
                 ChatCompletionCreateParams
@@ -173,7 +188,7 @@ class MasaicOpenAiCompletionServiceImplTest {
                     .build()
             
             // Mock client call to return the chat completion
-            every { client.chat().completions().create(any<ChatCompletionCreateParams>()) } returns chatCompletion
+            every { client.async().chat().completions().create(any<ChatCompletionCreateParams>()) } returns CompletableFuture.completedFuture(chatCompletion)
 
             val params =
                 ChatCompletionCreateParams
@@ -252,7 +267,7 @@ class MasaicOpenAiCompletionServiceImplTest {
                     .build()
 
             // Mock client call to return the chat completion
-            every { client.chat().completions().create(any<ChatCompletionCreateParams>()) } returns chatCompletion
+            every { client.async().chat().completions().create(any<ChatCompletionCreateParams>()) } returns CompletableFuture.completedFuture(chatCompletion)
             
             // Stub handler to indicate unresolved client tools
             coEvery {
@@ -326,7 +341,7 @@ class MasaicOpenAiCompletionServiceImplTest {
                     .build()
             
             // Mock client call to return the chat completion
-            every { client.chat().completions().create(any<ChatCompletionCreateParams>()) } returns chatCompletion
+            every { client.async().chat().completions().create(any<ChatCompletionCreateParams>()) } returns CompletableFuture.completedFuture(chatCompletion)
             
             coEvery {
                 toolHandler.handleCompletionToolCall(chatCompletion, any(), client, mockParentSpan)
@@ -389,4 +404,113 @@ class MasaicOpenAiCompletionServiceImplTest {
             coVerify(exactly = 1) { telemetryService.startOtelSpan(any(), any(), mockParentSpan) }
             coVerify(exactly = 1) { telemetryService.emitModelInputEventsForOtelSpan(any(), params, metadata) }
         }
+
+    @Test
+    fun `concurrent creates should not hold a thread while the model generates`() =
+        runBlocking {
+            val message =
+                ChatCompletionMessage
+                    .builder()
+                    .role(JsonValue.from("assistant"))
+                    .content("Hello")
+                    .refusal(null)
+                    .build()
+            val chatCompletion =
+                ChatCompletion
+                    .builder()
+                    .id("test-id")
+                    .created(123)
+                    .model("gpt-model")
+                    .choices(
+                        listOf(
+                            ChatCompletion.Choice
+                                .builder()
+                                .message(message)
+                                .finishReason(ChatCompletion.Choice.FinishReason.STOP)
+                                .index(0)
+                                .logprobs(null)
+                                .build(),
+                        ),
+                    ).build()
+            // The model answers only once every call is in flight
+            val generation = CompletableFuture<ChatCompletion>()
+            val inFlight = AtomicInteger()
+            every { client.async().chat().completions().create(any<ChatCompletionCreateParams>()) } answers {
+                inFlight.incrementAndGet()
+                generation
+            }
+            val params =
+                ChatCompletionCreateParams
+                    .builder()
+                    .addUserMessage("Hello")
+                    .model(ChatModel.GPT_3_5_TURBO)
+                    .build()
+
+            val calls = 1000
+            Executors.newSingleThreadExecutor().asCoroutineDispatcher().use { oneThread ->
+                val results =
+                    (1..calls).map {
+                        async(oneThread) { service.create(client, params, InstrumentationMetadataInput(), mockParentSpan) }
+                    }
+                withTimeout(10_000) {
+                    while (inFlight.get() < calls) delay(10)
+                }
+                generation.complete(chatCompletion)
+
+                assertEquals(List(calls) { chatCompletion }, results.awaitAll())
+            }
+        }
+
+    @Test
+    fun `concurrent creates through a real client should not be capped by the default dispatcher`() =
+        runBlocking {
+            // Each response is held back until every call has reached the server
+            val release = CountDownLatch(1)
+            val atServer = AtomicInteger()
+            val server = MockWebServer()
+            server.dispatcher =
+                object : Dispatcher() {
+                    override fun dispatch(request: RecordedRequest): MockResponse {
+                        atServer.incrementAndGet()
+                        release.await(30, TimeUnit.SECONDS)
+                        return MockResponse()
+                            .setHeader("Content-Type", "application/json")
+                            .setBody(
+                                """{"id":"test-id","object":"chat.completion","created":123,"model":"gpt-model",""" +
+                                    """"choices":[{"index":0,"message":{"role":"assistant","content":"Hello","refusal":null},"finish_reason":"stop","logprobs":null}]}""",
+                            )
+                    }
+                }
+            server.start()
+            val registry = LlmClientRegistry(httpSettings = UpstreamHttpSettings(maxRequests = 256, maxRequestsPerHost = 256))
+            val params =
+                ChatCompletionCreateParams
+                    .builder()
+                    .addUserMessage("Hello")
+                    .model(ChatModel.GPT_3_5_TURBO)
+                    .build()
+
+            // Well above OkHttp's default limit of 64 calls per dispatcher
+            val calls = 200
+            try {
+                registry.lease(server.url("/v1").toString(), BearerTokenCredential.create("key")).use { lease ->
+                    val results =
+                        (1..calls).map {
+                            async { service.create(lease.client, params, InstrumentationMetadataInput(), mockParentSpan) }
+                        }
+                    withTimeout(10_000) {
+                        while (atServer.get() < calls) delay(10)
+                    }
+                    assertEquals(calls, registry.inFlightCalls())
+                    assertEquals(0, registry.queuedCalls())
+                    release.countDown()
+
+                    assertEquals(List(calls) { "test-id" }, results.awaitAll().map { it.id() })
+                }
+            } finally {
+                release.countDown()
+                registry.close()
+                server.shutdown()
+            }
+        }
 }
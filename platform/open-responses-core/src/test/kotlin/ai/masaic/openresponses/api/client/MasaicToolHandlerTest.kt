@@ -18,6 +18,7 @@ import io.micrometer.observation.ObservationRegistry
 import io.mockk.*
 import io.mockk.every
 import io.opentelemetry.api.OpenTelemetry
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.runBlocking
 import org.junit.jupiter.api.AfterEach
 import org.junit.jupiter.api.Assertions.assertEquals
@@ -559,7 +560,12 @@ class MasaicToolHandlerTest {
         coEvery { toolService.getFunctionTool("toolOne", ofType<ToolRequestContext>()) } returns mockk()
         coEvery { toolService.getFunctionTool("toolTwo", ofType<ToolRequestContext>()) } returns mockk()
         every { toolService.buildAliasMap(any()) } returns emptyMap()
-        coEvery { toolService.executeTool("toolOne", "{\"param\":\"value1\"}", ofType<ResponseCreateParams>(), any(), any(), any(), any()) } returns "Result from tool one"
+        every { params.parallelToolCalls() } returns Optional.empty()
+        // The first call finishes last, but its items still come first
+        coEvery { toolService.executeTool("toolOne", "{\"param\":\"value1\"}", ofType<ResponseCreateParams>(), any(), any(), any(), any()) } coAnswers {
+            delay(100)
+            "Result from tool one"
+        }
         coEvery { toolService.executeTool("toolTwo", "{\"param\":\"value2\"}", ofType<ResponseCreateParams>(), any(), any(), any(), any()) } returns "Result from tool two"
 
         // Manually set the attributes for testing purposes
@@ -586,6 +592,9 @@ class MasaicToolHandlerTest {
         val functionOutputs = items.count { it.isFunctionCallOutput() }
         assertEquals(2, functionCalls, "Should have 2 function calls")
         assertEquals(2, functionOutputs, "Should have 2 function outputs")
+        assertEquals("tool-call-id-1", items[1].asFunctionCall().callId())
+        assertEquals("Result from tool one", items[2].asFunctionCallOutput().output())
+        assertEquals("tool-call-id-2", items[3].asFunctionCall().callId())
     }
 
     @Test
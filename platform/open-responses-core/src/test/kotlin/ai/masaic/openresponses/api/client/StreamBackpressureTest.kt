@@ -0,0 +1,210 @@
+package ai.masaic.openresponses.api.client
+
+import com.openai.models.responses.ResponseStreamEvent
+import com.openai.models.responses.ResponseTextDeltaEvent
+import com.openai.models.responses.ResponseTextDoneEvent
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.springframework.http.codec.ServerSentEvent
+import java.time.Duration
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class StreamBackpressureTest {
+    private val meterRegistry = SimpleMeterRegistry()
+
+    @Test
+    fun `suspend policy should deliver every event in order to a slow client`() =
+        runBlocking {
+            val backpressure = StreamBackpressure(capacity = 4, meterRegistry = meterRegistry)
+
+            val received = stream(backpressure, deltas = 50, slowClient = true)
+
+            assertEquals((0 until 50).map { "d$it" } + "done", received)
+            assertEquals(1L, meterRegistry.get("sse.stream.buffer.high_water").summary().count())
+            assertTrue(meterRegistry.get("sse.stream.buffer.high_water").summary().max() <= 4.0)
+            assertEquals(0.0, meterRegistry.counter("sse.stream.events.dropped").count())
+        }
+
+    @Test
+    fun `coalesce policy should merge deltas while the buffer is full without losing text`() =
+        runBlocking {
+            val backpressure = StreamBackpressure(capacity = 2, policy = StreamOverflowPolicy.COALESCE, meterRegistry = meterRegistry)
+
+            val received = stream(backpressure, deltas = 50, slowClient = true)
+
+            assertEquals((0 until 50).joinToString("") { "d$it" }, received.dropLast(1).joinToString(""))
+            assertEquals("done", received.last())
+            assertTrue(received.size < 51)
+            assertEquals(51.0 - received.size, meterRegistry.counter("sse.stream.events.coalesced").count())
+        }
+
+    @Test
+    fun `fail policy should fail the stream once the buffer overflows`() {
+        val backpressure = StreamBackpressure(capacity = 2, policy = StreamOverflowPolicy.FAIL, meterRegistry = meterRegistry)
+
+        assertThrows<StreamOverflowException> {
+            runBlocking { stream(backpressure, deltas = 50, slowClient = true) }
+        }
+        assertEquals(1.0, meterRegistry.counter("sse.stream.events.dropped").count())
+        assertEquals(1.0, meterRegistry.counter("sse.stream.overflows", "policy", "fail").count())
+    }
+
+    @Test
+    fun `events offered while the buffer is full should be sent before the next emitted event`() =
+        runBlocking<Unit> {
+            val backpressure = StreamBackpressure(capacity = 2, meterRegistry = meterRegistry)
+            val buffer = backpressure.open()
+
+            val received =
+                channelFlow {
+                    val events = buffer.emitter(this, ::toSse)
+                    events.emit(delta(0))
+                    events.offer(ServerSentEvent.builder("tool-1").build())
+                    events.offer(ServerSentEvent.builder("tool-2").build())
+                    events.emit(done())
+                }.buffer(buffer.capacity)
+                    .toList()
+                    .map { it.data() }
+
+            assertEquals(listOf("d0", "tool-1", "tool-2", "done"), received)
+        }
+
+    @Test
+    fun `held back events beyond the capacity should drop the oldest`() =
+        runBlocking<Unit> {
+            val backpressure = StreamBackpressure(capacity = 1, meterRegistry = meterRegistry)
+            val buffer = backpressure.open()
+
+            val received =
+                channelFlow {
+                    val events = buffer.emitter(this, ::toSse)
+                    events.emit(delta(0))
+                    (1..3).forEach { events.offer(ServerSentEvent.builder("tool-$it").build()) }
+                    events.emit(done())
+                }.buffer(buffer.capacity)
+                    .toList()
+                    .map { it.data() }
+
+            assertEquals(listOf("d0", "tool-3", "done"), received)
+            assertEquals(2.0, meterRegistry.counter("sse.stream.events.dropped").count())
+        }
+
+    @Test
+    fun `fail policy should close the stream instead of throwing into the offering thread`() {
+        val backpressure = StreamBackpressure(capacity = 1, policy = StreamOverflowPolicy.FAIL, meterRegistry = meterRegistry)
+        val buffer = backpressure.open()
+        var offered = false
+
+        assertThrows<StreamOverflowException> {
+            runBlocking {
+                channelFlow {
+                    val events = buffer.emitter(this, ::toSse)
+                    events.emit(delta(0))
+                    (1..2).forEach { events.offer(ServerSentEvent.builder("tool-$it").build()) }
+                    offered = true
+                    events.emit(done())
+                }.buffer(buffer.capacity)
+                    .toList()
+            }
+        }
+        assertTrue(offered)
+        assertEquals(1.0, meterRegistry.counter("sse.stream.overflows", "policy", "fail").count())
+    }
+
+    @Test
+    fun `coalescing window should merge deltas up to the size limit`() =
+        runBlocking {
+            val backpressure =
+                StreamBackpressure(capacity = 16, meterRegistry = meterRegistry, coalesceWindow = Duration.ofMinutes(1), coalesceMaxChars = 6)
+
+            val received = stream(backpressure, deltas = 9, slowClient = false)
+
+            assertEquals(listOf("d0d1d2", "d3d4d5", "d6d7d8", "done"), received)
+            assertEquals(6.0, meterRegistry.counter("sse.stream.events.coalesced").count())
+        }
+
+    @Test
+    fun `coalescing window should send a held delta once the window closes`() =
+        runBlocking<Unit> {
+            val backpressure = StreamBackpressure(capacity = 16, coalesceWindow = Duration.ofMillis(20), coalesceMaxChars = 1000)
+            val buffer = backpressure.open()
+            val received = mutableListOf<String?>()
+
+            channelFlow {
+                val events = buffer.emitter(this, ::toSse)
+                events.emit(delta(0))
+                delay(500)
+                events.emit(delta(1))
+                events.emit(done())
+            }.buffer(buffer.capacity)
+                .collect { received.add(it.data()) }
+
+            assertEquals(listOf("d0", "d1", "done"), received)
+        }
+
+    @Test
+    fun `unknown overflow policy should be rejected`() {
+        assertThrows<IllegalArgumentException> { StreamOverflowPolicy.from("drop") }
+        assertEquals(StreamOverflowPolicy.COALESCE, StreamOverflowPolicy.from("Coalesce"))
+    }
+
+    private suspend fun stream(
+        backpressure: StreamBackpressure,
+        deltas: Int,
+        slowClient: Boolean,
+    ): List<String?> {
+        val buffer = backpressure.open()
+        val received = mutableListOf<String?>()
+        try {
+            channelFlow {
+                val events = buffer.emitter(this, ::toSse)
+                repeat(deltas) { events.emit(delta(it)) }
+                events.emit(done())
+            }.buffer(buffer.capacity)
+                .collect {
+                    buffer.delivered()
+                    if (slowClient) delay(1)
+                    received.add(it.data())
+                }
+        } finally {
+            buffer.close()
+        }
+        return received
+    }
+
+    private fun toSse(event: ResponseStreamEvent): ServerSentEvent<String> =
+        ServerSentEvent
+            .builder(if (event.isOutputTextDelta()) event.asOutputTextDelta().delta() else "done")
+            .build()
+
+    private fun delta(index: Int) =
+        ResponseStreamEvent.ofOutputTextDelta(
+            ResponseTextDeltaEvent
+                .builder()
+                .delta("d$index")
+                .outputIndex(0)
+                .contentIndex(0)
+                .itemId("msg_1")
+                .sequenceNumber(index.toLong())
+                .build(),
+        )
+
+    private fun done() =
+        ResponseStreamEvent.ofOutputTextDone(
+            ResponseTextDoneEvent
+                .builder()
+                .contentIndex(0)
+                .text("")
+                .outputIndex(0)
+                .itemId("msg_1")
+                .sequenceNumber(Long.MAX_VALUE)
+                .build(),
+        )
+}
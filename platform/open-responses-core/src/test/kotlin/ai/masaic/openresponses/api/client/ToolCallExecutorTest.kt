@@ -0,0 +1,134 @@
+package ai.masaic.openresponses.api.client
+
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.time.Duration
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.system.measureTimeMillis
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class ToolCallExecutorTest {
+    @Test
+    fun `parallel calls should overlap and return results in call order`() =
+        runBlocking {
+            val executor = ToolCallExecutor(maxConcurrency = 4)
+            val finished = Collections.synchronizedList(mutableListOf<Int>())
+
+            var results: List<String?> = emptyList()
+            val elapsed =
+                measureTimeMillis {
+                    results =
+                        executor.execute(3, parallel = true, onTimeout = { "timeout" }) { index ->
+                            delay(300L - index * 100L)
+                            finished.add(index)
+                            ToolCallExecutor.Outcome("result-$index")
+                        }
+                }
+
+            assertEquals(listOf("result-0", "result-1", "result-2"), results)
+            assertEquals(listOf(2, 1, 0), finished)
+            assertTrue(elapsed < 550, "Calls should overlap, took ${elapsed}ms")
+        }
+
+    @Test
+    fun `concurrency should not exceed the configured limit`() =
+        runBlocking {
+            val executor = ToolCallExecutor(maxConcurrency = 2)
+            val running = AtomicInteger()
+            val maxRunning = AtomicInteger()
+
+            executor.execute(6, parallel = true, onTimeout = { Unit }) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), ::maxOf)
+                delay(20)
+                running.decrementAndGet()
+                ToolCallExecutor.Outcome(Unit)
+            }
+
+            assertEquals(2, maxRunning.get())
+        }
+
+    @Test
+    fun `a call that does not finish in time should get the timeout result`() =
+        runBlocking {
+            val executor = ToolCallExecutor(toolTimeout = Duration.ofMillis(50))
+
+            val results =
+                executor.execute(2, parallel = true, onTimeout = { "timeout-$it" }) { index ->
+                    if (index == 0) awaitCancellation()
+                    ToolCallExecutor.Outcome("result-$index")
+                }
+
+            assertEquals(listOf("timeout-0", "result-1"), results)
+        }
+
+    @Test
+    fun `a terminal call should cancel the calls still running`() =
+        runBlocking {
+            val executor = ToolCallExecutor()
+
+            val results =
+                executor.execute(3, parallel = true, onTimeout = { "timeout" }) { index ->
+                    if (index == 1) {
+                        ToolCallExecutor.Outcome("terminal", terminal = true)
+                    } else {
+                        delay(5_000)
+                        ToolCallExecutor.Outcome("result-$index")
+                    }
+                }
+
+            assertEquals(listOf(null, "terminal", null), results)
+        }
+
+    @Test
+    fun `calls cancelled by a terminal call should be reported only if they had started`() =
+        runBlocking {
+            val executor = ToolCallExecutor(maxConcurrency = 2)
+            val cancelled = Collections.synchronizedList(mutableListOf<Int>())
+
+            val results =
+                executor.execute(3, parallel = true, onTimeout = { "timeout" }, onCancelled = { cancelled.add(it) }) { index ->
+                    when (index) {
+                        0 -> awaitCancellation()
+                        1 -> {
+                            delay(20)
+                            ToolCallExecutor.Outcome("terminal", terminal = true)
+                        }
+                        else -> ToolCallExecutor.Outcome("result-$index")
+                    }
+                }
+
+            // Call 2 was still waiting for a permit when call 1 ended the turn
+            assertEquals(listOf(null, "terminal", null), results)
+            assertEquals(listOf(0), cancelled)
+        }
+
+    @Test
+    fun `sequential calls should run one at a time and stop after a terminal call`() =
+        runBlocking {
+            val executor = ToolCallExecutor()
+            val running = AtomicInteger()
+            val started = mutableListOf<Int>()
+
+            val results =
+                executor.execute(3, parallel = false, onTimeout = { "timeout" }) { index ->
+                    started.add(index)
+                    assertEquals(1, running.incrementAndGet())
+                    delay(10)
+                    running.decrementAndGet()
+                    ToolCallExecutor.Outcome("result-$index", terminal = index == 1)
+                }
+
+            assertEquals(listOf("result-0", "result-1", null), results)
+            assertEquals(listOf(0, 1), started)
+        }
+
+    @Test
+    fun `concurrency must be positive`() {
+        assertThrows<IllegalArgumentException> { ToolCallExecutor(maxConcurrency = 0) }
+    }
+}
@@ -54,6 +54,11 @@ class FileBasedVectorStoreRepositoryTest {
         if (Files.exists(vectorStoreFilesDir)) {
             Files.list(vectorStoreFilesDir).forEach { Files.deleteIfExists(it) }
         }
+
+        val manifestsDir = tempDir.resolve("vector_store_manifests")
+        if (Files.exists(manifestsDir)) {
+            Files.list(manifestsDir).forEach { Files.deleteIfExists(it) }
+        }
     }
 
     @OptIn(ExperimentalCoroutinesApi::class)
@@ -465,6 +470,28 @@ class FileBasedVectorStoreRepositoryTest {
             assertEquals("Updated Name", retrievedVectorStore.name, "Vector store name should be updated in repository")
         }
 
+    @Test
+    fun `targeted updates should keep the file counts of a vector store`() =
+        runTest {
+            // Given
+            val vectorStore = createTestVectorStore(name = "Original Name")
+            vectorStoreRepository.saveVectorStore(vectorStore)
+            vectorStoreRepository.incrementFileCounts(vectorStore.id, FileCounts(completed = 2, total = 2), 300L)
+
+            // When
+            vectorStoreRepository.updateVectorStoreDetails(vectorStore.id, "Updated Name", mapOf("fusion" to "rrf"), null, Instant.now().epochSecond)
+            val result = vectorStoreRepository.updateVectorStoreStatus(vectorStore.id, "expired")
+
+            // Then
+            assertNotNull(result)
+            assertEquals("Updated Name", result.name)
+            assertEquals(mapOf("fusion" to "rrf"), result.metadata)
+            assertEquals("expired", result.status)
+            assertEquals(FileCounts(completed = 2, total = 2), result.fileCounts)
+            assertEquals(300L, result.bytes)
+            assertNull(vectorStoreRepository.updateVectorStoreStatus("missing", "expired"))
+        }
+
     @Test
     fun `saveVectorStoreFile should update existing file status with metadata`() =
         runTest {
@@ -496,6 +523,31 @@ class FileBasedVectorStoreRepositoryTest {
             assertEquals(true, retrievedCompletedFile.attributes!!["vectorized"], "Attributes should be updated")
         }
 
+    @Test
+    fun `listVectorStoreFiles should page through the manifest after a restart`() =
+        runTest {
+            // Given
+            val vectorStore = createTestVectorStore()
+            vectorStoreRepository.saveVectorStore(vectorStore)
+            (1..5).forEach { i ->
+                vectorStoreRepository.saveVectorStoreFile(
+                    createTestVectorStoreFile(id = "file-$i", vectorStoreId = vectorStore.id, createdAt = 1000L + i),
+                )
+            }
+
+            // When - a new repository reads the persisted manifest and a record goes missing
+            val restarted = FileBasedVectorStoreRepository(fileStorageProperties, objectMapper)
+            Files.delete(tempDir.resolve("vector_store_files").resolve("${vectorStore.id}-file-4.json"))
+            val firstPage = restarted.listVectorStoreFiles(vectorStore.id, limit = 2)
+            val nextPage = restarted.listVectorStoreFiles(vectorStore.id, limit = 2, after = firstPage.last().id)
+            val previousPage = restarted.listVectorStoreFiles(vectorStore.id, limit = 1, before = nextPage.first().id)
+
+            // Then
+            assertEquals(listOf("file-5", "file-3"), firstPage.map { it.id })
+            assertEquals(listOf("file-2", "file-1"), nextPage.map { it.id })
+            assertEquals(listOf("file-3"), previousPage.map { it.id })
+        }
+
     /**
      * Helper function to create a test vector store.
      */
@@ -0,0 +1,91 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.model.ComparisonFilter
+import ai.masaic.openresponses.api.model.CompoundFilter
+import ai.masaic.openresponses.api.model.Filter
+import ai.masaic.openresponses.api.service.search.AttributeIndex
+import ai.masaic.openresponses.api.utils.CompiledFilter
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class AttributeIndexTest {
+    private val chunks =
+        listOf(
+            mapOf("file_id" to "f1", "year" to 2021, "team" to "red"),
+            mapOf("file_id" to "f1", "year" to 2024.5, "team" to "blue"),
+            mapOf("file_id" to "f2", "year" to 2025, "team" to "red", "draft" to true),
+            mapOf("file_id" to "f3", "team" to "green"),
+        )
+
+    private fun indexOf(attributes: List<Map<String, Any>>) = AttributeIndex().apply { attributes.forEachIndexed { slot, attributes -> add(slot, attributes) } }
+
+    private fun slots(
+        index: AttributeIndex,
+        filter: Filter,
+    ): List<Int> {
+        val compiled = CompiledFilter.compile(filter)!!
+        val plan = index.plan(compiled)
+        return plan.slots
+            .stream()
+            .filter { plan.exact || compiled.matches(chunks[it]) }
+            .toArray()
+            .toList()
+    }
+
+    @Test
+    fun `plan should answer equality, membership and numeric ranges from bitmaps`() {
+        val index = indexOf(chunks)
+
+        assertEquals(listOf(0, 2), slots(index, ComparisonFilter("team", "eq", "red")))
+        assertEquals(listOf(1, 3), slots(index, ComparisonFilter("team", "in", listOf("blue", "green"))))
+        assertEquals(listOf(1, 2, 3), slots(index, ComparisonFilter("team", "ne", "red").let { CompoundFilter("or", listOf(it, ComparisonFilter("draft", "eq", true))) }))
+        assertEquals(listOf(1, 2), slots(index, ComparisonFilter("year", "gt", 2021)))
+        assertEquals(listOf(0, 1), slots(index, ComparisonFilter("year", "lte", 2024.5)))
+        assertEquals(
+            listOf(2),
+            slots(index, CompoundFilter("and", listOf(ComparisonFilter("year", "gte", 2022), ComparisonFilter("file_id", "nin", listOf("f1"))))),
+        )
+    }
+
+    @Test
+    fun `plan should agree with matchesFilter for every chunk`() {
+        val index = indexOf(chunks)
+        val filters =
+            listOf(
+                ComparisonFilter("team", "eq", "red"),
+                ComparisonFilter("year", "lt", 2025),
+                ComparisonFilter("team", "gte", "green"),
+                ComparisonFilter("missing", "ne", "x"),
+                CompoundFilter("or", listOf(ComparisonFilter("draft", "eq", true), ComparisonFilter("year", "lt", 2022))),
+                CompoundFilter("xor", listOf(ComparisonFilter("team", "eq", "red"))),
+            )
+
+        filters.forEach { filter ->
+            val expected = chunks.indices.filter { CompiledFilter.compile(filter)!!.matches(chunks[it]) }
+            assertEquals(expected, slots(index, filter), "Plan for $filter")
+        }
+    }
+
+    @Test
+    fun `range filters on keys with non numeric values should not be answered from the index alone`() {
+        val index = indexOf(chunks)
+
+        val plan = index.plan(CompiledFilter.compile(ComparisonFilter("team", "gt", "blue"))!!)
+
+        assertFalse(plan.exact)
+        assertEquals(4, plan.slots.cardinality())
+    }
+
+    @Test
+    fun `removed chunks should no longer match`() {
+        val index = indexOf(chunks)
+
+        index.remove(2, chunks[2])
+
+        assertEquals(listOf(0), slots(index, ComparisonFilter("team", "eq", "red")))
+        assertTrue(slots(index, ComparisonFilter("draft", "eq", true)).isEmpty())
+        assertEquals(3, index.size)
+    }
+}
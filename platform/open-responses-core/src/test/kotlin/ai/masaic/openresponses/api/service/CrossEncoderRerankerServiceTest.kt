@@ -0,0 +1,85 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.model.VectorStoreSearchResult
+import ai.masaic.openresponses.api.model.VectorStoreSearchResultContent
+import ai.masaic.openresponses.api.service.rerank.CrossEncoder
+import ai.masaic.openresponses.api.service.rerank.CrossEncoderRerankerService
+import ai.masaic.openresponses.api.service.rerank.RerankerProperties
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class CrossEncoderRerankerServiceTest {
+    /**
+     * Scores a passage by the number it ends with and records every batch it is given.
+     */
+    private class FakeCrossEncoder : CrossEncoder {
+        val batches = mutableListOf<List<String>>()
+        val threads = mutableSetOf<String>()
+
+        override fun score(
+            query: String,
+            passages: List<String>,
+        ): FloatArray {
+            batches.add(passages)
+            threads.add(Thread.currentThread().name)
+            return FloatArray(passages.size) { passages[it].substringAfterLast(' ').toFloat() / 100 }
+        }
+    }
+
+    private val crossEncoder = FakeCrossEncoder()
+    private var service: CrossEncoderRerankerService? = null
+
+    @AfterEach
+    fun tearDown() {
+        service?.close()
+    }
+
+    private fun service(properties: RerankerProperties) = CrossEncoderRerankerService(crossEncoder, properties).also { service = it }
+
+    private fun doc(relevance: Int) =
+        VectorStoreSearchResult(
+            fileId = "f$relevance",
+            filename = "f$relevance.txt",
+            score = 0.5,
+            content = listOf(VectorStoreSearchResultContent("text", "passage $relevance")),
+        )
+
+    @Test
+    fun `rerank should order candidates by cross-encoder score`() =
+        runBlocking {
+            val docs = listOf(doc(10), doc(90), doc(40))
+
+            val reranked = service(RerankerProperties(threads = 1)).rerank("query", docs)
+
+            assertEquals(listOf("f90", "f40", "f10"), reranked.map { it.fileId })
+            assertEquals(0.9, reranked.first().score, 1e-6)
+            assertEquals(1, crossEncoder.batches.size)
+            assertTrue(crossEncoder.threads.all { it.startsWith("reranker-") })
+        }
+
+    @Test
+    fun `rerank should only re-score the top k and keep the tail in place`() =
+        runBlocking {
+            val docs = listOf(doc(10), doc(90), doc(40), doc(99), doc(1))
+
+            val reranked = service(RerankerProperties(maxCandidates = 3, threads = 1)).rerank("query", docs, k = 4)
+
+            assertEquals(listOf("f90", "f40", "f10", "f99", "f1"), reranked.map { it.fileId })
+            assertEquals(0.5, reranked[3].score)
+            assertEquals(3, crossEncoder.batches.flatten().size)
+        }
+
+    @Test
+    fun `rerank should split candidates into batches`() =
+        runBlocking {
+            val docs = (1..7).map { doc(it) }
+
+            val reranked = service(RerankerProperties(batchSize = 3, threads = 1)).rerank("query", docs)
+
+            assertEquals(listOf(3, 3, 1), crossEncoder.batches.map { it.size })
+            assertEquals((7 downTo 1).map { "f$it" }, reranked.map { it.fileId })
+        }
+}
@@ -0,0 +1,121 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
+import ai.masaic.openresponses.api.model.IndexingProgress
+import ai.masaic.openresponses.api.service.search.EmbeddingBatchPipeline
+import ai.masaic.openresponses.api.service.search.IndexingProgressListener
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class EmbeddingBatchPipelineTest {
+    private fun pipeline(config: VectorSearchConfigProperties.IndexingConfig) = EmbeddingBatchPipeline(config)
+
+    private fun vectorOf(text: String) = floatArrayOf(text.length.toFloat())
+
+    @Test
+    fun `batches should respect the token and size limits`() =
+        runBlocking {
+            val batchSizes = Collections.synchronizedList(mutableListOf<Int>())
+            // 40 characters is about 10 tokens, so at most 3 chunks fit a 30 token batch
+            val texts = List(10) { "x".repeat(40) }
+
+            val count =
+                pipeline(VectorSearchConfigProperties.IndexingConfig(maxBatchTokens = 30, maxBatchSize = 4, concurrency = 1))
+                    .run(texts.asFlow(), { it }, { batch -> batch.map { vectorOf(it) } }) { _, batch, _ -> batchSizes.add(batch.size) }
+
+            assertEquals(10, count)
+            assertEquals(listOf(3, 3, 3, 1), batchSizes)
+        }
+
+    @Test
+    fun `vectors should be delivered with their batch offsets`() =
+        runBlocking {
+            val texts = List(25) { "t".repeat(it + 1) }
+            val vectors = arrayOfNulls<FloatArray>(texts.size)
+
+            pipeline(VectorSearchConfigProperties.IndexingConfig(maxBatchSize = 4, concurrency = 3))
+                .run(texts.asFlow(), { it }, { batch -> batch.map { vectorOf(it) } }) { offset, _, batchVectors ->
+                    batchVectors.forEachIndexed { i, vector -> vectors[offset + i] = vector }
+                }
+
+            texts.forEachIndexed { i, text -> assertEquals(text.length.toFloat(), vectors[i]!![0]) }
+        }
+
+    @Test
+    fun `batches should be embedded concurrently`() =
+        runBlocking<Unit> {
+            // Both batches must be in flight together to release the latch
+            val latch = CountDownLatch(2)
+
+            pipeline(VectorSearchConfigProperties.IndexingConfig(maxBatchSize = 1, concurrency = 2))
+                .run(listOf("a", "b").asFlow(), { it }, { batch ->
+                    latch.countDown()
+                    assertTrue(latch.await(5, TimeUnit.SECONDS))
+                    batch.map { vectorOf(it) }
+                }) { _, _, _ -> }
+        }
+
+    @Test
+    fun `rate limited batches should be retried`() =
+        runBlocking {
+            val calls = AtomicInteger()
+            val embedded = AtomicInteger()
+
+            pipeline(VectorSearchConfigProperties.IndexingConfig(maxRetries = 3, initialBackoffMillis = 1, maxBackoffMillis = 2))
+                .run(listOf("a", "b").asFlow(), { it }, { batch ->
+                    if (calls.incrementAndGet() < 3) throw RuntimeException("429 Too Many Requests")
+                    batch.map { vectorOf(it) }
+                }) { _, batch, _ -> embedded.addAndGet(batch.size) }
+
+            assertEquals(3, calls.get())
+            assertEquals(2, embedded.get())
+        }
+
+    @Test
+    fun `other errors should fail without retrying`() {
+        val calls = AtomicInteger()
+
+        assertThrows<IllegalStateException> {
+            runBlocking {
+                pipeline(VectorSearchConfigProperties.IndexingConfig(maxRetries = 3, initialBackoffMillis = 1))
+                    .run(listOf("a").asFlow(), { it }, { _ ->
+                        calls.incrementAndGet()
+                        throw IllegalStateException("bad input")
+                    }) { _, _, _ -> }
+            }
+        }
+        assertEquals(1, calls.get())
+    }
+
+    @Test
+    fun `progress should be reported per batch and end with the total`() =
+        runBlocking {
+            val reports = Collections.synchronizedList(mutableListOf<IndexingProgress>())
+
+            withContext(IndexingProgressListener { reports.add(it) }) {
+                pipeline(VectorSearchConfigProperties.IndexingConfig(maxBatchSize = 2, concurrency = 1))
+                    .run(List(5) { "chunk $it" }.asFlow(), { it }, { batch -> batch.map { vectorOf(it) } }) { _, _, _ -> }
+            }
+
+            assertEquals(listOf(2, 4, 5), reports.dropLast(1).map { it.embeddedChunks })
+            assertEquals(IndexingProgress(5, 5), reports.last())
+        }
+
+    @Test
+    fun `rate limits should be recognized through the cause chain`() {
+        class RateLimitException : RuntimeException("slow down")
+
+        assertTrue(EmbeddingBatchPipeline.isRateLimited(RuntimeException("wrapped", RateLimitException())))
+        assertTrue(EmbeddingBatchPipeline.isRateLimited(RuntimeException("HTTP 429")))
+        assertEquals(false, EmbeddingBatchPipeline.isRateLimited(IllegalArgumentException("bad request")))
+    }
+}
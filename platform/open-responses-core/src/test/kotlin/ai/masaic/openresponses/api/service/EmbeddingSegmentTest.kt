@@ -0,0 +1,108 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
+import ai.masaic.openresponses.api.service.search.EmbeddingSegment
+import ai.masaic.openresponses.api.service.search.EmbeddingSegmentMigrator
+import ai.masaic.openresponses.api.service.search.SegmentChunk
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class EmbeddingSegmentTest {
+    private val objectMapper = jacksonObjectMapper()
+
+    @TempDir
+    lateinit var dir: Path
+
+    @Test
+    fun `write and open should round trip vectors and sidecar`() {
+        val chunks =
+            listOf(
+                SegmentChunk("c1", "first chunk", mapOf("chunk_index" to 0)),
+                SegmentChunk("c2", "second chunk", mapOf("chunk_index" to 1)),
+            )
+        val vectors = listOf(floatArrayOf(0.1f, 0.2f, 0.3f), floatArrayOf(-1f, 0f, 2.5f))
+
+        EmbeddingSegment.write(dir, "file-1", mapOf("filename" to "a.txt"), chunks, vectors, objectMapper)
+        val segment = EmbeddingSegment.open(dir, "file-1", objectMapper)
+
+        assertNotNull(segment)
+        assertEquals(2, segment.count)
+        assertEquals(3, segment.dimension)
+        assertEquals("a.txt", segment.metadata["filename"])
+        assertEquals("second chunk", segment.chunks[1].content)
+        assertContentEquals(vectors[0], segment.vector(0))
+        assertContentEquals(vectors[1], segment.vector(1))
+        assertEquals(-1f + 5f, segment.dot(1, floatArrayOf(1f, 1f, 2f), SimilarityKernels.default), 1e-6f)
+    }
+
+    @Test
+    fun `vectors should be read across mapping windows`() {
+        val vectors = List(5) { i -> floatArrayOf(i.toFloat(), i + 0.5f, -i.toFloat()) }
+        val chunks = List(5) { SegmentChunk("c$it", "chunk $it") }
+        EmbeddingSegment.write(dir, "file-1", emptyMap(), chunks, vectors, objectMapper)
+
+        // Two 12-byte vectors per window, so the five vectors span three mappings
+        val segment = EmbeddingSegment.open(dir, "file-1", objectMapper, windowBytes = 24)
+
+        assertNotNull(segment)
+        vectors.forEachIndexed { i, vector -> assertContentEquals(vector, segment.vector(i)) }
+        assertEquals(4f + 4.5f * 2 - 4f * 3, segment.dot(4, floatArrayOf(1f, 2f, 3f), SimilarityKernels.default), 1e-6f)
+        assertEquals(1f * 4f + 1.5f * 4.5f + 1f * 4f, segment.dot(1, segment, 4, SimilarityKernels.default), 1e-6f)
+    }
+
+    @Test
+    fun `open should reject a truncated vector file`() {
+        val vectors = listOf(floatArrayOf(1f, 2f), floatArrayOf(3f, 4f))
+        EmbeddingSegment.write(dir, "file-1", emptyMap(), listOf(SegmentChunk("c1", "x"), SegmentChunk("c2", "y")), vectors, objectMapper)
+        val path = EmbeddingSegment.vectorPath(dir, "file-1")
+        Files.write(path, Files.readAllBytes(path).copyOf(Files.size(path).toInt() - Float.SIZE_BYTES))
+
+        assertThrows<IllegalStateException> { EmbeddingSegment.open(dir, "file-1", objectMapper) }
+    }
+
+    @Test
+    fun `delete should remove both files`() {
+        EmbeddingSegment.write(dir, "file-1", emptyMap(), listOf(SegmentChunk("c1", "x")), listOf(floatArrayOf(1f)), objectMapper)
+        assertTrue(EmbeddingSegment.exists(dir, "file-1"))
+
+        assertTrue(EmbeddingSegment.delete(dir, "file-1"))
+
+        assertFalse(Files.exists(EmbeddingSegment.vectorPath(dir, "file-1")))
+        assertFalse(Files.exists(EmbeddingSegment.sidecarPath(dir, "file-1")))
+        assertNull(EmbeddingSegment.open(dir, "file-1", objectMapper))
+    }
+
+    @Test
+    fun `migrator should convert legacy json embeddings`() {
+        val legacy =
+            """
+            {
+              "fileId": "legacy",
+              "metadata": {"filename": "legacy.txt"},
+              "chunks": [
+                {"fileId": "legacy", "chunkId": "c1", "content": "hello", "embedding": [0.5, 0.25], "chunkMetadata": {"chunk_index": 0}}
+              ]
+            }
+            """.trimIndent()
+        Files.writeString(dir.resolve("embeddings-legacy.json"), legacy)
+
+        assertEquals(1, EmbeddingSegmentMigrator.migrate(dir, objectMapper))
+        assertEquals(0, EmbeddingSegmentMigrator.migrate(dir, objectMapper), "Migration should be idempotent")
+
+        val segment = EmbeddingSegment.open(dir, "legacy", objectMapper)
+        assertNotNull(segment)
+        assertEquals("legacy.txt", segment.metadata["filename"])
+        assertEquals("hello", segment.chunks.single().content)
+        assertContentEquals(SimilarityKernels.default.normalize(floatArrayOf(0.5f, 0.25f)), segment.vector(0))
+    }
+}
@@ -3,6 +3,7 @@ package ai.masaic.openresponses.api.service
 import ai.masaic.openresponses.api.config.FileStorageProperties
 import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
 import ai.masaic.openresponses.api.service.embedding.EmbeddingService
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
 import ai.masaic.openresponses.api.service.search.FileBasedVectorSearchProvider
 import ai.masaic.openresponses.api.service.search.HybridSearchServiceHelper
 import com.fasterxml.jackson.databind.ObjectMapper
@@ -40,13 +41,14 @@ class FileBasedVectorSearchProviderIntegrationTest {
 
         // Configure the embedding service to always return the same embedding and similarity score
         // This ensures searches are predictable based on mocked similarity rather than actual text matching
-        every { embeddingService.embedText(any<String>()) } returns listOf(0.1f, 0.2f, 0.3f)
-        every { embeddingService.embedTexts(any()) } returns
+        every { embeddingService.embedTextAsArray(any()) } returns floatArrayOf(0.1f, 0.2f, 0.3f)
+        every { embeddingService.embedTextsAsArrays(any()) } returns
             listOf(
-                listOf(0.1f, 0.2f, 0.3f),
-                listOf(0.4f, 0.5f, 0.6f),
+                floatArrayOf(0.1f, 0.2f, 0.3f),
+                floatArrayOf(0.4f, 0.5f, 0.6f),
             )
-        every { embeddingService.calculateSimilarity(any<List<Float>>(), any<List<Float>>()) } returns 0.85f
+        every { embeddingService.similarityKernel } returns SimilarityKernels.default
+        every { embeddingService.dotAll(any(), any()) } answers { FloatArray(secondArg<Array<FloatArray>>().size) { 0.85f } }
 
         // Create vector search properties with default values
         vectorSearchProperties =
@@ -76,8 +78,7 @@ class FileBasedVectorSearchProviderIntegrationTest {
     fun cleanup() {
         // Clean up test files
         if (Files.exists(tempDir.resolve("embeddings"))) {
-            Files.list(tempDir.resolve("embeddings")).forEach { Files.deleteIfExists(it) }
-            Files.deleteIfExists(tempDir.resolve("embeddings"))
+            tempDir.resolve("embeddings").toFile().deleteRecursively()
         }
     }
 
@@ -110,7 +111,7 @@ class FileBasedVectorSearchProviderIntegrationTest {
         assertEquals(fileId, results2[0].fileId, "Should return the same file ID")
 
         // Verify the embeddings file exists on disk
-        val embeddingsFile = tempDir.resolve("embeddings").resolve("embeddings-$fileId.json")
+        val embeddingsFile = tempDir.resolve("embeddings").resolve("test").resolve("embeddings-$fileId.json")
         assertTrue(Files.exists(embeddingsFile), "Embeddings file should exist on disk")
     }
 
@@ -211,7 +212,7 @@ class FileBasedVectorSearchProviderIntegrationTest {
         )
 
         // Verify the file is gone from disk
-        val embeddingsFile = tempDir.resolve("embeddings").resolve("embeddings-$fileId.json")
+        val embeddingsFile = tempDir.resolve("embeddings").resolve("test").resolve("embeddings-$fileId.json")
         assertTrue(!Files.exists(embeddingsFile), "Embeddings file should be deleted from disk")
     }
 }
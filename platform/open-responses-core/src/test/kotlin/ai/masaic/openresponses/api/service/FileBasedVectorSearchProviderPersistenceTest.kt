@@ -4,6 +4,7 @@ import ai.masaic.openresponses.api.config.FileStorageProperties
 import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
 import ai.masaic.openresponses.api.model.ComparisonFilter
 import ai.masaic.openresponses.api.service.embedding.EmbeddingService
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
 import ai.masaic.openresponses.api.service.search.FileBasedVectorSearchProvider
 import ai.masaic.openresponses.api.service.search.HybridSearchServiceHelper
 import com.fasterxml.jackson.databind.ObjectMapper
@@ -60,13 +61,14 @@ class FileBasedVectorSearchProviderPersistenceTest {
         // Create mocks and configuration that will be used for all tests
         embeddingService = mockk()
         hybridSearchServiceHelper = mockk(relaxed = true)
-        every { embeddingService.embedText(any<String>()) } returns listOf(0.1f, 0.2f, 0.3f)
-        every { embeddingService.embedTexts(any()) } returns
+        every { embeddingService.embedTextAsArray(any()) } returns floatArrayOf(0.1f, 0.2f, 0.3f)
+        every { embeddingService.embedTextsAsArrays(any()) } returns
             listOf(
-                listOf(0.1f, 0.2f, 0.3f),
-                listOf(0.4f, 0.5f, 0.6f),
+                floatArrayOf(0.1f, 0.2f, 0.3f),
+                floatArrayOf(0.4f, 0.5f, 0.6f),
             )
-        every { embeddingService.calculateSimilarity(any<List<Float>>(), any<List<Float>>()) } returns 0.85f
+        every { embeddingService.similarityKernel } returns SimilarityKernels.default
+        every { embeddingService.dotAll(any(), any()) } answers { FloatArray(secondArg<Array<FloatArray>>().size) { 0.85f } }
 
         vectorSearchProperties =
             VectorSearchConfigProperties(
@@ -85,8 +87,7 @@ class FileBasedVectorSearchProviderPersistenceTest {
     fun cleanup() {
         // Final cleanup after all tests
         if (Files.exists(tempDirPath.resolve("embeddings"))) {
-            Files.list(tempDirPath.resolve("embeddings")).forEach { Files.deleteIfExists(it) }
-            Files.deleteIfExists(tempDirPath.resolve("embeddings"))
+            tempDirPath.resolve("embeddings").toFile().deleteRecursively()
         }
     }
 
@@ -118,7 +119,7 @@ class FileBasedVectorSearchProviderPersistenceTest {
         assertEquals(2, results.size, "Should find both indexed documents")
 
         // Verify files were created on disk
-        val embeddingsDir = tempDirPath.resolve("embeddings")
+        val embeddingsDir = tempDirPath.resolve("embeddings").resolve("test")
         assertTrue(Files.exists(embeddingsDir.resolve("embeddings-$fileId1.json")), "First embeddings file should exist")
         assertTrue(Files.exists(embeddingsDir.resolve("embeddings-$fileId2.json")), "Second embeddings file should exist")
     }
@@ -189,7 +190,7 @@ class FileBasedVectorSearchProviderPersistenceTest {
         assertEquals(fileId2, results[0].fileId, "Should only return the second file ID")
 
         // Verify first file was deleted from disk
-        val embeddingsDir = tempDirPath.resolve("embeddings")
+        val embeddingsDir = tempDirPath.resolve("embeddings").resolve("test")
         assertTrue(!Files.exists(embeddingsDir.resolve("embeddings-$fileId1.json")), "First embeddings file should be deleted")
         assertTrue(Files.exists(embeddingsDir.resolve("embeddings-$fileId2.json")), "Second embeddings file should still exist")
     }
@@ -4,10 +4,14 @@ import ai.masaic.openresponses.api.config.FileStorageProperties
 import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
 import ai.masaic.openresponses.api.model.ChunkingStrategy
 import ai.masaic.openresponses.api.model.ComparisonFilter
+import ai.masaic.openresponses.api.model.CompoundFilter
 import ai.masaic.openresponses.api.model.StaticChunkingConfig
 import ai.masaic.openresponses.api.service.embedding.EmbeddingService
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
+import ai.masaic.openresponses.api.service.search.EmbeddingSegment
 import ai.masaic.openresponses.api.service.search.FileBasedVectorSearchProvider
 import ai.masaic.openresponses.api.service.search.HybridSearchServiceHelper
+import ai.masaic.openresponses.api.service.search.SegmentChunk
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
 import io.mockk.every
@@ -43,13 +47,14 @@ class FileBasedVectorSearchProviderTest {
         hybridSearchServiceHelper = mockk(relaxed = true)
 
         // Configure default behavior
-        every { embeddingService.embedText(any()) } returns listOf(0.1f, 0.2f, 0.3f)
-        every { embeddingService.embedTexts(any()) } returns
+        every { embeddingService.embedTextAsArray(any()) } returns floatArrayOf(0.1f, 0.2f, 0.3f)
+        every { embeddingService.embedTextsAsArrays(any()) } returns
             listOf(
-                listOf(0.1f, 0.2f, 0.3f),
-                listOf(0.4f, 0.5f, 0.6f),
+                floatArrayOf(0.1f, 0.2f, 0.3f),
+                floatArrayOf(0.4f, 0.5f, 0.6f),
             )
-        every { embeddingService.calculateSimilarity(any(), any()) } returns 0.85f
+        every { embeddingService.similarityKernel } returns SimilarityKernels.default
+        every { embeddingService.dotAll(any(), any()) } answers { FloatArray(secondArg<Array<FloatArray>>().size) { 0.85f } }
 
         // Create vector search properties with default values
         vectorSearchProperties =
@@ -76,7 +81,7 @@ class FileBasedVectorSearchProviderTest {
     fun cleanup() {
         // Clean up any files created during tests
         if (Files.exists(tempDir.resolve("embeddings"))) {
-            Files.list(tempDir.resolve("embeddings")).forEach { Files.deleteIfExists(it) }
+            tempDir.resolve("embeddings").toFile().deleteRecursively()
         }
     }
 
@@ -93,10 +98,10 @@ class FileBasedVectorSearchProviderTest {
 
         // Then
         assertTrue(result, "File should be successfully indexed")
-        verify { embeddingService.embedTexts(any()) }
+        verify { embeddingService.embedTextsAsArrays(any()) }
 
         // Check that the embeddings file was created
-        val embeddingsFile = tempDir.resolve("embeddings").resolve("embeddings-$fileId.json")
+        val embeddingsFile = tempDir.resolve("embeddings").resolve("test").resolve("embeddings-$fileId.json")
         assertTrue(Files.exists(embeddingsFile), "Embeddings file should exist")
     }
 
@@ -122,6 +127,25 @@ class FileBasedVectorSearchProviderTest {
         assertEquals(0.85f.toDouble(), results[0].score, "Score should match the mocked similarity")
     }
 
+    @Test
+    fun `searchSimilar should return rescored results from quantized vector stores`() {
+        // Given
+        vectorSearchProvider.configureVectorStore("quantized-store", mapOf("quantization" to "int8"))
+        val fileId = "quantized-file"
+        val inputStream = ByteArrayInputStream("This is a test document for quantized indexing.".toByteArray())
+        runBlocking { vectorSearchProvider.indexFile(fileId, inputStream, "test.txt", null, "quantized-store") }
+
+        // When
+        val results = vectorSearchProvider.searchSimilar("test document", rankingOptions = null)
+
+        // Then
+        assertEquals(1, results.size, "Should return one result")
+        assertEquals(fileId, results[0].fileId)
+        assertEquals(0.85f.toDouble(), results[0].score, "Score should come from the full-precision re-scoring")
+        val sidecar = tempDir.resolve("embeddings").resolve("quantized-store").resolve("embeddings-$fileId.json")
+        assertTrue(Files.readString(sidecar).contains("INT8"), "Sidecar should record the quantization mode")
+    }
+
     @Test
     fun `searchSimilar should apply filters correctly`() {
         // Given
@@ -148,6 +172,76 @@ class FileBasedVectorSearchProviderTest {
         assertEquals(fileId1, results[0].fileId, "Result should be the filtered file ID")
     }
 
+    @Test
+    fun `searchSimilar should resolve attribute filters through the attribute index`() {
+        // Given
+        runBlocking { vectorSearchProvider.indexFile("file-1", ByteArrayInputStream("Old document.".toByteArray()), "doc1.txt", null, mapOf("year" to 2021, "team" to "red"), "test") }
+        runBlocking { vectorSearchProvider.indexFile("file-2", ByteArrayInputStream("New document.".toByteArray()), "doc2.txt", null, mapOf("year" to 2024, "team" to "blue"), "test") }
+        runBlocking { vectorSearchProvider.indexFile("file-3", ByteArrayInputStream("Newest document.".toByteArray()), "doc3.txt", null, mapOf("year" to 2025, "team" to "red"), "test") }
+
+        // When
+        val filter =
+            CompoundFilter(
+                type = "and",
+                filters =
+                    listOf(
+                        ComparisonFilter(key = "year", type = "gte", value = 2022),
+                        ComparisonFilter(key = "team", type = "in", value = listOf("red", "green")),
+                    ),
+            )
+        val results = vectorSearchProvider.searchSimilar(query = "document", rankingOptions = null, filter = filter)
+
+        // Then
+        assertEquals(listOf("file-3"), results.map { it.fileId })
+    }
+
+    @Test
+    fun `searchSimilar should only search the partitions of the requested vector stores`() {
+        // Given
+        runBlocking { vectorSearchProvider.indexFile("file-a", ByteArrayInputStream("Store A document.".toByteArray()), "a.txt", null, "store-a") }
+        runBlocking { vectorSearchProvider.indexFile("file-b", ByteArrayInputStream("Store B document.".toByteArray()), "b.txt", null, "store-b") }
+
+        // When
+        val results =
+            vectorSearchProvider.searchSimilar(
+                query = "document",
+                rankingOptions = null,
+                filter = ComparisonFilter(key = "vector_store_id", type = "eq", value = "store-a"),
+            )
+
+        // Then
+        assertEquals(listOf("file-a"), results.map { it.fileId })
+        assertTrue(Files.exists(tempDir.resolve("embeddings").resolve("store-b").resolve("embeddings-file-b.vec")))
+    }
+
+    @Test
+    fun `provider should move unpartitioned segments into their vector store partition`() {
+        // Given a segment written before storage was partitioned
+        val embeddingsRoot = tempDir.resolve("embeddings")
+        EmbeddingSegment.write(
+            dir = embeddingsRoot,
+            fileId = "legacy-file",
+            metadata = mapOf("filename" to "legacy.txt"),
+            chunks = listOf(SegmentChunk("c1", "legacy content", mapOf("vector_store_id" to "legacy-store"))),
+            vectors = listOf(floatArrayOf(0.1f, 0.2f, 0.3f)),
+            objectMapper = objectMapper,
+        )
+
+        // When
+        val provider = FileBasedVectorSearchProvider(embeddingService, objectMapper, fileStorageProperties, hybridSearchServiceHelper)
+
+        // Then
+        assertFalse(EmbeddingSegment.exists(embeddingsRoot, "legacy-file"))
+        assertTrue(EmbeddingSegment.exists(embeddingsRoot.resolve("legacy-store"), "legacy-file"))
+        val results =
+            provider.searchSimilar(
+                query = "legacy",
+                rankingOptions = null,
+                filter = ComparisonFilter(key = "vector_store_id", type = "eq", value = "legacy-store"),
+            )
+        assertEquals(listOf("legacy-file"), results.map { it.fileId })
+    }
+
     @Test
     fun `deleteFile should remove file from index and filesystem`() {
         // Given
@@ -156,7 +250,7 @@ class FileBasedVectorSearchProviderTest {
         runBlocking { vectorSearchProvider.indexFile(fileId, ByteArrayInputStream(content.toByteArray()), "test.txt", null, "test") }
 
         // Verify file exists before deletion
-        val embeddingsFile = tempDir.resolve("embeddings").resolve("embeddings-$fileId.json")
+        val embeddingsFile = tempDir.resolve("embeddings").resolve("test").resolve("embeddings-$fileId.json")
         assertTrue(Files.exists(embeddingsFile), "Embeddings file should exist before deletion")
 
         // When
@@ -236,7 +330,7 @@ class FileBasedVectorSearchProviderTest {
 
         // All embeddings files should exist
         fileIds.forEach { fileId ->
-            val embeddingsFile = tempDir.resolve("embeddings").resolve("embeddings-$fileId.json")
+            val embeddingsFile = tempDir.resolve("embeddings").resolve("test").resolve("embeddings-$fileId.json")
             assertTrue(Files.exists(embeddingsFile), "Embeddings file should exist for $fileId")
         }
     }
@@ -249,7 +343,7 @@ class FileBasedVectorSearchProviderTest {
         val inputStream = ByteArrayInputStream(content.toByteArray())
 
         // Mock embedding service to throw exception
-        every { embeddingService.embedTexts(any()) } throws RuntimeException("Embedding service error")
+        every { embeddingService.embedTextsAsArrays(any()) } throws RuntimeException("Embedding service error")
 
         // When
         val result = runBlocking { vectorSearchProvider.indexFile(fileId, inputStream, "error-test.txt", null, "test") }
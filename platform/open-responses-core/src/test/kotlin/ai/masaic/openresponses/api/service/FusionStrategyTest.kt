@@ -0,0 +1,111 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.model.VectorStoreSearchResult
+import ai.masaic.openresponses.api.model.VectorStoreSearchResultContent
+import ai.masaic.openresponses.api.service.search.FusionStrategy
+import ai.masaic.openresponses.api.service.search.HybridMerge
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import kotlin.math.sqrt
+import kotlin.test.assertEquals
+
+class FusionStrategyTest {
+    private fun result(
+        chunkId: String?,
+        score: Double,
+        fileId: String = "f1",
+        chunkIndex: Int? = null,
+    ) = VectorStoreSearchResult(
+        fileId = fileId,
+        filename = "$fileId.txt",
+        score = score,
+        content = listOf(VectorStoreSearchResultContent("text", "content $chunkId")),
+        attributes = listOfNotNull(chunkId?.let { "chunk_id" to it }, chunkIndex?.let { "chunk_index" to it }).toMap(),
+    )
+
+    private fun ids(results: List<VectorStoreSearchResult>) = results.map { it.attributes?.get("chunk_id") }
+
+    @Test
+    fun `parse should accept every supported spec`() {
+        assertEquals(FusionStrategy.Linear, FusionStrategy.parse("linear"))
+        assertEquals(FusionStrategy.ZScore, FusionStrategy.parse("Z-Score"))
+        assertEquals(FusionStrategy.ReciprocalRank(60), FusionStrategy.parse("rrf"))
+        assertEquals(FusionStrategy.ReciprocalRank(10), FusionStrategy.parse(" rrf:10 "))
+    }
+
+    @Test
+    fun `parse should reject unknown specs`() {
+        assertThrows<IllegalArgumentException> { FusionStrategy.parse("max") }
+        assertThrows<IllegalArgumentException> { FusionStrategy.parse("rrf:abc") }
+        assertThrows<IllegalArgumentException> { FusionStrategy.parse("rrf:0") }
+    }
+
+    @Test
+    fun `merge should combine legs by chunk id and keep the first text score`() {
+        val merge =
+            HybridMerge.of(
+                listOf(result("a", 0.9), result("b", 0.5)),
+                listOf(result("b", 7.0), result("c", 3.0)),
+                listOf(result("b", 1.0), result("c", 2.0), result("d", 1.5)),
+            )
+
+        assertEquals(listOf("a", "b", "c", "d"), ids(merge.results))
+        assertEquals(listOf(0, 1, -1, -1), merge.vectorRanks.toList())
+        assertEquals(listOf(-1, 0, 1, 2), merge.textRanks.toList())
+        assertEquals(7.0, merge.textScores[1])
+        assertEquals(3.0, merge.textScores[2])
+        assertEquals(1.5, merge.textScores[3])
+    }
+
+    @Test
+    fun `merge should fall back to file id and chunk index`() {
+        val merge =
+            HybridMerge.of(
+                listOf(result(null, 0.9, fileId = "f1", chunkIndex = 0), result(null, 0.8, fileId = "f2", chunkIndex = 0)),
+                listOf(result(null, 4.0, fileId = "f1", chunkIndex = 0)),
+            )
+
+        assertEquals(2, merge.size)
+        assertEquals(4.0, merge.textScores[0])
+    }
+
+    @Test
+    fun `linear fusion should blend max-normalized scores`() {
+        val merge = HybridMerge.of(listOf(result("a", 0.8), result("b", 0.4)), listOf(result("b", 10.0)))
+
+        val scores = FusionStrategy.Linear.fuse(merge, 0.5)
+
+        assertEquals(0.5, scores[0], 1e-9)
+        assertEquals(0.5 * 0.5 + 0.5 * 1.0, scores[1], 1e-9)
+    }
+
+    @Test
+    fun `rrf should rank by position regardless of score scale`() {
+        val merge =
+            HybridMerge.of(
+                listOf(result("a", 0.91), result("b", 0.90), result("c", 0.89)),
+                listOf(result("c", 100.0), result("b", 1.0)),
+            )
+
+        val ranked = merge.ranked(FusionStrategy.ReciprocalRank(60).fuse(merge, 0.5))
+
+        assertEquals(listOf("c", "b", "a"), ids(ranked))
+        assertEquals(0.5 / 63 + 0.5 / 61, ranked.first().score, 1e-12)
+    }
+
+    @Test
+    fun `zscore fusion should standardize each leg and floor missing chunks`() {
+        val merge =
+            HybridMerge.of(
+                listOf(result("a", 0.9), result("b", 0.5), result("c", 0.1)),
+                listOf(result("a", 4.0), result("b", 2.0)),
+            )
+
+        val scores = FusionStrategy.ZScore.fuse(merge, 0.5)
+
+        val vectorZ = 0.4 / sqrt(0.32 / 3)
+        assertEquals(0.5 * vectorZ + 0.5 * 1.0, scores[0], 1e-9)
+        assertEquals(0.5 * 0.0 + 0.5 * -1.0, scores[1], 1e-9)
+        assertEquals(0.5 * -vectorZ + 0.5 * -1.0, scores[2], 1e-9)
+    }
+}
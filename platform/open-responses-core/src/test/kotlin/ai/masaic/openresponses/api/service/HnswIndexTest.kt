@@ -0,0 +1,113 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
+import ai.masaic.openresponses.api.service.search.HnswIndex
+import ai.masaic.openresponses.api.service.search.NodeVectors
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import kotlin.random.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class HnswIndexTest {
+    private val random = Random(7)
+
+    private fun randomVector(dimension: Int) = FloatArray(dimension) { random.nextFloat() * 2 - 1 }
+
+    private fun cosine(
+        a: FloatArray,
+        b: FloatArray,
+    ): Float = SimilarityKernels.default.cosine(a, b)
+
+    @Test
+    fun `search should return the exact match first`() {
+        val index = HnswIndex()
+        val vectors = List(200) { randomVector(16) }
+        vectors.forEach { index.add(it) }
+
+        val results = index.search(vectors[42], k = 5, ef = 50)
+
+        assertEquals(5, results.size)
+        assertEquals(42, results.first().node)
+        assertEquals(1.0f, results.first().score, 1e-4f)
+    }
+
+    @Test
+    fun `search should reach high recall against brute force`() {
+        val dimension = 32
+        val index = HnswIndex(m = 16, efConstruction = 100)
+        val vectors = List(2000) { randomVector(dimension) }
+        vectors.forEach { index.add(it) }
+
+        val k = 10
+        val queries = List(50) { randomVector(dimension) }
+        val hits =
+            queries.sumOf { query ->
+                val expected =
+                    vectors.indices
+                        .sortedByDescending { cosine(query, vectors[it]) }
+                        .take(k)
+                        .toSet()
+                index.search(query, k, ef = 100).count { it.node in expected }
+            }
+
+        val recall = hits.toDouble() / (queries.size * k)
+        assertTrue(recall >= 0.9, "Recall@$k should be at least 0.9 but was $recall")
+    }
+
+    @Test
+    fun `deleted nodes should not be returned`() {
+        val index = HnswIndex()
+        val vectors = List(100) { randomVector(8) }
+        vectors.forEach { index.add(it) }
+
+        index.markDeleted(10)
+        val results = index.search(vectors[10], k = 100, ef = 100)
+
+        assertEquals(99, results.size)
+        assertTrue(results.none { it.node == 10 })
+        assertEquals(1, index.deletedCount)
+        assertEquals(99, index.liveCount)
+    }
+
+    @Test
+    fun `accept predicate should restrict results`() {
+        val index = HnswIndex()
+        val vectors = List(300) { randomVector(8) }
+        vectors.forEach { index.add(it) }
+
+        val results = index.search(vectors[0], k = 10, ef = 20) { it % 50 == 0 }
+
+        assertEquals(6, results.size)
+        assertTrue(results.all { it.node % 50 == 0 })
+    }
+
+    @Test
+    fun `graph should read vectors through the provided node vectors`() {
+        val vectors = List(200) { SimilarityKernels.default.normalize(randomVector(16)) }
+        val nodeVectors =
+            object : NodeVectors {
+                override fun vector(node: Int) = vectors[node]
+
+                override fun dot(
+                    node: Int,
+                    query: FloatArray,
+                ) = SimilarityKernels.default.dot(vectors[node], query)
+
+                override fun dot(
+                    a: Int,
+                    b: Int,
+                ) = SimilarityKernels.default.dot(vectors[a], vectors[b])
+            }
+        val index = HnswIndex(nodeVectors = nodeVectors)
+        repeat(vectors.size) { index.add() }
+
+        assertEquals(42, index.search(vectors[42], k = 1, ef = 50).single().node)
+        assertThrows<IllegalStateException> { index.add(randomVector(16)) }
+    }
+
+    @Test
+    fun `search on empty index should return nothing`() {
+        assertTrue(HnswIndex().search(floatArrayOf(1f, 0f), k = 3, ef = 10).isEmpty())
+    }
+}
@@ -0,0 +1,183 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.config.VectorRepositoryProperties
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
+import ai.masaic.openresponses.api.model.VectorStore
+import ai.masaic.openresponses.api.model.VectorStoreSearchResult
+import ai.masaic.openresponses.api.model.VectorStoreSearchResultContent
+import ai.masaic.openresponses.api.repository.VectorStoreRepository
+import ai.masaic.openresponses.api.service.rerank.RerankerService
+import ai.masaic.openresponses.api.service.search.HybridSearchService
+import ai.masaic.openresponses.api.service.search.LuceneIndexService
+import ai.masaic.openresponses.api.service.search.VectorSearchProvider
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.coEvery
+import io.mockk.coVerify
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.slot
+import io.mockk.verify
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import kotlin.system.measureTimeMillis
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class HybridSearchServiceTest {
+    private lateinit var vectorSearchProvider: VectorSearchProvider
+    private lateinit var luceneIndexService: LuceneIndexService
+    private lateinit var meterRegistry: SimpleMeterRegistry
+
+    @BeforeEach
+    fun setUp() {
+        vectorSearchProvider = mockk()
+        luceneIndexService = mockk()
+        meterRegistry = SimpleMeterRegistry()
+    }
+
+    private fun service(hybrid: VectorSearchConfigProperties.HybridConfig = VectorSearchConfigProperties.HybridConfig()) =
+        HybridSearchService(
+            vectorSearchProvider = vectorSearchProvider,
+            vectorRepositoryProperties = VectorRepositoryProperties(),
+            luceneIndexService = luceneIndexService,
+            searchProperties = VectorSearchConfigProperties(hybrid = hybrid),
+            meterRegistry = meterRegistry,
+        )
+
+    private fun vectorResult(chunkId: String) =
+        VectorSearchProvider.SearchResult(fileId = "f1", score = 0.9, content = "vector $chunkId", metadata = mapOf("chunk_id" to chunkId))
+
+    private fun luceneResult(chunkId: String) =
+        VectorStoreSearchResult(
+            fileId = "f2",
+            filename = "f2.txt",
+            score = 3.0,
+            content = listOf(VectorStoreSearchResultContent("text", "lucene $chunkId")),
+            attributes = mapOf("chunk_id" to chunkId),
+        )
+
+    private fun droppedCount(
+        leg: String,
+        reason: String,
+    ) =
+        meterRegistry.find("hybrid_search.leg.dropped").tags("leg", leg, "reason", reason).counter()?.count() ?: 0.0
+
+    @Test
+    fun `hybridSearch should run the vector and Lucene legs concurrently`() =
+        runBlocking {
+            every { vectorSearchProvider.searchSimilar(any(), any(), any(), any()) } answers {
+                Thread.sleep(400)
+                listOf(vectorResult("v1"))
+            }
+            every { luceneIndexService.search(any(), any(), any()) } answers {
+                Thread.sleep(400)
+                listOf(luceneResult("l1"))
+            }
+
+            lateinit var results: List<VectorStoreSearchResult>
+            val elapsed = measureTimeMillis { results = service().hybridSearch("query", 10, null, listOf("vs1"), modelSettings = null) }
+
+            assertEquals(setOf("v1", "l1"), results.map { it.attributes?.get("chunk_id") }.toSet())
+            assertTrue(elapsed < 750, "Legs should overlap, took ${elapsed}ms")
+        }
+
+    @Test
+    fun `hybridSearch should drop a leg that misses its deadline`() =
+        runBlocking {
+            every { vectorSearchProvider.searchSimilar(any(), any(), any(), any()) } returns listOf(vectorResult("v1"))
+            every { luceneIndexService.search(any(), any(), any()) } answers {
+                Thread.sleep(5000)
+                listOf(luceneResult("l1"))
+            }
+
+            lateinit var results: List<VectorStoreSearchResult>
+            val elapsed =
+                measureTimeMillis {
+                    results =
+                        service(VectorSearchConfigProperties.HybridConfig(luceneTimeoutMillis = 100))
+                            .hybridSearch("query", 10, null, listOf("vs1"), modelSettings = null)
+                }
+
+            assertEquals(listOf("v1"), results.map { it.attributes?.get("chunk_id") })
+            assertTrue(elapsed < 2000, "Search should not wait for the dropped leg, took ${elapsed}ms")
+            assertEquals(1.0, droppedCount("lucene", "timeout"))
+        }
+
+    @Test
+    fun `hybridSearch should continue without a failing text leg`() =
+        runBlocking {
+            every { vectorSearchProvider.searchSimilar(any(), any(), any(), any()) } returns listOf(vectorResult("v1"))
+            every { luceneIndexService.search(any(), any(), any()) } throws IllegalStateException("index unavailable")
+
+            val results = service().hybridSearch("query", 10, null, listOf("vs1"), modelSettings = null)
+
+            assertEquals(listOf("v1"), results.map { it.attributes?.get("chunk_id") })
+            assertEquals(1.0, droppedCount("lucene", "error"))
+        }
+
+    @Test
+    fun `hybridSearch should apply the requested fusion strategy`() =
+        runBlocking {
+            every { vectorSearchProvider.searchSimilar(any(), any(), any(), any()) } returns
+                listOf(vectorResult("a"), vectorResult("b").copy(score = 0.1))
+            every { luceneIndexService.search(any(), any(), any()) } returns listOf(luceneResult("b"))
+
+            val results = service().hybridSearch("query", 10, null, listOf("vs1"), modelSettings = null, fusion = "rrf")
+
+            assertEquals(listOf("b", "a"), results.map { it.attributes?.get("chunk_id") })
+            assertEquals(0.5 / 62 + 0.5 / 61, results.first().score, 1e-12)
+        }
+
+    @Test
+    fun `hybridSearch should read a vector store's fusion metadata once`() =
+        runBlocking {
+            every { vectorSearchProvider.searchSimilar(any(), any(), any(), any()) } returns
+                listOf(vectorResult("a"), vectorResult("b").copy(score = 0.1))
+            every { luceneIndexService.search(any(), any(), any()) } returns listOf(luceneResult("b"))
+            val repository = mockk<VectorStoreRepository>()
+            coEvery { repository.findVectorStoreById("vs1") } returns VectorStore(id = "vs1", name = "store", metadata = mapOf("fusion" to "rrf"))
+            val service =
+                HybridSearchService(
+                    vectorSearchProvider = vectorSearchProvider,
+                    vectorRepositoryProperties = VectorRepositoryProperties(),
+                    luceneIndexService = luceneIndexService,
+                    meterRegistry = meterRegistry,
+                    vectorStoreRepository = repository,
+                )
+
+            repeat(3) {
+                val results = service.hybridSearch("query", 10, null, listOf("vs1"), modelSettings = null)
+                assertEquals(0.5 / 62 + 0.5 / 61, results.first().score, 1e-12)
+            }
+
+            coVerify(exactly = 1) { repository.findVectorStoreById("vs1") }
+        }
+
+    @Test
+    fun `hybridSearch should let the reranker promote a candidate fused below maxResults`() =
+        runBlocking {
+            every { vectorSearchProvider.searchSimilar(any(), any(), any(), any()) } returns
+                listOf(vectorResult("a"), vectorResult("b").copy(score = 0.5), vectorResult("c").copy(score = 0.1))
+            every { luceneIndexService.search(any(), any(), any()) } returns emptyList()
+            val reranker = mockk<RerankerService>()
+            val candidates = slot<List<VectorStoreSearchResult>>()
+            every { reranker.maxCandidates } returns 3
+            // The cross-encoder's best hit is the one fused last
+            coEvery { reranker.rerank(any(), capture(candidates), any()) } answers { candidates.captured.reversed() }
+            val service =
+                HybridSearchService(
+                    vectorSearchProvider = vectorSearchProvider,
+                    vectorRepositoryProperties = VectorRepositoryProperties(),
+                    luceneIndexService = luceneIndexService,
+                    rerankerService = reranker,
+                    meterRegistry = meterRegistry,
+                )
+
+            val results = service.hybridSearch("query", 2, null, listOf("vs1"), modelSettings = null)
+
+            assertEquals(listOf("a", "b", "c"), candidates.captured.map { it.attributes?.get("chunk_id") })
+            assertEquals(listOf("c", "b"), results.map { it.attributes?.get("chunk_id") })
+            verify { luceneIndexService.search("query", 3, listOf("vs1")) }
+        }
+}
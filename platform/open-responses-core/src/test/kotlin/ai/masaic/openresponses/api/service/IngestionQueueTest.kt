@@ -0,0 +1,126 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.config.VectorSearchConfigProperties
+import ai.masaic.openresponses.api.exception.IngestionQueueFullException
+import ai.masaic.openresponses.api.service.search.IngestionQueue
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.Collections
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class IngestionQueueTest {
+    private val meterRegistry = SimpleMeterRegistry()
+    private val order = Collections.synchronizedList(mutableListOf<String>())
+    private var queue: IngestionQueue? = null
+
+    @AfterEach
+    fun tearDown() {
+        queue?.close()
+    }
+
+    private fun queue(config: VectorSearchConfigProperties.IngestionConfig) = IngestionQueue(config, meterRegistry).also { queue = it }
+
+    /**
+     * Occupies the single worker until the returned gate is completed, so later submissions pile up.
+     */
+    private suspend fun IngestionQueue.blockWorker(): CompletableDeferred<Unit> {
+        val started = CompletableDeferred<Unit>()
+        val gate = CompletableDeferred<Unit>()
+        submit("blocker", "blocker", 0) {
+            started.complete(Unit)
+            gate.await()
+        }
+        started.await()
+        return gate
+    }
+
+    private suspend fun IngestionQueue.submitRecorded(
+        key: String,
+        tenant: String,
+        sizeBytes: Long = 0,
+        done: CompletableDeferred<Unit>? = null,
+    ) = submit(key, tenant, sizeBytes) {
+        order.add(key)
+        done?.complete(Unit)
+    }
+
+    @Test
+    fun `small files should be indexed before large files of the same tenant`() =
+        runBlocking {
+            val queue = queue(VectorSearchConfigProperties.IngestionConfig(workers = 1, smallFileBytes = 100))
+            val gate = queue.blockWorker()
+            val done = CompletableDeferred<Unit>()
+
+            queue.submitRecorded("large-1", "tenant", sizeBytes = 1000)
+            queue.submitRecorded("small", "tenant", sizeBytes = 10)
+            queue.submitRecorded("large-2", "tenant", sizeBytes = 1000, done = done)
+            gate.complete(Unit)
+            withTimeout(5000) { done.await() }
+
+            assertEquals(listOf("small", "large-1", "large-2"), order)
+        }
+
+    @Test
+    fun `tenants should be served round robin`() =
+        runBlocking {
+            val queue = queue(VectorSearchConfigProperties.IngestionConfig(workers = 1))
+            val gate = queue.blockWorker()
+            val done = CompletableDeferred<Unit>()
+
+            queue.submitRecorded("a-1", "a")
+            queue.submitRecorded("a-2", "a")
+            queue.submitRecorded("a-3", "a")
+            queue.submitRecorded("b-1", "b", done = done)
+            gate.complete(Unit)
+            withTimeout(5000) { done.await() }
+
+            assertEquals(listOf("a-1", "b-1"), order.take(2))
+        }
+
+    @Test
+    fun `a full queue should reject new files`() =
+        runBlocking<Unit> {
+            val queue = queue(VectorSearchConfigProperties.IngestionConfig(workers = 1, capacity = 2, enqueueTimeoutMillis = 10))
+            val gate = queue.blockWorker()
+
+            queue.submitRecorded("1", "tenant")
+            queue.submitRecorded("2", "tenant")
+            assertEquals(2, queue.queued)
+
+            assertThrows<IngestionQueueFullException> { runBlocking { queue.submitRecorded("3", "tenant") } }
+            assertEquals(1.0, meterRegistry.counter("vector_store.ingestion.rejected").count())
+            gate.complete(Unit)
+        }
+
+    @Test
+    fun `a waiting file should not be queued twice`() =
+        runBlocking<Unit> {
+            val queue = queue(VectorSearchConfigProperties.IngestionConfig(workers = 1))
+            val gate = queue.blockWorker()
+
+            assertTrue(queue.submitRecorded("file", "tenant"))
+            assertFalse(queue.submitRecorded("file", "tenant"))
+            assertEquals(1, queue.queued)
+            gate.complete(Unit)
+        }
+
+    @Test
+    fun `a failing file should not stop the worker`() =
+        runBlocking {
+            val queue = queue(VectorSearchConfigProperties.IngestionConfig(workers = 1))
+            val done = CompletableDeferred<Unit>()
+
+            queue.submit("bad", "tenant", 0) { throw IllegalStateException("parse error") }
+            queue.submitRecorded("good", "tenant", done = done)
+            withTimeout(5000) { done.await() }
+
+            assertEquals(listOf("good"), order)
+        }
+}
@@ -6,6 +6,8 @@ import ai.masaic.openresponses.api.service.search.LuceneChunk
 import ai.masaic.openresponses.api.service.search.LuceneIndexService
 import org.junit.jupiter.api.*
 import java.io.File
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.test.assertEquals
 import kotlin.test.assertTrue
 
@@ -16,14 +18,17 @@ class LuceneIndexServiceTest {
     @BeforeEach
     fun setUp() {
         tempDir = createTempDir(prefix = "lucene_test_")
-        service = LuceneIndexService(FileStorageProperties())
+        service = LuceneIndexService(storageProperties())
     }
 
     @AfterEach
     fun tearDown() {
+        service.close()
         tempDir.deleteRecursively()
     }
 
+    private fun storageProperties() = FileStorageProperties(local = FileStorageProperties.LocalStorageConfig(rootDir = tempDir.absolutePath))
+
     @Test
     fun testIndexAndSearchSingleChunk() {
         val chunk =
@@ -69,4 +74,105 @@ class LuceneIndexServiceTest {
         assertEquals(1, resultsVs2.size)
         assertEquals("vs2", resultsVs2.first().attributes?.get("vector_store_id"))
     }
+
+    @Test
+    fun testConcurrentBatchesShareTheWriter() {
+        val threads =
+            (0 until 8).map { batch ->
+                Thread {
+                    service.indexChunks(
+                        (0 until 10).map { i -> LuceneChunk("c$batch-$i", "f$batch", "file$batch.txt", "vs1", i, "Shared keyword batch $batch") },
+                    )
+                }
+            }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+
+        assertEquals(80, service.search("keyword", 100).size)
+    }
+
+    @Test
+    fun testChunksSurviveRestart() {
+        service.indexChunks(listOf(LuceneChunk("c1", "f1", "file.txt", "vs1", 0, "Persistent content")))
+        service.close()
+
+        service = LuceneIndexService(storageProperties())
+
+        assertEquals(listOf("f1"), service.search("persistent", 10).map { it.fileId })
+    }
+
+    @Test
+    fun testReindexingAChunkReplacesIt() {
+        service.indexChunks(listOf(LuceneChunk("c1", "f1", "file.txt", "vs1", 0, "Original wording")))
+        service.indexChunks(listOf(LuceneChunk("c1", "f1", "file.txt", "vs1", 0, "Revised wording")))
+
+        val results = service.search("wording", 10)
+
+        assertEquals(1, results.size)
+        assertEquals("Revised wording", results.first().content.first().text)
+    }
+
+    @Test
+    fun testReindexingAFileReplacesItsChunksInThatStoreOnly() {
+        service.indexChunks((0 until 3).map { LuceneChunk("old-$it", "f1", "file.txt", "vs1", it, "Stale passage $it") })
+        service.indexChunks(listOf(LuceneChunk("other", "f1", "file.txt", "vs2", 0, "Stale passage elsewhere")))
+
+        // Chunk IDs are new on every indexing
+        service.indexChunks((0 until 2).map { LuceneChunk("new-$it", "f1", "file.txt", "vs1", it, "Fresh passage $it") })
+
+        assertEquals(listOf("new-0", "new-1"), service.search("passage", 10, listOf("vs1")).map { it.attributes?.get("chunk_id") }.sortedBy { it.toString() })
+        assertEquals(listOf("other"), service.search("stale", 10).map { it.attributes?.get("chunk_id") })
+    }
+
+    @Test
+    fun testSearchesNeverSeeAFileMidReplacement() {
+        service.indexChunks(listOf(LuceneChunk("c0", "f1", "file.txt", "vs1", 0, "Steady passage")))
+        val emptySearches = AtomicInteger()
+        val done = AtomicBoolean()
+        val searcher =
+            Thread {
+                while (!done.get()) {
+                    if (service.search("steady", 10, listOf("vs1")).isEmpty()) emptySearches.incrementAndGet()
+                }
+            }
+        searcher.start()
+
+        repeat(200) { service.indexChunks(listOf(LuceneChunk("c${it + 1}", "f1", "file.txt", "vs1", 0, "Steady passage"))) }
+        done.set(true)
+        searcher.join()
+
+        assertEquals(0, emptySearches.get())
+    }
+
+    @Test
+    fun testDeleteByFileIdAndVectorStoreId() {
+        service.indexChunks(
+            listOf(
+                LuceneChunk("c1", "f1", "file1.txt", "vs1", 0, "Shared topic one"),
+                LuceneChunk("c2", "f1", "file1.txt", "vs2", 0, "Shared topic one"),
+                LuceneChunk("c3", "f2", "file2.txt", "vs1", 0, "Shared topic two"),
+                LuceneChunk("c4", "f3", "file3.txt", "vs3", 0, "Shared topic three"),
+            ),
+        )
+
+        service.deleteByFileId("f1", "vs1")
+        assertEquals(listOf("c2", "c3", "c4"), service.search("topic", 10).map { it.attributes?.get("chunk_id") }.sortedBy { it.toString() })
+
+        service.deleteByFileId("f1")
+        service.deleteByVectorStoreId("vs1")
+        assertEquals(listOf("f3"), service.search("topic", 10).map { it.fileId })
+    }
+
+    @Test
+    fun testStatsReportDeletedDocuments() {
+        service.indexChunks((0 until 4).map { LuceneChunk("c$it", "f$it", "file$it.txt", "vs1", 0, "Document $it") })
+        service.deleteByFileId("f0")
+
+        val stats = service.stats()
+
+        assertEquals(3, stats.numDocs)
+        assertEquals(1, stats.deletedDocs)
+        assertEquals(0.25, stats.deletedRatio)
+        assertTrue(stats.sizeInBytes > 0)
+    }
 }
@@ -23,10 +23,10 @@ class OpenAIEmbeddingServiceTest {
                         every { content() } returns
                             listOf(
                                 mockk {
-                                    every { vectorAsList() } returns listOf(0.1f, 0.2f, 0.3f)
+                                    every { vector() } returns listOf(0.1f, 0.2f, 0.3f).toFloatArray()
                                 },
                                 mockk {
-                                    every { vectorAsList() } returns listOf(0.4f, 0.5f, 0.6f)
+                                    every { vector() } returns listOf(0.4f, 0.5f, 0.6f).toFloatArray()
                                 },
                             )
                     }
@@ -55,7 +55,7 @@ class OpenAIEmbeddingServiceTest {
         val expectedEmbedding = listOf(0.1f, 0.2f, 0.3f)
         val embeddingResult =
             mockk<Embedding> {
-                every { vectorAsList() } returns expectedEmbedding
+                every { vector() } returns expectedEmbedding.toFloatArray()
             }
         
         every { 
@@ -82,11 +82,11 @@ class OpenAIEmbeddingServiceTest {
         
         val embeddingResult1 =
             mockk<Embedding> {
-                every { vectorAsList() } returns embedding1
+                every { vector() } returns embedding1.toFloatArray()
             }
         val embeddingResult2 =
             mockk<Embedding> {
-                every { vectorAsList() } returns embedding2
+                every { vector() } returns embedding2.toFloatArray()
             }
 
         every { 
@@ -134,7 +134,7 @@ class OpenAIEmbeddingServiceTest {
         val expectedEmbedding = listOf(0.0f, 0.0f, 0.0f)
         val embeddingResult =
             mockk<Embedding> {
-                every { vectorAsList() } returns expectedEmbedding
+                every { vector() } returns expectedEmbedding.toFloatArray()
             }
         
         every { 
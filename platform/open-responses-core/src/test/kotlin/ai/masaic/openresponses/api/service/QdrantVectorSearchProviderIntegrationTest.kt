@@ -64,13 +64,13 @@ class QdrantVectorSearchProviderIntegrationTest {
     fun setup() {
         // Mock embedding service to return predictable embeddings
         embeddingService = mockk()
-        every { embeddingService.embedText(any()) } answers { 
+        every { embeddingService.embedTextAsArray(any()) } answers { 
             // Create simple embeddings based on the input text's hashcode
             // This ensures different inputs give different but deterministic embeddings
             val text = firstArg<String>()
             val hashCode = text.hashCode().toFloat()
             val baseValue = (hashCode % 100) / 100f
-            List(384) { i -> (baseValue + (i.toFloat() / 1000f)) % 1f }
+            FloatArray(384) { i -> (baseValue + (i.toFloat() / 1000f)) % 1f }
         }
         
         // Configure vector search properties
@@ -51,11 +51,11 @@ class QdrantVectorSearchProviderTest {
     fun setup() {
         // Mock embedding service
         embeddingService = mockk()
-        every { embeddingService.embedText(any()) } returns listOf(0.1f, 0.2f, 0.3f)
-        every { embeddingService.embedTexts(any()) } returns
+        every { embeddingService.embedTextAsArray(any()) } returns floatArrayOf(0.1f, 0.2f, 0.3f)
+        every { embeddingService.embedTextsAsArrays(any()) } returns
             listOf(
-                listOf(0.1f, 0.2f, 0.3f),
-                listOf(0.4f, 0.5f, 0.6f),
+                floatArrayOf(0.1f, 0.2f, 0.3f),
+                floatArrayOf(0.4f, 0.5f, 0.6f),
             )
 
         hybridSearchServiceHelper = mockk(relaxed = true)
@@ -164,7 +164,7 @@ class QdrantVectorSearchProviderTest {
 
         // Then
         assertTrue(result, "File should be successfully indexed")
-        verify { embeddingService.embedTexts(any()) }
+        verify { embeddingService.embedTextsAsArrays(any()) }
         verify { embeddingStore.addAll(any(), any()) }
     }
 
@@ -230,14 +230,14 @@ class QdrantVectorSearchProviderTest {
         val inputStream = ByteArrayInputStream(content.toByteArray())
 
         // Mock embedding service to throw exception
-        every { embeddingService.embedTexts(any()) } throws RuntimeException("Embedding service error")
+        every { embeddingService.embedTextsAsArrays(any()) } throws RuntimeException("Embedding service error")
         every { embeddingStore.removeAll(ofType<IsEqualTo>()) } just runs
         // When
         val result = runBlocking { vectorSearchProvider.indexFile(fileId, inputStream, "test.txt", null, "test") }
 
         // Then
         assertFalse(result, "Indexing should fail when embedding service throws an error")
-        verify { embeddingService.embedTexts(any()) }
+        verify { embeddingService.embedTextsAsArrays(any()) }
     }
 
     @Test
@@ -277,7 +277,7 @@ class QdrantVectorSearchProviderTest {
 
         // Then
         assertTrue(result, "File should be successfully indexed with custom chunking strategy")
-        verify { embeddingService.embedTexts(any()) }
+        verify { embeddingService.embedTextsAsArrays(any()) }
         verify { embeddingStore.addAll(any(), any()) }
     }
 
@@ -336,7 +336,7 @@ class QdrantVectorSearchProviderTest {
         val query = "test query"
 
         // Mock embedding store to throw exception
-        every { embeddingService.embedText(any()) } throws RuntimeException("Search error")
+        every { embeddingService.embedTextAsArray(any()) } throws RuntimeException("Search error")
 
         // When
         val exception =
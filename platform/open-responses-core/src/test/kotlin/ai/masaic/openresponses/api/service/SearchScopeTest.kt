@@ -0,0 +1,103 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.model.ComparisonFilter
+import ai.masaic.openresponses.api.model.CompoundFilter
+import ai.masaic.openresponses.api.service.search.SearchScope
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class SearchScopeTest {
+    private val userFilter = ComparisonFilter(key = "category", type = "eq", value = "docs")
+
+    @Test
+    fun `or of file_id clauses should become a file id set`() {
+        val fileIdsFilter =
+            CompoundFilter(
+                type = "or",
+                filters = listOf("f1", "f2", "f3").map { ComparisonFilter(key = "file_id", type = "eq", value = it) },
+            )
+
+        val scope = SearchScope.of(CompoundFilter(type = "and", filters = listOf(fileIdsFilter, userFilter)))
+
+        assertEquals(setOf("f1", "f2", "f3"), scope.fileIds)
+        assertNull(scope.vectorStoreIds)
+        assertEquals(userFilter, scope.residual)
+    }
+
+    @Test
+    fun `store and file clauses should select the store and its files`() {
+        val scopeFilter =
+            CompoundFilter(
+                type = "and",
+                filters =
+                    listOf(
+                        ComparisonFilter(key = "vector_store_id", type = "eq", value = "vs_1"),
+                        CompoundFilter(type = "or", filters = listOf("f1", "f2").map { ComparisonFilter(key = "file_id", type = "eq", value = it) }),
+                    ),
+            )
+
+        val scope = SearchScope.of(CompoundFilter(type = "and", filters = listOf(scopeFilter, userFilter)))
+
+        assertEquals(setOf("vs_1"), scope.vectorStoreIds)
+        assertEquals(setOf("f1", "f2"), scope.fileIds)
+        assertEquals(userFilter, scope.residual)
+    }
+
+    @Test
+    fun `vector store search filter should select the store and exclude files that are not completed`() {
+        // The shape built by VectorStoreService.searchVectorStore
+        val scopeFilter =
+            CompoundFilter(
+                type = "and",
+                filters =
+                    listOf(ComparisonFilter(key = "vector_store_id", type = "eq", value = "vs_1")) +
+                        listOf("f1", "f2").map { ComparisonFilter(key = "file_id", type = "ne", value = it) },
+            )
+
+        val scope = SearchScope.of(CompoundFilter(type = "and", filters = listOf(scopeFilter, userFilter)))
+
+        assertEquals(setOf("vs_1"), scope.vectorStoreIds)
+        assertNull(scope.fileIds)
+        assertEquals(setOf("f1", "f2"), scope.excludedFileIds)
+        assertEquals(userFilter, scope.residual)
+        assertTrue(scope.filter!!.matches(mapOf("category" to "docs"), "f3"))
+        assertFalse(scope.filter!!.matches(mapOf("category" to "docs"), "f2"))
+    }
+
+    @Test
+    fun `vector store constraints should be lifted from nested conjunctions`() {
+        val filter =
+            CompoundFilter(
+                type = "and",
+                filters =
+                    listOf(
+                        CompoundFilter(type = "and", filters = listOf(ComparisonFilter(key = "vector_store_id", type = "in", value = listOf("vs_1", "vs_2")))),
+                        ComparisonFilter(key = "vector_store_id", type = "eq", value = "vs_2"),
+                    ),
+            )
+
+        val scope = SearchScope.of(filter)
+
+        assertEquals(setOf("vs_2"), scope.vectorStoreIds)
+        assertNull(scope.fileIds)
+        assertNull(scope.residual)
+        assertNull(scope.filter)
+    }
+
+    @Test
+    fun `mixed or clauses should stay in the residual filter`() {
+        val mixed =
+            CompoundFilter(
+                type = "or",
+                filters = listOf(ComparisonFilter(key = "file_id", type = "eq", value = "f1"), userFilter),
+            )
+
+        val scope = SearchScope.of(mixed)
+
+        assertNull(scope.fileIds)
+        assertEquals(mixed, scope.residual)
+    }
+}
@@ -0,0 +1,78 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.service.embedding.EmbeddingService
+import ai.masaic.openresponses.api.service.embedding.ScalarSimilarityKernel
+import ai.masaic.openresponses.api.service.embedding.SimilarityKernels
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import kotlin.math.sqrt
+import kotlin.random.Random
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class SimilarityKernelTest {
+    private val random = Random(11)
+
+    @Test
+    fun `selected kernels should agree with a reference dot product`() {
+        listOf("auto", "vector", "scalar").forEach { type ->
+            val kernel = SimilarityKernels.select(type)
+            // Odd sizes exercise the tail loops of both kernels
+            listOf(1, 7, 384, 769).forEach { dimension ->
+                val a = FloatArray(dimension) { random.nextFloat() * 2 - 1 }
+                val b = FloatArray(dimension) { random.nextFloat() * 2 - 1 }
+                val expected = a.indices.sumOf { (a[it] * b[it]).toDouble() }.toFloat()
+
+                assertEquals(expected, kernel.dot(a, b), 1e-3f, "${kernel.name} kernel at dimension $dimension")
+            }
+        }
+    }
+
+    @Test
+    fun `normalized vectors should score their cosine with a single dot product`() {
+        val kernel = SimilarityKernels.default
+        val a = floatArrayOf(3f, 4f, 0f)
+        val b = floatArrayOf(4f, 3f, 0f)
+
+        assertEquals(1f, kernel.dot(kernel.normalize(a), kernel.normalize(a)), 1e-6f)
+        assertEquals(kernel.cosine(a, b), kernel.dot(kernel.normalize(a), kernel.normalize(b)), 1e-6f)
+        assertEquals(0.96f, kernel.cosine(a, b), 1e-6f)
+    }
+
+    @Test
+    fun `scoreAll should rank unnormalized rows by cosine while dotAll takes normalized rows`() {
+        val service =
+            object : EmbeddingService {
+                override fun embedTextAsArray(text: String) = FloatArray(0)
+
+                override fun embedTextsAsArrays(texts: List<String>) = emptyList<FloatArray>()
+            }
+        val query = floatArrayOf(1f, 0f)
+        // The long row has the larger dot product but the smaller angle belongs to the short one
+        val rows = arrayOf(floatArrayOf(10f, 10f), floatArrayOf(1f, 0.1f))
+
+        val cosines = service.scoreAll(query, rows)
+
+        assertTrue(cosines[1] > cosines[0])
+        assertEquals(sqrt(0.5f), cosines[0], 1e-6f)
+        val kernel = service.similarityKernel
+        val dots = service.dotAll(kernel.normalize(query), Array(rows.size) { kernel.normalize(rows[it]) })
+        cosines.indices.forEach { assertEquals(cosines[it], dots[it], 1e-6f) }
+    }
+
+    @Test
+    fun `zero vectors should score zero and normalize to themselves`() {
+        val zero = FloatArray(4)
+
+        assertEquals(0f, ScalarSimilarityKernel.cosine(zero, floatArrayOf(1f, 2f, 3f, 4f)))
+        assertContentEquals(zero, ScalarSimilarityKernel.normalize(zero))
+    }
+
+    @Test
+    fun `select should reject unknown kernels`() {
+        assertSame(ScalarSimilarityKernel, SimilarityKernels.select("SCALAR"))
+        assertThrows<IllegalArgumentException> { SimilarityKernels.select("gpu") }
+    }
+}
@@ -0,0 +1,85 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.service.embedding.ScalarSimilarityKernel
+import ai.masaic.openresponses.api.service.search.QuantizationMode
+import ai.masaic.openresponses.api.service.search.QuantizedVectors
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import kotlin.random.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class VectorQuantizationTest {
+    private val random = Random(5)
+
+    private fun randomUnitVector(dimension: Int) = ScalarSimilarityKernel.normalize(FloatArray(dimension) { random.nextFloat() * 2 - 1 })
+
+    @Test
+    fun `int8 first pass with rescoring should keep recall`() {
+        val vectors = List(2000) { randomUnitVector(128) }
+        val codes = QuantizedVectors.of(QuantizationMode.INT8, vectors)
+        val k = 10
+
+        val hits =
+            List(20) { randomUnitVector(128) }.sumOf { query ->
+                val expected = vectors.indices.sortedByDescending { ScalarSimilarityKernel.dot(query, vectors[it]) }.take(k).toSet()
+                val candidates = vectors.indices.sortedByDescending { codes.dot(it, query) }.take(k * 4)
+                val rescored = candidates.sortedByDescending { ScalarSimilarityKernel.dot(query, vectors[it]) }.take(k)
+                rescored.count { it in expected }
+            }
+
+        val recall = hits.toDouble() / (20 * k)
+        assertTrue(recall >= 0.95, "Recall@$k should be at least 0.95 but was $recall")
+    }
+
+    @Test
+    fun `binary codes should rank an identical vector first`() {
+        val vectors = List(500) { randomUnitVector(96) }
+        val codes = QuantizedVectors.of(QuantizationMode.BINARY, vectors)
+
+        val best = vectors.indices.maxBy { codes.dot(it, vectors[123]) }
+
+        assertEquals(123, best)
+        assertEquals(1f, codes.dot(123, codes, 123))
+    }
+
+    @Test
+    fun `code to code dot products should agree with the decoded vectors`() {
+        val vectors = List(50) { randomUnitVector(64) }
+
+        listOf(QuantizationMode.INT8, QuantizationMode.BINARY).forEach { mode ->
+            val codes = QuantizedVectors.of(mode, vectors)
+            for (a in 0 until 10) {
+                for (b in 0 until 10) {
+                    val decoded = ScalarSimilarityKernel.dot(codes.vector(a), codes.vector(b))
+                    assertEquals(decoded, codes.dot(a, codes, b), 1e-4f, "$mode codes $a and $b")
+                    assertEquals(codes.dot(a, codes.vector(b)), codes.dot(a, codes, b), 1e-4f, "$mode codes $a and $b")
+                }
+            }
+            // Decoded vectors stay close to the originals, which the graph relies on
+            assertTrue(ScalarSimilarityKernel.dot(codes.vector(0), vectors[0]) > 0.75f, "$mode decodes too far from the original")
+        }
+    }
+
+    @Test
+    fun `quantized codes should be smaller than float vectors`() {
+        val vectors = List(100) { randomUnitVector(384) }
+        val floatBytes = 100L * 384 * Float.SIZE_BYTES
+
+        val int8 = QuantizedVectors.of(QuantizationMode.INT8, vectors)
+        val binary = QuantizedVectors.of(QuantizationMode.BINARY, vectors)
+
+        assertEquals(100, int8.count)
+        assertEquals(100, binary.count)
+        assertTrue(int8.sizeInBytes * 3.9 <= floatBytes, "int8 codes take ${int8.sizeInBytes} bytes")
+        assertEquals(floatBytes / 32, binary.sizeInBytes)
+    }
+
+    @Test
+    fun `mode names should parse case-insensitively`() {
+        assertEquals(QuantizationMode.INT8, QuantizationMode.from("Int8"))
+        assertEquals(QuantizationMode.BINARY, QuantizationMode.from(" binary "))
+        assertThrows<IllegalArgumentException> { QuantizationMode.from("int4") }
+        assertThrows<IllegalArgumentException> { QuantizedVectors.of(QuantizationMode.NONE, emptyList()) }
+    }
+}
@@ -0,0 +1,59 @@
+package ai.masaic.openresponses.api.service
+
+import ai.masaic.openresponses.api.repository.VectorStoreRepository
+import ai.masaic.openresponses.api.service.search.VectorStoreActivityTracker
+import io.mockk.Runs
+import io.mockk.coEvery
+import io.mockk.coVerify
+import io.mockk.just
+import io.mockk.mockk
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class VectorStoreActivityTrackerTest {
+    private val repository = mockk<VectorStoreRepository>()
+
+    // Long enough that only explicit flushes write
+    private val tracker = VectorStoreActivityTracker(repository, flushIntervalMillis = 3_600_000)
+
+    @AfterEach
+    fun tearDown() {
+        coEvery { repository.updateLastActiveAt(any(), any()) } just Runs
+        tracker.close()
+    }
+
+    @Test
+    fun `touches should be coalesced into one write of the latest time`() =
+        runBlocking {
+            coEvery { repository.updateLastActiveAt(any(), any()) } just Runs
+
+            tracker.touch("vs_1", at = 10)
+            tracker.touch("vs_1", at = 30)
+            tracker.touch("vs_1", at = 20)
+            tracker.touch("vs_2", at = 5)
+            assertEquals(30L, tracker.pendingLastActiveAt("vs_1"))
+
+            assertEquals(2, tracker.flush())
+            assertEquals(0, tracker.flush())
+
+            coVerify(exactly = 1) { repository.updateLastActiveAt("vs_1", 30) }
+            coVerify(exactly = 1) { repository.updateLastActiveAt("vs_2", 5) }
+            assertNull(tracker.pendingLastActiveAt("vs_1"))
+        }
+
+    @Test
+    fun `a failed write should be retried on the next flush`() =
+        runBlocking {
+            coEvery { repository.updateLastActiveAt("vs_1", 10) } throws IllegalStateException("unavailable") andThen Unit
+
+            tracker.touch("vs_1", at = 10)
+
+            assertEquals(0, tracker.flush())
+            assertEquals(10L, tracker.pendingLastActiveAt("vs_1"))
+            assertEquals(1, tracker.flush())
+            coVerify(exactly = 2) { repository.updateLastActiveAt("vs_1", 10) }
+        }
+}
@@ -48,6 +48,9 @@ class VectorStoreServiceTest {
                 coEvery { saveVectorStore(any()) } answers { firstArg() }
                 coEvery { saveVectorStoreFile(any()) } answers { firstArg() }
                 coEvery { deleteVectorStore(any()) } returns true
+                coEvery { findVectorStoreFileById(any(), any()) } returns null
+                coEvery { incrementFileCounts(any(), any(), any()) } returns null
+                coEvery { updateLastActiveAt(any(), any()) } just Runs
                 coEvery { findVectorStoreById(any()) } returns
                     VectorStore(
                         id = "vs_cc4223ea-c516-491f-8a41-96c90f5804e6",
@@ -66,6 +69,9 @@ class VectorStoreServiceTest {
                         ),
                     )
 
+                // No files are in progress, failed or cancelled
+                coEvery { listVectorStoreFiles(any(), any(), any(), any(), any(), isNull(inverse = true)) } returns emptyList()
+
                 coEvery { listVectorStores(any(), any(), any(), any()) } returns
                     listOf(
                         VectorStore(
@@ -90,6 +96,7 @@ class VectorStoreServiceTest {
                 coEvery { getFileAsResource(any()) } returns mockResource
             }
         vectorSearchProvider = mockk()
+        every { vectorSearchProvider.configureVectorStore(any(), any()) } just Runs
         telemetryService = mockk(relaxed = true)
 
         vectorStoreService =
@@ -173,9 +180,9 @@ class VectorStoreServiceTest {
             val request2 = CreateVectorStoreRequest(name = "Vector Store 2")
             val request3 = CreateVectorStoreRequest(name = "Vector Store 3")
             
-            vectorStoreService.createVectorStore(request1)
-            vectorStoreService.createVectorStore(request2)
-            vectorStoreService.createVectorStore(request3)
+            val stores =
+                listOf(request1, request2, request3).map { vectorStoreService.createVectorStore(it) }
+            coEvery { vectorStoreRepository.listVectorStores(3, "desc", null, null) } returns stores
             
             // When
             val response = vectorStoreService.listVectorStores(limit = 2)
@@ -185,6 +192,32 @@ class VectorStoreServiceTest {
             assertTrue(response.hasMore)
         }
 
+    @Test
+    fun `listVectorStores should not report more stores when the last page is exactly full`() =
+        runTest {
+            val stores = List(2) { createTestVectorStore(name = "Store $it") }
+            coEvery { vectorStoreRepository.listVectorStores(3, "desc", null, null) } returns stores
+
+            val response = vectorStoreService.listVectorStores(limit = 2)
+
+            assertEquals(stores.map { it.id }, response.data.map { it.id })
+            assertEquals(false, response.hasMore)
+        }
+
+    @Test
+    fun `listVectorStores should page past the repository limit`() =
+        runTest {
+            val stores = List(150) { createTestVectorStore(id = "vs_$it") }
+            coEvery { vectorStoreRepository.listVectorStores(100, "desc", null, null) } returns stores.take(100)
+            coEvery { vectorStoreRepository.listVectorStores(100, "desc", "vs_99", null) } returns stores.drop(100)
+
+            val response = vectorStoreService.listVectorStores(limit = 100)
+
+            assertEquals(stores.take(100).map { it.id }, response.data.map { it.id })
+            assertTrue(response.hasMore)
+            coVerify(exactly = 2) { vectorStoreRepository.listVectorStores(any(), any(), any(), any()) }
+        }
+
     @Test
     fun `getVectorStore should return a vector store by ID`() =
         runTest {
@@ -428,20 +461,19 @@ class VectorStoreServiceTest {
                         ),
                 )
 
-            // Mock the repository to return the updated vector store with the correct expiration timestamp
-            coEvery { vectorStoreRepository.saveVectorStore(any()) } answers { 
-                val store = firstArg<VectorStore>()
-                store.copy(
-                    expiresAt = Instant.now().plus(14, ChronoUnit.DAYS).epochSecond,
-                )
+            // Mock the repository to apply the modified fields to the stored vector store
+            coEvery { vectorStoreRepository.updateVectorStoreDetails(vectorStore.id, any(), any(), any(), any()) } answers {
+                vectorStore.copy(name = secondArg(), metadata = thirdArg(), expiresAt = arg(3), lastActiveAt = arg(4))
             }
 
             // When
             val updatedVectorStore = vectorStoreService.updateVectorStore(vectorStore.id, request)
 
             // Then
+            assertEquals("Updated Store", updatedVectorStore.name)
             assertNotNull(updatedVectorStore.expiresAt)
             assertEquals("in_progress", updatedVectorStore.status)
+            coVerify(exactly = 0) { vectorStoreRepository.saveVectorStore(any()) }
         }
 
     @Test
@@ -455,16 +487,14 @@ class VectorStoreServiceTest {
             coEvery { vectorStoreRepository.findVectorStoreById(vectorStore.id) } returns vectorStore
 
             // Mock the repository to return the updated vector store with expired status
-            coEvery { vectorStoreRepository.saveVectorStore(any()) } answers { 
-                val store = firstArg<VectorStore>()
-                store.copy(status = "expired")
-            }
+            coEvery { vectorStoreRepository.updateVectorStoreStatus(vectorStore.id, "expired") } returns vectorStore.copy(status = "expired")
 
             // When
             val retrievedVectorStore = vectorStoreService.getVectorStore(vectorStore.id)
 
             // Then
             assertEquals("expired", retrievedVectorStore.status)
+            coVerify(exactly = 0) { vectorStoreRepository.saveVectorStore(any()) }
         }
 
     @Test
@@ -484,15 +514,8 @@ class VectorStoreServiceTest {
             coEvery { vectorStoreRepository.listVectorStores(any(), any(), any(), any()) } returns 
                 listOf(vectorStore1, vectorStore2)
 
-            // Mock the repository to return the updated vector stores with correct status
-            coEvery { vectorStoreRepository.saveVectorStore(any()) } answers { 
-                val store = firstArg<VectorStore>()
-                if (store.expiresAt!! < Instant.now().epochSecond) {
-                    store.copy(status = "expired")
-                } else {
-                    store
-                }
-            }
+            // Mock the repository to return the updated vector store with expired status
+            coEvery { vectorStoreRepository.updateVectorStoreStatus(vectorStore1.id, "expired") } returns vectorStore1.copy(status = "expired")
 
             // When
             val response = vectorStoreService.listVectorStores()
@@ -520,21 +543,16 @@ class VectorStoreServiceTest {
             coEvery { vectorStoreRepository.listVectorStores(Int.MAX_VALUE) } returns 
                 listOf(vectorStore1, vectorStore2)
 
-            // Mock the repository to return the updated vector stores with correct status
-            coEvery { vectorStoreRepository.saveVectorStore(any()) } answers { 
-                val store = firstArg<VectorStore>()
-                if (store.expiresAt!! < Instant.now().epochSecond) {
-                    store.copy(status = "expired")
-                } else {
-                    store
-                }
-            }
+            // Mock the repository to return the updated vector store with expired status
+            coEvery { vectorStoreRepository.updateVectorStoreStatus(vectorStore1.id, "expired") } returns vectorStore1.copy(status = "expired")
 
             // When
             val cleanedUpCount = vectorStoreService.cleanupExpiredVectorStores()
 
             // Then
             assertEquals(1, cleanedUpCount)
+            coVerify(exactly = 1) { vectorStoreRepository.updateVectorStoreStatus(any(), any()) }
+            coVerify(exactly = 0) { vectorStoreRepository.saveVectorStore(any()) }
         }
 
     @Test
@@ -652,6 +670,79 @@ class VectorStoreServiceTest {
             }
         }
 
+    @Test
+    fun `searchVectorStore should scope by store and exclude only files that are not completed`() =
+        runTest {
+            // Given
+            val vectorStoreId = "vs_cc4223ea-c516-491f-8a41-96c90f5804e6"
+            coEvery { vectorStoreRepository.listVectorStoreFiles(vectorStoreId, any(), any(), any(), any(), "failed") } returns
+                listOf(VectorStoreFile(id = "file-failed", vectorStoreId = vectorStoreId, status = "failed"))
+            coEvery {
+                vectorSearchProvider.searchSimilar(any(), any(), rankingOptions = null, filter = any())
+            } returns emptyList()
+
+            // When
+            vectorStoreService.searchVectorStore(vectorStoreId, VectorStoreSearchRequest(query = "test"))
+
+            // Then
+            coVerify {
+                vectorSearchProvider.searchSimilar(
+                    query = "test",
+                    maxResults = 10,
+                    rankingOptions = null,
+                    filter =
+                        withArg { filter ->
+                            assertEquals(
+                                CompoundFilter(
+                                    type = "and",
+                                    filters =
+                                        listOf(
+                                            ComparisonFilter(key = "vector_store_id", type = "eq", value = vectorStoreId),
+                                            ComparisonFilter(key = "file_id", type = "ne", value = "file-failed"),
+                                        ),
+                                ),
+                                filter,
+                            )
+                        },
+                )
+            }
+            coVerify(exactly = 0) { vectorStoreRepository.listVectorStoreFiles(any(), any(), any(), any(), any(), isNull()) }
+        }
+
+    @Test
+    fun `deleteVectorStoreFile should decrement file counts without listing files`() =
+        runTest {
+            // Given
+            val vectorStoreId = "vs_123"
+            val fileId = "file-123"
+            coEvery { vectorStoreRepository.findVectorStoreFileById(vectorStoreId, fileId) } returns
+                VectorStoreFile(id = fileId, vectorStoreId = vectorStoreId, status = "completed", usageBytes = 100L)
+            coEvery { vectorStoreRepository.deleteVectorStoreFile(vectorStoreId, fileId) } returns true
+            coEvery { vectorSearchProvider.deleteFile(fileId) } returns true
+
+            // When
+            vectorStoreService.deleteVectorStoreFile(vectorStoreId, fileId)
+
+            // Then
+            coVerify { vectorStoreRepository.incrementFileCounts(vectorStoreId, FileCounts(completed = -1, total = -1), -100L) }
+            coVerify(exactly = 0) { vectorStoreRepository.listVectorStoreFiles(any(), any(), any(), any(), any(), any()) }
+        }
+
+    @Test
+    fun `searchVectorStore should record activity without saving the vector store`() =
+        runTest {
+            // Given
+            coEvery {
+                vectorSearchProvider.searchSimilar(any(), any(), rankingOptions = null, filter = any())
+            } returns emptyList()
+
+            // When
+            vectorStoreService.searchVectorStore("vs_cc4223ea-c516-491f-8a41-96c90f5804e6", VectorStoreSearchRequest(query = "test"))
+
+            // Then
+            coVerify(exactly = 0) { vectorStoreRepository.saveVectorStore(any()) }
+        }
+
     // Helper function to create test vector stores
     private fun createTestVectorStore(
         id: String = "vs_${UUID.randomUUID()}",
@@ -0,0 +1,125 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import org.redisson.api.RBucket
+import org.redisson.api.RedissonClient
+import org.redisson.client.codec.ByteArrayCodec
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class CachingEmbeddingServiceTest {
+    @TempDir
+    lateinit var tempDir: Path
+
+    private val meterRegistry = SimpleMeterRegistry()
+    private val delegate =
+        mockk<EmbeddingService> {
+            every { similarityKernel } returns SimilarityKernels.default
+            every { embedTextAsArray(any()) } answers { vectorOf(firstArg()) }
+            every { embedTextsAsArrays(any()) } answers { firstArg<List<String>>().map { vectorOf(it) } }
+        }
+
+    private fun vectorOf(text: String) = floatArrayOf(text.length.toFloat(), text.first().code.toFloat())
+
+    private fun hits(level: String) = meterRegistry.counter("embedding.cache.hits", "level", level).count()
+
+    private fun misses() = meterRegistry.counter("embedding.cache.misses").count()
+
+    @Test
+    fun `repeated queries should be embedded once`() {
+        val service = CachingEmbeddingService(delegate, "model", 1024, meterRegistry)
+
+        repeat(3) { assertContentEquals(vectorOf("query"), service.embedTextAsArray("query")) }
+
+        verify(exactly = 1) { delegate.embedTextAsArray("query") }
+        assertEquals(2.0, hits("l1"))
+        assertEquals(1.0, misses())
+    }
+
+    @Test
+    fun `batches should only embed distinct uncached texts`() {
+        val service = CachingEmbeddingService(delegate, "model", 1024, meterRegistry)
+        service.embedTextAsArray("alpha")
+
+        val vectors = service.embedTextsAsArrays(listOf("alpha", "beta", "beta", "gamma"))
+
+        assertEquals(listOf("alpha", "beta", "beta", "gamma").map { vectorOf(it).toList() }, vectors.map { it.toList() })
+        verify(exactly = 1) { delegate.embedTextsAsArrays(listOf("beta", "gamma")) }
+        assertEquals(1.0, hits("l1"))
+        assertEquals(3.0, misses())
+    }
+
+    @Test
+    fun `vectors of different models should not be shared`() {
+        val store = FileEmbeddingCacheStore(tempDir.resolve("embeddings.seg"))
+        CachingEmbeddingService(delegate, "model-a", 1024, meterRegistry, store).embedTextAsArray("text")
+        CachingEmbeddingService(delegate, "model-b", 1024, meterRegistry, store).embedTextAsArray("text")
+
+        verify(exactly = 2) { delegate.embedTextAsArray("text") }
+        store.close()
+    }
+
+    @Test
+    fun `the file store should serve vectors after a restart`() {
+        val path = tempDir.resolve("cache").resolve("embeddings.seg")
+        CachingEmbeddingService(delegate, "model", 1024, meterRegistry, FileEmbeddingCacheStore(path)).use {
+            it.embedTextsAsArrays(listOf("one", "three"))
+        }
+
+        val restarted = CachingEmbeddingService(delegate, "model", 1024, meterRegistry, FileEmbeddingCacheStore(path))
+        assertContentEquals(vectorOf("three"), restarted.embedTextAsArray("three"))
+        restarted.close()
+
+        verify(exactly = 0) { delegate.embedTextAsArray(any()) }
+        assertEquals(1.0, hits("l2"))
+    }
+
+    @Test
+    fun `the redis store should round trip vectors under its key prefix`() {
+        val values = HashMap<String, ByteArray>()
+        val redisson =
+            mockk<RedissonClient> {
+                every { getBucket<ByteArray>(any(), ByteArrayCodec.INSTANCE) } answers {
+                    val key = firstArg<String>()
+                    mockk<RBucket<ByteArray>> {
+                        every { get() } answers { values[key] }
+                        every { set(any(), Duration.ofHours(1)) } answers { values[key] = firstArg() }
+                    }
+                }
+            }
+        val store = RedisEmbeddingCacheStore(redisson, "prefix", Duration.ofHours(1))
+
+        store.put("model:abc", floatArrayOf(1.5f, -2f))
+
+        assertEquals(setOf("prefix:model:abc"), values.keys)
+        assertContentEquals(floatArrayOf(1.5f, -2f), store.get("model:abc"))
+        assertNull(store.get("model:missing"))
+    }
+
+    @Test
+    fun `the file store should drop a truncated tail record`() {
+        val path = tempDir.resolve("embeddings.seg")
+        FileEmbeddingCacheStore(path).use {
+            it.put("a", floatArrayOf(1f, 2f))
+            it.put("b", floatArrayOf(3f, 4f))
+        }
+        Files.newByteChannel(path, StandardOpenOption.WRITE).use { it.truncate(Files.size(path) - 3) }
+
+        FileEmbeddingCacheStore(path).use { store ->
+            assertContentEquals(floatArrayOf(1f, 2f), store.get("a"))
+            assertNull(store.get("b"))
+            store.put("b", floatArrayOf(5f, 6f))
+            assertContentEquals(floatArrayOf(5f, 6f), store.get("b"))
+        }
+    }
+}
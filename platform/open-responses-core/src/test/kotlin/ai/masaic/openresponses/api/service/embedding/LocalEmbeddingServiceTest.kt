@@ -0,0 +1,126 @@
+package ai.masaic.openresponses.api.service.embedding
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class LocalEmbeddingServiceTest {
+    /**
+     * Embeds a text as its length and records the size of every batch.
+     */
+    private class FakeModel(
+        private val delayMillis: Long = 0,
+    ) : BatchEmbeddingModel {
+        val batchSizes: MutableList<Int> = Collections.synchronizedList(mutableListOf())
+
+        override fun embed(texts: List<String>): List<FloatArray> {
+            batchSizes.add(texts.size)
+            Thread.sleep(delayMillis)
+            if (texts.any { it == "fail" }) throw IllegalStateException("model failure")
+            return texts.map { floatArrayOf(it.length.toFloat()) }
+        }
+    }
+
+    private val meterRegistry = SimpleMeterRegistry()
+    private var service: LocalEmbeddingService? = null
+
+    @AfterEach
+    fun tearDown() {
+        service?.close()
+    }
+
+    private fun service(
+        model: BatchEmbeddingModel,
+        threads: Int = 1,
+        maxBatchSize: Int = 32,
+        batchWaitMillis: Long = 5,
+        timeoutMillis: Long = 60_000,
+    ) = LocalEmbeddingService(model, meterRegistry, threads, maxBatchSize, batchWaitMillis, timeoutMillis).also { service = it }
+
+    @Test
+    fun `embedTextsAsArrays should return vectors in input order`() {
+        val service = service(FakeModel())
+
+        val vectors = service.embedTextsAsArrays(listOf("a", "abc", "ab"))
+
+        assertEquals(listOf(1f, 3f, 2f), vectors.map { it.single() })
+        assertContentEquals(floatArrayOf(4f), service.embedTextAsArray("abcd"))
+    }
+
+    @Test
+    fun `concurrent calls should be coalesced into shared batches`() {
+        val model = FakeModel(delayMillis = 50)
+        val service = service(model, threads = 1, maxBatchSize = 16, batchWaitMillis = 20)
+        val callers = Executors.newFixedThreadPool(16)
+        val start = CountDownLatch(1)
+        try {
+            val results = (1..32).map { i -> callers.submit<FloatArray> { start.await(); service.embedTextAsArray("x".repeat(i)) } }
+            start.countDown()
+
+            assertEquals((1..32).map { it.toFloat() }, results.map { it.get(5, TimeUnit.SECONDS).single() })
+            assertTrue(model.batchSizes.size < 32, "Expected shared batches but got ${model.batchSizes}")
+            assertTrue(model.batchSizes.all { it <= 16 })
+        } finally {
+            callers.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `a failed batch should fail its callers`() {
+        val service = service(FakeModel())
+
+        val error = assertThrows<IllegalStateException> { service.embedTextAsArray("fail") }
+
+        assertEquals("model failure", error.message)
+        assertContentEquals(floatArrayOf(2f), service.embedTextAsArray("ok"))
+    }
+
+    @Test
+    fun `a caller should not wait longer than the timeout`() {
+        val service = service(FakeModel(delayMillis = 1_000), timeoutMillis = 50)
+
+        val error = assertThrows<IllegalStateException> { service.embedTextAsArray("slow") }
+
+        assertTrue(error.message!!.contains("50ms"), error.message)
+    }
+
+    @Test
+    fun `close should fail texts still waiting for a batch`() {
+        val service = service(FakeModel(delayMillis = 300), threads = 1, maxBatchSize = 1)
+        val callers = Executors.newFixedThreadPool(2)
+        try {
+            val running = callers.submit<FloatArray> { service.embedTextAsArray("first") }
+            Thread.sleep(50)
+            val waiting = callers.submit<FloatArray> { service.embedTextAsArray("second") }
+            Thread.sleep(50)
+
+            service.close()
+
+            assertContentEquals(floatArrayOf(5f), running.get(5, TimeUnit.SECONDS))
+            val error = assertThrows<ExecutionException> { waiting.get(5, TimeUnit.SECONDS) }
+            assertTrue(error.cause is IllegalStateException, "Expected the closed error but got ${error.cause}")
+        } finally {
+            callers.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `embedded chunks should be counted`() {
+        val service = service(FakeModel())
+
+        service.embedTextsAsArrays(listOf("a", "b", "c"))
+
+        assertEquals(3.0, meterRegistry.counter("embedding.local.chunks").count())
+        assertTrue(meterRegistry.timer("embedding.local.batch").count() >= 1)
+        assertTrue(meterRegistry.find("embedding.local.throughput").gauge() != null)
+    }
+}
@@ -1,5 +1,6 @@
 package ai.masaic.openresponses.api.service.embedding
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.junit.jupiter.api.Test
 import kotlin.test.assertTrue
 
@@ -14,12 +15,20 @@ class OpenAiEmbeddingConfigurationTest {
                 apiKey = "test-api-key",
                 model = "text-embedding-3-small",
                 url = "https://api.openai.com/v1",
+                cacheEnabled = false,
             )
 
         // When
-        val service = configuration.openAIEmbeddingService(properties)
+        val service = configuration.openAIEmbeddingService(properties, SimpleMeterRegistry())
 
         // Then
         assertTrue(service is OpenAIEmbeddingService)
     }
+
+    @Test
+    fun `openAIEmbeddingService should be wrapped in the embedding cache by default`() {
+        val service = configuration.openAIEmbeddingService(EmbeddingProperties(apiKey = "test-api-key"), SimpleMeterRegistry())
+
+        assertTrue(service is CachingEmbeddingService)
+    }
 }
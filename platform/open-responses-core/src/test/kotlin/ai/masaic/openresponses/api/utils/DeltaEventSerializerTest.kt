@@ -0,0 +1,94 @@
+package ai.masaic.openresponses.api.utils
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.openai.core.JsonValue
+import com.openai.models.responses.ResponseFunctionCallArgumentsDeltaEvent
+import com.openai.models.responses.ResponseStreamEvent
+import com.openai.models.responses.ResponseTextDeltaEvent
+import com.openai.models.responses.ResponseTextDoneEvent
+import io.mockk.mockk
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class DeltaEventSerializerTest {
+    private val mapper = ObjectMapper()
+    private val payloadFormatter = PayloadFormatter(mockk(relaxed = true), mapper)
+
+    @Test
+    fun `text delta should be written as the same JSON as the formatted event`() =
+        runBlocking {
+            val event =
+                ResponseStreamEvent.ofOutputTextDelta(
+                    ResponseTextDeltaEvent
+                        .builder()
+                        .delta("Line \"one\"\n\ttab \\ é 😀 \u0001")
+                        .outputIndex(1)
+                        .contentIndex(2)
+                        .itemId("msg_1")
+                        .sequenceNumber(1234567890123L)
+                        .build(),
+                )
+
+            val sse = DeltaEventSerializer.serialize(event)!!
+
+            assertEquals(" response.output_text.delta", sse.event())
+            assertEquals(formatted(event), mapper.readTree(sse.data()))
+            assertEquals(" ", sse.data()!!.substring(0, 1))
+        }
+
+    @Test
+    fun `function argument delta should be written as the same JSON as the formatted event`() =
+        runBlocking {
+            val event =
+                ResponseStreamEvent.ofFunctionCallArgumentsDelta(
+                    ResponseFunctionCallArgumentsDeltaEvent
+                        .builder()
+                        .delta("{\"query\": \"a/b\"")
+                        .outputIndex(0)
+                        .itemId("fc_1")
+                        .sequenceNumber(7)
+                        .build(),
+                )
+
+            val sse = DeltaEventSerializer.serialize(event)!!
+
+            assertEquals(" response.function_call_arguments.delta", sse.event())
+            assertEquals(formatted(event), mapper.readTree(sse.data()))
+        }
+
+    @Test
+    fun `other events and deltas with additional properties should be left to the formatter`() {
+        val withExtras =
+            ResponseStreamEvent.ofOutputTextDelta(
+                ResponseTextDeltaEvent
+                    .builder()
+                    .delta("hi")
+                    .outputIndex(0)
+                    .contentIndex(0)
+                    .itemId("msg_1")
+                    .sequenceNumber(1)
+                    .putAdditionalProperty("logprobs", JsonValue.from(listOf<Any>()))
+                    .build(),
+            )
+        val done =
+            ResponseStreamEvent.ofOutputTextDone(
+                ResponseTextDoneEvent
+                    .builder()
+                    .contentIndex(0)
+                    .text("hi")
+                    .outputIndex(0)
+                    .itemId("msg_1")
+                    .sequenceNumber(2)
+                    .build(),
+            )
+
+        assertNull(DeltaEventSerializer.serialize(withExtras))
+        assertNull(DeltaEventSerializer.serialize(done))
+    }
+
+    // Parsed back from the text the formatter path sends, so numbers compare as the same node types
+    private suspend fun formatted(event: ResponseStreamEvent) =
+        mapper.readTree(mapper.writeValueAsString(payloadFormatter.formatResponseStreamEvent(event)))
+}
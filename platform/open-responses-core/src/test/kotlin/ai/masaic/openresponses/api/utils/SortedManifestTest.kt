@@ -0,0 +1,90 @@
+package ai.masaic.openresponses.api.utils
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class SortedManifestTest {
+    private val objectMapper = jacksonObjectMapper()
+
+    @TempDir
+    lateinit var tempDir: Path
+
+    private fun manifest(rebuild: () -> List<SortedManifest.Entry> = { emptyList() }) =
+        SortedManifest(tempDir.resolve("manifest.jsonl"), objectMapper, rebuild)
+
+    private fun SortedManifest.ids(
+        limit: Int,
+        order: String,
+        after: String? = null,
+        before: String? = null,
+    ) = page(limit, order, after, before).map { it.id }
+
+    private fun filled(): SortedManifest =
+        manifest().apply {
+            // Two entries share a creation time and are ordered by ID
+            listOf("a" to 10L, "b" to 20L, "c" to 20L, "d" to 30L, "e" to 40L).forEach { (id, at) ->
+                put(SortedManifest.Entry(id, at))
+            }
+        }
+
+    @Test
+    fun `pages should follow the cursor in either order`() {
+        val manifest = filled()
+
+        assertEquals(listOf("e", "d"), manifest.ids(2, "desc"))
+        assertEquals(listOf("c", "b"), manifest.ids(2, "desc", after = "d"))
+        assertEquals(listOf("b", "c"), manifest.ids(2, "asc", after = "a"))
+        assertEquals(emptyList(), manifest.ids(2, "asc", after = "e"))
+        assertEquals(emptyList(), manifest.ids(2, "asc", after = "unknown"))
+    }
+
+    @Test
+    fun `before pages should be the entries adjacent to the cursor`() {
+        val manifest = filled()
+
+        assertEquals(listOf("d", "c"), manifest.ids(2, "desc", before = "b"))
+        assertEquals(listOf("b", "c"), manifest.ids(2, "asc", before = "d"))
+        assertEquals(emptyList(), manifest.ids(2, "asc", before = "a"))
+    }
+
+    @Test
+    fun `pages should only hold entries matching the filter`() {
+        val tagged = manifest()
+        (1..6).forEach { i -> tagged.put(SortedManifest.Entry("f$i", i.toLong(), if (i % 2 == 0) "completed" else "failed")) }
+
+        val completed = tagged.page(2, "desc") { it.tag == "completed" }
+
+        assertEquals(listOf("f6", "f4"), completed.map { it.id })
+    }
+
+    @Test
+    fun `entries should be reloaded from the log`() {
+        val original = filled()
+        original.put(SortedManifest.Entry("a", 50))
+        original.remove("c")
+
+        var rebuilt = false
+        val reloaded = manifest { emptyList<SortedManifest.Entry>().also { rebuilt = true } }
+
+        assertEquals(listOf("a", "e", "d", "b"), reloaded.ids(10, "desc"))
+        assertFalse(rebuilt)
+    }
+
+    @Test
+    fun `a missing log should be rebuilt and a truncated line skipped`() {
+        val built = manifest { listOf(SortedManifest.Entry("x", 1), SortedManifest.Entry("y", 2)) }
+        assertEquals(listOf("x", "y"), built.ids(10, "asc"))
+        assertTrue(Files.exists(tempDir.resolve("manifest.jsonl")))
+
+        Files.writeString(tempDir.resolve("manifest.jsonl"), "{\"id\":\"z\",\"crea", StandardOpenOption.APPEND)
+
+        assertEquals(listOf("x", "y"), manifest().ids(10, "asc"))
+    }
+}
@@ -0,0 +1,85 @@
+package ai.masaic.openresponses.api.utils
+
+import ai.masaic.openresponses.api.model.ChunkingStrategy
+import ai.masaic.openresponses.api.model.StaticChunkingConfig
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class StreamingTextChunkerTest {
+    private fun randomDocument(
+        words: Int,
+        random: Random,
+    ): String =
+        buildString {
+            append("  \n")
+            repeat(words) {
+                append("w".repeat(1 + random.nextInt(12)))
+                append(listOf(" ", "  ", "\n", "\t\n\n ", " ").random(random))
+            }
+        }
+
+    private fun streamed(
+        text: String,
+        chunkSize: Int,
+        overlap: Int,
+        pieceSize: Int,
+    ): List<TextChunk> {
+        val chunks = mutableListOf<TextChunk>()
+        val chunker = StreamingTextChunker(chunkSize, overlap) { chunks.add(it) }
+        text.chunked(pieceSize).forEach { chunker.append(it) }
+        chunker.finish()
+        return chunks
+    }
+
+    private fun whole(
+        text: String,
+        chunkSize: Int,
+        overlap: Int,
+    ): List<TextChunk> = TextChunkingUtil.chunkByFixedSize(text.replace("\\s+".toRegex(), " ").trim(), chunkSize, overlap)
+
+    @Test
+    fun `streamed chunks should match chunking the whole cleaned text`() {
+        val random = Random(42)
+        repeat(20) {
+            val text = randomDocument(50 + random.nextInt(2000), random)
+            listOf(1, 7, 4096).forEach { pieceSize ->
+                assertEquals(whole(text, 1000, 200), streamed(text, 1000, 200, pieceSize))
+                assertEquals(whole(text, 120, 30), streamed(text, 120, 30, pieceSize))
+            }
+        }
+    }
+
+    @Test
+    fun `short text should become a single chunk`() {
+        assertEquals(listOf(TextChunk("hello world", 0)), streamed("  hello \n\n world  ", 1000, 200, 3))
+        assertEquals(emptyList(), streamed(" \n\t ", 1000, 200, 2))
+    }
+
+    @Test
+    fun `extractChunks should stream a document in order`() =
+        runBlocking {
+            val text = (1..5000).joinToString(" ") { "word$it" }
+            val strategy = ChunkingStrategy(type = "static", static = StaticChunkingConfig(maxChunkSizeTokens = 500, chunkOverlapTokens = 50))
+
+            val chunks = DocumentTextExtractor.extractChunks(text.byteInputStream(), "doc.txt", strategy, bufferedChunks = 2).toList()
+
+            assertEquals(TextChunkingUtil.chunkText(text, strategy), chunks)
+            assertEquals(chunks.indices.toList(), chunks.map { it.index })
+        }
+
+    @Test
+    fun `extractChunks should stop parsing when the collector stops`() =
+        runBlocking {
+            val text = (1..200_000).joinToString(" ") { "word$it" }
+
+            val first = DocumentTextExtractor.extractChunks(text.byteInputStream(), "big.txt", null, bufferedChunks = 1).take(3).toList()
+
+            assertEquals(3, first.size)
+            assertTrue(first.first().text.startsWith("word1 word2"))
+        }
+}
@@ -0,0 +1,121 @@
+package ai.masaic.openresponses.api.utils
+
+import ai.masaic.openresponses.api.model.ChunkingStrategy
+import ai.masaic.openresponses.api.model.StaticChunkingConfig
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class TokenAwareChunkerTest {
+    private val characters = TokenCounters.CHARACTERS
+
+    private fun texts(
+        text: String,
+        method: ChunkingMethod,
+        maxTokens: Int,
+        overlapTokens: Int = 0,
+    ) = TokenAwareChunker.chunk(text, method, maxTokens, overlapTokens, characters).map { it.text }
+
+    private fun streamed(
+        text: String,
+        method: ChunkingMethod,
+        pieceSize: Int,
+    ): List<TextChunk> {
+        val chunks = mutableListOf<TextChunk>()
+        val chunker = TokenAwareChunker(method, 60, 20, characters, segmentChars = 64) { chunks.add(it) }
+        text.chunked(pieceSize).forEach { chunker.append(it) }
+        chunker.finish()
+        return chunks
+    }
+
+    private fun randomDocument(random: Random): String =
+        buildString {
+            repeat(20 + random.nextInt(400)) {
+                append("w".repeat(1 + random.nextInt(8)))
+                append(listOf(" ", "  ", ". ", "! ", "\n", " \n\n", " ").random(random))
+            }
+        }
+
+    @Test
+    fun `static chunks should be word windows with overlap`() {
+        assertEquals(
+            listOf("aaaa bbbb", "bbbb cccc", "cccc dddd", "dddd eeee"),
+            texts("aaaa bbbb\ncccc  dddd eeee", ChunkingMethod.STATIC, maxTokens = 8, overlapTokens = 4),
+        )
+    }
+
+    @Test
+    fun `sentence and paragraph chunks should keep their boundaries`() {
+        assertEquals(
+            listOf("First one. Second one!", "Third?"),
+            texts("First one. Second one! Third?", ChunkingMethod.SENTENCE, maxTokens = 25),
+        )
+        assertEquals(
+            listOf("Para one.\n\nPara two.", "Para three."),
+            texts("Para one.\n\n\n\nPara two.\n\nPara three.\n", ChunkingMethod.PARAGRAPH, maxTokens = 20),
+        )
+    }
+
+    @Test
+    fun `semantic chunks should split oversized paragraphs into sentences and words`() {
+        assertEquals(
+            listOf("One two.", "Three four.", "Five."),
+            texts("One two. Three four.\n\nFive.", ChunkingMethod.SEMANTIC, maxTokens = 10),
+        )
+    }
+
+    @Test
+    fun `markdown chunks should not span headings and should carry the heading path`() {
+        val text = "# Guide\n\nIntro text.\n\n## Setup\n\nInstall it.\n\n## Usage\nRun it."
+
+        val chunks = TokenAwareChunker.chunk(text, ChunkingMethod.MARKDOWN_HEADING, 1000, 0, characters)
+
+        assertEquals(listOf("# Guide\n\nIntro text.", "## Setup\n\nInstall it.", "## Usage\nRun it."), chunks.map { it.text })
+        assertEquals(
+            listOf("Guide", "Guide > Setup", "Guide > Usage"),
+            chunks.map { it.metadata[TokenAwareChunker.HEADING_METADATA_KEY] },
+        )
+    }
+
+    @Test
+    fun `chunks fed in small pieces should match chunking the whole text`() {
+        val random = Random(7)
+        repeat(20) {
+            val text = randomDocument(random)
+            listOf(ChunkingMethod.STATIC, ChunkingMethod.SENTENCE, ChunkingMethod.PARAGRAPH).forEach { method ->
+                val whole = TokenAwareChunker.chunk(text, method, 60, 20, characters)
+                listOf(1, 13, 4096).forEach { pieceSize ->
+                    assertEquals(whole, streamed(text, method, pieceSize), "$method in pieces of $pieceSize")
+                }
+                assertEquals(whole.indices.toList(), whole.map { it.index })
+                assertTrue(whole.all { it.text.isNotBlank() })
+            }
+        }
+    }
+
+    @Test
+    fun `chunking parameters should be in tokens for token-aware strategies`() {
+        assertEquals(Triple(1000, 200, "fixed"), TextChunkingUtil.chunkingParameters(null))
+        assertEquals(Triple(1000, 200, "fixed"), TextChunkingUtil.chunkingParameters(ChunkingStrategy("auto")))
+        assertEquals(
+            Triple(500, 50, "static"),
+            TextChunkingUtil.chunkingParameters(ChunkingStrategy("static", StaticChunkingConfig(500, 50))),
+        )
+        assertEquals(Triple(250, 50, "semantic"), TextChunkingUtil.chunkingParameters(ChunkingStrategy("semantic")))
+        assertEquals(Triple(250, 50, "markdown-heading"), TextChunkingUtil.chunkingParameters(ChunkingStrategy("markdown")))
+    }
+
+    @Test
+    fun `chunking defaults should size strategies that set no sizes`() {
+        val defaults = ChunkingDefaults(chunkSize = 400, chunkOverlap = 40, maxTokens = 100, overlapTokens = 10, tokenCounter = characters)
+
+        assertEquals(Triple(400, 40, "fixed"), TextChunkingUtil.chunkingParameters(null, defaults))
+        assertEquals(Triple(100, 10, "sentence"), TextChunkingUtil.chunkingParameters(ChunkingStrategy("sentence"), defaults))
+        val text = "One short sentence. ".repeat(20)
+        assertEquals(
+            TokenAwareChunker.chunk(text, ChunkingMethod.SENTENCE, 100, 10, characters),
+            TextChunkingUtil.chunkText(text, ChunkingStrategy("sentence"), defaults),
+        )
+    }
+}
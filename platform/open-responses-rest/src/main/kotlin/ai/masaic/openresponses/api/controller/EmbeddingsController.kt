@@ -87,7 +87,7 @@ class EmbeddingsController(
             }
 
             // Calculate embeddings
-            val embeddings = embeddingService.embedTexts(inputTexts, apiKey, request.model)
+            val embeddings = embeddingService.embedTextsAsArrays(inputTexts, apiKey, request.model)
 
             // Create response with appropriate encoding format
             val embeddingDataList =
@@ -95,7 +95,7 @@ class EmbeddingsController(
                     val encodedEmbedding =
                         when (request.encodingFormat) {
                             "base64" -> encodeToBase64(embedding)
-                            else -> embedding // "float" is the default
+                            else -> embedding.asList() // "float" is the default
                         }
                     
                     EmbeddingData(
@@ -136,12 +136,12 @@ class EmbeddingsController(
     }
 
     /**
-     * Encodes a list of floats to a base64 string.
+     * Encodes an embedding vector to a base64 string.
      * OpenAI's base64 format represents vectors as 32-bit floating point numbers in binary, then base64 encodes the result.
      */
-    private fun encodeToBase64(embedding: List<Float>): String {
+    private fun encodeToBase64(embedding: FloatArray): String {
         val byteBuffer = ByteBuffer.allocate(4 * embedding.size)
-        embedding.forEach { byteBuffer.putFloat(it) }
+        byteBuffer.asFloatBuffer().put(embedding)
         return Base64.getEncoder().encodeToString(byteBuffer.array())
     }
 
@@ -334,6 +334,7 @@ class GlobalExceptionHandler(
                 is VectorStoreFileNotFoundException -> HttpStatus.NOT_FOUND
                 is VectorIndexingException -> HttpStatus.INTERNAL_SERVER_ERROR
                 is VectorSearchException -> HttpStatus.INTERNAL_SERVER_ERROR
+                is IngestionQueueFullException -> HttpStatus.TOO_MANY_REQUESTS
                 else -> HttpStatus.INTERNAL_SERVER_ERROR
             }
         logError(status, ex, "OpenResponses error: ${ex.message}")
@@ -0,0 +1,41 @@
+package ai.masaic.openresponses.api.controller
+
+import ai.masaic.openresponses.api.config.VectorRepositoryProperties
+import ai.masaic.openresponses.api.service.search.LuceneIndexService
+import ai.masaic.openresponses.api.service.search.LuceneIndexStats
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import org.slf4j.LoggerFactory
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.*
+import org.springframework.web.server.ResponseStatusException
+
+/**
+ * Controller for administering the full-text search index.
+ *
+ * The Lucene index only backs hybrid search when the file repository is in use.
+ */
+@RestController
+@RequestMapping("/v1/admin")
+@CrossOrigin("*")
+class SearchIndexAdminController(
+    private val luceneIndexService: LuceneIndexService,
+    private val vectorRepositoryProperties: VectorRepositoryProperties,
+) {
+    private val log = LoggerFactory.getLogger(SearchIndexAdminController::class.java)
+
+    @GetMapping("/search_index/stats")
+    suspend fun getSearchIndexStats(): ResponseEntity<LuceneIndexStats> {
+        if (vectorRepositoryProperties.repository.type != "file") {
+            throw ResponseStatusException(HttpStatus.NOT_FOUND, "Lucene index is only used with the file repository")
+        }
+        try {
+            val stats = withContext(Dispatchers.IO) { luceneIndexService.stats() }
+            return ResponseEntity.ok(stats)
+        } catch (e: Exception) {
+            log.error("Error reading search index stats", e)
+            throw ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading search index stats: ${e.message}")
+        }
+    }
+}
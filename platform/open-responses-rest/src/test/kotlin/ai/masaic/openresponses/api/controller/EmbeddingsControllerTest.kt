@@ -54,8 +54,8 @@ class EmbeddingsControllerTest {
             val embeddings = listOf(listOf(0.1f, 0.2f, 0.3f))
         
             every { 
-                embeddingService.embedTexts(listOf("Test text"), "test-api-key", "openai@text-embedding-3-small") 
-            } returns embeddings
+                embeddingService.embedTextsAsArrays(listOf("Test text"), "test-api-key", "openai@text-embedding-3-small") 
+            } returns embeddings.map { it.toFloatArray() }
         
             every { embeddingService.providers } returns
                 mapOf(
@@ -98,8 +98,8 @@ class EmbeddingsControllerTest {
             val embeddings = listOf(listOf(0.1f, 0.2f, 0.3f))
         
             every { 
-                embeddingService.embedTexts(listOf("Test text"), "test-api-key", "openai@text-embedding-3-small") 
-            } returns embeddings
+                embeddingService.embedTextsAsArrays(listOf("Test text"), "test-api-key", "openai@text-embedding-3-small") 
+            } returns embeddings.map { it.toFloatArray() }
         
             every { embeddingService.providers } returns
                 mapOf(
@@ -142,8 +142,8 @@ class EmbeddingsControllerTest {
                 )
         
             every { 
-                embeddingService.embedTexts(inputList, "test-api-key", "openai@text-embedding-3-small") 
-            } returns embeddings
+                embeddingService.embedTextsAsArrays(inputList, "test-api-key", "openai@text-embedding-3-small") 
+            } returns embeddings.map { it.toFloatArray() }
         
             every { embeddingService.providers } returns
                 mapOf(
@@ -247,7 +247,7 @@ class EmbeddingsControllerTest {
                 )
         
             every { 
-                embeddingService.embedTexts(any(), any(), any()) 
+                embeddingService.embedTextsAsArrays(any(), any(), any()) 
             } throws RuntimeException("Service error")
         
             every { embeddingService.providers } returns
@@ -0,0 +1,46 @@
+package ai.masaic.openresponses.api.controller
+
+import ai.masaic.openresponses.api.config.VectorRepositoryProperties
+import ai.masaic.openresponses.api.service.search.LuceneIndexService
+import ai.masaic.openresponses.api.service.search.LuceneIndexStats
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpStatus
+import org.springframework.web.server.ResponseStatusException
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class SearchIndexAdminControllerTest {
+    private val luceneIndexService: LuceneIndexService = mockk()
+
+    @Test
+    fun `getSearchIndexStats should return the Lucene index stats`() =
+        runBlocking {
+            val stats = LuceneIndexStats(numDocs = 90, deletedDocs = 10, deletedRatio = 0.1, sizeInBytes = 4096, segmentCount = 3)
+            every { luceneIndexService.stats() } returns stats
+            val controller = SearchIndexAdminController(luceneIndexService, VectorRepositoryProperties())
+
+            val response = controller.getSearchIndexStats()
+
+            assertEquals(HttpStatus.OK, response.statusCode)
+            assertEquals(stats, response.body)
+        }
+
+    @Test
+    fun `getSearchIndexStats should return not found without the file repository`() =
+        runBlocking {
+            val controller =
+                SearchIndexAdminController(
+                    luceneIndexService,
+                    VectorRepositoryProperties(repository = VectorRepositoryProperties.RepositoryConfig(type = "mongodb")),
+                )
+
+            val exception = assertFailsWith<ResponseStatusException> { controller.getSearchIndexStats() }
+
+            assertEquals(HttpStatus.NOT_FOUND, exception.statusCode)
+            verify(exactly = 0) { luceneIndexService.stats() }
+        }
+}